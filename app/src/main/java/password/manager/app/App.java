@@ -99,15 +99,25 @@ public class App extends Application {
         Logger.getInstance().addDebug("Found %d parameters", list.size());
         if (!IO_MANAGER.isFirstRun() && list.size() > 1 && ("-p".equals(list.get(0)) || "--password".equals(list.get(0)))) {
             Logger.getInstance().addInfo("Trying to authenticate via arguments");
-            if (IO_MANAGER.authenticate(list.get(1))) {
-                Logger.getInstance().addInfo("Correct password, skipping login");
-                switchToMain.set(true);
-                return; // Exit early
-            } else {
-                Logger.getInstance().addInfo("Incorrect password, redirecting to login");
-            }
+            // The login completes in the background, as it needs the JavaFX Application Thread to show the accounts
+            IO_MANAGER.authenticateAsync(list.get(1), _ -> {}).whenComplete((authenticated, throwable) -> runOnFx(() -> {
+                if (throwable != null) Logger.getInstance().addError(throwable);
+                if (Boolean.TRUE.equals(authenticated)) {
+                    Logger.getInstance().addInfo("Correct password, skipping login");
+                    switchToMain.set(true);
+                } else {
+                    Logger.getInstance().addInfo("Incorrect password, redirecting to login");
+                    showLogin(switchToMain);
+                }
+            }));
+            return;
         }
 
+        showLogin(switchToMain);
+    }
+
+    private void showLogin(BooleanProperty switchToMain) {
+        final IOManager IO_MANAGER = IOManager.getInstance();
         final Pane pane = (Pane) loadFxml(IO_MANAGER.isFirstRun()
             ?  new FirstRunController(switchToMain)
             :  new LoginController(switchToMain)
@@ -0,0 +1,153 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.base;
+
+import java.time.Duration;
+
+import org.jetbrains.annotations.NotNull;
+
+import password.manager.app.singletons.Logger;
+
+/**
+ * Picks Argon2 cost parameters for this host, so that deriving the master key takes about a target latency.
+ * <p>
+ * The lanes follow the available cores, then a derivation with the minimum cost is timed to estimate how much memory
+ * the host can fill within the target. Memory is preferred over passes, as it is what makes attacks expensive: a second probe
+ * at the chosen memory measures the actual latency, and passes are only added with what is left of the target.
+ * The target only ever raises the cost: the parameters never go below {@link KdfParameters#DEFAULT}, which vaults used before
+ * calibration, even if that overshoots the target on slow hosts or small heaps. Above it, they never claim more than a fraction
+ * of the memory {@link MemoryReserver} can hand out, so that several derivations can still run at once.
+ * </p>
+ * <p>
+ * Calibration costs a couple of derivations, so the result for the configured target is computed once and then reused.
+ * It can be {@link #warmUp() warmed up} in the background, so that setting the first password does not wait for it.
+ * </p>
+ */
+public final class KdfCalibrator {
+
+    public static final String TARGET_LATENCY_KEY = "app.config.kdfTargetMillis";
+    public static final Duration DEFAULT_TARGET_LATENCY = Duration.ofMillis(500);
+
+    // Calibrating must never weaken the vaults, so the floors are the parameters used before it
+    public static final int MIN_MEMORY_KIB = KdfParameters.DEFAULT.memoryKiB();
+    public static final int MIN_ITERATIONS = KdfParameters.DEFAULT.iterations();
+    public static final int MAX_ITERATIONS = KdfParameters.MAX_ITERATIONS;
+    public static final int MAX_LANES = 4;
+
+    private static final int MEMORY_GRANULARITY_KIB = 1024; // Whole MiBs
+    private static final int HEADROOM_SHARE = 4; // Use at most a quarter of the reservable memory
+
+    private static final String PROBE_PASSWORD = "calibration";
+    private static final byte[] PROBE_SALT = new byte[16];
+
+    private static KdfParameters calibrated;
+
+    private KdfCalibrator() {} // Prevent instantiation
+
+    /**
+     * Returns the parameters calibrated for the configured target latency, running the calibration on first use.
+     * The target is read from the {@value #TARGET_LATENCY_KEY} system property, in milliseconds, and defaults to {@link #DEFAULT_TARGET_LATENCY}.
+     *
+     * @return the calibrated parameters
+     */
+    public static synchronized @NotNull KdfParameters getCalibrated() {
+        if (calibrated == null) calibrated = calibrate(getTargetLatency());
+        return calibrated;
+    }
+
+    /**
+     * Runs the calibration for the configured target latency on a background thread, unless it has already run.
+     */
+    public static void warmUp() {
+        Thread.ofVirtual().name("kdf-calibration").start(() -> {
+            try {
+                getCalibrated();
+            } catch (RuntimeException e) {
+                Logger.getInstance().addError(e);
+            }
+        });
+    }
+
+    /**
+     * Benchmarks the host and picks parameters whose derivation takes about the given latency.
+     *
+     * @param targetLatency the desired derivation time
+     * @return the calibrated parameters
+     */
+    public static @NotNull KdfParameters calibrate(@NotNull Duration targetLatency) {
+        if (targetLatency == null || targetLatency.isNegative() || targetLatency.isZero()) throw new IllegalArgumentException("Target latency must be positive");
+
+        final int lanes = Math.clamp(Runtime.getRuntime().availableProcessors(), 1, MAX_LANES);
+        final int maxMemoryKiB = getMaxMemoryKiB();
+        final long targetNanos = targetLatency.toNanos();
+
+        // Warm up, then time the minimum cost: at a fixed number of passes, the cost grows linearly with the memory
+        measure(MIN_MEMORY_KIB, MIN_ITERATIONS, lanes);
+        final long minimumNanos = Math.max(1, measure(MIN_MEMORY_KIB, MIN_ITERATIONS, lanes));
+
+        // Memory is what makes Argon2 expensive to attack, so it gets the budget first
+        final long estimatedMemoryKiB = MIN_MEMORY_KIB * targetNanos / minimumNanos;
+        final int memoryKiB = roundMemory(Math.clamp(estimatedMemoryKiB, MIN_MEMORY_KIB, maxMemoryKiB));
+
+        // Whatever is left of the target, typically once the memory is capped, is spent on more passes
+        final long chosenNanos = (memoryKiB == MIN_MEMORY_KIB) ? minimumNanos : Math.max(1, measure(memoryKiB, MIN_ITERATIONS, lanes));
+        final long passNanos = chosenNanos / MIN_ITERATIONS; // Includes the fixed costs, so it errs on the side of fewer passes
+        final long extraPasses = Math.max(0, targetNanos - chosenNanos) / Math.max(1, passNanos);
+        final int iterations = Math.clamp(MIN_ITERATIONS + extraPasses, MIN_ITERATIONS, MAX_ITERATIONS);
+
+        return new KdfParameters(memoryKiB, iterations, lanes);
+    }
+
+    /**
+     * Returns the target latency configured through the {@value #TARGET_LATENCY_KEY} system property.
+     *
+     * @return the target latency, {@link #DEFAULT_TARGET_LATENCY} if missing or invalid
+     */
+    public static @NotNull Duration getTargetLatency() {
+        final String property = System.getProperty(TARGET_LATENCY_KEY);
+        if (property == null || property.isBlank()) return DEFAULT_TARGET_LATENCY;
+
+        try {
+            final long millis = Long.parseLong(property.strip());
+            return millis > 0 ? Duration.ofMillis(millis) : DEFAULT_TARGET_LATENCY;
+        } catch (NumberFormatException e) {
+            return DEFAULT_TARGET_LATENCY;
+        }
+    }
+
+    private static long measure(int memoryKiB, int iterations, int lanes) {
+        final KdfParameters probe = new KdfParameters(memoryKiB, iterations, lanes);
+
+        // Goes through SecurityVersion, so that the memory reservation is part of the measurement as it is of every unlock
+        final long start = System.nanoTime();
+        SecurityVersion.ARGON2.getKey(PROBE_PASSWORD, PROBE_SALT, probe);
+        return System.nanoTime() - start;
+    }
+
+    private static int getMaxMemoryKiB() {
+        final long reservedPerKiB = SecurityVersion.ARGON2.getReservedMemory(KdfParameters.DEFAULT) / KdfParameters.DEFAULT.memoryKiB();
+        final long budgetKiB = MemoryReserver.getHeadroom() / HEADROOM_SHARE / reservedPerKiB;
+        return roundMemory(Math.clamp(budgetKiB, MIN_MEMORY_KIB, KdfParameters.MAX_MEMORY_KIB));
+    }
+
+    private static int roundMemory(long memoryKiB) {
+        return (int) Math.max(MIN_MEMORY_KIB, memoryKiB / MEMORY_GRANULARITY_KIB * MEMORY_GRANULARITY_KIB);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.base;
+
+/**
+ * Cost parameters of the Argon2 key derivation, stored with each vault.
+ * <p>
+ * Vaults saved before the parameters were persisted use {@link #DEFAULT}, the values that used to be hard-coded.
+ * New and re-keyed vaults get parameters measured on the host by {@link KdfCalibrator}.
+ * </p>
+ *
+ * @param memoryKiB   the memory cost, in KiB
+ * @param iterations  the number of passes over the memory
+ * @param parallelism the number of lanes
+ */
+public record KdfParameters(int memoryKiB, int iterations, int parallelism) {
+
+    public static final KdfParameters DEFAULT = new KdfParameters(65536, 4, 4); // 64MiB, 4 passes, 4 lanes
+
+    // Kept within int range once scaled to the reserved memory, see SecurityVersion
+    public static final int MAX_MEMORY_KIB = 1024 * 1024; // 1GiB in KiB
+    public static final int MAX_PARALLELISM = 16;
+    // Calibration never picks more, and a tampered file cannot make the login derive practically forever
+    public static final int MAX_ITERATIONS = 16;
+
+    public KdfParameters {
+        if (parallelism < 1 || parallelism > MAX_PARALLELISM) throw new IllegalArgumentException("Parallelism must be between 1 and " + MAX_PARALLELISM);
+        if (iterations < 1 || iterations > MAX_ITERATIONS) throw new IllegalArgumentException("Iterations must be between 1 and " + MAX_ITERATIONS);
+        if (memoryKiB < 8 * parallelism || memoryKiB > MAX_MEMORY_KIB) throw new IllegalArgumentException("Memory must be between 8 KiB per lane and " + MAX_MEMORY_KIB + " KiB");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("m=%d KiB, t=%d, p=%d", memoryKiB, iterations, parallelism);
+    }
+}
@@ -16,76 +16,275 @@
     along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
  */
 
+
 package password.manager.app.base;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Admission controller for memory-hungry operations, such as the Argon2 derivations.
+ * <p>
+ * Reservations are weighted permits over a fixed memory budget: an operation is admitted as soon as its reservation
+ * fits next to the ones already granted, otherwise it waits in a FIFO queue. Waiters are admitted strictly in arrival order,
+ * so a large reservation is never starved by a stream of smaller ones. A reservation larger than the whole budget is
+ * admitted alone, once nothing else is reserved.
+ * </p>
+ * <p>
+ * Waiting never forces a garbage collection: the budget is a share of the maximum heap, and reserved memory is expected
+ * to be reclaimed by the regular collections once it is released.
+ * Waits can be bounded with a timeout and are cancelled by interrupting the waiting thread.
+ * </p>
+ */
+public final class MemoryReserver {
+
+    public static final String BUDGET_KEY = "app.config.memoryBudgetMiB";
 
-public class MemoryReserver {
+    private static final double MEM_CAP = 0.8d; // Default budget: 80% of the maximum heap
 
-    private static final double MEM_CAP = 0.8d; // Memory cap: 80%
-    private static final int INIT_BACKOFF = 4; // Initial backoff: 4 ms
-    private static final int MAX_BACKOFF = 4096; // Maximum backoff: 4 s
-    private static final AtomicLong reservedMemory = new AtomicLong(0);
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Deque<Waiter> queue = new ArrayDeque<>();
+    private static long reservedMemory = 0; // Guarded by lock
+
+    // Metrics
+    private static final AtomicLong grantCount = new AtomicLong(0);
+    private static final AtomicLong timeoutCount = new AtomicLong(0);
+    private static final AtomicLong cancellationCount = new AtomicLong(0);
+    private static final AtomicLong totalWaitNanos = new AtomicLong(0);
+    private static final AtomicLong maxWaitNanos = new AtomicLong(0);
+
+    private MemoryReserver() {}
 
     /**
      * Reserves the required memory, runs the given action, then releases the memory.
-     * Guarantees that unlock is always called, even if the action throws.
+     * Guarantees that the memory is always released, even if the action throws.
      *
      * @param requiredMemory The amount of memory required in bytes.
      * @param action         The action to run while the memory is reserved.
      * @throws RuntimeException if interrupted while waiting for memory.
      */
-    public static void execute(int requiredMemory, Runnable action) {
-        lock(requiredMemory);
+    public static void execute(long requiredMemory, @NotNull Runnable action) {
+        final Reservation reservation;
         try {
+            reservation = acquire(requiredMemory, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for memory", e);
+        }
+
+        try (reservation) {
             action.run();
-        } finally {
-            unlock(requiredMemory);
         }
     }
 
     /**
-     * Waits until sufficient memory is available for an operation.
-     * Checks free memory and suggests garbage collection if needed.
+     * Reserves the required memory, waiting at most the given time for it.
+     * The returned reservation must be closed to release the memory, preferably with a try-with-resources statement.
      *
      * @param requiredMemory The amount of memory required in bytes.
-     * @throws RuntimeException if interrupted while waiting.
+     * @param timeout        The maximum time to wait, {@code null} to wait as long as needed.
+     * @return the reservation, or {@code null} if the timeout elapsed before the memory could be reserved.
+     * @throws InterruptedException if interrupted while waiting, the request is then withdrawn from the queue.
      */
-    private static void lock(int requiredMemory) throws RuntimeException {
-        Runtime runtime = Runtime.getRuntime();
-        int nextBackoff = INIT_BACKOFF;
-
-        while (true) {
-            long maxMemory = runtime.maxMemory();
-            long allocatedMemory = runtime.totalMemory();
-            long freeMemory = runtime.freeMemory();
-            long currentReserved = reservedMemory.get();
-            // memory not yet allocated + free allocated memory - currently reserved memory
-            long availableMemory = (maxMemory - allocatedMemory) + freeMemory - currentReserved;
-
-            // Try to reserve the memory, if there is enough available
-            if (availableMemory * MEM_CAP > requiredMemory) {
-                if (reservedMemory.compareAndSet(currentReserved, currentReserved + requiredMemory)) return;
-                continue; // CAS failed, another thread modified reservedMemory, retry
+    public static @Nullable Reservation acquire(long requiredMemory, @Nullable Duration timeout) throws InterruptedException {
+        if (requiredMemory < 0) throw new IllegalArgumentException("Required memory cannot be negative");
+
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            // Barging is not allowed, a new request is admitted right away only if nobody is waiting
+            if (queue.isEmpty() && fits(requiredMemory)) {
+                reservedMemory += requiredMemory;
+                recordGrant(0);
+                return new Reservation(requiredMemory);
             }
 
+            final Waiter waiter = new Waiter(requiredMemory, lock.newCondition());
+            queue.addLast(waiter);
+
+            long remainingNanos = (timeout != null) ? timeout.toNanos() : Long.MAX_VALUE;
             try {
-                System.gc();
-                Thread.sleep(nextBackoff);
-                if (nextBackoff < MAX_BACKOFF) nextBackoff *= 2; // Exponential backoff with cap
+                while (!waiter.granted) {
+                    if (remainingNanos <= 0) {
+                        withdraw(waiter);
+                        timeoutCount.incrementAndGet();
+                        return null;
+                    }
+
+                    if (timeout != null) {
+                        remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+                    } else {
+                        waiter.condition.await();
+                    }
+                }
             } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted while waiting for memory", e);
+                // The grant may have raced with the interruption, in which case it must be given back
+                if (waiter.granted) {
+                    reservedMemory -= requiredMemory;
+                    grantWaiters();
+                } else {
+                    withdraw(waiter);
+                }
+                cancellationCount.incrementAndGet();
+                throw e;
             }
+
+            recordGrant(System.nanoTime() - start);
+            return new Reservation(requiredMemory);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how much memory reservations may still claim.
+     * This is an upper bound, use it to size how many reservations can be expected to run at once rather than as a guarantee.
+     *
+     * @return The memory headroom in bytes.
+     */
+    public static long getHeadroom() {
+        lock.lock();
+        try {
+            return Math.max(0, getBudget() - reservedMemory);
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Releases reserved memory after an operation completes.
+     * Returns the memory budget shared by all reservations.
+     * It is read from the {@value #BUDGET_KEY} system property, in MiB, and defaults to 80% of the maximum heap.
      *
-     * @param requiredMemory The amount of memory to release in bytes.
+     * @return The budget in bytes.
+     */
+    public static long getBudget() {
+        final long defaultBudget = (long) (Runtime.getRuntime().maxMemory() * MEM_CAP);
+
+        final String property = System.getProperty(BUDGET_KEY);
+        if (property == null || property.isBlank()) return defaultBudget;
+
+        try {
+            final long mebibytes = Long.parseLong(property.strip());
+            return mebibytes > 0 ? mebibytes * 1024 * 1024 : defaultBudget;
+        } catch (NumberFormatException e) {
+            return defaultBudget;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the admission metrics.
+     *
+     * @return the current metrics.
+     */
+    public static @NotNull Metrics getMetrics() {
+        lock.lock();
+        try {
+            return new Metrics(
+                    queue.size(),
+                    reservedMemory,
+                    grantCount.get(),
+                    timeoutCount.get(),
+                    cancellationCount.get(),
+                    Duration.ofNanos(totalWaitNanos.get()),
+                    Duration.ofNanos(maxWaitNanos.get())
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must be called while holding the lock
+    private static boolean fits(long requiredMemory) {
+        // Oversized requests are admitted alone, otherwise they would wait forever
+        return reservedMemory == 0 || reservedMemory + requiredMemory <= getBudget();
+    }
+
+    // Must be called while holding the lock
+    private static void grantWaiters() {
+        Waiter head;
+        while ((head = queue.peekFirst()) != null && fits(head.requiredMemory)) {
+            queue.removeFirst();
+            reservedMemory += head.requiredMemory;
+            head.granted = true;
+            head.condition.signal();
+        }
+    }
+
+    // Must be called while holding the lock
+    private static void withdraw(Waiter waiter) {
+        queue.remove(waiter);
+        // The withdrawn waiter may have been holding back the ones behind it
+        grantWaiters();
+    }
+
+    private static void release(long requiredMemory) {
+        lock.lock();
+        try {
+            reservedMemory = Math.max(0, reservedMemory - requiredMemory);
+            grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void recordGrant(long waitNanos) {
+        grantCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private static final class Waiter {
+        private final long requiredMemory;
+        private final Condition condition;
+        private boolean granted = false; // Guarded by lock
+
+        private Waiter(long requiredMemory, Condition condition) {
+            this.requiredMemory = requiredMemory;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Memory granted by {@link MemoryReserver#acquire}, released when closed. Closing it more than once has no effect.
      */
-    private static void unlock(int requiredMemory) {
-        reservedMemory.updateAndGet(current -> Math.max(0, current - requiredMemory));
+    public static final class Reservation implements AutoCloseable {
+        private final long reservedMemory;
+        private boolean released = false;
+
+        private Reservation(long reservedMemory) {
+            this.reservedMemory = reservedMemory;
+        }
+
+        public long getReservedMemory() {
+            return reservedMemory;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released) return;
+            released = true;
+            release(reservedMemory);
+        }
     }
+
+    /**
+     * Snapshot of the admission metrics, counters are cumulative since the application started.
+     *
+     * @param queued        the number of requests currently waiting
+     * @param reservedBytes the memory currently reserved, in bytes
+     * @param granted       the number of reservations granted
+     * @param timedOut      the number of requests that gave up after their timeout
+     * @param cancelled     the number of requests withdrawn because their thread was interrupted
+     * @param totalWait     the time spent waiting by all granted requests
+     * @param maxWait       the longest time a granted request waited
+     */
+    public record Metrics(int queued, long reservedBytes, long granted, long timedOut, long cancelled,
+                          @NotNull Duration totalWait, @NotNull Duration maxWait) {}
 }
@@ -21,18 +21,19 @@ package password.manager.app.base;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.Arrays;
 
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
-import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
-import org.bouncycastle.crypto.params.Argon2Parameters;
 import org.jetbrains.annotations.NotNull;
 
 import lombok.RequiredArgsConstructor;
 import password.manager.app.security.AES;
+import password.manager.app.security.Argon2;
+import password.manager.app.security.KeyMaterial;
 import password.manager.app.singletons.Logger;
 
 /**
@@ -54,7 +55,7 @@ import password.manager.app.singletons.Logger;
 @RequiredArgsConstructor
 public enum SecurityVersion {
     @Deprecated
-    PBKDF2((bits, field, salt) -> {
+    PBKDF2((bits, field, salt, _) -> {
         SecretKeyFactory keyFactory;
         try {
             keyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA512");
@@ -72,28 +73,27 @@ public enum SecurityVersion {
             throw new RuntimeException(e);
         }
     }),
-    ARGON2((bits, field, salt) -> {
-        final Argon2Parameters params = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
-                .withParallelism(Parameters.ARGON2_PARALLELISM)
-                .withMemoryAsKB(Parameters.ARGON2_MEMORY_KIB)
-                .withIterations(Parameters.ARGON2_ITERATIONS)
-                .withSalt(salt)
-                .build();
-
-        final Argon2BytesGenerator generator = new Argon2BytesGenerator();
+    ARGON2((bits, field, salt, parameters) -> {
+        final byte[] result = new byte[bits / 8];
+        final char[] password = field.toCharArray();
 
         /*
-         * From empirical testing, about 69.47 MB of memory is allocated during Argon2 initialization with the above parameters.
-         * This translates to about 67.84 MiB, which is slightly above the 64 MiB specified in Parameters.ARGON2_MEMORY_KIB due to overhead.
-         * To ensure we reserve enough memory for the entire operation, we add 76 B to each KiB to account for overhead.
-         * This brings the total reservation to exactly 68.75 MiB, which provides about 1 MiB of headroom for potential fluctuations
+         * The Argon2 memory (64 MiB with the default parameters) is allocated and filled during the whole derivation.
+         * To ensure we reserve enough memory for the entire operation, we add 76 B to each KiB to account for overhead
+         * (per-lane scratch blocks, the array header and the hashing buffers).
+         * This brings the default reservation to exactly 68.75 MiB, which leaves plenty of headroom for potential fluctuations
          */
 
-        // Reserve memory for the duration of Argon2 initialization
-        MemoryReserver.execute(Parameters.ARGON2_MEMORY_KIB * 1100, () -> generator.init(params));
-
-        final byte[] result = new byte[bits / 8];
-        generator.generateBytes(field.toCharArray(), result);
+        // Reserve memory for the duration of the derivation, lanes are filled in parallel
+        try {
+            MemoryReserver.execute(Parameters.ARGON2_RESERVED_BYTES_PER_KIB * parameters.memoryKiB(), () -> Argon2.generateBytes(
+                    password, salt,
+                    parameters.memoryKiB(), parameters.iterations(), parameters.parallelism(),
+                    result
+            ));
+        } finally {
+            Arrays.fill(password, '\0');
+        }
         return result;
     });
 
@@ -104,38 +104,115 @@ public enum SecurityVersion {
     public static final int HASH_BITS = 512;
     public static final int KEY_BITS = AES.AES_BITS;
 
-    private final TriFunction<Integer, String, byte[], byte[]> keyDerivationFunction;
+    private final KeyDerivationFunction keyDerivationFunction;
 
     public static SecurityVersion fromString(String version) {
         return SecurityVersion.valueOf(version);
     }
 
     /**
-     * Hashes the given password using the embedded key derivation function.
+     * Hashes the given password using the embedded key derivation function, with the default parameters.
      *
      * @param masterPassword The master password to hash.
      * @param salt  The salt used for hashing.
      * @return The hashed master password.
      */
     public byte[] hash(@NotNull String masterPassword, byte[] salt) {
+        return hash(masterPassword, salt, KdfParameters.DEFAULT);
+    }
+
+    /**
+     * Hashes the given password using the embedded key derivation function.
+     *
+     * @param masterPassword The master password to hash.
+     * @param salt  The salt used for hashing.
+     * @param parameters The cost parameters, ignored by {@link #PBKDF2}.
+     * @return The hashed master password.
+     */
+    public byte[] hash(@NotNull String masterPassword, byte[] salt, @NotNull KdfParameters parameters) {
         if (masterPassword == null) throw new IllegalArgumentException("Master password cannot be null");
-        return keyDerivationFunction.apply(HASH_BITS, masterPassword, salt);
+        if (parameters == null) throw new IllegalArgumentException("KDF parameters cannot be null");
+        return keyDerivationFunction.derive(HASH_BITS, masterPassword, salt, parameters);
     }
 
     /**
-     * Derives an AES key from the master password using the embedded key derivation function.
+     * Derives an AES key from the master password using the embedded key derivation function, with the default parameters.
      *
      * @param masterPassword The master password to derive the key from.
      * @param salt  The salt used for key derivation.
      * @return The derived AES key.
      */
     public byte[] getKey(@NotNull String masterPassword, byte[] salt) {
+        return getKey(masterPassword, salt, KdfParameters.DEFAULT);
+    }
+
+    /**
+     * Derives an AES key from the master password using the embedded key derivation function.
+     *
+     * @param masterPassword The master password to derive the key from.
+     * @param salt  The salt used for key derivation.
+     * @param parameters The cost parameters, ignored by {@link #PBKDF2}.
+     * @return The derived AES key.
+     */
+    public byte[] getKey(@NotNull String masterPassword, byte[] salt, @NotNull KdfParameters parameters) {
         if (masterPassword == null) throw new IllegalArgumentException("Master password cannot be null");
-        final byte[] keyBytes = keyDerivationFunction.apply(KEY_BITS, masterPassword, salt);
+        if (parameters == null) throw new IllegalArgumentException("KDF parameters cannot be null");
+        final byte[] keyBytes = keyDerivationFunction.derive(KEY_BITS, masterPassword, salt, parameters);
         final SecretKeySpec secretKeySpec = new SecretKeySpec(keyBytes, "AES");
         return secretKeySpec.getEncoded();
     }
 
+    /**
+     * Derives an AES key from the master password with the default parameters, and moves it off-heap.
+     *
+     * @param masterPassword The master password to derive the key from.
+     * @param salt  The salt used for key derivation.
+     * @return The derived key, which the caller must close.
+     */
+    public @NotNull KeyMaterial getKeyMaterial(@NotNull String masterPassword, byte[] salt) {
+        return getKeyMaterial(masterPassword, salt, KdfParameters.DEFAULT);
+    }
+
+    /**
+     * Derives an AES key from the master password, and moves it off-heap.
+     * Unlike {@link #getKey}, the derived bytes are wiped from the heap as soon as they have been copied.
+     *
+     * @param masterPassword The master password to derive the key from.
+     * @param salt  The salt used for key derivation.
+     * @param parameters The cost parameters, ignored by {@link #PBKDF2}.
+     * @return The derived key, which the caller must close.
+     */
+    public @NotNull KeyMaterial getKeyMaterial(@NotNull String masterPassword, byte[] salt, @NotNull KdfParameters parameters) {
+        if (masterPassword == null) throw new IllegalArgumentException("Master password cannot be null");
+        if (parameters == null) throw new IllegalArgumentException("KDF parameters cannot be null");
+        return KeyMaterial.takeFrom(keyDerivationFunction.derive(KEY_BITS, masterPassword, salt, parameters));
+    }
+
+    /**
+     * Returns the memory reserved through {@link MemoryReserver} while deriving a key or a hash with the default parameters,
+     * so that callers running many derivations can bound how many of them run at once.
+     *
+     * @return The reserved memory in bytes, zero if the derivation does not reserve any.
+     */
+    public int getReservedMemory() {
+        return getReservedMemory(KdfParameters.DEFAULT);
+    }
+
+    /**
+     * Returns the memory reserved through {@link MemoryReserver} while deriving a key or a hash with the given parameters.
+     *
+     * @param parameters The cost parameters.
+     * @return The reserved memory in bytes, zero if the derivation does not reserve any.
+     */
+    public int getReservedMemory(@NotNull KdfParameters parameters) {
+        return this == ARGON2 ? Parameters.ARGON2_RESERVED_BYTES_PER_KIB * parameters.memoryKiB() : 0;
+    }
+
+    @FunctionalInterface
+    private interface KeyDerivationFunction {
+        byte[] derive(int bits, String field, byte[] salt, KdfParameters parameters);
+    }
+
     /**
      * Inner class to hold parameters for this enum.
      */
@@ -144,9 +221,9 @@ public enum SecurityVersion {
         @Deprecated
         private static final int PBKDF2_ITERATIONS = 65536;
 
-        // Argon2 parameters
-        private static final int ARGON2_MEMORY_KIB = 65536;   // 64MiB in KiB
-        private static final int ARGON2_ITERATIONS = 4;       // Time cost
-        private static final int ARGON2_PARALLELISM = 4;      // Parallelism factor
+        // Argon2 cost parameters are stored with each vault, see KdfParameters
+
+        // Memory reserved while deriving with Argon2 for each KiB of memory cost, see the comment in ARGON2
+        private static final int ARGON2_RESERVED_BYTES_PER_KIB = 1100;
     }
 }
\ No newline at end of file
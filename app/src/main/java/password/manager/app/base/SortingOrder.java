@@ -18,11 +18,17 @@
 
 package password.manager.app.base;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BinaryOperator;
+import java.util.function.Function;
 
 import org.jetbrains.annotations.NotNull;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import password.manager.app.security.Account;
@@ -30,18 +36,14 @@ import password.manager.app.security.Account;
 @Getter
 @RequiredArgsConstructor
 public enum SortingOrder {
-    SOFTWARE(
-        "software", (software, username) -> software + "\n" + username,
-        CachedComparators.SOFTWARE_COMPARATOR.thenComparing(CachedComparators.USERNAME_COMPARATOR)
-    ),
-    USERNAME(
-        "username", (software, username) -> username + "\n" + software,
-        CachedComparators.USERNAME_COMPARATOR.thenComparing(CachedComparators.SOFTWARE_COMPARATOR)
-    );
+    SOFTWARE("software", (software, username) -> software + "\n" + username, Account.SortKeys::software, Account.SortKeys::username),
+    USERNAME("username", (software, username) -> username + "\n" + software, Account.SortKeys::username, Account.SortKeys::software);
 
     private final String i18nKey;
     private final BinaryOperator<String> converter;
-    private final Comparator<Account> comparator;
+    private final @Getter(AccessLevel.NONE) Function<Account.SortKeys, CollationKey> primaryKey;
+    private final @Getter(AccessLevel.NONE) Function<Account.SortKeys, CollationKey> secondaryKey;
+    private final @Getter(AccessLevel.NONE) Map<SupportedLocale, Comparator<Account>> comparators = new ConcurrentHashMap<>();
 
     public String convert(String software, String username) {
         return converter.apply(software, username);
@@ -52,10 +54,47 @@ public enum SortingOrder {
     }
 
     /**
-     * Inner class to hold comparators to avoid creating them multiple times.
+     * Shorthand for {@link #getComparator(SupportedLocale)} with the {@link SupportedLocale#DEFAULT default locale}.
      */
-    private static class CachedComparators {
-        private static final Comparator<Account> SOFTWARE_COMPARATOR = Comparator.comparing(Account::getSoftware, String.CASE_INSENSITIVE_ORDER);
-        private static final Comparator<Account> USERNAME_COMPARATOR = Comparator.comparing(Account::getUsername, String.CASE_INSENSITIVE_ORDER);
+    public @NotNull Comparator<Account> getComparator() {
+        return getComparator(SupportedLocale.DEFAULT);
+    }
+
+    /**
+     * Returns the comparator sorting accounts by this order, ignoring case, following the collation rules of the given locale.
+     * <p>
+     * The comparator compares the {@link Account#getSortKeys collation keys} cached by each account, which are only computed again
+     * when its fields or the locale change, so that sorting does not collate the same fields over and over.
+     * </p>
+     *
+     * @param locale the locale of the user
+     * @return the comparator, shared by every caller using the same locale
+     */
+    public @NotNull Comparator<Account> getComparator(@NotNull SupportedLocale locale) {
+        return comparators.computeIfAbsent(locale, l -> {
+            final Collator collator = CachedCollators.get(l);
+            return (a, b) -> {
+                final Account.SortKeys aKeys = a.getSortKeys(collator), bKeys = b.getSortKeys(collator);
+                final int result = primaryKey.apply(aKeys).compareTo(primaryKey.apply(bKeys));
+                return result != 0 ? result : secondaryKey.apply(aKeys).compareTo(secondaryKey.apply(bKeys));
+            };
+        });
+    }
+
+    /**
+     * Inner class to hold collators to avoid creating them multiple times, as the accounts cache their keys by collator.
+     */
+    private static class CachedCollators {
+        private static final Map<SupportedLocale, Collator> COLLATORS = new ConcurrentHashMap<>();
+
+        private static Collator get(SupportedLocale locale) {
+            return COLLATORS.computeIfAbsent(locale, l -> {
+                final Collator collator = Collator.getInstance(l.getLocale());
+                // Accents still matter, case does not
+                collator.setStrength(Collator.SECONDARY);
+                collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+                return collator;
+            });
+        }
     }
 }
@@ -18,6 +18,8 @@
 
 package password.manager.app.controllers;
 
+import static password.manager.app.Utils.runOnFx;
+
 import java.net.URL;
 import java.util.ResourceBundle;
 
@@ -84,8 +86,18 @@ public class FirstRunController extends AbstractController {
     @FXML
     public void doFirstRun() {
         if (checkTextFields(firstRunPassword) && firstRunCheckBox.isSelected()) {
-            IOManager.getInstance().changeMasterPassword(firstRunPassword.getText().strip());
-            switchToMain.set(true);
+            // Deriving the key takes a while, keep the window responsive meanwhile
+            firstRunPassword.setDisable(true);
+            firstRunSubmitBtn.setDisable(true);
+            IOManager.getInstance().changeMasterPasswordAsync(firstRunPassword.getText().strip()).whenComplete((changed, throwable) -> runOnFx(() -> {
+                if (throwable != null) Logger.getInstance().addError(throwable);
+                if (Boolean.TRUE.equals(changed)) {
+                    switchToMain.set(true);
+                } else {
+                    firstRunPassword.setDisable(false);
+                    firstRunSubmitBtn.setDisable(false);
+                }
+            }));
         }
     }
 }
\ No newline at end of file
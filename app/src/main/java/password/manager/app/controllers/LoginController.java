@@ -18,8 +18,13 @@
 
 package password.manager.app.controllers;
 
+import static password.manager.app.Utils.*;
+
 import java.net.URL;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -29,6 +34,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.util.Duration;
 import password.manager.app.singletons.IOManager;
+import password.manager.app.singletons.IOManager.LoginStage;
 import password.manager.app.singletons.Logger;
 import password.manager.app.singletons.ObservableResourceFactory;
 import password.manager.lib.ReadablePasswordField;
@@ -49,6 +55,12 @@ public class LoginController extends AbstractController {
     @FXML
     private Button loginSubmitBtn;
 
+    @FXML
+    private Label loginStatus;
+
+    // Login running in the background, the submit button cancels it meanwhile
+    private CompletableFuture<Boolean> pendingLogin;
+
     final private Timeline wrongPasswordTimeline =  new Timeline(
             new KeyFrame(Duration.ZERO, _ -> {
                 loginSubmitBtn.setDisable(true);
@@ -87,17 +99,50 @@ public class LoginController extends AbstractController {
 
     @FXML
     public void doLogin() {
+        if (pendingLogin != null) {
+            pendingLogin.cancel(true);
+            return;
+        }
+
         if (checkTextFields(loginPassword)) {
             wrongPasswordTimeline.stop();
-            IOManager.getInstance().authenticate(loginPassword.getText().strip());
+            final String password = loginPassword.getText().strip();
+            clearTextFields(loginPassword);
 
-            if (IOManager.getInstance().isAuthenticated()) {
-                switchToMain.set(true);
-            } else {
-                wrongPasswordTimeline.playFromStart();
-            }
+            setPending(true);
+            final CompletableFuture<Boolean> login = IOManager.getInstance().authenticateAsync(password, stage -> runOnFx(() -> showStage(stage)));
+            pendingLogin = login;
+
+            login.whenComplete((authenticated, throwable) -> runOnFx(() -> {
+                if (pendingLogin != login) return;
+                pendingLogin = null;
+                setPending(false);
+
+                // The main view takes over as soon as the DEK is available, accounts keep unlocking in the background
+                if (Boolean.TRUE.equals(authenticated)) {
+                    switchToMain.set(true);
+                } else if (!(throwable instanceof CancellationException)) {
+                    wrongPasswordTimeline.playFromStart();
+                }
+            }));
+        }
+    }
 
-            clearTextFields(loginPassword);
+    private void setPending(boolean isPending) {
+        final ObservableResourceFactory langResources = ObservableResourceFactory.getInstance();
+        langResources.bindTextProperty(loginSubmitBtn, isPending ? "login.cancel" : "lets_go");
+        loginPassword.setDisable(isPending);
+
+        if (!isPending) {
+            loginStatus.textProperty().unbind();
+            loginStatus.setText("");
+            loginPassword.requestFocus();
         }
     }
+
+    private void showStage(LoginStage stage) {
+        // Stages may still be reported after a cancellation
+        if (pendingLogin == null) return;
+        ObservableResourceFactory.getInstance().bindTextProperty(loginStatus, "login.stage." + stage.name().toLowerCase(Locale.ROOT));
+    }
 }
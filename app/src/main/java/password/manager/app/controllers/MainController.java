@@ -126,6 +126,7 @@ public class MainController extends AbstractController {
         managerPane = (Pane) loadFxml(managerController);
 
         createAutosavePopup();
+        createMigrationPopup();
         swapOnMainPane(managerController, managerPane);
     }
 
@@ -192,18 +193,8 @@ public class MainController extends AbstractController {
 
         popup.hidden(false); // Start hidden without animation
 
-        final ObservableResourceFactory resources = ObservableResourceFactory.getInstance();
+        final UnaryOperator<String> getString = createPopupStringGetter();
         IOManager.getInstance().savingProperty().addListener((_, _, newValue) -> {
-            UnaryOperator<String> getString = i18nKey -> {
-                String key = "popup." + i18nKey;
-                try {
-                    return resources.getResources().getString(key);
-                } catch (Exception e) {
-                    // Key missing: return key itself
-                    return key;
-                }
-            };
-
             switch (newValue) {
                 case SAVING -> {
                     popup.setState(getString.apply("saving"), "-fx-color-element-bg");
@@ -222,4 +213,45 @@ public class MainController extends AbstractController {
             }
         });
     }
+
+    private void createMigrationPopup() {
+        final int SPACING = 20; // px
+
+        final CustomPopup popup = CustomPopup.Builder
+                .create(
+                    App.getAppScenePane().getScene().getWindow(),
+                    CustomPopup.Alignment.BOTTOM_RIGHT,
+                    SPACING
+                )
+                .withStylesheets(App.ROOT_STYLESHEET, App.CUSTOMPOPUP_STYLESHEET)
+                .withFadingAnimation(Duration.seconds(3))
+                .build();
+
+        popup.hidden(false); // Start hidden without animation
+
+        final UnaryOperator<String> getString = createPopupStringGetter();
+        IOManager.getInstance().migrationProgressProperty().addListener((_, oldValue, newValue) -> {
+            final double progress = newValue.doubleValue();
+            if (progress < 1d) {
+                popup.setState(String.format(getString.apply("migrating"), (int) (progress * 100)), "-fx-color-element-bg");
+                if (oldValue.doubleValue() >= 1d) popup.visible();
+            } else {
+                popup.setState(getString.apply("migrated"), "-fx-color-green");
+                popup.hidden();
+            }
+        });
+    }
+
+    private @NotNull UnaryOperator<String> createPopupStringGetter() {
+        final ObservableResourceFactory resources = ObservableResourceFactory.getInstance();
+        return i18nKey -> {
+            String key = "popup." + i18nKey;
+            try {
+                return resources.getResources().getString(key);
+            } catch (Exception e) {
+                // Key missing: return key itself
+                return key;
+            }
+        };
+    }
 }
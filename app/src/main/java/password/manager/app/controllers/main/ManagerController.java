@@ -18,14 +18,17 @@
 
 package password.manager.app.controllers.main;
 
+import static password.manager.app.Utils.runOnFx;
+
 import java.net.URL;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.ResourceBundle;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import org.controlsfx.control.textfield.AutoCompletionBinding;
 import org.controlsfx.control.textfield.AutoCompletionBinding.ISuggestionRequest;
@@ -37,7 +40,7 @@ import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.StringBinding;
 import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
@@ -59,6 +62,7 @@ import javafx.util.Callback;
 import javafx.util.Duration;
 import lombok.Getter;
 import password.manager.app.base.SortingOrder;
+import password.manager.app.base.SupportedLocale;
 import password.manager.app.controllers.AbstractController;
 import password.manager.app.controllers.TabManager;
 import password.manager.app.security.Account;
@@ -72,6 +76,9 @@ import password.manager.lib.ReadablePasswordFieldWithStr;
 public class ManagerController extends AbstractController {
     public static final Duration SEARCH_DELAY = Duration.millis(300);
 
+    // Size of the window unlocked ahead of time above and below the visible accounts, in screens
+    public static final int UNLOCK_PREFETCH_SCREENS = 1;
+
     @FXML
     private ListView<Account> accountListView;
 
@@ -85,17 +92,23 @@ public class ManagerController extends AbstractController {
     private TextField searchField;
 
     @FXML
-    private Button matchCaseButton, matchWholeWordButton;
+    private Button matchCaseButton, matchWholeWordButton, fuzzySearchButton;
 
     private Timeline searchTimeline;
+    // Incremented by every search started or cleared, only the result of the latest search is shown
+    private int searchGeneration = 0;
 
     // App state variables
     private final AtomicInteger editOperationsCounter = new AtomicInteger(0);
-    private volatile boolean isMatchCase = false, isMatchWholeWord = false;
+    private volatile boolean isMatchCase = false, isMatchWholeWord = false, isFuzzySearch = false;
 
-    // Auto-completion data sources
-    private List<String> possibleSoftwares, possibleUsernames;
-    private final SimpleIntegerProperty suggestionsUpdateTrigger = new SimpleIntegerProperty(0);
+    // Auto-completion providers shared by every editor, answered by the suggestion tries of the accounts, which are kept up to date on their own
+    private final Callback<ISuggestionRequest, Collection<String>> softwareSuggestionProvider = request -> suggest(request, IOManager.getInstance()::suggestSoftware);
+    private final Callback<ISuggestionRequest, Collection<String>> usernameSuggestionProvider = request -> suggest(request, IOManager.getInstance()::suggestUsername);
+
+    // Range of the list cells updated during the current pulse, sent as a single unlock request
+    private int viewportFirst = Integer.MAX_VALUE, viewportLast = -1;
+    private boolean isViewportRequestPending = false;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -103,10 +116,12 @@ public class ManagerController extends AbstractController {
 
         final IOManager IO_MANAGER = IOManager.getInstance();
 
-        // Wrapper scheme: ((( source_list ) sorted_wrapper ) filtered_wrapper )
+        // Wrapper scheme: (((( source_list ) sorted_wrapper ) filtered_wrapper ) ranked_wrapper )
+        // The ranked wrapper only sorts the matches of a fuzzy search, and keeps the sorted order otherwise
         final ObservableList<Account> ACCOUNT_LIST = IO_MANAGER.getAccountList();
         final SortedList<Account> SORTED_ACCOUNT_LIST = new SortedList<>(ACCOUNT_LIST);
         final FilteredList<Account> FILTERED_ACCOUNT_LIST = new FilteredList<>(SORTED_ACCOUNT_LIST);
+        final SortedList<Account> RANKED_ACCOUNT_LIST = new SortedList<>(FILTERED_ACCOUNT_LIST);
 
         final ObjectProperty<SortingOrder> SORTING_ORDER_PROPERTY = IO_MANAGER.getUserPreferences().sortingOrderProperty();
         final TabManager<Account, EditorController> TAB_MANAGER = new TabManager<>(
@@ -114,9 +129,8 @@ public class ManagerController extends AbstractController {
             (tab, account) -> tab.textProperty().bind(account.softwareProperty())
         );
 
-        setupAutoCompletion(ACCOUNT_LIST);
-        setupSearchFunctionality(FILTERED_ACCOUNT_LIST);
-        setupAccountListView(SORTING_ORDER_PROPERTY, SORTED_ACCOUNT_LIST, FILTERED_ACCOUNT_LIST, TAB_MANAGER);
+        setupSearchFunctionality(FILTERED_ACCOUNT_LIST, RANKED_ACCOUNT_LIST);
+        setupAccountListView(SORTING_ORDER_PROPERTY, SORTED_ACCOUNT_LIST, RANKED_ACCOUNT_LIST, TAB_MANAGER);
         setupKeyboardShortcuts(TAB_MANAGER);
         setupSpecialTabs(accountTabPane, TAB_MANAGER);
     }
@@ -153,57 +167,69 @@ public class ManagerController extends AbstractController {
         searchTimeline.playFrom(SEARCH_DELAY);
     }
 
-    private void setupAutoCompletion(ObservableList<Account> accountList) {
-        // Listen for changes in the account list and update suggestions
-        ListChangeListener<Account> ACCOUNT_LIST_CHANGE_HANDLER = _ -> {
-            possibleSoftwares = accountList.stream()
-                    .map(Account::getSoftware)
-                    .collect(Collectors.groupingBy(s -> s, Collectors.counting()))
-                    .entrySet().stream()
-                    .sorted(Entry.<String, Long>comparingByValue().reversed())
-                    .map(Entry::getKey)
-                    .toList();
-
-            possibleUsernames = accountList.stream()
-                    .map(Account::getUsername)
-                    .collect(Collectors.groupingBy(s -> s, Collectors.counting()))
-                    .entrySet().stream()
-                    .sorted(Entry.<String, Long>comparingByValue().reversed())
-                    .map(Entry::getKey)
-                    .toList();
-
-            // Trigger update of auto-completion suggestions by just incrementing the property
-            suggestionsUpdateTrigger.set(suggestionsUpdateTrigger.get() + 1);
-        };
-        accountList.addListener(ACCOUNT_LIST_CHANGE_HANDLER);
+    @FXML
+    public void fuzzySearchAction(ActionEvent event) {
+        if (isFuzzySearch) {
+            isFuzzySearch = false;
+            clearStyle(fuzzySearchButton);
+        } else {
+            isFuzzySearch = true;
+            fuzzySearchButton.setStyle("-fx-background-color: -fx-color-green; -fx-background-radius: 2deg;");
+        }
+        // Fuzzy searches always ignore case and match words
+        matchCaseButton.setDisable(isFuzzySearch);
+        matchWholeWordButton.setDisable(isFuzzySearch);
+        searchTimeline.playFrom(SEARCH_DELAY);
+    }
 
-        // Initial population
-        ACCOUNT_LIST_CHANGE_HANDLER.onChanged(null);
+    private static Collection<String> suggest(ISuggestionRequest request, Function<String, List<String>> suggestions) {
+        final String userText = request.getUserText();
+        if (userText == null || userText.isEmpty()) return List.of();
+        return suggestions.apply(userText);
     }
 
-    private void setupSearchFunctionality(FilteredList<Account> filteredAccountList) {
+    private void setupSearchFunctionality(FilteredList<Account> filteredAccountList, SortedList<Account> rankedAccountList) {
         searchTimeline = new Timeline(new KeyFrame(SEARCH_DELAY, _ -> {
+            final IOManager IO_MANAGER = IOManager.getInstance();
             final String searchText = searchField.getText().strip();
             if (searchText.isEmpty()) {
+                IO_MANAGER.cancelSearch();
+                searchGeneration++;
                 filteredAccountList.setPredicate(null); // Show all accounts
+                rankedAccountList.setComparator(null);
                 return;
             }
 
-            final String finalSearchText = isMatchCase ? searchText : searchText.toLowerCase();
-            filteredAccountList.setPredicate(account -> {
-                final String software = isMatchCase ? account.getSoftware() : account.getSoftware().toLowerCase();
-                final String username = isMatchCase ? account.getUsername() : account.getUsername().toLowerCase();
-
-                if (isMatchWholeWord) {
-                    return Arrays.asList(software.split("[\\s\\p{P}]+")).contains(finalSearchText) || Arrays.asList(username.split("[\\s\\p{Punct}]+")).contains(finalSearchText);
-                } else {
-                    return software.contains(finalSearchText) || username.contains(finalSearchText);
-                }
+            // Locked accounts cannot match yet, they are filtered in as soon as they are unlocked
+            if (!IO_MANAGER.accountsDisplayReadyProperty().get()) IO_MANAGER.requireFullUnlock();
+
+            // The matches come from the search index on a background thread, the filter is updated once with the whole result
+            final int generation = ++searchGeneration;
+            final CompletableFuture<Void> search = isFuzzySearch
+                    ? IO_MANAGER.fuzzySearchAccounts(searchText).thenAccept(result -> runOnFx(() -> {
+                        // Best matches first, the others keep the sorted order
+                        if (generation != searchGeneration) return;
+                        filteredAccountList.setPredicate(result);
+                        rankedAccountList.setComparator(result.ranking());
+                    }))
+                    : IO_MANAGER.searchAccounts(searchText, isMatchCase, isMatchWholeWord).thenAccept(predicate -> runOnFx(() -> {
+                        if (generation != searchGeneration) return;
+                        filteredAccountList.setPredicate(predicate);
+                        rankedAccountList.setComparator(null);
+                    }));
+            search.exceptionally(e -> {
+                // Cancelled searches have been replaced by a later one
+                if (!(e.getCause() instanceof CancellationException)) Logger.getInstance().addError(e);
+                return null;
             });
         }));
         searchTimeline.setCycleCount(1);
 
-        searchField.textProperty().addListener((_, _, _) -> searchTimeline.playFromStart());
+        searchField.textProperty().addListener((_, _, _) -> {
+            // The running search is outdated by now, a new one starts once the user stops typing
+            IOManager.getInstance().cancelSearch();
+            searchTimeline.playFromStart();
+        });
         searchField.setOnAction(_ -> {
             searchTimeline.stop();
             searchTimeline.playFrom(SEARCH_DELAY);
@@ -211,7 +237,7 @@ public class ManagerController extends AbstractController {
     }
 
     private void setupAccountListView(ObjectProperty<SortingOrder> sortingOrderProperty, SortedList<Account> sortedAccountList,
-                                      FilteredList<Account> filteredAccountList, TabManager<Account, EditorController> tabManager) {
+                                      SortedList<Account> rankedAccountList, TabManager<Account, EditorController> tabManager) {
         // #region Sorted Account List setup
         final ListChangeListener<Account> ACCOUNT_LIST_CHANGE_HANDLER = change -> {
             if (editOperationsCounter.get() > 0) return;
@@ -224,7 +250,22 @@ public class ManagerController extends AbstractController {
             }
         };
 
-        sortedAccountList.comparatorProperty().bind(sortingOrderProperty.map(order -> order != null ? order.getComparator() : null));
+        // Locked accounts have nothing to compare yet, keep the stored order until all of them are displayed
+        // (unlocked, or shown from the display index), otherwise the visible accounts would move away as soon as they are unlocked
+        final IOManager IO_MANAGER = IOManager.getInstance();
+        final ReadOnlyBooleanProperty DISPLAY_READY_PROPERTY = IO_MANAGER.accountsDisplayReadyProperty();
+        // Accounts are collated by the language of the user, changing it re-sorts them
+        final ObjectProperty<SupportedLocale> LOCALE_PROPERTY = IO_MANAGER.getUserPreferences().localeProperty();
+        sortedAccountList.comparatorProperty().bind(Bindings.createObjectBinding(
+            () -> {
+                final SortingOrder order = sortingOrderProperty.get();
+                return (order != null && DISPLAY_READY_PROPERTY.get()) ? order.getComparator(LOCALE_PROPERTY.get()) : null;
+            },
+            sortingOrderProperty, DISPLAY_READY_PROPERTY, LOCALE_PROPERTY
+        ));
+        sortingOrderProperty.addListener((_, _, _) -> {
+            if (!DISPLAY_READY_PROPERTY.get()) IO_MANAGER.requireFullUnlock();
+        });
         sortedAccountList.addListener(ACCOUNT_LIST_CHANGE_HANDLER);
         // #endregion
 
@@ -245,24 +286,52 @@ public class ManagerController extends AbstractController {
                         sortingOrderProperty, account.softwareProperty(), account.usernameProperty()
                     );
                     textProperty().bind(textBinding);
+
+                    // Only the visible cells are updated, so this is where the viewport is known
+                    if (!DISPLAY_READY_PROPERTY.get()) requestViewportUnlock(getIndex());
                 }
             }
         };
 
         final ChangeListener<Account> LIST_VIEW_HANDLER = (_, _, newItem) -> {
             if (newItem != null && editOperationsCounter.get() == 0) {
+                IO_MANAGER.recordAccess(newItem);
                 tabManager.openTab(newItem);
                 // Defer the task to avoid conflicts on the underlying list of selected accounts
                 Platform.runLater(accountListView.getSelectionModel()::clearSelection);
             }
         };
 
-        accountListView.setItems(filteredAccountList);
+        accountListView.setItems(rankedAccountList);
         accountListView.setCellFactory(ACCOUNT_CELL_FACTORY);
         accountListView.getSelectionModel().selectedItemProperty().addListener(LIST_VIEW_HANDLER);
         // #endregion
     }
 
+    private void requestViewportUnlock(int index) {
+        viewportFirst = Math.min(viewportFirst, index);
+        viewportLast = Math.max(viewportLast, index);
+        if (isViewportRequestPending) return;
+
+        // Wait for the other cells of this pulse, then send the whole range at once
+        isViewportRequestPending = true;
+        Platform.runLater(() -> {
+            final List<Account> items = accountListView.getItems();
+            final int first = Math.max(0, viewportFirst), last = Math.min(items.size() - 1, viewportLast);
+            viewportFirst = Integer.MAX_VALUE;
+            viewportLast = -1;
+            isViewportRequestPending = false;
+            if (first > last) return;
+
+            // Visible accounts first, then the ones right below them, then the ones right above them
+            final int window = (last - first + 1) * UNLOCK_PREFETCH_SCREENS;
+            final List<Account> request = new ArrayList<>(items.subList(first, last + 1));
+            request.addAll(items.subList(last + 1, Math.min(items.size(), last + 1 + window)));
+            request.addAll(items.subList(Math.max(0, first - window), first));
+            IOManager.getInstance().requestUnlock(request);
+        });
+    }
+
     private void setupKeyboardShortcuts(TabManager<Account, EditorController> tabManager) {
         final EventHandler<KeyEvent> SHORTCUTS_HANDLER = keyEvent -> {
             final Tab selectedTab = accountTabPane.getSelectionModel().getSelectedItem();
@@ -402,16 +471,8 @@ public class ManagerController extends AbstractController {
             );
             editorSaveTimeline.setCycleCount(1);
 
-            // Setup auto-completion for software and username fields
-            softwareAutoCompletion = TextFields.bindAutoCompletion(editorSoftware, getSuggestionProvider(possibleSoftwares));
-            usernameAutoCompletion = TextFields.bindAutoCompletion(editorUsername, getSuggestionProvider(possibleUsernames));
-
-            // Update auto-completion when suggestions change
-            suggestionsUpdateTrigger.addListener((_, _, _) -> {
-                if (this.isErrBound) return;
-                unbindAutoCompletion();
-                bindAutoCompletion();
-            });
+            // Setup auto-completion for software and username fields, the providers always answer from the current accounts
+            bindAutoCompletion();
 
             // Disable the delete button if this is the add editor
             editorDeleteBtn.setVisible(!isAddEditor);
@@ -431,28 +492,31 @@ public class ManagerController extends AbstractController {
             } else {
                 clearErrorLoadState();
                 // Do operations HERE, if needed
-                LoadingAnimation.start(editorSoftware, editorUsername, editorPassword, editorSaveBtn, editorDeleteBtn);
-
-                IOManager.getInstance().getAccountData(account)
-                        .whenComplete((data, ex) -> Platform.runLater(() -> {
-                            LoadingAnimation.stop(editorSoftware, editorUsername, editorPassword, editorSaveBtn, editorDeleteBtn);
-
-                            boolean success = (ex == null && data != null);
-                            if (!success) {
-                                applyErrorLoadState();
-                                return;
-                            }
-
-                            clearErrorLoadState();
-                            editorSoftware.setText(data.software());
-                            editorUsername.setText(data.username());
-                            editorPassword.setText(data.password());
-
-                            // When everything is ready, focus the software field and set caret to the end of the text
-                            // (not setting the caret would result in the text being selected, which is really weird when editing)
-                            editorSoftware.requestFocus();
-                            editorSoftware.end();
-                        }));
+                final CompletableFuture<AccountData> dataFuture = IOManager.getInstance().getAccountData(account);
+
+                // Recently viewed accounts are served from the cache, there is nothing to wait for
+                final boolean isLoading = !dataFuture.isDone();
+                if (isLoading) LoadingAnimation.start(editorSoftware, editorUsername, editorPassword, editorSaveBtn, editorDeleteBtn);
+
+                dataFuture.whenComplete((data, ex) -> runOnFx(() -> {
+                    if (isLoading) LoadingAnimation.stop(editorSoftware, editorUsername, editorPassword, editorSaveBtn, editorDeleteBtn);
+
+                    boolean success = (ex == null && data != null);
+                    if (!success) {
+                        applyErrorLoadState();
+                        return;
+                    }
+
+                    clearErrorLoadState();
+                    editorSoftware.setText(data.software());
+                    editorUsername.setText(data.username());
+                    editorPassword.setText(data.password());
+
+                    // When everything is ready, focus the software field and set caret to the end of the text
+                    // (not setting the caret would result in the text being selected, which is really weird when editing)
+                    editorSoftware.requestFocus();
+                    editorSoftware.end();
+                }));
             }
 
             ObservableResourceFactory.getInstance().bindPromptTextProperty(editorSoftware, editorUsername, editorPassword);
@@ -523,24 +587,12 @@ public class ManagerController extends AbstractController {
             }
         }
 
-        private Callback<ISuggestionRequest, Collection<String>> getSuggestionProvider(List<String> sourceList) {
-            return request -> {
-                String userText = request.getUserText();
-                if (userText == null || userText.isEmpty()) return List.of();
-
-                String lowerUserText = userText.toLowerCase();
-                return sourceList.stream()
-                        .filter(s -> s.toLowerCase().startsWith(lowerUserText))
-                        .toList();
-            };
-        }
-
         private void bindAutoCompletion() {
             if (softwareAutoCompletion == null) {
-                softwareAutoCompletion = TextFields.bindAutoCompletion(editorSoftware, getSuggestionProvider(possibleSoftwares));
+                softwareAutoCompletion = TextFields.bindAutoCompletion(editorSoftware, softwareSuggestionProvider);
             }
             if (usernameAutoCompletion == null) {
-                usernameAutoCompletion = TextFields.bindAutoCompletion(editorUsername, getSuggestionProvider(possibleUsernames));
+                usernameAutoCompletion = TextFields.bindAutoCompletion(editorUsername, usernameSuggestionProvider);
             }
         }
 
@@ -87,7 +87,12 @@ public class SettingsController extends AbstractController {
         // Master password
         settingsMasterPassword.setOnAction(_ -> {
             if (checkTextFields(settingsMasterPassword)) {
-                ioManager.changeMasterPassword(settingsMasterPassword.getText().strip());
+                // Deriving the key takes a while, keep the window responsive meanwhile
+                settingsMasterPassword.setDisable(true);
+                ioManager.changeMasterPasswordAsync(settingsMasterPassword.getText().strip()).whenComplete((_, throwable) -> runOnFx(() -> {
+                    if (throwable != null) Logger.getInstance().addError(throwable);
+                    settingsMasterPassword.setDisable(false);
+                }));
             }
         });
     }
@@ -18,27 +18,58 @@
 
 package password.manager.app.security;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.Key;
+import java.security.InvalidKeyException;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.crypto.Cipher;
-import java.security.spec.AlgorithmParameterSpec;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.ShortBufferException;
 
-import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.CryptoServicePurpose;
-import org.bouncycastle.crypto.DerivationParameters;
+import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
-import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.modes.GCMModeCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Provides AES encryption and decryption methods, powered by Bouncy Castle.
+ * <p>
+ * GCM engines are expensive to build compared to the work they do on a single field, so they are
+ * kept in a small lock-free pool and re-initialized with the new key and IV on every call.
+ * The pool never blocks: a caller that finds it empty builds a fresh engine, which is handed back
+ * afterwards only if there is room for it. This keeps the static API safe to use from any number of
+ * (virtual) threads, without pinning carriers or relying on thread-locals that would never be reused.
+ * </p>
+ * <p>
+ * Besides the {@code byte[]} methods, buffer-based variants are available: they read from and write into
+ * caller-supplied {@link ByteBuffer}s or {@link MemorySegment}s, and the string variants encode and decode
+ * UTF-8 inside the pooled engine's scratch space, so that no intermediate arrays are left behind.
+ * </p>
+ * <p>
+ * Keys can also be passed as off-heap {@link KeyMaterial}. Their bytes are only copied into the Bouncy Castle
+ * key parameters, which the engine re-keys with a blank key before going back to the pool, and the
+ * {@code deriveAndEncrypt}/{@code deriveAndDecrypt} methods derive their HKDF subkey into an off-heap slot
+ * of the pooled engine, so that it never reaches the heap.
+ * </p>
  */
 public final class AES {
 
@@ -49,17 +80,163 @@ public final class AES {
 
     public static final int AES_BITS = 256;
     public static final int GCM_TAG_BITS = 128; // 16 bytes for GCM TAG
+    public static final int GCM_TAG_LENGTH = GCM_TAG_BITS / 8;
 
+    // Enough idle engines to keep every core busy, anything above that is left to the GC
+    private static final int MAX_POOLED_ENGINES = Runtime.getRuntime().availableProcessors() * 2;
+    private static final Queue<Engine> ENGINE_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_ENGINES = new AtomicInteger(0);
+
+    /**
+     * Derives an AES key from the source key with HKDF-SHA256.
+     *
+     * @param sourceKey The input keying material.
+     * @param salt      The HKDF salt.
+     * @param info      The context information binding the key to its use.
+     * @return          The derived key.
+     */
     public static byte[] deriveKey(@NotNull byte[] sourceKey, @NotNull byte[] salt, @NotNull String info) {
-        Digest digest = SHA256Digest.newInstance(CryptoServicePurpose.KEYGEN);
-        DerivationParameters params = new HKDFParameters(sourceKey, salt, info.getBytes(StandardCharsets.UTF_8));
+        return deriveKeys(sourceKey, salt, info)[0];
+    }
+
+    /**
+     * Derives one AES key per {@code info} from the same source key and salt.
+     * The result is identical to calling {@link #deriveKey} once per info, but HKDF-Extract only runs once.
+     *
+     * @param sourceKey The input keying material.
+     * @param salt      The HKDF salt.
+     * @param infos     The context information of each key.
+     * @return          The derived keys, in the same order as {@code infos}.
+     */
+    public static byte[][] deriveKeys(@NotNull byte[] sourceKey, @NotNull byte[] salt, @NotNull String... infos) {
+        final Engine engine = acquireEngine();
+        final byte[][] keys = engine.deriveKeys(sourceKey, salt, infos);
+        releaseEngine(engine);
+        return keys;
+    }
+
+    /**
+     * Derives {@code count} AES keys with a single HKDF run: the PRK is extracted once and one expand
+     * of {@code count} key lengths is split into consecutive keys.
+     *
+     * @param sourceKey The input keying material.
+     * @param salt      The HKDF salt.
+     * @param info      The context information shared by all the keys.
+     * @param count     The number of keys to derive.
+     * @return          The derived keys.
+     */
+    public static byte[][] deriveKeys(@NotNull byte[] sourceKey, @NotNull byte[] salt, @NotNull String info, int count) {
+        final Engine engine = acquireEngine();
+        final byte[][] keys = engine.deriveKeys(sourceKey, salt, info, count);
+        releaseEngine(engine);
+        return keys;
+    }
 
-        HKDFBytesGenerator generator = new HKDFBytesGenerator(digest);
-        generator.init(params);
+    /**
+     * Off-heap flavour of {@link #deriveKeys(byte[], byte[], String...)}.
+     * The derived keys are confined to the calling thread, which must close them after use.
+     */
+    public static @NotNull KeyMaterial[] deriveKeys(@NotNull KeyMaterial sourceKey, @NotNull byte[] salt, @NotNull String... infos) {
+        final KeyMaterial[] keys = allocateKeys(infos.length);
+        final Engine engine = acquireEngine();
+        engine.deriveKeys(sourceKey.segment(), salt, infos, segmentsOf(keys));
+        releaseEngine(engine);
+        return keys;
+    }
 
-        byte[] derivedKey = new byte[AES_BITS / 8];
-        generator.generateBytes(derivedKey, 0, derivedKey.length);
-        return derivedKey;
+    /**
+     * Off-heap flavour of {@link #deriveKeys(byte[], byte[], String, int)}.
+     * The derived keys are confined to the calling thread, which must close them after use.
+     */
+    public static @NotNull KeyMaterial[] deriveKeys(@NotNull KeyMaterial sourceKey, @NotNull byte[] salt, @NotNull String info, int count) {
+        final KeyMaterial[] keys = allocateKeys(count);
+        final Engine engine = acquireEngine();
+        engine.deriveKeys(sourceKey.segment(), salt, info, segmentsOf(keys));
+        releaseEngine(engine);
+        return keys;
+    }
+
+    /**
+     * Derives an AES key from the source key with HKDF-SHA256, as {@link #deriveKey} does, and encrypts a value with it.
+     * The derived key only lives in off-heap memory of the pooled engine, and is wiped before this method returns.
+     *
+     * @param value     The value to encrypt.
+     * @param sourceKey The input keying material.
+     * @param salt      The HKDF salt.
+     * @param info      The context information binding the key to its use.
+     * @param iv        The initialization vector.
+     * @return          The encrypted value.
+     * @throws GeneralSecurityException
+     */
+    public static @NotNull byte[] deriveAndEncrypt(@NotNull byte[] value, @NotNull KeyMaterial sourceKey, @NotNull byte[] salt, @NotNull String info, byte[] iv) throws GeneralSecurityException {
+        final byte[] output = new byte[getEncryptedLength(value.length)];
+        final Engine engine = acquireEngine();
+        engine.processDerived(true, ByteBuffer.wrap(value), ByteBuffer.wrap(output), sourceKey.segment(), salt, info, iv);
+        releaseEngine(engine);
+        return output;
+    }
+
+    /**
+     * Decrypts a value written by {@link #deriveAndEncrypt}, deriving the same key.
+     *
+     * @param encryptedValue The encrypted value to decrypt.
+     * @param sourceKey      The input keying material.
+     * @param salt           The HKDF salt.
+     * @param info           The context information binding the key to its use.
+     * @param iv             The initialization vector.
+     * @return               The decrypted value.
+     * @throws GeneralSecurityException
+     */
+    public static @NotNull byte[] deriveAndDecrypt(byte[] encryptedValue, @NotNull KeyMaterial sourceKey, @NotNull byte[] salt, @NotNull String info, byte[] iv) throws GeneralSecurityException {
+        final byte[] output = new byte[getDecryptedLength(encryptedValue.length)];
+        final Engine engine = acquireEngine();
+        engine.processDerived(false, ByteBuffer.wrap(encryptedValue), ByteBuffer.wrap(output), sourceKey.segment(), salt, info, iv);
+        releaseEngine(engine);
+        return output;
+    }
+
+    /**
+     * Derives a key as {@link #deriveAndEncrypt} does, and seals all the given strings in one message.
+     * Each value is encoded as UTF-8 straight into the scratch space of the pooled engine, prefixed by its length
+     * as a 4-byte big-endian integer, so that the plaintext never lives in an array of its own.
+     *
+     * @param values    The values to encrypt, in order.
+     * @param sourceKey The input keying material.
+     * @param salt      The HKDF salt.
+     * @param info      The context information binding the key to its use.
+     * @param iv        The initialization vector.
+     * @return          The encrypted values.
+     * @throws GeneralSecurityException
+     */
+    public static @NotNull byte[] deriveAndEncryptStrings(@NotNull CharSequence[] values, @NotNull KeyMaterial sourceKey, @NotNull byte[] salt, @NotNull String info, byte[] iv) throws GeneralSecurityException {
+        int plainLength = 0;
+        for (CharSequence value : values) plainLength += Integer.BYTES + utf8Length(value);
+
+        final byte[] output = new byte[getEncryptedLength(plainLength)];
+        final Engine engine = acquireEngine();
+        engine.encryptStrings(values, plainLength, ByteBuffer.wrap(output), sourceKey.segment(), salt, info, iv);
+        releaseEngine(engine);
+        return output;
+    }
+
+    /**
+     * Decrypts the strings sealed by {@link #deriveAndEncryptStrings}, deriving the same key.
+     * The plaintext bytes only ever live in the scratch space of the pooled engine, and are wiped right after decoding.
+     *
+     * @param encryptedValue The encrypted values.
+     * @param count          The number of values sealed in the message.
+     * @param sourceKey      The input keying material.
+     * @param salt           The HKDF salt.
+     * @param info           The context information binding the key to its use.
+     * @param iv             The initialization vector.
+     * @return               The decrypted values, in order.
+     * @throws GeneralSecurityException if the message cannot be authenticated, or does not hold {@code count} values
+     */
+    public static @NotNull String[] deriveAndDecryptStrings(byte[] encryptedValue, int count, @NotNull KeyMaterial sourceKey, @NotNull byte[] salt, @NotNull String info, byte[] iv) throws GeneralSecurityException {
+        final Engine engine = acquireEngine();
+        final String[] values = engine.decryptStrings(ByteBuffer.wrap(encryptedValue), count, sourceKey.segment(), salt, info, iv);
+        releaseEngine(engine);
+        return values;
     }
 
     /**
@@ -72,16 +249,9 @@ public final class AES {
      * @throws GeneralSecurityException
      */
     public static byte[] encryptAES(@NotNull byte[] value, byte[] key, byte[] iv) throws GeneralSecurityException {
-        // Create Key and AlgorithmParameterSpec objects
-        final Key secretKey = new SecretKeySpec(key, "AES");
-        final AlgorithmParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_BITS, iv);
-
-        // Create Cipher object to encrypt
-        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "BC");
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, gcmSpec);
-
-        // Encrypt them
-        return cipher.doFinal(value);
+        final byte[] output = new byte[getEncryptedLength(value.length)];
+        process(true, ByteBuffer.wrap(value), ByteBuffer.wrap(output), MemorySegment.ofArray(key), iv);
+        return output;
     }
 
     /**
@@ -94,31 +264,518 @@ public final class AES {
      * @throws GeneralSecurityException
      */
     public static @NotNull byte[] decryptAES(byte[] encryptedValue, byte[] key, byte[] iv) throws GeneralSecurityException {
-        // Create Key and AlgorithmParameterSpec objects
-        final Key secretKey = new SecretKeySpec(key, "AES");
-        final AlgorithmParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_BITS, iv);
+        final byte[] output = new byte[getDecryptedLength(encryptedValue.length)];
+        process(false, ByteBuffer.wrap(encryptedValue), ByteBuffer.wrap(output), MemorySegment.ofArray(key), iv);
+        return output;
+    }
+
+    /**
+     * Encrypts the remaining bytes of {@code input} into {@code output}.
+     * Both buffers' positions are advanced by the amount of bytes consumed and written.
+     *
+     * @param input     The buffer holding the value to encrypt.
+     * @param output    The buffer receiving the encrypted value, with at least {@link #getEncryptedLength} bytes remaining.
+     * @param key       The AES key.
+     * @param iv        The initialization vector.
+     * @return          The number of bytes written into {@code output}.
+     * @throws GeneralSecurityException
+     */
+    public static int encryptAES(@NotNull ByteBuffer input, @NotNull ByteBuffer output, byte[] key, byte[] iv) throws GeneralSecurityException {
+        return process(true, input, output, MemorySegment.ofArray(key), iv);
+    }
+
+    /**
+     * Decrypts the remaining bytes of {@code input} into {@code output}.
+     * Both buffers' positions are advanced by the amount of bytes consumed and written.
+     *
+     * @param input     The buffer holding the encrypted value.
+     * @param output    The buffer receiving the decrypted value, with at least {@link #getDecryptedLength} bytes remaining.
+     * @param key       The AES key.
+     * @param iv        The initialization vector.
+     * @return          The number of bytes written into {@code output}.
+     * @throws GeneralSecurityException
+     */
+    public static int decryptAES(@NotNull ByteBuffer input, @NotNull ByteBuffer output, byte[] key, byte[] iv) throws GeneralSecurityException {
+        return process(false, input, output, MemorySegment.ofArray(key), iv);
+    }
+
+    /**
+     * Segment flavour of {@link #encryptAES(ByteBuffer, ByteBuffer, byte[], byte[])}, the whole {@code input} segment is encrypted.
+     *
+     * @return The number of bytes written at the start of {@code output}.
+     */
+    public static long encryptAES(@NotNull MemorySegment input, @NotNull MemorySegment output, byte[] key, byte[] iv) throws GeneralSecurityException {
+        return process(true, input.asByteBuffer(), output.asByteBuffer(), MemorySegment.ofArray(key), iv);
+    }
 
-        // Create Cipher object to decrypt
-        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "BC");
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmSpec);
+    /**
+     * Off-heap key flavour of {@link #encryptAES(MemorySegment, MemorySegment, byte[], byte[])}.
+     */
+    public static long encryptAES(@NotNull MemorySegment input, @NotNull MemorySegment output, @NotNull KeyMaterial key, byte[] iv) throws GeneralSecurityException {
+        return process(true, input.asByteBuffer(), output.asByteBuffer(), key.segment(), iv);
+    }
 
-        // Decrypt the value
-        return cipher.doFinal(encryptedValue);
+    /**
+     * Segment flavour of {@link #decryptAES(ByteBuffer, ByteBuffer, byte[], byte[])}, the whole {@code input} segment is decrypted.
+     *
+     * @return The number of bytes written at the start of {@code output}.
+     */
+    public static long decryptAES(@NotNull MemorySegment input, @NotNull MemorySegment output, byte[] key, byte[] iv) throws GeneralSecurityException {
+        return process(false, input.asByteBuffer(), output.asByteBuffer(), MemorySegment.ofArray(key), iv);
+    }
+
+    /**
+     * Off-heap key flavour of {@link #decryptAES(MemorySegment, MemorySegment, byte[], byte[])}.
+     */
+    public static long decryptAES(@NotNull MemorySegment input, @NotNull MemorySegment output, @NotNull KeyMaterial key, byte[] iv) throws GeneralSecurityException {
+        return process(false, input.asByteBuffer(), output.asByteBuffer(), key.segment(), iv);
     }
 
     /**
      * Shorthand method to encrypt a string using AES, see {@link #encryptAES}.
      */
     public static @NotNull byte[] encryptStringAES(String value, byte[] key, byte[] iv) throws GeneralSecurityException {
-        final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
-        return encryptAES(valueBytes, key, iv);
+        final byte[] output = new byte[getEncryptedLength(utf8Length(value))];
+        encryptStringAES(value, ByteBuffer.wrap(output), key, iv);
+        return output;
     }
 
     /**
      * Shorthand method to decrypt a string using AES, see {@link #decryptAES}.
      */
     public static @NotNull String decryptStringAES(byte[] encryptedValue, byte[] key, byte[] iv) throws GeneralSecurityException {
-        final byte[] decryptedBytes = decryptAES(encryptedValue, key, iv);
-        return new String(decryptedBytes, StandardCharsets.UTF_8);
+        return decryptStringAES(ByteBuffer.wrap(encryptedValue), key, iv);
     }
+
+    /**
+     * Off-heap key flavour of {@link #decryptStringAES(byte[], byte[], byte[])}.
+     */
+    public static @NotNull String decryptStringAES(byte[] encryptedValue, @NotNull KeyMaterial key, byte[] iv) throws GeneralSecurityException {
+        return decryptStringAES(ByteBuffer.wrap(encryptedValue), key, iv);
+    }
+
+    /**
+     * Encodes {@code value} as UTF-8 and encrypts it into {@code output}, without any intermediate array.
+     * The encoding happens in the scratch space of the pooled engine.
+     *
+     * @param value     The value to encrypt.
+     * @param output    The buffer receiving the encrypted value, see {@link #getEncryptedLength} and {@link #utf8Length}.
+     * @param key       The AES key.
+     * @param iv        The initialization vector.
+     * @return          The number of bytes written into {@code output}.
+     * @throws GeneralSecurityException
+     */
+    public static int encryptStringAES(@NotNull CharSequence value, @NotNull ByteBuffer output, byte[] key, byte[] iv) throws GeneralSecurityException {
+        final Engine engine = acquireEngine();
+        final int written = engine.encryptString(value, output, MemorySegment.ofArray(key), iv);
+        releaseEngine(engine);
+        return written;
+    }
+
+    /**
+     * Decrypts the remaining bytes of {@code input} and decodes them as UTF-8.
+     * The plaintext bytes only ever live in the scratch space of the pooled engine, and are wiped right after decoding.
+     *
+     * @param input     The buffer holding the encrypted value.
+     * @param key       The AES key.
+     * @param iv        The initialization vector.
+     * @return          The decrypted string.
+     * @throws GeneralSecurityException
+     */
+    public static @NotNull String decryptStringAES(@NotNull ByteBuffer input, byte[] key, byte[] iv) throws GeneralSecurityException {
+        final Engine engine = acquireEngine();
+        final String value = engine.decryptString(input, MemorySegment.ofArray(key), iv);
+        releaseEngine(engine);
+        return value;
+    }
+
+    /**
+     * Off-heap key flavour of {@link #decryptStringAES(ByteBuffer, byte[], byte[])}.
+     */
+    public static @NotNull String decryptStringAES(@NotNull ByteBuffer input, @NotNull KeyMaterial key, byte[] iv) throws GeneralSecurityException {
+        final Engine engine = acquireEngine();
+        final String value = engine.decryptString(input, key.segment(), iv);
+        releaseEngine(engine);
+        return value;
+    }
+
+    /**
+     * @return the length of the ciphertext produced for a plaintext of the given length.
+     */
+    public static int getEncryptedLength(int plainLength) {
+        return plainLength + GCM_TAG_LENGTH;
+    }
+
+    /**
+     * @return the length of the plaintext contained in a ciphertext of the given length.
+     */
+    public static int getDecryptedLength(int encryptedLength) {
+        return Math.max(0, encryptedLength - GCM_TAG_LENGTH);
+    }
+
+    /**
+     * Computes the length of the UTF-8 encoding of {@code value} without encoding it.
+     * Unpaired surrogates count as one byte, as they are replaced by {@code '?'} like {@link String#getBytes} does.
+     */
+    public static int utf8Length(@NotNull CharSequence value) {
+        final int chars = value.length();
+        int length = chars;
+
+        for (int i = 0; i < chars; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) continue;
+
+            if (c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 2; // 4 bytes for the pair, which already counts as 2 chars
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            }
+        }
+
+        return length;
+    }
+
+    // #region Engine pool
+
+    private static int process(boolean forEncryption, ByteBuffer input, ByteBuffer output, MemorySegment key, byte[] iv) throws GeneralSecurityException {
+        final Engine engine = acquireEngine();
+        final int written = engine.process(forEncryption, input, output, key, iv);
+        releaseEngine(engine);
+        return written;
+    }
+
+    private static KeyMaterial[] allocateKeys(int count) {
+        final KeyMaterial[] keys = new KeyMaterial[count];
+        for (int i = 0; i < count; i++) keys[i] = KeyMaterial.allocateConfined(AES_BITS / 8);
+        return keys;
+    }
+
+    private static MemorySegment[] segmentsOf(KeyMaterial[] keys) {
+        final MemorySegment[] segments = new MemorySegment[keys.length];
+        for (int i = 0; i < keys.length; i++) segments[i] = keys[i].segment();
+        return segments;
+    }
+
+    private static @NotNull Engine acquireEngine() {
+        final Engine engine = ENGINE_POOL.poll();
+        if (engine == null) return new Engine();
+
+        POOLED_ENGINES.decrementAndGet();
+        return engine;
+    }
+
+    // Only engines that completed successfully are handed back, a failed one may hold a half-processed state
+    private static void releaseEngine(@NotNull Engine engine) {
+        if (POOLED_ENGINES.incrementAndGet() > MAX_POOLED_ENGINES) {
+            POOLED_ENGINES.decrementAndGet();
+            return;
+        }
+        engine.scrub();
+        ENGINE_POOL.offer(engine);
+    }
+
+    /**
+     * A GCM cipher and an HMAC-SHA256 instance, together with the scratch space used to stage plaintext and UTF-8 data.
+     * Instances are confined to one caller at a time by the pool.
+     */
+    private static final class Engine {
+        private static final int INITIAL_SCRATCH = 256;
+        private static final int MAX_RETAINED_SCRATCH = 64 * 1024; // Do not keep huge one-off buffers alive in the pool
+
+        // Off-heap buffers are copied through fixed-size chunks; GCM may emit up to two blocks more than it reads
+        private static final int STAGING_CHUNK = 4096;
+        private static final int STAGING_SLACK = 3 * GCM_TAG_LENGTH;
+
+        private static final int KEY_LENGTH = AES_BITS / 8;
+        private static final byte[] BLANK_KEY = new byte[KEY_LENGTH];
+        private static final byte[] BLANK_IV = new byte[GCM_TAG_LENGTH];
+
+        private final GCMModeCipher cipher = GCMBlockCipher.newInstance(AESEngine.newInstance());
+        private final HMac hmac = new HMac(SHA256Digest.newInstance(CryptoServicePurpose.KEYGEN));
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private byte[] scratch = new byte[INITIAL_SCRATCH];
+        private byte[] stagingIn, stagingOut; // Lazily allocated, only needed for off-heap buffers
+
+        // HKDF state, wiped after every derivation
+        private final byte[] prk = new byte[hmac.getMacSize()];
+        private final byte[] block = new byte[hmac.getMacSize()];
+
+        // Subkeys derived by processDerived never leave this slot, which is wiped after every use
+        private final MemorySegment keySlot = Arena.ofAuto().allocate(KEY_LENGTH);
+
+        int process(boolean forEncryption, ByteBuffer input, ByteBuffer output, MemorySegment key, byte[] iv) throws GeneralSecurityException {
+            init(forEncryption, key, iv);
+
+            final int required = cipher.getOutputSize(input.remaining());
+            if (output.remaining() < required) throw new ShortBufferException("Output buffer needs " + required + " bytes");
+
+            try {
+                if (input.hasArray() && output.hasArray()) {
+                    // Fast path: heap buffers are processed in place
+                    final int outOff = output.arrayOffset() + output.position();
+                    int written = cipher.processBytes(input.array(), input.arrayOffset() + input.position(), input.remaining(), output.array(), outOff);
+                    written += cipher.doFinal(output.array(), outOff + written);
+
+                    input.position(input.limit());
+                    output.position(output.position() + written);
+                    return written;
+                }
+
+                return processStaged(input, output);
+            } catch (InvalidCipherTextException e) {
+                // Same exception the JCA provider throws, callers rely on it to detect a wrong key
+                throw new AEADBadTagException(e.getMessage());
+            }
+        }
+
+        private int processStaged(ByteBuffer input, ByteBuffer output) throws InvalidCipherTextException {
+            if (stagingIn == null) {
+                stagingIn = new byte[STAGING_CHUNK];
+                stagingOut = new byte[STAGING_CHUNK + STAGING_SLACK];
+            }
+
+            try {
+                int written = 0;
+                while (input.hasRemaining()) {
+                    final int len = Math.min(STAGING_CHUNK, input.remaining());
+                    final int produced;
+                    if (input.hasArray()) {
+                        produced = cipher.processBytes(input.array(), input.arrayOffset() + input.position(), len, stagingOut, 0);
+                        input.position(input.position() + len);
+                    } else {
+                        input.get(stagingIn, 0, len);
+                        produced = cipher.processBytes(stagingIn, 0, len, stagingOut, 0);
+                    }
+                    output.put(stagingOut, 0, produced);
+                    written += produced;
+                }
+
+                final int produced = cipher.doFinal(stagingOut, 0);
+                output.put(stagingOut, 0, produced);
+                return written + produced;
+            } finally {
+                Arrays.fill(stagingIn, (byte) 0);
+                Arrays.fill(stagingOut, (byte) 0);
+            }
+        }
+
+        int encryptString(CharSequence value, ByteBuffer output, MemorySegment key, byte[] iv) throws GeneralSecurityException {
+            ensureScratch((int) Math.ceil(value.length() * (double) encoder.maxBytesPerChar()));
+
+            final ByteBuffer plain = ByteBuffer.wrap(scratch);
+            try {
+                encode(value, plain);
+                plain.flip();
+                return process(true, plain, output, key, iv);
+            } finally {
+                Arrays.fill(scratch, 0, plain.limit(), (byte) 0);
+            }
+        }
+
+        int encryptStrings(CharSequence[] values, int plainLength, ByteBuffer output, MemorySegment sourceKey, byte[] salt, String info, byte[] iv) throws GeneralSecurityException {
+            ensureScratch(plainLength);
+
+            final ByteBuffer plain = ByteBuffer.wrap(scratch, 0, plainLength);
+            try {
+                for (CharSequence value : values) {
+                    plain.putInt(utf8Length(value));
+                    encode(value, plain);
+                }
+
+                plain.flip();
+                return processDerived(true, plain, output, sourceKey, salt, info, iv);
+            } finally {
+                Arrays.fill(scratch, 0, plainLength, (byte) 0);
+            }
+        }
+
+        String[] decryptStrings(ByteBuffer input, int count, MemorySegment sourceKey, byte[] salt, String info, byte[] iv) throws GeneralSecurityException {
+            final int length = getDecryptedLength(input.remaining());
+            ensureScratch(length);
+
+            try {
+                final int written = processDerived(false, input, ByteBuffer.wrap(scratch, 0, length), sourceKey, salt, info, iv);
+                final ByteBuffer plain = ByteBuffer.wrap(scratch, 0, written);
+
+                final String[] values = new String[count];
+                for (int i = 0; i < count; i++) {
+                    // The message is authenticated, so a bad length means it was sealed wrongly rather than tampered with
+                    final int valueLength = plain.remaining() >= Integer.BYTES ? plain.getInt() : -1;
+                    if (valueLength < 0 || valueLength > plain.remaining()) throw new GeneralSecurityException("Malformed record");
+
+                    values[i] = new String(scratch, plain.position(), valueLength, StandardCharsets.UTF_8);
+                    plain.position(plain.position() + valueLength);
+                }
+                return values;
+            } finally {
+                Arrays.fill(scratch, 0, length, (byte) 0);
+            }
+        }
+
+        /** Encodes the whole value into {@code plain}, which must have room for its {@link AES#utf8Length}. */
+        private void encode(CharSequence value, ByteBuffer plain) {
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(value), plain, true);
+            if (result.isUnderflow()) result = encoder.flush(plain);
+            if (!result.isUnderflow()) throw new IllegalStateException("Could not encode value as UTF-8: " + result);
+        }
+
+        String decryptString(ByteBuffer input, MemorySegment key, byte[] iv) throws GeneralSecurityException {
+            final int length = getDecryptedLength(input.remaining());
+            ensureScratch(length);
+
+            try {
+                final int written = process(false, input, ByteBuffer.wrap(scratch, 0, length), key, iv);
+                return new String(scratch, 0, written, StandardCharsets.UTF_8);
+            } finally {
+                Arrays.fill(scratch, 0, length, (byte) 0);
+            }
+        }
+
+        // #region HKDF (RFC 5869), see AES.deriveKeys
+
+        byte[][] deriveKeys(byte[] sourceKey, byte[] salt, String[] infos) {
+            final byte[][] keys = new byte[infos.length][KEY_LENGTH];
+            deriveKeys(MemorySegment.ofArray(sourceKey), salt, infos, heapSegmentsOf(keys));
+            return keys;
+        }
+
+        byte[][] deriveKeys(byte[] sourceKey, byte[] salt, String info, int count) {
+            final byte[][] keys = new byte[count][KEY_LENGTH];
+            deriveKeys(MemorySegment.ofArray(sourceKey), salt, info, heapSegmentsOf(keys));
+            return keys;
+        }
+
+        /** Fills each key with its own expand, one per info. */
+        void deriveKeys(MemorySegment sourceKey, byte[] salt, String[] infos, MemorySegment[] keys) {
+            extract(sourceKey, salt);
+            try {
+                for (int i = 0; i < infos.length; i++) {
+                    expand(infos[i].getBytes(StandardCharsets.UTF_8), keys[i]);
+                }
+            } finally {
+                Arrays.fill(prk, (byte) 0);
+            }
+        }
+
+        /** Fills all the keys with a single expand of their total length. */
+        void deriveKeys(MemorySegment sourceKey, byte[] salt, String info, MemorySegment[] keys) {
+            extract(sourceKey, salt);
+            try {
+                expand(info.getBytes(StandardCharsets.UTF_8), keys);
+            } finally {
+                Arrays.fill(prk, (byte) 0);
+            }
+        }
+
+        int processDerived(boolean forEncryption, ByteBuffer input, ByteBuffer output, MemorySegment sourceKey, byte[] salt, String info, byte[] iv) throws GeneralSecurityException {
+            extract(sourceKey, salt);
+            try {
+                expand(info.getBytes(StandardCharsets.UTF_8), keySlot);
+                return process(forEncryption, input, output, keySlot, iv);
+            } finally {
+                Arrays.fill(prk, (byte) 0);
+                keySlot.fill((byte) 0);
+            }
+        }
+
+        private void extract(MemorySegment sourceKey, byte[] salt) {
+            hmac.init(new KeyParameter(salt));
+            if (sourceKey.heapBase().orElse(null) instanceof byte[] array) {
+                hmac.update(array, (int) sourceKey.address(), (int) sourceKey.byteSize());
+            } else {
+                // Off-heap keys are fed one byte at a time, rather than staged in a heap array
+                for (long i = 0; i < sourceKey.byteSize(); i++) hmac.update(sourceKey.get(ValueLayout.JAVA_BYTE, i));
+            }
+            hmac.doFinal(prk, 0);
+        }
+
+        /** Fills the given keys, in order, with one expand of their total length. */
+        private void expand(byte[] info, MemorySegment... keys) {
+            final int blockLength = block.length;
+            long length = 0;
+            for (MemorySegment key : keys) length += key.byteSize();
+            if (length > 255 * blockLength) throw new IllegalArgumentException("HKDF cannot produce more than " + (255 * blockLength) + " bytes");
+
+            final KeyParameter prkParameter = new KeyParameter(prk);
+            hmac.init(prkParameter);
+            Arrays.fill(prkParameter.getKey(), (byte) 0);
+
+            int key = 0;
+            long offset = 0;
+            try {
+                for (int counter = 1; key < keys.length; counter++) {
+                    // T(i) = HMAC(PRK, T(i-1) | info | i), HMac resets to the keyed state after each doFinal
+                    if (counter > 1) hmac.update(block, 0, blockLength);
+                    hmac.update(info, 0, info.length);
+                    hmac.update((byte) counter);
+                    hmac.doFinal(block, 0);
+
+                    // Spread the block over the keys, a block may straddle two of them
+                    for (int i = 0; i < blockLength && key < keys.length; ) {
+                        final int len = (int) Math.min(blockLength - i, keys[key].byteSize() - offset);
+                        MemorySegment.copy(block, i, keys[key], ValueLayout.JAVA_BYTE, offset, len);
+                        i += len;
+                        offset += len;
+                        if (offset == keys[key].byteSize()) {
+                            key++;
+                            offset = 0;
+                        }
+                    }
+                }
+            } finally {
+                Arrays.fill(block, (byte) 0);
+            }
+        }
+
+        private static MemorySegment[] heapSegmentsOf(byte[][] keys) {
+            final MemorySegment[] segments = new MemorySegment[keys.length];
+            for (int i = 0; i < keys.length; i++) segments[i] = MemorySegment.ofArray(keys[i]);
+            return segments;
+        }
+
+        // #endregion
+
+        /**
+         * Forgets the last keys before the engine goes back to the pool: the cipher keeps both the key it was given
+         * and its expanded round keys, and the HMAC its keyed state, so both are re-keyed with blank keys.
+         * Decryption mode is used, as GCM refuses to encrypt twice with the same key and IV.
+         */
+        void scrub() {
+            cipher.init(false, new AEADParameters(new KeyParameter(BLANK_KEY), GCM_TAG_BITS, BLANK_IV));
+            hmac.init(new KeyParameter(BLANK_KEY));
+            if (scratch.length > MAX_RETAINED_SCRATCH) scratch = new byte[INITIAL_SCRATCH];
+        }
+
+        private void init(boolean forEncryption, MemorySegment key, byte[] iv) throws InvalidKeyException {
+            // KeyParameter keeps its own copy, which the cipher holds on to until the engine is scrubbed
+            final KeyParameter keyParameter;
+            if (key.heapBase().orElse(null) instanceof byte[] array && key.byteSize() == array.length) {
+                keyParameter = new KeyParameter(array);
+            } else {
+                final byte[] staged = key.toArray(ValueLayout.JAVA_BYTE);
+                keyParameter = new KeyParameter(staged);
+                Arrays.fill(staged, (byte) 0);
+            }
+
+            try {
+                cipher.init(forEncryption, new AEADParameters(keyParameter, GCM_TAG_BITS, iv));
+            } catch (IllegalArgumentException e) {
+                // Bad key or IV length, surface it like the JCA provider did
+                throw new InvalidKeyException(e.getMessage(), e);
+            }
+        }
+
+        private void ensureScratch(int length) {
+            if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+    }
+
+    // #endregion
 }
@@ -18,15 +18,17 @@
 
 package password.manager.app.security;
 
-import static password.manager.app.Utils.runOnFx;
-
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -36,79 +38,105 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
 import tools.jackson.core.JsonParser;
 import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.SerializationContext;
 import tools.jackson.databind.ValueDeserializer;
+import tools.jackson.databind.ValueSerializer;
 import tools.jackson.databind.annotation.JsonDeserialize;
+import tools.jackson.databind.annotation.JsonSerialize;
 import tools.jackson.databind.node.ObjectNode;
 import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import password.manager.app.base.SecurityVersion;
+import password.manager.app.singletons.FxDispatcher;
 
+@JsonSerialize(using = Account.Serializer.class)
 @JsonDeserialize(using = Account.Deserializer.class)
 public final class Account {
 
+    // Versions of the stored record, only the compact one is ever written, the others are upgraded on unlock or on the next write
+    static final int LEGACY_VERSION = 1;  // Software and username in plain text, only the password encrypted
+    static final int SPLIT_VERSION = 2;   // Each field encrypted on its own, with its own IV
+    static final int COMPACT_VERSION = 3; // All fields sealed in a single AEAD message
+
     private static final int SALT_LENGTH = 16;
     private static final int IV_LENGTH = 16;
+    private static final int NONCE_LENGTH = 12;
+
+    private static final String[] FIELD_INFOS = { "software", "username", "password" };
+    private static final String COMPACT_INFO = "record";
 
     private final transient ReadWriteLock lock = new ReentrantReadWriteLock(false);
     private final transient Lock readLock = lock.readLock();
     private final transient Lock writeLock = lock.writeLock();
 
+    private @JsonProperty("version") int version;
+
     // Salt for deriving source key
     private @JsonProperty("salt") byte[] salt;
 
-    // Encrypted fields and their salts used for key derivation
+    // Compact version: nonce and sealed fields, null in older versions
+    private @JsonProperty("nonce") byte[] nonce;
+    private @JsonProperty("data") byte[] data;
+
+    // Split and legacy versions: encrypted fields and their IVs, null in the compact version
     private @JsonProperty("software") byte[] software;
-    private final @JsonProperty("softIv") byte[] sIv;
+    private @JsonProperty("softIv") byte[] sIv;
 
     private @JsonProperty("username") byte[] username;
-    private final @JsonProperty("userIv") byte[] uIv;
+    private @JsonProperty("userIv") byte[] uIv;
 
     private @JsonProperty("password") byte[] password;
-    private final @JsonProperty("passIv") byte[] pIv;
+    private @JsonProperty("passIv") byte[] pIv;
 
     private final transient ReadOnlyStringWrapper softwareProperty = new ReadOnlyStringWrapper(),
                                                   usernameProperty = new ReadOnlyStringWrapper();
 
-    // This flag is used to determine if this account was created with an older version where software and username were not encrypted.
-    // It is set in the constructor and never updated, as it is only used to determine how to read existing data, while all new data is always fully encrypted.
-    private transient boolean isFullyEncrypted;
+    // Whether the properties above hold the actual fields, rather than the placeholder shown while locked
+    private transient volatile boolean isDisplayReady = false;
+
+    // The fields the properties above are being set to, available right away on any thread, null while locked
+    private final transient AtomicReference<DisplayFields> displayFields = new AtomicReference<>();
+    // Notified whenever the fields above change, see AccountIndex
+    private transient volatile Consumer<Account> displayListener = null;
+    // Collation keys of the fields above, along with the collator and the fields they were computed from
+    private transient volatile CachedSortKeys sortKeys = null;
 
     public Account() {
+        // By default, we assume the account is a legacy one until proven otherwise (i.e. when its data is set or read in a newer version)
+        this.version = LEGACY_VERSION;
         this.salt = new byte[SALT_LENGTH];
-
-        this.software = null;
-        this.sIv = new byte[IV_LENGTH];
-
-        this.username = null;
-        this.uIv = new byte[IV_LENGTH];
-
-        this.password = null;
-        this.pIv = new byte[IV_LENGTH];
-
-        // By default, we assume the account is not fully encrypted until proven otherwise (i.e. when reading data, if software and username salts are present, we set this flag to true)
-        this.isFullyEncrypted = false;
     }
 
-    public Account(@NotNull AccountData data, @NotNull byte[] DEK) throws GeneralSecurityException {
+    public Account(@NotNull AccountData data, @NotNull KeyMaterial DEK) throws GeneralSecurityException {
         if (data == null) throw new IllegalArgumentException("Data cannot be null");
         if (DEK == null) throw new IllegalArgumentException("Data encryption key cannot be null");
 
         this();
 
-        // If this constructor is used, it means that the account is being created with the latest version, so we can safely set this flag to true
-        this.isFullyEncrypted = true;
+        // If this constructor is used, it means that the account is being created with the latest version
         this.setData(data, DEK);
     }
 
+    private Account(@NotNull byte[] salt, @NotNull byte[] nonce, @NotNull byte[] data) {
+        if (salt == null || salt.length != SALT_LENGTH) throw new IllegalArgumentException("Salt should be not null and " + SALT_LENGTH + " bytes long");
+        if (nonce == null || nonce.length != NONCE_LENGTH) throw new IllegalArgumentException("Nonce should be not null and " + NONCE_LENGTH + " bytes long");
+        if (data == null || data.length == 0) throw new IllegalArgumentException("Data cannot be null or empty");
+
+        this();
+
+        copyMemento(new AccountMemento(COMPACT_VERSION, salt, nonce, data, null, null, null, null, null, null));
+    }
+
     private Account(
             @NotNull byte[] salt,
             @NotNull byte[] software, @NotNull byte[] sIv,
             @NotNull byte[] username, @NotNull byte[] uIv,
             @NotNull byte[] password, @NotNull byte[] pIv) {
 
-        // Here we consider salt as present as this constructor is used only for latest versions where salt is mandatory
+        // Here we consider salt as present as this constructor is used only for versions where salt is mandatory
         if (salt == null || salt.length != SALT_LENGTH) throw new IllegalArgumentException("Salt should be not null and " + SALT_LENGTH + " bytes long");
         if (software == null || software.length == 0) throw new IllegalArgumentException("Software cannot be null or empty");
         if (sIv == null || sIv.length != IV_LENGTH) throw new IllegalArgumentException("Software IV should be not null and " + IV_LENGTH + " bytes long");
@@ -120,11 +148,8 @@ public final class Account {
         this();
 
         // Wrap the provided values into a memento and copy them to this account, centralizing the logic in copyMemento to avoid code duplication
-        AccountMemento memento = new AccountMemento(salt, software, sIv, username, uIv, password, pIv);
+        AccountMemento memento = new AccountMemento(SPLIT_VERSION, salt, null, null, software, sIv, username, uIv, password, pIv);
         copyMemento(memento);
-
-        // If this constructor is used, it means that software and username are encrypted, so we can safely set this flag to true
-        this.isFullyEncrypted = true;
     }
 
     @Deprecated // This constructor is used only for backward compatibility
@@ -140,9 +165,11 @@ public final class Account {
         this.software = software.getBytes(StandardCharsets.UTF_8);
         this.username = username.getBytes(StandardCharsets.UTF_8);
 
-        runOnFx(() -> {
+        setDisplayFields(new DisplayFields(software, username));
+        FxDispatcher.getInstance().submit(this, () -> {
             this.softwareProperty.set(software);
             this.usernameProperty.set(username);
+            this.isDisplayReady = true;
         });
 
         // If salt is not provided, derive it from software and username (backward compatibility:
@@ -150,41 +177,67 @@ public final class Account {
         // IMPORTANT: the derived value is written back into this.salt so it is persisted on the
         // next save, at which point the account behaves identically to a modern one.
         this.salt = (salt != null && salt.length == SALT_LENGTH) ? salt.clone() : (software + username).getBytes(StandardCharsets.UTF_8);
-        System.arraycopy(iv, 0, this.pIv, 0, this.pIv.length);
+        this.pIv = iv.clone();
 
         this.password = encryptedPassword;
     }
 
     /**
      * Unlocks this account by decrypting its data with the provided DEK.
-     * If the account was created with an older version where software and username were not encrypted, this method also upgrades the account to the latest standard by encrypting all fields with the current one.
+     * If the account was stored with an older version, this method also upgrades the account to the latest standard by sealing all fields in the compact version.
      * @param DEK the data encryption key to use for decryption
      * @param legacyVersion the security version to use for deriving the legacy key, can be null if this account is guaranteed to be created with the latest version
      * @param legacyMasterPassword the legacy master password to use for decryption if this account is not fully encrypted, can be null if all accounts are guaranteed to be created with the latest version
      * @throws GeneralSecurityException if decryption fails (e.g. due to wrong master password or corrupted data)
      */
-    public void unlock(@NotNull byte[] DEK, @Nullable SecurityVersion legacyVersion, @Nullable String legacyMasterPassword) throws GeneralSecurityException {
+    public void unlock(@NotNull KeyMaterial DEK, @Nullable SecurityVersion legacyVersion, @Nullable String legacyMasterPassword) throws GeneralSecurityException {
+        if (legacyMasterPassword == null) {
+            unlock(DEK, null);
+            return;
+        }
+
+        // The legacy key is only derived if this account needs it, and wiped right after
+        final KeyMaterial[] legacyKey = new KeyMaterial[1];
+        try {
+            unlock(DEK, accountSalt -> legacyKey[0] = legacyVersion.getKeyMaterial(legacyMasterPassword, accountSalt));
+        } finally {
+            if (legacyKey[0] != null) legacyKey[0].close();
+        }
+    }
+
+    /**
+     * Unlocks this account as {@link #unlock(KeyMaterial, SecurityVersion, String)} does, taking legacy keys from the given function.
+     * This lets callers unlocking many legacy accounts bound and share the expensive key derivations.
+     * @param DEK the data encryption key to use for decryption
+     * @param legacyKeyDerivation maps the account salt to the legacy key, can be null if this account is guaranteed to be created with the latest version.
+     *                            The returned key stays owned by the function's provider, it is not closed by this method
+     * @throws GeneralSecurityException if decryption fails (e.g. due to wrong master password or corrupted data)
+     */
+    void unlock(@NotNull KeyMaterial DEK, @Nullable Function<byte[], KeyMaterial> legacyKeyDerivation) throws GeneralSecurityException {
         if (DEK == null) throw new IllegalArgumentException("Data encryption key cannot be null");
 
-        // If the account is not fully encrypted, it means that it was created with an older version where software and username were not encrypted.
-        // In this case, we encrypt all fields with the current one to upgrade the account to the latest standard.
+        // If the account is a legacy one, it means that it was created with an older version where software and username were not encrypted,
+        // and its password was encrypted with a key derived from the legacy master password.
         final AccountData data;
-        if (this.isFullyEncrypted) {
+        if (this.version != LEGACY_VERSION) {
             data = getData(DEK);
         } else {
-            if (legacyMasterPassword == null) throw new IllegalStateException("Legacy master password cannot be null when unlocking an account created with an older version");
+            if (legacyKeyDerivation == null) throw new IllegalStateException("Legacy master password cannot be null when unlocking an account created with an older version");
 
             // Use old master password as DEK to read existing data
-            byte[] legacyKey = legacyVersion.getKey(legacyMasterPassword, salt);
+            final KeyMaterial legacyKey = legacyKeyDerivation.apply(salt);
             data = getData(legacyKey);
-
-            setData(data, DEK);
         }
 
+        // Rewrite older versions in the compact one, the upgrade is persisted with the next save
+        if (this.version != COMPACT_VERSION) setData(data, DEK);
+
         // Update properties for UI
-        runOnFx(() -> {
+        setDisplayFields(new DisplayFields(data.software(), data.username()));
+        FxDispatcher.getInstance().submit(this, () -> {
             softwareProperty.set(data.software());
             usernameProperty.set(data.username());
+            isDisplayReady = true;
         });
     }
 
@@ -227,38 +280,41 @@ public final class Account {
     }
 
     @JsonIgnore
-    public AccountData getData(@NotNull byte[] DEK) throws GeneralSecurityException {
+    public AccountData getData(@NotNull KeyMaterial DEK) throws GeneralSecurityException {
         if (DEK == null) throw new IllegalArgumentException("Data encryption key cannot be null");
 
-        String plainSoftware, plainUsername, plainPassword;
-
         readLock.lock();
         try {
-            if (this.isFullyEncrypted) {
-                // Decrypt all fields
-                byte[] sKey = AES.deriveKey(DEK, salt, "software");
-                plainSoftware = AES.decryptStringAES(software, sKey, sIv);
-
-                byte[] uKey = AES.deriveKey(DEK, salt, "username");
-                plainUsername = AES.decryptStringAES(username, uKey, uIv);
-
-                byte[] pKey = AES.deriveKey(DEK, salt, "password");
-                plainPassword = AES.decryptStringAES(password, pKey, pIv);
-            } else {
-                // Decrypt only password
-                plainSoftware = new String(software, StandardCharsets.UTF_8);
-                plainUsername = new String(username, StandardCharsets.UTF_8);
-                plainPassword = AES.decryptStringAES(password, DEK, pIv); // Use DEK as it was with master password derived key
-            }
+            return switch (this.version) {
+                case COMPACT_VERSION -> openRecord(DEK);
+                case SPLIT_VERSION -> {
+                    // Decrypt all fields, plaintext bytes never leave the AES scratch space. HKDF-Extract is shared
+                    // between the fields, which yields the same keys as the three independent derivations they were written with
+                    final KeyMaterial[] keys = AES.deriveKeys(DEK, salt, FIELD_INFOS);
+                    try {
+                        yield new AccountData(
+                            AES.decryptStringAES(ByteBuffer.wrap(software), keys[0], sIv),
+                            AES.decryptStringAES(ByteBuffer.wrap(username), keys[1], uIv),
+                            AES.decryptStringAES(ByteBuffer.wrap(password), keys[2], pIv)
+                        );
+                    } finally {
+                        close(keys);
+                    }
+                }
+                // Decrypt only password, using DEK as it was with master password derived key
+                default -> new AccountData(
+                    new String(software, StandardCharsets.UTF_8),
+                    new String(username, StandardCharsets.UTF_8),
+                    AES.decryptStringAES(password, DEK, pIv)
+                );
+            };
         } finally {
             readLock.unlock();
         }
-
-        return new AccountData(plainSoftware, plainUsername, plainPassword);
     }
 
     @Contract(value = "_, _ -> new", pure = true)
-    public static @NotNull Account of(@NotNull AccountData data, @NotNull byte[] DEK) throws GeneralSecurityException {
+    public static @NotNull Account of(@NotNull AccountData data, @NotNull KeyMaterial DEK) throws GeneralSecurityException {
         if (data == null) throw new IllegalArgumentException("Account data cannot be null");
         if (DEK == null) throw new IllegalArgumentException("Data encryption key cannot be null");
 
@@ -277,55 +333,92 @@ public final class Account {
     ) {}
 
     // #region Package-private methods (exposed to AccountRepository)
-    void setData(@NotNull AccountData data, @NotNull byte[] DEK) throws GeneralSecurityException {
+    void setData(@NotNull AccountData data, @NotNull KeyMaterial DEK) throws GeneralSecurityException {
         if (data == null) throw new IllegalArgumentException("Account data cannot be null");
         if (DEK == null) throw new IllegalArgumentException("Data encryption key cannot be null");
 
         writeLock.lock();
         try {
-            if (salt.length != SALT_LENGTH) salt = new byte[SALT_LENGTH]; // Avoid reallocating if not necessary
-
-            SecureRandom random;
-            try {
-                random = SecureRandom.getInstanceStrong();
-            } catch (NoSuchAlgorithmException e) {
-                random = new SecureRandom();
-            }
-
-            // Generate unique salt
-            random.nextBytes(salt);
+            // Generate unique salt and nonce, reallocating only if the account was not already in the compact version
+            if (salt.length != SALT_LENGTH) salt = new byte[SALT_LENGTH];
+            if (nonce == null) nonce = new byte[NONCE_LENGTH];
+            RandomSource.nextBytes(salt);
+            RandomSource.nextBytes(nonce);
 
-            // Derive key
-            software = encryptData(data.software(), DEK, salt, sIv, "software");
-            username = encryptData(data.username(), DEK, salt, uIv, "username");
-            password = encryptData(data.password(), DEK, salt, pIv, "password");
-
-            this.isFullyEncrypted = true;
+            // Always write the compact version, dropping the fields of older ones
+            this.data = sealRecord(data, DEK);
+            this.version = COMPACT_VERSION;
+            this.software = this.sIv = this.username = this.uIv = this.password = this.pIv = null;
 
             // Update properties for UI
-            runOnFx(() -> {
+            setDisplayFields(new DisplayFields(data.software(), data.username()));
+            FxDispatcher.getInstance().submit(this, () -> {
                 softwareProperty.set(data.software());
                 usernameProperty.set(data.username());
+                isDisplayReady = true;
             });
         } finally {
             writeLock.unlock();
         }
     }
 
-    private byte[] encryptData(String newVal, byte[] sourceKey, byte[] salt, byte[] iv, String info) throws GeneralSecurityException {
-        SecureRandom random;
-        try {
-            random = SecureRandom.getInstanceStrong();
-        } catch (NoSuchAlgorithmException e) {
-            random = new SecureRandom();
-        }
+    /**
+     * Seals all fields in one AEAD message. The plaintext is each field as UTF-8, prefixed by its length as a 4-byte big-endian integer.
+     * Both the record key and the plaintext only live inside the AES engine, and never reach the heap as arrays of their own.
+     */
+    private byte[] sealRecord(AccountData data, KeyMaterial DEK) throws GeneralSecurityException {
+        final CharSequence[] fields = { data.software(), data.username(), data.password() };
+        return AES.deriveAndEncryptStrings(fields, DEK, salt, COMPACT_INFO, nonce);
+    }
 
-        // Generate IV
-        random.nextBytes(iv);
+    /**
+     * Opens the AEAD message written by {@link #sealRecord}.
+     */
+    private AccountData openRecord(KeyMaterial DEK) throws GeneralSecurityException {
+        final String[] fields = AES.deriveAndDecryptStrings(data, 3, DEK, salt, COMPACT_INFO, nonce);
+        return new AccountData(fields[0], fields[1], fields[2]);
+    }
+
+    private static void close(KeyMaterial[] keys) {
+        for (KeyMaterial key : keys) key.close();
+    }
 
-        // Derive key and encrypt
-        final byte[] key = AES.deriveKey(sourceKey, salt, info);
-        return AES.encryptStringAES(newVal, key, iv);
+    /**
+     * Checks whether the software and username properties hold the fields of this account, either because it has been unlocked
+     * or because they have been taken from a {@link DisplayIndex}.
+     * @return false while the placeholder shown for locked accounts is displayed
+     */
+    boolean isDisplayReady() {
+        return isDisplayReady;
+    }
+
+    /**
+     * Shows the given fields while this account is still locked, they are replaced by the decrypted ones as soon as it is unlocked.
+     * Must be called on the JavaFX Application Thread, does nothing if the account is already displayed.
+     * @param software the software name to show
+     * @param username the username to show
+     */
+    void showDisplayFields(@NotNull String software, @NotNull String username) {
+        if (isDisplayReady) return;
+
+        // The decrypted fields may have been set in the meantime, they take precedence
+        if (displayFields.compareAndSet(null, new DisplayFields(software, username))) notifyDisplayListener();
+        softwareProperty.set(software);
+        usernameProperty.set(username);
+        isDisplayReady = true;
+    }
+
+    /**
+     * Checks whether this account is still stored in the legacy format, and needs the legacy master password to be unlocked.
+     * @return true if this account is a legacy one
+     */
+    boolean isLegacy() {
+        readLock.lock();
+        try {
+            return this.version == LEGACY_VERSION;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     /**
@@ -336,13 +429,16 @@ public final class Account {
         readLock.lock();
         try {
             return new AccountMemento(
+                this.version,
                 this.salt.clone(),
-                this.software.clone(),
-                this.sIv.clone(),
-                this.username.clone(),
-                this.uIv.clone(),
-                this.password.clone(),
-                this.pIv.clone()
+                copyOf(this.nonce),
+                copyOf(this.data),
+                copyOf(this.software),
+                copyOf(this.sIv),
+                copyOf(this.username),
+                copyOf(this.uIv),
+                copyOf(this.password),
+                copyOf(this.pIv)
             );
         } finally {
             readLock.unlock();
@@ -365,46 +461,172 @@ public final class Account {
     }
 
     private void copyMemento(AccountMemento memento) {
-        runOnFx(() -> {
+        setDisplayFields(null);
+        FxDispatcher.getInstance().submit(this, () -> {
             // Invalidate properties to prevent reading inconsistent data during the copy
             this.softwareProperty.set("unavailable while locked");
             this.usernameProperty.set("unavailable while locked");
+            this.isDisplayReady = false;
         });
 
+        this.version = memento.version();
         this.salt = memento.salt().clone();
-        this.software = memento.software().clone();
-        System.arraycopy(memento.sIv(), 0, this.sIv, 0, this.sIv.length);
-        this.username = memento.username().clone();
-        System.arraycopy(memento.uIv(), 0, this.uIv, 0, this.uIv.length);
-        this.password = memento.password().clone();
-        System.arraycopy(memento.pIv(), 0, this.pIv, 0, this.pIv.length);
+        this.nonce = copyOf(memento.nonce());
+        this.data = copyOf(memento.data());
+        this.software = copyOf(memento.software());
+        this.sIv = copyOf(memento.sIv());
+        this.username = copyOf(memento.username());
+        this.uIv = copyOf(memento.uIv());
+        this.password = copyOf(memento.password());
+        this.pIv = copyOf(memento.pIv());
     }
 
+    /**
+     * Returns the software and username this account shows, as soon as they are known and without waiting for the properties to be updated.
+     * @return the displayed fields, null while the account is locked
+     */
+    @Nullable DisplayFields displayFields() {
+        return displayFields.get();
+    }
+
+    /**
+     * Returns the collation keys of the displayed fields, so that sorting compares precomputed keys instead of collating the fields on every comparison.
+     * The keys are computed the first time they are requested, then again only when the collator or the displayed fields change.
+     * While the account is locked, its fields sort as empty strings.
+     *
+     * @param collator the collator of the sorting locale, see {@link password.manager.app.base.SortingOrder#getComparator}
+     * @return the collation keys of the software and username
+     */
+    public @NotNull SortKeys getSortKeys(@NotNull Collator collator) {
+        final DisplayFields fields = displayFields.get();
+        final CachedSortKeys cached = sortKeys;
+        if (cached != null && cached.collator() == collator && cached.fields() == fields) return cached.keys();
+
+        final SortKeys keys;
+        // Collators are not thread-safe, while display indexes are sorted outside of the JavaFX Application Thread
+        synchronized (collator) {
+            keys = new SortKeys(
+                collator.getCollationKey(fields != null ? fields.software() : ""),
+                collator.getCollationKey(fields != null ? fields.username() : "")
+            );
+        }
+        sortKeys = new CachedSortKeys(collator, fields, keys);
+        return keys;
+    }
+
+    /**
+     * Sets the listener notified, on the thread changing them, whenever the fields returned by {@link #displayFields()} change.
+     * @param listener the listener, null to remove it
+     */
+    void setDisplayListener(@Nullable Consumer<Account> listener) {
+        this.displayListener = listener;
+    }
+
+    private void setDisplayFields(DisplayFields fields) {
+        displayFields.set(fields);
+        notifyDisplayListener();
+    }
+
+    private void notifyDisplayListener() {
+        final Consumer<Account> listener = displayListener;
+        if (listener != null) listener.accept(this);
+    }
+
+    private static byte[] copyOf(byte[] array) {
+        return array != null ? array.clone() : null;
+    }
+
+    /**
+     * The fields an account shows in the UI, in plain text.
+     */
+    record DisplayFields(@NotNull String software, @NotNull String username) {}
+
+    /**
+     * Collation keys of the fields an account shows, comparable byte by byte, see {@link #getSortKeys}.
+     */
+    public record SortKeys(@NotNull CollationKey software, @NotNull CollationKey username) {}
+
+    private record CachedSortKeys(Collator collator, DisplayFields fields, SortKeys keys) {}
+
     /**
      * Memento record that captures the state of an Account for rollback purposes.
      * This implements the Memento pattern for transactional support.
+     * Only the fields of the captured version are present, the others are null.
      */
     public record AccountMemento(
+        int version,
         @NotNull byte[] salt,
-        @NotNull byte[] software, @NotNull byte[] sIv,
-        @NotNull byte[] username, @NotNull byte[] uIv,
-        @NotNull byte[] password, @NotNull byte[] pIv
+        @Nullable byte[] nonce, @Nullable byte[] data,
+        @Nullable byte[] software, @Nullable byte[] sIv,
+        @Nullable byte[] username, @Nullable byte[] uIv,
+        @Nullable byte[] password, @Nullable byte[] pIv
     ) {}
     // #endregion
 
     /**
-     * Custom Jackson deserializer that distinguishes between the legacy (v1) format,
-     * where {@code software} and {@code username} were plain strings and only the password
-     * was encrypted, and the modern format where all three fields are encrypted byte arrays.
-     * The discriminator is the presence of the {@code encryptedPassword} property.
+     * Custom Jackson serializer that writes a snapshot taken under the read lock, so that saves running
+     * next to an unlock or a migration never see a half-written record.
+     * Only the fields of the stored version are written.
+     */
+    public static final class Serializer extends ValueSerializer<Account> {
+        @Override
+        public void serialize(Account account, JsonGenerator gen, SerializationContext ctxt) throws JacksonException {
+            final AccountMemento state = account.captureState();
+
+            gen.writeStartObject();
+            gen.writeName("version");
+            gen.writeNumber(state.version());
+
+            writeBinary(gen, "salt", state.salt());
+            writeBinary(gen, "nonce", state.nonce());
+            writeBinary(gen, "data", state.data());
+            writeBinary(gen, "software", state.software());
+            writeBinary(gen, "softIv", state.sIv());
+            writeBinary(gen, "username", state.username());
+            writeBinary(gen, "userIv", state.uIv());
+            writeBinary(gen, "password", state.password());
+            writeBinary(gen, "passIv", state.pIv());
+            gen.writeEndObject();
+        }
+
+        private static void writeBinary(JsonGenerator gen, String name, byte[] value) {
+            if (value == null) return;
+            gen.writeName(name);
+            gen.writeBinary(value);
+        }
+    }
+
+    /**
+     * Custom Jackson deserializer that distinguishes between the stored versions of an account:
+     * <ul>
+     *   <li>legacy (v1), where {@code software} and {@code username} were plain strings and only the password was encrypted,
+     *       recognized by the presence of the {@code encryptedPassword} property;</li>
+     *   <li>split (v2), where all three fields are encrypted byte arrays, each with its own IV and its own HKDF subkey;</li>
+     *   <li>compact (v3), where all three fields are sealed in the {@code data} property with a 12-byte {@code nonce}.</li>
+     * </ul>
+     * Records without a {@code version} property are either legacy or split, legacy accounts saved before being unlocked have version 1.
      */
     public static final class Deserializer extends ValueDeserializer<Account> {
         @Override
         public Account deserialize(JsonParser p, DeserializationContext ctxt) throws JacksonException {
             ObjectNode node = p.readValueAsTree();
 
-            // If encryptedPassword is present, it's the legacy format; otherwise, it's the modern format
-            if (node.has("encryptedPassword")) {
+            final int version = node.has("version") ? node.get("version").asInt() : 0;
+            if (version == COMPACT_VERSION) {
+                // Compact format: all fields sealed together
+                byte[] salt = node.get("salt").binaryValue();
+                byte[] nonce = node.get("nonce").binaryValue();
+                byte[] data = node.get("data").binaryValue();
+                return new Account(salt, nonce, data);
+            } else if (version == LEGACY_VERSION) {
+                // Legacy account saved before being unlocked: software/username are the plain UTF-8 bytes, only password is encrypted
+                String software = new String(node.get("software").binaryValue(), StandardCharsets.UTF_8);
+                String username = new String(node.get("username").binaryValue(), StandardCharsets.UTF_8);
+                byte[] encryptedPassword = node.get("password").binaryValue();
+                byte[] salt = node.get("salt").binaryValue();
+                byte[] iv = node.get("passIv").binaryValue();
+                return new Account(software, username, encryptedPassword, salt, iv);
+            } else if (node.has("encryptedPassword")) {
                 // Legacy format: software/username are plain strings, only password is encrypted
                 String software = node.get("software").asString();
                 String username = node.get("username").asString();
@@ -413,7 +635,7 @@ public final class Account {
                 byte[] iv = node.get("iv").binaryValue();
                 return new Account(software, username, encryptedPassword, salt, iv);
             } else {
-                // Modern format: all fields are encrypted byte arrays
+                // Split format: all fields are encrypted byte arrays
                 byte[] salt = node.get("salt").binaryValue();
                 byte[] software = node.get("software").binaryValue();
                 byte[] softIv = node.get("softIv").binaryValue();
@@ -425,4 +647,4 @@ public final class Account {
             }
         }
     }
-}
\ No newline at end of file
+}
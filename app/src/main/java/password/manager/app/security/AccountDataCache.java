@@ -0,0 +1,301 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import password.manager.app.security.Account.AccountData;
+
+/**
+ * Small cache of recently decrypted {@link AccountData}, bounded both in size and in time.
+ * <p>
+ * Switching back and forth between the same editor tabs would otherwise derive and decrypt the same records every time.
+ * Entries are keyed by {@link Account} identity and kept in least-recently-used order: once the capacity is exceeded the
+ * eldest entry is dropped, and every entry is dropped once its time to live has elapsed, even if the cache is never touched again.
+ * </p>
+ * <p>
+ * The fields are held as char arrays, which are wiped whenever an entry is evicted, invalidated or expired.
+ * Each hit builds a fresh {@link AccountData}, so that no cached value outlives its entry through a shared reference.
+ * Its strings are not wiped however, like those of any decrypted {@link AccountData}. Wiping only ensures that the cache itself
+ * does not keep the fields past the life of an entry. The copies it hands out stay on the heap until they are garbage collected.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ * </p>
+ */
+public final class AccountDataCache {
+    public static final String CAPACITY_KEY = "app.config.accountCacheSize";
+    public static final String TTL_KEY = "app.config.accountCacheTtlSeconds";
+
+    public static final int DEFAULT_CAPACITY = 16;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(2);
+
+    private final int capacity;
+    private final long ttlNanos;
+
+    // Account does not override equals, so the map is keyed by identity; access order makes it an LRU
+    private final LinkedHashMap<Account, Entry> entries;
+
+    // Bumped by every invalidation; each account remembers the last one that concerned it, so that its loads started before are not cached.
+    // Account does not override hashCode, so the weak map is keyed by identity, and forgets the accounts that are gone
+    private long generation = 0;
+    private long clearedAt = 0;
+    private final Map<Account, Long> invalidatedAt = new WeakHashMap<>();
+    private boolean isSweepScheduled = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache with the configured capacity and time to live.
+     *
+     * @see #getConfiguredCapacity()
+     * @see #getConfiguredTtl()
+     */
+    public AccountDataCache() {
+        this(getConfiguredCapacity(), getConfiguredTtl());
+    }
+
+    /**
+     * Creates a cache holding at most {@code capacity} entries, each for at most {@code ttl}.
+     *
+     * @param capacity the maximum number of entries, zero disables the cache
+     * @param ttl the time to live of each entry
+     */
+    public AccountDataCache(int capacity, @NotNull Duration ttl) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("Time to live must be positive");
+
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Account, Entry> eldest) {
+                if (size() <= AccountDataCache.this.capacity) return false;
+                eldest.getValue().wipe();
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached data of the given account, if it has been decrypted recently.
+     * Every call counts either as a hit or as a miss.
+     *
+     * @param account the account to look up
+     * @return a fresh copy of the cached data, or null if it is not cached or has expired
+     */
+    public synchronized @Nullable AccountData get(@NotNull Account account) {
+        final Entry entry = entries.get(account);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(account);
+            entry.wipe();
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.toData();
+    }
+
+    /**
+     * Returns the current generation, to be passed to {@link #put} once the data of an account has been decrypted.
+     *
+     * @return a token that grows with every invalidation
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches the decrypted data of an account, unless the account has been invalidated, or the cache cleared, since {@code generation} was read:
+     * in that case the data may already be stale and it is discarded. Invalidating other accounts does not affect it.
+     *
+     * @param account the decrypted account
+     * @param data its data
+     * @param generation the value of {@link #generation()} read before decrypting
+     */
+    public synchronized void put(@NotNull Account account, @NotNull AccountData data, long generation) {
+        if (capacity == 0 || generation < clearedAt || generation < invalidatedAt.getOrDefault(account, 0L)) return;
+
+        final Entry previous = entries.put(account, new Entry(data, System.nanoTime() + ttlNanos));
+        if (previous != null) previous.wipe();
+        scheduleSweep(ttlNanos);
+    }
+
+    /**
+     * Drops the cached data of the given account, to be called whenever its encrypted data changes.
+     *
+     * @param account the account to drop
+     */
+    public synchronized void invalidate(@NotNull Account account) {
+        invalidatedAt.put(account, ++generation);
+        final Entry entry = entries.remove(account);
+        if (entry != null) entry.wipe();
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public synchronized void clear() {
+        clearedAt = ++generation;
+        invalidatedAt.clear();
+        entries.values().forEach(Entry::wipe);
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries currently cached, including the expired ones not swept yet
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return a snapshot of the hit, miss and eviction counters
+     */
+    public @NotNull Metrics getMetrics() {
+        return new Metrics(hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * Reads the capacity from the {@value #CAPACITY_KEY} system property, falling back to {@link #DEFAULT_CAPACITY}
+     * if it is missing or invalid. Zero disables the cache.
+     *
+     * @return the configured capacity
+     */
+    public static int getConfiguredCapacity() {
+        final String property = System.getProperty(CAPACITY_KEY);
+        if (property == null || property.isBlank()) return DEFAULT_CAPACITY;
+
+        try {
+            final int capacity = Integer.parseInt(property.strip());
+            return capacity >= 0 ? capacity : DEFAULT_CAPACITY;
+        } catch (NumberFormatException e) {
+            return DEFAULT_CAPACITY;
+        }
+    }
+
+    /**
+     * Reads the time to live from the {@value #TTL_KEY} system property, falling back to {@link #DEFAULT_TTL}
+     * if it is missing, invalid or not positive.
+     *
+     * @return the configured time to live
+     */
+    public static @NotNull Duration getConfiguredTtl() {
+        final String property = System.getProperty(TTL_KEY);
+        if (property == null || property.isBlank()) return DEFAULT_TTL;
+
+        try {
+            final long seconds = Long.parseLong(property.strip());
+            return seconds > 0 ? Duration.ofSeconds(seconds) : DEFAULT_TTL;
+        } catch (NumberFormatException e) {
+            return DEFAULT_TTL;
+        }
+    }
+
+    // Must hold the lock; a single delayed task at a time, no thread is held while waiting
+    private void scheduleSweep(long delayNanos) {
+        if (isSweepScheduled) return;
+        isSweepScheduled = true;
+        CompletableFuture.runAsync(this::sweep, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    private synchronized void sweep() {
+        isSweepScheduled = false;
+
+        final long now = System.nanoTime();
+        long nextDelay = Long.MAX_VALUE;
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (entry.isExpired(now)) {
+                iterator.remove();
+                entry.wipe();
+                evictions.incrementAndGet();
+            } else {
+                nextDelay = Math.min(nextDelay, entry.expiresAt - now);
+            }
+        }
+
+        if (!entries.isEmpty()) scheduleSweep(nextDelay);
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @param hits lookups served from the cache
+     * @param misses lookups that had to decrypt the account
+     * @param evictions entries dropped because of the capacity or the time to live
+     */
+    public record Metrics(long hits, long misses, long evictions) {
+        /**
+         * @return the fraction of lookups served from the cache, zero if there were none
+         */
+        public double hitRate() {
+            final long total = hits + misses;
+            return total == 0 ? 0d : (double) hits / total;
+        }
+    }
+
+    private static final class Entry {
+        private final char[] software, username, password;
+        private final long expiresAt;
+
+        private Entry(AccountData data, long expiresAt) {
+            this.software = data.software().toCharArray();
+            this.username = data.username().toCharArray();
+            this.password = data.password().toCharArray();
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        private AccountData toData() {
+            return new AccountData(new String(software), new String(username), new String(password));
+        }
+
+        private void wipe() {
+            Arrays.fill(software, '\0');
+            Arrays.fill(username, '\0');
+            Arrays.fill(password, '\0');
+        }
+    }
+}
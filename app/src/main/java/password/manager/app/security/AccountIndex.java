@@ -0,0 +1,427 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Hash indexes of the accounts of a repository by software and by username, so that looking up every account for a given software
+ * or username does not compare the fields of every account, along with the {@link SearchIndex} and the {@link FuzzyIndex} answering the searches of the manager,
+ * and the {@link SuggestionTrie suggestion tries} completing the fields of the editors.
+ * <p>
+ * Keys are normalized with {@link #normalize(String)}, so lookups ignore case, surrounding whitespace and Unicode compatibility forms.
+ * Tracked accounts notify the index whenever their displayed fields change (on unlock, edit, rollback or when a display index is applied),
+ * on the thread changing them: the indexes are always up to date with {@link Account#displayFields()}, regardless of the UI.
+ * Locked accounts have no fields to index, until they are unlocked.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe. Searches and the predicates they return only take the read lock, so the filtered lists
+ * of the JavaFX Application Thread keep testing accounts while a search runs; substring searches even check the accounts
+ * on a copy of the entries taken under the lock, so they do not hold it while scanning every account for short queries.
+ * </p>
+ */
+final class AccountIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(false);
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    private final Map<String, Set<Account>> bySoftware = new HashMap<>();
+    private final Map<String, Set<Account>> byUsername = new HashMap<>();
+
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final FuzzyIndex fuzzyIndex = new FuzzyIndex();
+    private final SuggestionTrie softwareSuggestions = new SuggestionTrie();
+    private final SuggestionTrie usernameSuggestions = new SuggestionTrie();
+
+    // The fields each tracked account is currently indexed under, Account does not override equals
+    private final Map<Account, Entry> entries = new IdentityHashMap<>();
+    // Bumped on every indexed change, so that searches can tell which accounts changed after them
+    private long modifications = 0;
+    // How many times each tracked account has been opened during this session, used to rank the fuzzy matches
+    private final Map<Account, Integer> accesses = new IdentityHashMap<>();
+
+    // How many accounts are checked between two checks for cancellation
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    /**
+     * Starts indexing the given account, and keeps its entries up to date until it is {@link #untrack untracked}.
+     */
+    void track(@NotNull Account account) {
+        writeLock.lock();
+        try {
+            entries.putIfAbsent(account, new Entry(null, ++modifications));
+        } finally {
+            writeLock.unlock();
+        }
+        account.setDisplayListener(this::update);
+        update(account);
+    }
+
+    /**
+     * Stops indexing the given account, and removes its entries.
+     */
+    void untrack(@NotNull Account account) {
+        account.setDisplayListener(null);
+        writeLock.lock();
+        try {
+            // A change notified concurrently is ignored once the account is no longer tracked
+            final Entry entry = entries.remove(account);
+            if (entry != null) unindex(account, entry.fields());
+            accesses.remove(account);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Searches the displayed fields of the tracked accounts, as {@link SearchIndex#matches} does, narrowing them down through the search index.
+     * <p>
+     * The returned predicate answers from the matches found by the search, except for the accounts that changed afterwards,
+     * which are checked again: it stays correct while accounts are unlocked or edited, and can be used as the predicate of a filtered list.
+     * </p>
+     *
+     * @param query     the query, as typed
+     * @param matchCase whether the case of the query must match
+     * @param wholeWord whether the query must match a whole word
+     * @return a predicate accepting the matching accounts
+     */
+    @NotNull Predicate<Account> search(@NotNull String query, boolean matchCase, boolean wholeWord) {
+        return search(query, matchCase, wholeWord, null, () -> false);
+    }
+
+    /**
+     * Searches as {@link #search(String, boolean, boolean)} does, narrowing the given previous search down when the query extends it:
+     * a substring query containing the previous one, with the same options, can only match accounts the previous one matched,
+     * or accounts changed since, which the returned predicate checks on their own anyway.
+     *
+     * @param previous    the predicate returned by a previous search, null to search every account
+     * @param isCancelled polled while searching, the search is abandoned once it returns true
+     * @throws CancellationException if the search has been cancelled
+     */
+    @NotNull Predicate<Account> search(@NotNull String query, boolean matchCase, boolean wholeWord,
+                                       @Nullable Predicate<Account> previous, @NotNull BooleanSupplier isCancelled) {
+        // Only copy the fields of the candidates under the lock, matching them is what takes time
+        final Account[] accounts;
+        final Account.DisplayFields[] fields;
+        final long searchedAt;
+        readLock.lock();
+        try {
+            final Collection<Account> candidates;
+            if (previous instanceof SearchResult result && result.isExtendedBy(this, query, matchCase, wholeWord)) {
+                candidates = result.matches;
+                searchedAt = result.searchedAt;
+            } else {
+                final Set<Account> narrowed = searchIndex.candidates(query);
+                candidates = narrowed != null ? narrowed : entries.keySet();
+                searchedAt = modifications;
+            }
+
+            accounts = new Account[candidates.size()];
+            fields = new Account.DisplayFields[candidates.size()];
+            int size = 0;
+            for (Account account : candidates) {
+                final Entry entry = entries.get(account);
+                if (entry == null || entry.fields() == null) continue;
+                accounts[size] = account;
+                fields[size++] = entry.fields();
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        // Accounts changed after the copy have been indexed after searchedAt, the predicate checks them on their own
+        final Set<Account> matches = newAccountSet();
+        for (int i = 0; i < accounts.length && accounts[i] != null; i++) {
+            if ((i + 1) % CANCELLATION_CHECK_INTERVAL == 0 && isCancelled.getAsBoolean()) throw new CancellationException("Search cancelled");
+            if (SearchIndex.matches(fields[i], query, matchCase, wholeWord)) matches.add(accounts[i]);
+        }
+
+        return new SearchResult(query, matchCase, wholeWord, matches, searchedAt);
+    }
+
+    /**
+     * Searches the words of the displayed fields of the tracked accounts, tolerating typos, see {@link FuzzyIndex}.
+     * <p>
+     * Like the predicate of {@link #search}, the returned one checks the accounts changed after the search on their own.
+     * Its ranking puts the fewest edits first, then the most words matched by their start, then the accounts opened the most.
+     * </p>
+     *
+     * @param query       the query, as typed
+     * @param isCancelled polled while searching, the search is abandoned once it returns true
+     * @return a predicate accepting the matching accounts, along with their ranking
+     * @throws CancellationException if the search has been cancelled
+     */
+    @NotNull RankedSearch fuzzySearch(@NotNull String query, @NotNull BooleanSupplier isCancelled) {
+        // Only walk the trie under the lock, the automaton visits the few branches close to the query; matching the accounts comes after
+        final List<String> queryWords = FuzzyIndex.queryWords(query);
+        final FuzzyIndex.Hits hits;
+        final long searchedAt;
+        readLock.lock();
+        try {
+            hits = fuzzyIndex.find(queryWords, isCancelled);
+            searchedAt = modifications;
+        } finally {
+            readLock.unlock();
+        }
+
+        // Accounts changed after the walk have been indexed after searchedAt, the predicate checks them on their own
+        return new FuzzyResult(queryWords, hits.matches(isCancelled), searchedAt);
+    }
+
+    /**
+     * Counts an access to the given account, which ranks it higher among the fuzzy matches.
+     */
+    void recordAccess(@NotNull Account account) {
+        writeLock.lock();
+        try {
+            if (entries.containsKey(account)) accesses.merge(account, 1, Integer::sum);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the most used software names starting with the given prefix, ignoring case, see {@link SuggestionTrie#suggest}
+     */
+    @NotNull List<String> suggestSoftware(@NotNull String prefix, int limit) {
+        readLock.lock();
+        try {
+            return softwareSuggestions.suggest(prefix, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the most used usernames starting with the given prefix, ignoring case, see {@link SuggestionTrie#suggest}
+     */
+    @NotNull List<String> suggestUsername(@NotNull String prefix, int limit) {
+        readLock.lock();
+        try {
+            return usernameSuggestions.suggest(prefix, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the accounts whose software matches the given one once normalized, in no particular order
+     */
+    @NotNull List<Account> findBySoftware(@NotNull String software) {
+        readLock.lock();
+        try {
+            return List.copyOf(bySoftware.getOrDefault(normalize(software), Set.of()));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the accounts whose username matches the given one once normalized, in no particular order
+     */
+    @NotNull List<Account> findByUsername(@NotNull String username) {
+        readLock.lock();
+        try {
+            return List.copyOf(byUsername.getOrDefault(normalize(username), Set.of()));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Normalizes a displayed field into an index key: compatibility-decomposed and recomposed (NFKC), stripped and case-folded,
+     * so that for example {@code " GitHub "} and {@code "github"}, or {@code "Straße"} and {@code "STRASSE"}, have the same key.
+     *
+     * @param value the value to normalize
+     * @return the index key
+     */
+    static @NotNull String normalize(@NotNull String value) {
+        // Upper-casing first folds the characters which only have a multi-character upper-case form, such as ß
+        return Normalizer.normalize(value, Normalizer.Form.NFKC).strip().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    private void update(Account account) {
+        writeLock.lock();
+        try {
+            final Entry entry = entries.get(account);
+            if (entry == null) return;
+
+            final Account.DisplayFields fields = account.displayFields();
+            if (entry.fields() == fields) return;
+
+            unindex(account, entry.fields());
+            entries.put(account, new Entry(fields, ++modifications));
+            if (fields != null) {
+                bySoftware.computeIfAbsent(normalize(fields.software()), _ -> newAccountSet()).add(account);
+                byUsername.computeIfAbsent(normalize(fields.username()), _ -> newAccountSet()).add(account);
+                searchIndex.add(account, fields);
+                fuzzyIndex.add(account, fields);
+                softwareSuggestions.add(fields.software());
+                usernameSuggestions.add(fields.username());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Called with the write lock held
+    private void unindex(Account account, @Nullable Account.DisplayFields fields) {
+        if (fields == null) return;
+        remove(bySoftware, normalize(fields.software()), account);
+        remove(byUsername, normalize(fields.username()), account);
+        searchIndex.remove(account, fields);
+        fuzzyIndex.remove(account, fields);
+        softwareSuggestions.remove(fields.software());
+        usernameSuggestions.remove(fields.username());
+    }
+
+    private static void remove(Map<String, Set<Account>> index, String key, Account account) {
+        final Set<Account> accounts = index.get(key);
+        if (accounts != null && accounts.remove(account) && accounts.isEmpty()) index.remove(key);
+    }
+
+    private static Set<Account> newAccountSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * @param fields       the indexed fields, null while the account is locked
+     * @param modification the value of the modification counter when the fields were indexed
+     */
+    private record Entry(@Nullable Account.DisplayFields fields, long modification) {}
+
+    /**
+     * Matches found by {@link #search}, along with the modification counter at that time.
+     */
+    private final class SearchResult implements Predicate<Account> {
+        private final String query;
+        private final boolean matchCase, wholeWord;
+        private final Set<Account> matches;
+        private final long searchedAt;
+
+        private SearchResult(String query, boolean matchCase, boolean wholeWord, Set<Account> matches, long searchedAt) {
+            this.query = query;
+            this.matchCase = matchCase;
+            this.wholeWord = wholeWord;
+            this.matches = matches;
+            this.searchedAt = searchedAt;
+        }
+
+        // Whole words do not contain the words they extend, so only substring searches can be narrowed down
+        private boolean isExtendedBy(AccountIndex index, String nextQuery, boolean nextMatchCase, boolean nextWholeWord) {
+            if (index != AccountIndex.this || wholeWord || nextWholeWord || matchCase != nextMatchCase) return false;
+            return matchCase ? nextQuery.contains(query) : SearchIndex.fold(nextQuery).contains(SearchIndex.fold(query));
+        }
+
+        @Override
+        public boolean test(Account account) {
+            final Entry entry;
+            readLock.lock();
+            try {
+                entry = entries.get(account);
+            } finally {
+                readLock.unlock();
+            }
+            if (entry == null || entry.fields() == null) return false;
+
+            // Accounts indexed after the search are checked on their own, the matches are never modified once found
+            if (entry.modification() > searchedAt) return SearchIndex.matches(entry.fields(), query, matchCase, wholeWord);
+            return matches.contains(account);
+        }
+    }
+
+    /**
+     * Matches found by {@link #fuzzySearch}, along with the modification counter at that time.
+     */
+    private final class FuzzyResult implements RankedSearch {
+        // Bits of the score given to the prefixes and to the accesses, the distance takes the ones above
+        private static final int SCORE_BITS = 21;
+        private static final long SCORE_MASK = (1L << SCORE_BITS) - 1;
+
+        private final List<String> queryWords;
+        private final Map<Account, FuzzyIndex.Match> matches;
+        private final long searchedAt;
+
+        private FuzzyResult(List<String> queryWords, Map<Account, FuzzyIndex.Match> matches, long searchedAt) {
+            this.queryWords = queryWords;
+            this.matches = matches;
+            this.searchedAt = searchedAt;
+        }
+
+        @Override
+        public boolean test(Account account) {
+            return matchOf(account) != null;
+        }
+
+        @Override
+        public @NotNull Comparator<Account> ranking() {
+            return Comparator.comparingLong(this::scoreOf);
+        }
+
+        // Packs the ranking criteria in a single number, the lower the better, so that sorting thousands of matches does not allocate
+        private long scoreOf(Account account) {
+            final FuzzyIndex.Match match = matchOf(account);
+            if (match == null) return Long.MAX_VALUE;
+
+            final int accessCount;
+            readLock.lock();
+            try {
+                accessCount = accesses.getOrDefault(account, 0);
+            } finally {
+                readLock.unlock();
+            }
+
+            final long prefixes = Math.min(match.prefixes(), SCORE_MASK), accessScore = Math.min(accessCount, SCORE_MASK);
+            return ((long) match.distance() << (2 * SCORE_BITS)) | ((SCORE_MASK - prefixes) << SCORE_BITS) | (SCORE_MASK - accessScore);
+        }
+
+        private @Nullable FuzzyIndex.Match matchOf(Account account) {
+            final Entry entry;
+            readLock.lock();
+            try {
+                entry = entries.get(account);
+            } finally {
+                readLock.unlock();
+            }
+            if (entry == null || entry.fields() == null) return null;
+
+            // Accounts indexed after the search are checked on their own, the matches are never modified once found
+            if (entry.modification() > searchedAt) return FuzzyIndex.match(entry.fields(), queryWords);
+            return matches.get(account);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.collections.ModifiableObservableListBase;
+
+/**
+ * Observable list of accounts that fires an {@code UPDATED} change whenever the software or the username of one of them changes,
+ * like a list created with {@code FXCollections.observableList(list, extractor)}.
+ * <p>
+ * Between {@link #beginBulkChange()} and {@link #endBulkChange()}, property changes are only recorded: closing the bulk change fires
+ * a single change with the updates of every recorded account, so that sorted and filtered views over the list run once,
+ * instead of once for each account. Bulk changes can be nested, only the outermost one fires.
+ * </p>
+ * <p>
+ * Thread Safety: This class is not thread-safe, callers synchronize on the list itself, as {@link AccountRepository} does.
+ * </p>
+ */
+final class AccountList extends ModifiableObservableListBase<Account> {
+    private final List<Account> backingList = new ArrayList<>();
+
+    // Account does not override equals, so these are identity maps
+    private final Map<Account, ElementObserver> observers = new IdentityHashMap<>();
+    private final Set<Account> updatedAccounts = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int bulkDepth = 0;
+
+    /**
+     * Starts recording property changes instead of firing them.
+     */
+    void beginBulkChange() {
+        synchronized (this) {
+            bulkDepth++;
+        }
+    }
+
+    /**
+     * Ends the bulk change started by the matching {@link #beginBulkChange()}, firing the recorded updates if it is the outermost one.
+     *
+     * @throws IllegalStateException if no bulk change is in progress
+     */
+    void endBulkChange() {
+        synchronized (this) {
+            if (bulkDepth == 0) throw new IllegalStateException("No bulk change in progress");
+            if (--bulkDepth > 0 || updatedAccounts.isEmpty()) return;
+
+            beginChange();
+            try {
+                // A single pass, in index order, so that adjacent updates are merged into ranges
+                for (int i = 0; i < backingList.size(); i++) {
+                    if (updatedAccounts.contains(backingList.get(i))) nextUpdate(i);
+                }
+            } finally {
+                updatedAccounts.clear();
+                endChange();
+            }
+        }
+    }
+
+    /**
+     * Removes the given elements in a single pass, firing a single change, instead of shifting the list once for each removed element.
+     * Elements are compared with {@code contains} on the given collection, which should be an identity set for large removals.
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (isEmpty() || c.isEmpty()) return false;
+
+        final List<Account> retained = new ArrayList<>(backingList.size());
+        beginChange();
+        try {
+            for (Account account : backingList) {
+                if (c.contains(account)) {
+                    // Indexes are relative to the list with the previous removals already applied
+                    nextRemove(retained.size(), account);
+                    unobserve(account);
+                } else {
+                    retained.add(account);
+                }
+            }
+
+            if (retained.size() == backingList.size()) return false;
+            backingList.clear();
+            backingList.addAll(retained);
+            modCount++;
+            return true;
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public Account get(int index) {
+        return backingList.get(index);
+    }
+
+    @Override
+    public int size() {
+        return backingList.size();
+    }
+
+    @Override
+    protected void doAdd(int index, Account element) {
+        backingList.add(index, element);
+        observe(element);
+    }
+
+    @Override
+    protected Account doSet(int index, Account element) {
+        final Account previous = backingList.set(index, element);
+        unobserve(previous);
+        observe(element);
+        return previous;
+    }
+
+    @Override
+    protected Account doRemove(int index) {
+        final Account previous = backingList.remove(index);
+        unobserve(previous);
+        return previous;
+    }
+
+    private void elementChanged(@NotNull Account account) {
+        synchronized (this) {
+            if (bulkDepth > 0) {
+                updatedAccounts.add(account);
+                return;
+            }
+
+            beginChange();
+            try {
+                for (int i = 0; i < backingList.size(); i++) {
+                    if (backingList.get(i) == account) nextUpdate(i);
+                }
+            } finally {
+                endChange();
+            }
+        }
+    }
+
+    private void observe(Account account) {
+        if (account == null) return;
+        observers.computeIfAbsent(account, ElementObserver::new).attach();
+    }
+
+    private void unobserve(Account account) {
+        if (account == null) return;
+        final ElementObserver observer = observers.get(account);
+        if (observer != null && observer.detach()) {
+            observers.remove(account);
+            updatedAccounts.remove(account);
+        }
+    }
+
+    /**
+     * Listens to the displayed properties of an account, once however many times it is in the list.
+     */
+    private final class ElementObserver implements InvalidationListener {
+        private final Account account;
+        private int references = 0;
+
+        private ElementObserver(Account account) {
+            this.account = account;
+        }
+
+        private void attach() {
+            if (references++ > 0) return;
+            account.softwareProperty().addListener(this);
+            account.usernameProperty().addListener(this);
+        }
+
+        // Returns true once the account is no longer in the list
+        private boolean detach() {
+            if (--references > 0) return false;
+            account.softwareProperty().removeListener(this);
+            account.usernameProperty().removeListener(this);
+            return true;
+        }
+
+        @Override
+        public void invalidated(Observable observable) {
+            elementChanged(account);
+        }
+    }
+}
@@ -23,17 +23,26 @@ import static password.manager.app.Utils.runOnFx;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import password.manager.app.persistence.TransactionManager;
 import password.manager.app.security.Account.AccountData;
+import password.manager.app.singletons.FxDispatcher;
+import password.manager.app.singletons.Logger;
 
 /**
  * Repository for managing password accounts with CRUD operations.
@@ -44,7 +53,8 @@ import password.manager.app.security.Account.AccountData;
  * </p>
  * <p>
  * The repository maintains an {@link ObservableList} of accounts, allowing UI components
- * to react to changes automatically. Encryption and decryption operations are performed
+ * to react to changes automatically. Transactions commit against a separate store, which the
+ * list mirrors on the JavaFX Application Thread, so that writes never wait for the UI. Encryption and decryption operations are performed
  * in background threads and return {@link CompletableFuture} objects for handling results.
  * </p>
  * <p>
@@ -60,27 +70,38 @@ import password.manager.app.security.Account.AccountData;
  * @see password.manager.app.persistence.TransactionManager
  */
 public final class AccountRepository implements AutoCloseable {
+    public static final String LAZY_UNLOCK_THRESHOLD_KEY = "app.config.lazyUnlockThreshold";
+    public static final int DEFAULT_LAZY_UNLOCK_THRESHOLD = 500;
 
-    // This needs to internally be an observable list to allow UI to react to changes
-    private final ObservableList<Account> accounts;
+    // Most suggestions returned for a prefix, each node of the suggestion tries caches that many values
+    public static final int MAX_SUGGESTIONS = SuggestionTrie.MAX_SUGGESTIONS;
+
+    // Transactions write to the store, the UI observes its mirror, which is updated asynchronously on the FX thread
+    private final AccountStore accounts;
     private final TransactionManager transactionManager;
 
     private final UserPreferences userPreferences;
 
+    // Recently decrypted data, so that switching between editor tabs does not decrypt the same accounts again
+    private final AccountDataCache dataCache = new AccountDataCache();
+
+    private final ReadOnlyDoubleWrapper migrationProgress = new ReadOnlyDoubleWrapper(1d);
+    private final ReadOnlyBooleanWrapper unlocked = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyBooleanWrapper displayReady = new ReadOnlyBooleanWrapper(false);
+
+    // Only set while a lazy unlock is running or has run
+    private volatile LazyUnlocker lazyUnlocker = null;
+
     /**
-     * Constructs a new AccountRepository with an empty synchronized observable list
+     * Constructs a new AccountRepository with an empty account store
      * and a transaction manager for asynchronous operations.
      */
     public AccountRepository(@NotNull UserPreferences userPreferences) {
         if (userPreferences == null) throw new IllegalArgumentException("User preferences cannot be null");
 
-        // The synchronized wrapper was removed since the ListChangeBuilder of the wrapping ObservableList was
-        // suffering from broken internal state due to concurrent modifications, now synchronization is manual.
-        this.accounts = FXCollections.observableList(
-            new ArrayList<>(),
-            // This makes so that UPDATED events are fired when one of the observables in the extracted array changes
-            account -> new Observable[] { account.softwareProperty(), account.usernameProperty() }
-        );
+        // The list observed by the UI is only written on the FX thread, by replaying the writes to the store.
+        // UPDATED events are fired when the software or the username of an account changes, see AccountList.
+        this.accounts = new AccountStore();
         this.transactionManager = new TransactionManager();
 
         this.userPreferences = userPreferences;
@@ -89,36 +110,171 @@ public final class AccountRepository implements AutoCloseable {
     /**
      * Retrieves all accounts in the repository.
      * The returned list is an unmodifiable view of just the account references, no encryption or decryption can be performed on them without the DEK stored in the user preferences.
+     * <p>
+     * It is updated on the JavaFX Application Thread, shortly after the writes have been committed: use {@link #snapshot()} for the current content.
+     * </p>
      *
      * @return an unmodifiable observable list of all accounts
      */
     public ObservableList<Account> findAll() {
-        synchronized (accounts) {
-            return FXCollections.unmodifiableObservableList(accounts);
-        }
+        return FXCollections.unmodifiableObservableList(accounts.getMirror());
+    }
+
+    /**
+     * Returns the accounts in the repository as of the last committed write, regardless of whether the list returned by {@link #findAll()} shows it yet.
+     *
+     * @return an immutable list of all accounts
+     */
+    public @NotNull List<Account> snapshot() {
+        return accounts.snapshot().accounts();
+    }
+
+    /**
+     * Finds the accounts for the given software, ignoring case and surrounding whitespace, without comparing the software of every account.
+     * Accounts that are still locked, and that have not been shown through a {@link DisplayIndex}, are not found.
+     *
+     * @param software the software name to look for
+     * @return an immutable list of the matching accounts, in list order
+     */
+    public @NotNull List<Account> findBySoftware(@NotNull String software) {
+        if (software == null) throw new IllegalArgumentException("Software cannot be null");
+        return accounts.findBySoftware(software);
+    }
+
+    /**
+     * Finds the accounts using the given username, ignoring case and surrounding whitespace, without comparing the username of every account.
+     * Accounts that are still locked, and that have not been shown through a {@link DisplayIndex}, are not found.
+     *
+     * @param username the username to look for
+     * @return an immutable list of the matching accounts, in list order
+     */
+    public @NotNull List<Account> findByUsername(@NotNull String username) {
+        if (username == null) throw new IllegalArgumentException("Username cannot be null");
+        return accounts.findByUsername(username);
+    }
+
+    /**
+     * Searches the software and username of the accounts, through an incrementally maintained trigram index rather than by reading every account.
+     * <p>
+     * The returned predicate can be set on a filtered view of {@link #findAll()}: it stays accurate as accounts are unlocked or edited,
+     * checking the accounts changed after the search on their own, so that locked accounts are filtered in as soon as they are unlocked.
+     * </p>
+     *
+     * @param query     the text to look for, as typed
+     * @param matchCase whether the case of the query must match, otherwise both are compared in lower case
+     * @param wholeWord whether the query must match a whole word of the software or username, rather than any part of them
+     * @return a predicate accepting the matching accounts
+     */
+    public @NotNull Predicate<Account> search(@NotNull String query, boolean matchCase, boolean wholeWord) {
+        return search(query, matchCase, wholeWord, null, () -> false);
+    }
+
+    /**
+     * Searches as {@link #search(String, boolean, boolean)} does, narrowing a previous search down when the query extends it, see {@link SearchExecutor}.
+     *
+     * @param previous    the predicate returned by the previous search, null to search every account
+     * @param isCancelled polled while searching, the search is abandoned once it returns true
+     * @throws java.util.concurrent.CancellationException if the search has been cancelled
+     */
+    @NotNull Predicate<Account> search(@NotNull String query, boolean matchCase, boolean wholeWord,
+                                       @Nullable Predicate<Account> previous, @NotNull BooleanSupplier isCancelled) {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        return accounts.search(query, matchCase, wholeWord, previous, isCancelled);
+    }
+
+    /**
+     * Suggests the software names starting with what has been typed, the ones used by the most accounts first.
+     * The suggestions come from an incrementally maintained trie caching the most used names below each prefix,
+     * so they cost the length of the prefix, whatever the number of accounts. Accounts that are still locked, and that have not been
+     * shown through a {@link DisplayIndex}, are not counted.
+     *
+     * @param prefix the text typed so far, matched ignoring case
+     * @param limit  the maximum number of suggestions, capped to {@value #MAX_SUGGESTIONS}
+     * @return the suggested software names, as the accounts spell them
+     */
+    public @NotNull List<String> suggestSoftware(@NotNull String prefix, int limit) {
+        if (prefix == null) throw new IllegalArgumentException("Prefix cannot be null");
+        return accounts.suggestSoftware(prefix, limit);
+    }
+
+    /**
+     * Suggests the usernames starting with what has been typed, the ones used by the most accounts first, see {@link #suggestSoftware}.
+     *
+     * @param prefix the text typed so far, matched ignoring case
+     * @param limit  the maximum number of suggestions, capped to {@value #MAX_SUGGESTIONS}
+     * @return the suggested usernames, as the accounts spell them
+     */
+    public @NotNull List<String> suggestUsername(@NotNull String prefix, int limit) {
+        if (prefix == null) throw new IllegalArgumentException("Prefix cannot be null");
+        return accounts.suggestUsername(prefix, limit);
+    }
+
+    /**
+     * Searches the words of the software and username of the accounts, tolerating typos: each word of the query matches the words
+     * starting with it, or a few edits away from it (one from three characters on, two from six on). Case is always ignored.
+     * <p>
+     * Like the predicate of {@link #search(String, boolean, boolean)}, the returned one stays accurate as accounts are unlocked or edited.
+     * Its ranking puts the closest matches first, then the ones matched by the start of their words, then the most {@linkplain #recordAccess accessed} ones.
+     * </p>
+     *
+     * @param query the text to look for, as typed
+     * @return a predicate accepting the matching accounts, along with their ranking
+     */
+    public @NotNull RankedSearch fuzzySearch(@NotNull String query) {
+        return fuzzySearch(query, () -> false);
+    }
+
+    /**
+     * Searches as {@link #fuzzySearch(String)} does, see {@link SearchExecutor}.
+     *
+     * @param isCancelled polled while searching, the search is abandoned once it returns true
+     * @throws java.util.concurrent.CancellationException if the search has been cancelled
+     */
+    @NotNull RankedSearch fuzzySearch(@NotNull String query, @NotNull BooleanSupplier isCancelled) {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        return accounts.fuzzySearch(query, isCancelled);
+    }
+
+    /**
+     * Counts an access to the given account, such as opening it, which ranks it higher among the {@linkplain #fuzzySearch fuzzy matches}.
+     * Accesses are only counted for the current session.
+     *
+     * @param account the account accessed
+     */
+    public void recordAccess(@NotNull Account account) {
+        if (account == null) throw new IllegalArgumentException("Account cannot be null");
+        accounts.recordAccess(account);
     }
 
     /**
      * Sets all accounts in the repository with the provided array.
+     * The property updates still queued for the new accounts are fired as a single change, see {@link #beginBulkChange()}.
      *
      * @param newAccounts the new list of accounts to set
      */
     public void setAll(@NotNull Account... newAccounts) {
-        synchronized (accounts) {
-            if (!accounts.isEmpty()) throw new IllegalStateException("Accounts list is not empty.");
-            accounts.setAll(newAccounts);
-        }
+        if (newAccounts == null) throw new IllegalArgumentException("Accounts cannot be null");
+        setAllIfEmpty(List.of(newAccounts));
     }
 
     /**
      * Sets all accounts in the repository with the provided list.
+     * The property updates still queued for the new accounts are fired as a single change, see {@link #beginBulkChange()}.
      *
      * @param newAccounts the new list of accounts to set
      */
     public void setAll(@NotNull List<Account> newAccounts) {
-        synchronized (accounts) {
-            if (!accounts.isEmpty()) throw new IllegalStateException("Accounts list is not empty.");
-            accounts.setAll(newAccounts);
+        if (newAccounts == null) throw new IllegalArgumentException("Accounts cannot be null");
+        setAllIfEmpty(newAccounts);
+    }
+
+    private void setAllIfEmpty(List<Account> newAccounts) {
+        beginBulkChange();
+        try {
+            if (!accounts.setAllIfEmpty(newAccounts)) throw new IllegalStateException("Accounts list is not empty.");
+            dataCache.clear();
+        } finally {
+            endBulkChange();
         }
     }
 
@@ -142,26 +298,14 @@ public final class AccountRepository implements AutoCloseable {
             () -> {
                 try {
                     accountHolder[0] = Account.of(data, userPreferences.getDEK());
-
-                    runOnFx(() -> {
-                        synchronized (accounts) {
-                            accounts.add(accountHolder[0]);
-                        }
-                    }).join();
-
+                    accounts.add(accountHolder[0]);
                     return accountHolder[0];
                 } catch (GeneralSecurityException e) {
                     throw new RuntimeException("Failed to encrypt account data", e);
                 }
             },
             () -> {
-                if (accountHolder[0] != null) {
-                    runOnFx(() -> {
-                        synchronized (accounts) {
-                            accounts.remove(accountHolder[0]);
-                        }
-                    }).join();
-                }
+                if (accountHolder[0] != null) accounts.remove(accountHolder[0]);
             },
             "Adding account"
         );
@@ -183,14 +327,17 @@ public final class AccountRepository implements AutoCloseable {
         if (account == null) throw new IllegalArgumentException("Account cannot be null");
         if (data == null) throw new IllegalArgumentException("Account data cannot be null");
 
-        final Account.AccountMemento originalState;
-        synchronized (accounts) {
-            if (!accounts.contains(account)) throw new IllegalArgumentException("Account not found in list");
+        if (!accounts.contains(account)) throw new IllegalArgumentException("Account not found in list");
 
-            // Capture complete original state for rollback using Account's memento pattern
-            originalState = account.captureState();
-        }
+        // Capture complete original state for rollback using Account's memento pattern
+        final Account.AccountMemento originalState = account.captureState();
+
+        // Reads overlapping the edit may cache either version, so the entry is dropped again once it is settled
+        dataCache.invalidate(account);
 
+        // The new data sets the displayed fields, there is nothing left to unlock
+        final LazyUnlocker unlocker = lazyUnlocker;
+        if (unlocker != null) unlocker.skip(account);
         return transactionManager.executeInTransaction(
             () -> {
                 try {
@@ -203,9 +350,10 @@ public final class AccountRepository implements AutoCloseable {
             () -> {
                 // Rollback all changes using captured state
                 account.restoreState(originalState);
+                dataCache.invalidate(account);
             },
             "Editing account"
-        );
+        ).whenComplete((_, _) -> dataCache.invalidate(account));
     }
 
     /**
@@ -225,29 +373,59 @@ public final class AccountRepository implements AutoCloseable {
         // Although DEK is not used in this method, we check it to ensure that the master password has been verified before allowing any modifications to the accounts list.
         userPreferences.getDEK();
 
-        final int originalIndex;
-        synchronized (accounts) {
-            if (!accounts.contains(account)) throw new IllegalArgumentException("Account not found in list");
+        if (!accounts.contains(account)) throw new IllegalArgumentException("Account not found in list");
+        dataCache.invalidate(account);
 
-            // Capture index before transaction starts
-            originalIndex = accounts.indexOf(account);
+        // Captured by the removal itself, so that a concurrent write in between cannot shift it
+        final int[] originalIndex = { -1 };
+        return transactionManager.executeInTransaction(
+            () -> {
+                originalIndex[0] = accounts.remove(account);
+                return originalIndex[0] >= 0;
+            },
+            () -> {
+                // Rollback: restore at original position
+                if (originalIndex[0] >= 0) accounts.add(originalIndex[0], account);
+            },
+            "Removing account"
+        );
+    }
+
+    /**
+     * Removes several accounts from the repository within a single transaction.
+     * <p>
+     * The accounts are removed in a single pass over the list, however many they are.
+     * If removal needs to be rolled back, every account is re-added at its original position.
+     * </p>
+     *
+     * @param accountsToRemove the accounts to remove (must all exist in the repository)
+     * @return a CompletableFuture that completes with true if removal was successful, false otherwise
+     * @throws IllegalArgumentException if any of the accounts is not found in the repository
+     */
+    public @NotNull CompletableFuture<Boolean> removeAll(@NotNull Collection<Account> accountsToRemove) {
+        if (accountsToRemove == null) throw new IllegalArgumentException("Accounts cannot be null");
+
+        // Although DEK is not used in this method, we check it to ensure that the master password has been verified before allowing any modifications to the accounts list.
+        userPreferences.getDEK();
+
+        final List<Account> toRemove = List.copyOf(accountsToRemove);
+        for (Account account : toRemove) {
+            if (!accounts.contains(account)) throw new IllegalArgumentException("Account not found in list");
+            dataCache.invalidate(account);
         }
 
+        // Use a holder to capture the removed accounts for rollback, in ascending order of index
+        final List<AccountStore.Removal> removals = new ArrayList<>(toRemove.size());
         return transactionManager.executeInTransaction(
-            runOnFx(() -> {
-                synchronized (accounts) {
-                    return accounts.remove(account);
-                }
-            }),
-            // Leave as lambda so that the rollback action is only run if needed
-            // Writing it as runOnFx(...)::join would result in join() being the runnable instead of the lambda itself
-            () -> runOnFx(() -> {
-                synchronized (accounts) {
-                    // Rollback: restore at original position
-                    accounts.add(originalIndex, account);
-                }
-            }).join(),
-            "Removing account"
+            () -> {
+                removals.addAll(accounts.removeAll(toRemove));
+                return removals.size() == toRemove.size();
+            },
+            () -> {
+                // Rollback: restore at original positions, re-adding them in ascending order of index restores every one of them
+                for (AccountStore.Removal removal : removals) accounts.add(removal.index(), removal.account());
+            },
+            "Removing accounts"
         );
     }
 
@@ -262,25 +440,59 @@ public final class AccountRepository implements AutoCloseable {
      * @return a CompletableFuture that completes with true if all accounts were successfully unlocked, false if any account failed to unlock
      */
     public @NotNull CompletableFuture<Boolean> unlockAll(@Nullable String legacyMasterPassword) {
-        List<Account> accountList;
-        List<Account.AccountMemento> originalStates;
-        synchronized (accounts) {
-            if (accounts.isEmpty()) return CompletableFuture.completedFuture(true); // No accounts to unlock, consider it successful
-            accountList = new ArrayList<>(accounts);
-            originalStates = accounts.stream().map(Account::captureState).toList();
+        return unlockAll(legacyMasterPassword, () -> {});
+    }
+
+    /**
+     * Unlocks all accounts in the repository, as {@link #unlockAll(String)} does.
+     * <p>
+     * Accounts still in the legacy format are migrated through a {@link LegacyMigration}, which bounds and shares the legacy key derivations.
+     * Its progress is published on {@link #migrationProgressProperty()}, and {@code onCheckpoint} is called every
+     * {@value LegacyMigration#CHECKPOINT_INTERVAL} migrated accounts so that the caller can persist them: if the migration is interrupted,
+     * the next unlock resumes from the accounts still in the legacy format.
+     * </p>
+     *
+     * @param legacyMasterPassword the master password for legacy accounts, can be null if not in legacy mode.
+     * @param onCheckpoint called from a background thread whenever the migrated accounts should be persisted
+     * @return a CompletableFuture that completes with true if all accounts were successfully unlocked, false if any account failed to unlock
+     */
+    public @NotNull CompletableFuture<Boolean> unlockAll(@Nullable String legacyMasterPassword, @NotNull Runnable onCheckpoint) {
+        if (onCheckpoint == null) throw new IllegalArgumentException("Checkpoint action cannot be null");
+
+        final List<Account> accountList = accounts.snapshot().accounts();
+        if (accountList.isEmpty()) {
+            // No accounts to unlock, consider it successful, and there is nothing left to migrate
+            userPreferences.clearLegacyVersion();
+            runOnFx(this::markUnlocked);
+            return CompletableFuture.completedFuture(true);
+        }
+        final List<Account.AccountMemento> originalStates = accountList.stream().map(Account::captureState).toList();
+
+        final int legacyCount = (int) originalStates.stream().filter(state -> state.version() == Account.LEGACY_VERSION).count();
+        final LegacyMigration migration = (legacyCount > 0 && legacyMasterPassword != null)
+                ? new LegacyMigration(userPreferences.getLegacyVersion(), legacyMasterPassword, legacyCount, createMigrationListener(onCheckpoint))
+                : null;
+
+        if (migration != null) {
+            Logger.getInstance().addInfo("Migrating %d legacy accounts, deriving up to %d keys at a time", legacyCount, migration.getParallelism());
+            runOnFx(() -> migrationProgress.set(0d));
         }
 
+        // Every account changes, fire them at once instead of re-sorting the list once for each account
+        beginBulkChange();
         return transactionManager.executeInTransaction(transaction -> {
             List<CompletableFuture<Boolean>> updateFutures = new ArrayList<>(accountList.size());
 
             for (int i = 0; i < accountList.size(); i++) {
                 Account account = accountList.get(i);
                 Account.AccountMemento originalState = originalStates.get(i);
+                boolean isLegacy = originalState.version() == Account.LEGACY_VERSION;
 
                 CompletableFuture<Boolean> updateFuture = transaction.addOperation(
                     () -> {
                         try {
-                            account.unlock(userPreferences.getDEK(), userPreferences.getLegacyVersion(), legacyMasterPassword);
+                            account.unlock(userPreferences.getDEK(), migration != null ? migration::deriveKey : null);
+                            if (isLegacy && migration != null) migration.accountMigrated();
                             return true;
                         } catch (GeneralSecurityException e) {
                             throw new RuntimeException("Failed to unlock account", e);
@@ -289,6 +501,7 @@ public final class AccountRepository implements AutoCloseable {
                     () -> {
                         // Rollback using captured state
                         account.restoreState(originalState);
+                        dataCache.invalidate(account);
                     }
                 );
 
@@ -296,7 +509,245 @@ public final class AccountRepository implements AutoCloseable {
             }
 
             return allSuccessful(updateFutures);
-        }, "Unlocking all accounts");
+        }, "Unlocking all accounts").whenComplete((unlocked, _) -> {
+            endBulkChange();
+            if (migration != null) {
+                migration.close();
+                runOnFx(() -> migrationProgress.set(1d));
+            }
+
+            // Once every account is unlocked, none is left in the legacy format
+            if (Boolean.TRUE.equals(unlocked)) {
+                userPreferences.clearLegacyVersion();
+                runOnFx(this::markUnlocked);
+            }
+        });
+    }
+
+    /**
+     * Unlocks the accounts on demand, so that the list is usable right away regardless of the size of the vault.
+     * <p>
+     * Accounts passed to {@link #requestUnlock} are unlocked first, the others are filled in by a single low-priority worker.
+     * Features that need every account, such as search and sort, can call {@link #requireFullUnlock()} to let every worker fill them in.
+     * Accounts are unlocked independently of each other: one failing to unlock is restored to its locked state, without affecting the others.
+     * </p>
+     * <p>
+     * Accounts still in the legacy format must be migrated as a whole, with {@link #unlockAll(String, Runnable)}.
+     * </p>
+     *
+     * @return a CompletableFuture that completes with true once every account has been unlocked, false if any account failed to unlock
+     * @throws IllegalStateException if some accounts are still in the legacy format, or if a lazy unlock was already started
+     */
+    public @NotNull CompletableFuture<Boolean> unlockLazily() {
+        final List<Account> accountList;
+        final LazyUnlocker unlocker;
+        synchronized (this) {
+            accountList = accounts.snapshot().accounts();
+            if (accountList.stream().anyMatch(Account::isLegacy)) throw new IllegalStateException("Legacy accounts must be migrated with unlockAll");
+            if (lazyUnlocker != null) throw new IllegalStateException("Accounts are already being unlocked");
+
+            // There are no legacy accounts left to read
+            userPreferences.clearLegacyVersion();
+
+            unlocker = new LazyUnlocker(accountList, account -> {
+                // Only split records are rewritten while unlocking, capture them to roll back a failed upgrade
+                final Account.AccountMemento originalState = account.captureState();
+                try {
+                    account.unlock(userPreferences.getDEK(), null);
+                } catch (Exception e) {
+                    account.restoreState(originalState);
+                    dataCache.invalidate(account);
+                    throw e;
+                }
+            }, Math.max(1, Runtime.getRuntime().availableProcessors()));
+            lazyUnlocker = unlocker;
+        }
+
+        Logger.getInstance().addInfo("Unlocking %d accounts on demand, with up to %d workers", accountList.size(), unlocker.getParallelism());
+        return unlocker.getCompletion().whenComplete((allUnlocked, _) -> {
+            if (Boolean.TRUE.equals(allUnlocked)) runOnFx(this::markUnlocked);
+        });
+    }
+
+    /**
+     * Moves the given accounts in front of a running lazy unlock, replacing the accounts requested before.
+     * Does nothing if no lazy unlock is running.
+     *
+     * @param accountsToUnlock the accounts to unlock first, in order of priority, usually the visible ones followed by a prefetch window
+     */
+    public void requestUnlock(@NotNull List<Account> accountsToUnlock) {
+        if (accountsToUnlock == null) throw new IllegalArgumentException("Accounts cannot be null");
+
+        final LazyUnlocker unlocker = lazyUnlocker;
+        if (unlocker != null) unlocker.request(accountsToUnlock);
+    }
+
+    /**
+     * Lets a running lazy unlock use every worker to unlock the remaining accounts.
+     *
+     * @return a CompletableFuture that completes with true once every account has been unlocked, already completed if no lazy unlock is running
+     */
+    public @NotNull CompletableFuture<Boolean> requireFullUnlock() {
+        final LazyUnlocker unlocker = lazyUnlocker;
+        return unlocker != null ? unlocker.requireAll() : CompletableFuture.completedFuture(unlocked.get());
+    }
+
+    /**
+     * Shows the fields stored in the given display index on the accounts that are still locked, so that the list is complete
+     * before their records are decrypted. Unlocking the accounts afterwards replaces the shown fields with the decrypted ones.
+     * <p>
+     * The index is rejected if it does not describe exactly the accounts in this repository, for example if it was saved with a different list.
+     * </p>
+     *
+     * <p>
+     * The fields are shown on the JavaFX Application Thread, which this method never waits for, so it can be called from any thread.
+     * </p>
+     *
+     * @param index the display index loaded with the accounts
+     * @return a future completing with true once the index has been applied, or with false if it has been rejected
+     */
+    public @NotNull CompletableFuture<Boolean> applyDisplayIndex(@NotNull DisplayIndex index) {
+        if (index == null) throw new IllegalArgumentException("Display index cannot be null");
+
+        final List<Account> accountList = accounts.snapshot().accounts();
+        final List<DisplayIndex.Entry> entries;
+        try {
+            entries = index.open(userPreferences.getDEK(), accountList.size());
+        } catch (GeneralSecurityException e) {
+            Logger.getInstance().addError(e);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // A single runnable for the whole list, rather than one per account; queued updates go first, so that they do not overwrite the index
+        return runOnFx(() -> {
+            FxDispatcher.getInstance().flush();
+            accounts.getMirror().beginBulkChange();
+            try {
+                for (DisplayIndex.Entry entry : entries) {
+                    accountList.get(entry.index()).showDisplayFields(entry.software(), entry.username());
+                }
+            } finally {
+                accounts.getMirror().endBulkChange();
+            }
+            displayReady.set(true);
+            return true;
+        });
+    }
+
+    /**
+     * Seals the displayed fields of the given accounts in a {@link DisplayIndex}, to be saved along with them.
+     *
+     * @param accountList the accounts, in the order they are saved
+     * @param order the sorting order the entries are stored in, null to keep the saved order
+     * @return the display index, or null if some accounts are still locked and have no fields to show
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    public @Nullable DisplayIndex createDisplayIndex(@NotNull List<Account> accountList, @Nullable Comparator<Account> order) throws GeneralSecurityException {
+        if (accountList == null) throw new IllegalArgumentException("Accounts cannot be null");
+        if (accountList.isEmpty() || !accountList.stream().allMatch(Account::isDisplayReady)) return null;
+        return DisplayIndex.seal(accountList, order, userPreferences.getDEK());
+    }
+
+    /**
+     * Tells whether every account shows its fields, either because they have all been unlocked or because a display index has been applied.
+     * Until then, features relying on the fields of every account, such as search and sort, only see part of them.
+     * It is updated on the JavaFX Application Thread.
+     *
+     * @return the display ready property, read-only
+     */
+    public @NotNull ReadOnlyBooleanProperty displayReadyProperty() {
+        return displayReady.getReadOnlyProperty();
+    }
+
+    /**
+     * Tells whether every account has been unlocked, either by {@link #unlockAll(String)} or by {@link #unlockLazily()}.
+     * It is updated on the JavaFX Application Thread.
+     *
+     * @return the unlocked property, read-only
+     */
+    public @NotNull ReadOnlyBooleanProperty unlockedProperty() {
+        return unlocked.getReadOnlyProperty();
+    }
+
+    /**
+     * Reads the minimum number of accounts for which {@link #unlockLazily()} should be preferred from the {@value #LAZY_UNLOCK_THRESHOLD_KEY}
+     * system property, falling back to {@link #DEFAULT_LAZY_UNLOCK_THRESHOLD} if it is missing, invalid or negative.
+     *
+     * @return the configured threshold
+     */
+    public static int getLazyUnlockThreshold() {
+        final String property = System.getProperty(LAZY_UNLOCK_THRESHOLD_KEY);
+        if (property == null || property.isBlank()) return DEFAULT_LAZY_UNLOCK_THRESHOLD;
+
+        try {
+            final int threshold = Integer.parseInt(property.strip());
+            return threshold >= 0 ? threshold : DEFAULT_LAZY_UNLOCK_THRESHOLD;
+        } catch (NumberFormatException e) {
+            return DEFAULT_LAZY_UNLOCK_THRESHOLD;
+        }
+    }
+
+    /**
+     * Returns the progress of the running legacy migration, between 0 and 1.
+     * It stays at 1 when no migration is running.
+     *
+     * @return the migration progress property, read-only
+     */
+    public @NotNull ReadOnlyDoubleProperty migrationProgressProperty() {
+        return migrationProgress.getReadOnlyProperty();
+    }
+
+    /**
+     * Checks whether some accounts are still stored in the legacy format, and can only be unlocked with the legacy master password.
+     *
+     * @return true if a legacy migration has yet to complete
+     */
+    public boolean isMigrationPending() {
+        return accounts.snapshot().accounts().stream().anyMatch(Account::isLegacy);
+    }
+
+    /**
+     * Starts a bulk change on the account list: until the matching {@link #endBulkChange()}, the software and username changes
+     * of the accounts are recorded instead of being fired one by one.
+     * Bulk operations, such as unlocking or loading the whole list, use it so that sorted and filtered views re-evaluate once.
+     * It takes effect right away, rather than on the JavaFX Application Thread, so that no update drained in the meantime is fired on its own.
+     */
+    private void beginBulkChange() {
+        accounts.getMirror().beginBulkChange();
+    }
+
+    /**
+     * Ends the bulk change started by {@link #beginBulkChange()} on the JavaFX Application Thread, once the property updates
+     * queued in the meantime have been applied, and fires them as a single change.
+     */
+    private void endBulkChange() {
+        runOnFx(() -> {
+            FxDispatcher.getInstance().flush();
+            accounts.getMirror().endBulkChange();
+        });
+    }
+
+    private void markUnlocked() {
+        unlocked.set(true);
+        displayReady.set(true);
+    }
+
+    private LegacyMigration.Listener createMigrationListener(Runnable onCheckpoint) {
+        return new LegacyMigration.Listener() {
+            // Only publish whole percentages, to avoid flooding the FX thread
+            private final AtomicInteger lastPercent = new AtomicInteger(-1);
+
+            @Override
+            public void onProgress(int migrated, int total) {
+                final int percent = (int) (100L * migrated / total);
+                if (lastPercent.getAndSet(percent) != percent) runOnFx(() -> migrationProgress.set(percent / 100d));
+            }
+
+            @Override
+            public void onCheckpoint() {
+                onCheckpoint.run();
+            }
+        };
     }
 
     /**
@@ -307,24 +758,45 @@ public final class AccountRepository implements AutoCloseable {
      * use transactions.
      * </p>
      * <p>
-     * This method will wait for any ongoing master password or security version changes to complete
-     * before attempting to decrypt the password, ensuring consistency.
+     * The DEK is read without waiting for a master password change. Results are only cached if their account
+     * was neither edited nor invalidated while decrypting, see {@link AccountDataCache#put}.
+     * </p>
+     * <p>
+     * Recently decrypted accounts are served from an {@link AccountDataCache}: the returned future is then already completed,
+     * so callers can check {@link CompletableFuture#isDone()} to skip any loading feedback.
      * </p>
      *
      * @param account the account whose password to retrieve
      * @return a CompletableFuture that completes with the decrypted password, or null if decryption fails
      */
     public @NotNull CompletableFuture<AccountData> getData(@NotNull Account account) {
-        // Wait for any ongoing master password or security version changes to complete
+        final AccountData cached = dataCache.get(account);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        // Read before decrypting, so that an edit landing in the meantime keeps the result out of the cache
+        final long generation = dataCache.generation();
+
+        // The cache drops the result if the account was invalidated after the generation was read
         return CompletableFuture.supplyAsync(() -> {
                     try {
-                        return account.getData(userPreferences.getDEK());
+                        final AccountData data = account.getData(userPreferences.getDEK());
+                        dataCache.put(account, data, generation);
+                        return data;
                     } catch (GeneralSecurityException e) {
                         throw new RuntimeException("Failed to decrypt account data", e);
                     }
                 });
     }
 
+    /**
+     * Returns the hit, miss and eviction counters of the decrypted data cache used by {@link #getData(Account)}.
+     *
+     * @return a snapshot of the cache counters
+     */
+    public @NotNull AccountDataCache.Metrics getDataCacheMetrics() {
+        return dataCache.getMetrics();
+    }
+
     /**
      * Closes the repository and shuts down the transaction manager.
      * <p>
@@ -336,6 +808,9 @@ public final class AccountRepository implements AutoCloseable {
      */
     @Override
     public void close() {
+        final LazyUnlocker unlocker = lazyUnlocker;
+        if (unlocker != null) unlocker.close();
+        dataCache.clear();
         transactionManager.shutdown();
     }
 
@@ -0,0 +1,378 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javafx.collections.ObservableList;
+import password.manager.app.singletons.FxDispatcher;
+
+/**
+ * Canonical list of the accounts of a repository, which transactions read and write from any thread without waiting for the UI.
+ * <p>
+ * Every write bumps the version of the store and queues a diff for the {@link AccountList} mirrored on the JavaFX Application Thread,
+ * which applies the queued diffs in order, in the pulses of the {@link FxDispatcher}. The mirror therefore lags behind the store,
+ * until every diff up to {@link #version()} has been applied.
+ * </p>
+ * <p>
+ * Account does not override equals, so the store keeps an identity index of the position of each account:
+ * membership and position lookups take constant time, and an account can only be in the store once.
+ * The accounts in the store are also indexed by software and username, see {@link AccountIndex}.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe. Compound operations are exposed as single methods, such as {@link #setAllIfEmpty},
+ * so that callers never hold the lock of the store while it publishes its diffs.
+ * </p>
+ */
+final class AccountStore {
+
+    /**
+     * Immutable view of the store at a given version.
+     *
+     * @param version  the version of the store
+     * @param accounts the accounts, in list order
+     */
+    record Snapshot(long version, @NotNull List<Account> accounts) {}
+
+    /**
+     * An account removed by {@link #removeAll}, with the index it was at.
+     *
+     * @param index   the index of the account before the removal
+     * @param account the removed account
+     */
+    record Removal(int index, @NotNull Account account) {}
+
+    private final List<Account> accounts = new ArrayList<>();
+    // Position of each account in the list, kept in sync by every write
+    private final Map<Account, Integer> positions = new IdentityHashMap<>();
+    private final AccountIndex fieldIndex = new AccountIndex();
+    private final AccountList mirror;
+
+    // Diffs not yet applied to the mirror, guarded by this
+    private final Queue<Diff> pendingDiffs = new ArrayDeque<>();
+    // Serializes the drains, which may run on several threads at once without a toolkit
+    private final Object drainLock = new Object();
+
+    private long version = 0;
+    private Snapshot snapshot = new Snapshot(0, List.of());
+    private volatile long mirroredVersion = 0;
+
+    AccountStore() {
+        this.mirror = new AccountList();
+    }
+
+    /**
+     * @return the list mirrored on the JavaFX Application Thread, to be wrapped before being handed to the UI
+     */
+    @NotNull AccountList getMirror() {
+        return mirror;
+    }
+
+    /**
+     * Returns the current content of the store. The snapshot is shared until the next write, so taking it repeatedly is cheap.
+     *
+     * @return an immutable snapshot
+     */
+    synchronized @NotNull Snapshot snapshot() {
+        if (snapshot == null) snapshot = new Snapshot(version, List.copyOf(accounts));
+        return snapshot;
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * @return the version of the last diff applied to the mirror
+     */
+    long mirroredVersion() {
+        return mirroredVersion;
+    }
+
+    synchronized int size() {
+        return accounts.size();
+    }
+
+    synchronized boolean isEmpty() {
+        return accounts.isEmpty();
+    }
+
+    synchronized boolean contains(@NotNull Account account) {
+        return positions.containsKey(account);
+    }
+
+    synchronized int indexOf(@NotNull Account account) {
+        return positions.getOrDefault(account, -1);
+    }
+
+    /**
+     * @return the accounts whose software matches the given one, ignoring case, in list order
+     */
+    @NotNull List<Account> findBySoftware(@NotNull String software) {
+        return inListOrder(fieldIndex.findBySoftware(software));
+    }
+
+    /**
+     * @return the accounts whose username matches the given one, ignoring case, in list order
+     */
+    @NotNull List<Account> findByUsername(@NotNull String username) {
+        return inListOrder(fieldIndex.findByUsername(username));
+    }
+
+    /**
+     * @return a predicate accepting the accounts matching the given query, see {@link AccountIndex#search}
+     */
+    @NotNull Predicate<Account> search(@NotNull String query, boolean matchCase, boolean wholeWord,
+                                       @Nullable Predicate<Account> previous, @NotNull BooleanSupplier isCancelled) {
+        return fieldIndex.search(query, matchCase, wholeWord, previous, isCancelled);
+    }
+
+    /**
+     * @return the most used software names starting with the given prefix, see {@link AccountIndex#suggestSoftware}
+     */
+    @NotNull List<String> suggestSoftware(@NotNull String prefix, int limit) {
+        return fieldIndex.suggestSoftware(prefix, limit);
+    }
+
+    /**
+     * @return the most used usernames starting with the given prefix, see {@link AccountIndex#suggestUsername}
+     */
+    @NotNull List<String> suggestUsername(@NotNull String prefix, int limit) {
+        return fieldIndex.suggestUsername(prefix, limit);
+    }
+
+    /**
+     * @return a predicate accepting the accounts matching the given query despite typos, see {@link AccountIndex#fuzzySearch}
+     */
+    @NotNull RankedSearch fuzzySearch(@NotNull String query, @NotNull BooleanSupplier isCancelled) {
+        return fieldIndex.fuzzySearch(query, isCancelled);
+    }
+
+    /**
+     * Counts an access to the given account, see {@link AccountIndex#recordAccess}.
+     */
+    void recordAccess(@NotNull Account account) {
+        fieldIndex.recordAccess(account);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the account is already in the store
+     */
+    void add(@NotNull Account account) {
+        synchronized (this) {
+            insert(accounts.size(), account);
+        }
+        publish();
+    }
+
+    /**
+     * Inserts an account at the given position, or at the end if the store has shrunk below it in the meantime.
+     *
+     * @throws IllegalArgumentException if the account is already in the store
+     */
+    void add(int index, @NotNull Account account) {
+        synchronized (this) {
+            insert(Math.clamp(index, 0, accounts.size()), account);
+        }
+        publish();
+    }
+
+    /**
+     * @return the index the account was at, -1 if it was not in the store
+     */
+    int remove(@NotNull Account account) {
+        final int index;
+        synchronized (this) {
+            final Integer position = positions.remove(account);
+            if (position == null) return -1;
+
+            index = position;
+            accounts.remove(index);
+            reindexFrom(index);
+            fieldIndex.untrack(account);
+            record(new Removed(version + 1, index));
+        }
+        publish();
+        return index;
+    }
+
+    /**
+     * Removes the given accounts in a single pass over the store, rather than one pass for each of them.
+     *
+     * @return the removed accounts with the index they were at, in ascending order of index; accounts that were not in the store are skipped
+     */
+    @NotNull List<Removal> removeAll(@NotNull Collection<Account> toRemove) {
+        final List<Removal> removals;
+        synchronized (this) {
+            final Set<Account> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Account account : toRemove) {
+                if (positions.containsKey(account)) removed.add(account);
+            }
+            if (removed.isEmpty()) return List.of();
+
+            removals = new ArrayList<>(removed.size());
+            final List<Account> retained = new ArrayList<>(accounts.size() - removed.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                final Account account = accounts.get(i);
+                if (removed.contains(account)) removals.add(new Removal(i, account));
+                else retained.add(account);
+            }
+
+            accounts.clear();
+            accounts.addAll(retained);
+            for (Account account : removed) {
+                positions.remove(account);
+                fieldIndex.untrack(account);
+            }
+            reindexFrom(removals.getFirst().index());
+            record(new RemovedAll(version + 1, removed));
+        }
+        publish();
+        return removals;
+    }
+
+    /**
+     * Fills the store, as long as it is still empty.
+     *
+     * @return false if the store already contains some accounts, in which case it is left untouched
+     * @throws IllegalArgumentException if an account appears more than once
+     */
+    boolean setAllIfEmpty(@NotNull Collection<Account> newAccounts) {
+        synchronized (this) {
+            if (!accounts.isEmpty()) return false;
+
+            accounts.addAll(newAccounts);
+            reindexFrom(0);
+            if (positions.size() != accounts.size()) {
+                accounts.clear();
+                positions.clear();
+                throw new IllegalArgumentException("Accounts cannot appear more than once");
+            }
+            accounts.forEach(fieldIndex::track);
+            record(new Replaced(version + 1, List.copyOf(newAccounts)));
+        }
+        publish();
+        return true;
+    }
+
+    // Called with the lock held
+    private void insert(int index, Account account) {
+        if (positions.containsKey(account)) throw new IllegalArgumentException("Account is already in the store");
+
+        accounts.add(index, account);
+        reindexFrom(index);
+        fieldIndex.track(account);
+        record(new Added(version + 1, index, account));
+    }
+
+    // The lookups of the field index are unordered, accounts removed in the meantime are dropped
+    private synchronized List<Account> inListOrder(List<Account> found) {
+        return found.stream()
+                .filter(positions::containsKey)
+                .sorted(Comparator.comparingInt(positions::get))
+                .toList();
+    }
+
+    // Called with the lock held, after the accounts from the given position on have moved
+    private void reindexFrom(int from) {
+        for (int i = from; i < accounts.size(); i++) positions.put(accounts.get(i), i);
+    }
+
+    // Called with the lock held, after the write
+    private void record(Diff diff) {
+        version = diff.version();
+        snapshot = null;
+        pendingDiffs.add(diff);
+    }
+
+    // Called without the lock held: without a toolkit, the dispatcher applies the diffs right away on this thread
+    private void publish() {
+        // A single drain is queued for the store, however many diffs are waiting
+        FxDispatcher.getInstance().submit(this, this::applyPendingDiffs);
+    }
+
+    private void applyPendingDiffs() {
+        synchronized (drainLock) {
+            final List<Diff> diffs;
+            synchronized (this) {
+                if (pendingDiffs.isEmpty()) return;
+                diffs = new ArrayList<>(pendingDiffs);
+                pendingDiffs.clear();
+            }
+
+            synchronized (mirror) {
+                for (Diff diff : diffs) {
+                    diff.applyTo(mirror);
+                    mirroredVersion = diff.version();
+                }
+            }
+        }
+    }
+
+    /**
+     * A write to replay on the mirror, which went through the same writes in the same order.
+     */
+    private sealed interface Diff {
+        long version();
+
+        void applyTo(@NotNull ObservableList<Account> target);
+    }
+
+    private record Added(long version, int index, Account account) implements Diff {
+        @Override
+        public void applyTo(@NotNull ObservableList<Account> target) {
+            target.add(index, account);
+        }
+    }
+
+    private record Removed(long version, int index) implements Diff {
+        @Override
+        public void applyTo(@NotNull ObservableList<Account> target) {
+            target.remove(index);
+        }
+    }
+
+    private record RemovedAll(long version, Set<Account> accounts) implements Diff {
+        @Override
+        public void applyTo(@NotNull ObservableList<Account> target) {
+            target.removeAll(accounts);
+        }
+    }
+
+    private record Replaced(long version, List<Account> accounts) implements Diff {
+        @Override
+        public void applyTo(@NotNull ObservableList<Account> target) {
+            target.setAll(accounts);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.bouncycastle.crypto.PasswordConverter;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.bouncycastle.util.Pack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Argon2id (RFC 9106, version 1.3) with lane-parallel memory filling.
+ * <p>
+ * Bouncy Castle's {@code Argon2BytesGenerator} fills the lanes one after the other on the calling thread, so the configured
+ * parallelism only shapes the output and never shortens the computation. Here, within each slice, the segments of the
+ * different lanes are filled concurrently on the {@link ForkJoinPool#commonPool() common pool}, with the calling thread
+ * taking one of them. Lanes only reference blocks of their own segment or of already completed slices, so the join at the end
+ * of every slice is the only synchronization needed.
+ * </p>
+ * <p>
+ * The output is byte-identical to Bouncy Castle's generator for the same parameters, passwords are converted with the
+ * same UTF-8 {@link PasswordConverter}. The memory is a single {@code long[]}, wiped once the tag has been computed.
+ * </p>
+ */
+public final class Argon2 {
+
+    public static final int VERSION = 0x13;
+    public static final int MIN_OUTPUT_LENGTH = 4;
+
+    private static final int TYPE_ID = 2; // Argon2id
+    private static final int SYNC_POINTS = 4;
+    private static final int BLOCK_LONGS = 128; // 1 KiB blocks
+    private static final int BLOCK_BYTES = BLOCK_LONGS * Long.BYTES;
+    private static final int PREHASH_DIGEST_LENGTH = 64;
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / BLOCK_LONGS;
+
+    private Argon2() {} // Prevent instantiation
+
+    /**
+     * Derives {@code out.length} bytes from the given password, as {@code Argon2BytesGenerator.generateBytes(char[], byte[])} does.
+     *
+     * @param password   the password, converted to UTF-8
+     * @param salt       the salt
+     * @param memoryKiB  the memory cost, in KiB
+     * @param iterations the number of passes over the memory
+     * @param lanes      the degree of parallelism
+     * @param out        the output buffer, at least {@value #MIN_OUTPUT_LENGTH} bytes long
+     */
+    public static void generateBytes(@NotNull char[] password, @NotNull byte[] salt, int memoryKiB, int iterations, int lanes, @NotNull byte[] out) {
+        if (password == null) throw new IllegalArgumentException("Password cannot be null");
+
+        final byte[] passwordBytes = PasswordConverter.UTF8.convert(password);
+        try {
+            generateBytes(passwordBytes, salt, null, null, memoryKiB, iterations, lanes, out);
+        } finally {
+            Arrays.fill(passwordBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Derives {@code out.length} bytes from the given password, with an optional secret and associated data.
+     *
+     * @param password   the password
+     * @param salt       the salt
+     * @param secret     the secret (key), can be null
+     * @param additional the associated data, can be null
+     * @param memoryKiB  the memory cost, in KiB
+     * @param iterations the number of passes over the memory
+     * @param lanes      the degree of parallelism
+     * @param out        the output buffer, at least {@value #MIN_OUTPUT_LENGTH} bytes long
+     */
+    public static void generateBytes(@NotNull byte[] password, @NotNull byte[] salt, @Nullable byte[] secret, @Nullable byte[] additional,
+                                     int memoryKiB, int iterations, int lanes, @NotNull byte[] out) {
+        if (password == null) throw new IllegalArgumentException("Password cannot be null");
+        if (salt == null) throw new IllegalArgumentException("Salt cannot be null");
+        if (out == null || out.length < MIN_OUTPUT_LENGTH) throw new IllegalArgumentException("Output length must be at least " + MIN_OUTPUT_LENGTH);
+        if (lanes < 1) throw new IllegalArgumentException("Lanes must be at least 1");
+        if (iterations < 1) throw new IllegalArgumentException("Iterations must be at least 1");
+        if (memoryKiB < 2 * lanes) throw new IllegalArgumentException("Memory must be at least 2 * lanes");
+
+        final byte[] h0 = initialHash(password, salt, secret, additional, memoryKiB, iterations, lanes, out.length);
+        final Instance instance = new Instance(memoryKiB, iterations, lanes);
+        try {
+            instance.initialize(h0);
+            instance.fill();
+            instance.finish(out);
+        } finally {
+            Arrays.fill(h0, (byte) 0);
+            instance.wipe();
+        }
+    }
+
+    // #region Hashing
+
+    private static byte[] initialHash(byte[] password, byte[] salt, byte[] secret, byte[] additional,
+                                      int memoryKiB, int iterations, int lanes, int outLength) {
+        final Blake2bDigest digest = new Blake2bDigest(PREHASH_DIGEST_LENGTH * 8);
+        final byte[] h0 = new byte[PREHASH_DIGEST_LENGTH];
+
+        updateInt(digest, lanes);
+        updateInt(digest, outLength);
+        updateInt(digest, memoryKiB);
+        updateInt(digest, iterations);
+        updateInt(digest, VERSION);
+        updateInt(digest, TYPE_ID);
+        updateBytes(digest, password);
+        updateBytes(digest, salt);
+        updateBytes(digest, secret);
+        updateBytes(digest, additional);
+
+        digest.doFinal(h0, 0);
+        return h0;
+    }
+
+    /**
+     * The variable-length hash function H' of RFC 9106, section 3.3.
+     */
+    private static void hashLong(byte[] input, byte[] out) {
+        final int outLength = out.length;
+        final byte[] lengthBytes = Pack.intToLittleEndian(outLength);
+
+        if (outLength <= PREHASH_DIGEST_LENGTH) {
+            final Blake2bDigest digest = new Blake2bDigest(outLength * 8);
+            digest.update(lengthBytes, 0, lengthBytes.length);
+            digest.update(input, 0, input.length);
+            digest.doFinal(out, 0);
+            return;
+        }
+
+        final Blake2bDigest digest = new Blake2bDigest(PREHASH_DIGEST_LENGTH * 8);
+        final byte[] v = new byte[PREHASH_DIGEST_LENGTH];
+        digest.update(lengthBytes, 0, lengthBytes.length);
+        digest.update(input, 0, input.length);
+        digest.doFinal(v, 0);
+
+        // Every intermediate hash contributes its first half
+        final int half = PREHASH_DIGEST_LENGTH / 2;
+        System.arraycopy(v, 0, out, 0, half);
+        int position = half, remaining = outLength - half;
+        while (remaining > PREHASH_DIGEST_LENGTH) {
+            digest.update(v, 0, v.length);
+            digest.doFinal(v, 0);
+            System.arraycopy(v, 0, out, position, half);
+            position += half;
+            remaining -= half;
+        }
+
+        final Blake2bDigest last = new Blake2bDigest(remaining * 8);
+        last.update(v, 0, v.length);
+        last.doFinal(out, position);
+        Arrays.fill(v, (byte) 0);
+    }
+
+    private static void updateInt(Blake2bDigest digest, int value) {
+        digest.update((byte) value);
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 24));
+    }
+
+    private static void updateBytes(Blake2bDigest digest, byte[] bytes) {
+        if (bytes == null) {
+            updateInt(digest, 0);
+            return;
+        }
+        updateInt(digest, bytes.length);
+        digest.update(bytes, 0, bytes.length);
+    }
+
+    // #endregion
+
+    // #region Memory filling
+
+    private static final class Instance {
+        private final int iterations, lanes;
+        private final int segmentLength, laneLength, memoryBlocks;
+        private final long[] memory;
+
+        private Instance(int memoryKiB, int iterations, int lanes) {
+            // Same rounding as the reference implementation: at least two blocks per segment, and a whole number of segments per lane
+            final int segmentLength = Math.max(memoryKiB, 2 * SYNC_POINTS * lanes) / (lanes * SYNC_POINTS);
+            final int blocks = segmentLength * lanes * SYNC_POINTS;
+            if (blocks > MAX_BLOCKS) throw new IllegalArgumentException("Memory cannot exceed " + MAX_BLOCKS + " KiB");
+
+            this.iterations = iterations;
+            this.lanes = lanes;
+            this.segmentLength = segmentLength;
+            this.laneLength = segmentLength * SYNC_POINTS;
+            this.memoryBlocks = blocks;
+            this.memory = new long[blocks * BLOCK_LONGS];
+        }
+
+        private void initialize(byte[] h0) {
+            final byte[] seed = Arrays.copyOf(h0, PREHASH_DIGEST_LENGTH + 8);
+            final byte[] block = new byte[BLOCK_BYTES];
+
+            for (int lane = 0; lane < lanes; lane++) {
+                Pack.intToLittleEndian(lane, seed, PREHASH_DIGEST_LENGTH + 4);
+                for (int i = 0; i < 2; i++) {
+                    Pack.intToLittleEndian(i, seed, PREHASH_DIGEST_LENGTH);
+                    hashLong(seed, block);
+                    Pack.littleEndianToLong(block, 0, memory, (lane * laneLength + i) * BLOCK_LONGS, BLOCK_LONGS);
+                }
+            }
+
+            Arrays.fill(seed, (byte) 0);
+            Arrays.fill(block, (byte) 0);
+        }
+
+        private void fill() {
+            for (int pass = 0; pass < iterations; pass++) {
+                for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                    fillSlice(pass, slice);
+                }
+            }
+        }
+
+        private void fillSlice(int pass, int slice) {
+            if (lanes == 1) {
+                fillSegment(pass, 0, slice);
+                return;
+            }
+
+            // The calling thread fills the first segment, the others are forked to the common pool
+            final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[lanes];
+            for (int lane = 0; lane < lanes; lane++) {
+                final int currentLane = lane;
+                tasks[lane] = ForkJoinTask.adapt(() -> fillSegment(pass, currentLane, slice));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+
+        private void fillSegment(int pass, int lane, int slice) {
+            final long[] r = new long[BLOCK_LONGS];
+            final long[] tmp = new long[BLOCK_LONGS];
+
+            // Argon2id uses data-independent addressing for the first half of the first pass
+            final boolean dataIndependent = pass == 0 && slice < SYNC_POINTS / 2;
+            long[] input = null, addresses = null;
+            if (dataIndependent) {
+                input = new long[BLOCK_LONGS];
+                addresses = new long[BLOCK_LONGS];
+                input[0] = pass;
+                input[1] = lane;
+                input[2] = slice;
+                input[3] = memoryBlocks;
+                input[4] = iterations;
+                input[5] = TYPE_ID;
+            }
+
+            // The first two blocks of each lane were computed from H0
+            int startIndex = 0;
+            if (pass == 0 && slice == 0) {
+                startIndex = 2;
+                if (dataIndependent) nextAddresses(input, addresses, r);
+            }
+
+            int currentOffset = lane * laneLength + slice * segmentLength + startIndex;
+            int previousOffset = (currentOffset % laneLength == 0) ? currentOffset + laneLength - 1 : currentOffset - 1;
+
+            for (int index = startIndex; index < segmentLength; index++, currentOffset++, previousOffset++) {
+                if (currentOffset % laneLength == 1) previousOffset = currentOffset - 1;
+
+                final long pseudoRandom;
+                if (dataIndependent) {
+                    if (index % BLOCK_LONGS == 0) nextAddresses(input, addresses, r);
+                    pseudoRandom = addresses[index % BLOCK_LONGS];
+                } else {
+                    pseudoRandom = memory[previousOffset * BLOCK_LONGS];
+                }
+
+                final int referenceLane = (pass == 0 && slice == 0) ? lane : (int) ((pseudoRandom >>> 32) % lanes);
+                final int referenceIndex = indexAlpha(pass, slice, index, pseudoRandom & 0xFFFFFFFFL, referenceLane == lane);
+                final int referenceOffset = referenceLane * laneLength + referenceIndex;
+
+                fillBlock(previousOffset * BLOCK_LONGS, referenceOffset * BLOCK_LONGS, currentOffset * BLOCK_LONGS, pass != 0, r, tmp);
+            }
+        }
+
+        /**
+         * Maps the lower half of a pseudo-random value to a block of the reference lane, see RFC 9106, section 3.4.1.2.
+         */
+        private int indexAlpha(int pass, int slice, int index, long pseudoRandom, boolean sameLane) {
+            final long referenceAreaSize;
+            if (pass == 0) {
+                if (slice == 0) referenceAreaSize = index - 1;
+                else if (sameLane) referenceAreaSize = (long) slice * segmentLength + index - 1;
+                else referenceAreaSize = (long) slice * segmentLength + (index == 0 ? -1 : 0);
+            } else {
+                if (sameLane) referenceAreaSize = laneLength - segmentLength + index - 1;
+                else referenceAreaSize = laneLength - segmentLength + (index == 0 ? -1 : 0);
+            }
+
+            long relativePosition = (pseudoRandom * pseudoRandom) >>> 32;
+            relativePosition = referenceAreaSize - 1 - ((referenceAreaSize * relativePosition) >>> 32);
+
+            final long startPosition = (pass != 0 && slice != SYNC_POINTS - 1) ? (long) (slice + 1) * segmentLength : 0;
+            return (int) ((startPosition + relativePosition) % laneLength);
+        }
+
+        private void fillBlock(int previous, int reference, int next, boolean withXor, long[] r, long[] tmp) {
+            final long[] memory = this.memory;
+            for (int i = 0; i < BLOCK_LONGS; i++) {
+                r[i] = memory[previous + i] ^ memory[reference + i];
+                tmp[i] = withXor ? r[i] ^ memory[next + i] : r[i];
+            }
+
+            permute(r);
+
+            for (int i = 0; i < BLOCK_LONGS; i++) {
+                memory[next + i] = tmp[i] ^ r[i];
+            }
+        }
+
+        private void finish(byte[] out) {
+            final long[] last = new long[BLOCK_LONGS];
+            for (int lane = 0; lane < lanes; lane++) {
+                final int offset = (lane * laneLength + laneLength - 1) * BLOCK_LONGS;
+                for (int i = 0; i < BLOCK_LONGS; i++) last[i] ^= memory[offset + i];
+            }
+
+            final byte[] block = new byte[BLOCK_BYTES];
+            Pack.longToLittleEndian(last, block, 0);
+            hashLong(block, out);
+
+            Arrays.fill(last, 0L);
+            Arrays.fill(block, (byte) 0);
+        }
+
+        private void wipe() {
+            Arrays.fill(memory, 0L);
+        }
+    }
+
+    // #endregion
+
+    // #region Compression function
+
+    /**
+     * Computes the next block of addresses for data-independent addressing, as G(0, G(0, input)) with an incremented counter.
+     */
+    private static void nextAddresses(long[] input, long[] addresses, long[] r) {
+        input[6]++;
+        compress(input, addresses, r);
+        compress(addresses, addresses, r);
+    }
+
+    /**
+     * Computes {@code out = G(0, in)}, which reduces to {@code P(in) ^ in}. {@code out} may be the same array as {@code in}.
+     */
+    private static void compress(long[] in, long[] out, long[] r) {
+        System.arraycopy(in, 0, r, 0, BLOCK_LONGS);
+        permute(r);
+        for (int i = 0; i < BLOCK_LONGS; i++) out[i] = in[i] ^ r[i];
+    }
+
+    /**
+     * The permutation P of RFC 9106, section 3.6, applied to the rows and then to the columns of the block.
+     */
+    private static void permute(long[] v) {
+        for (int i = 0; i < 8; i++) {
+            final int b = 16 * i;
+            round(v, b, b + 1, b + 2, b + 3, b + 4, b + 5, b + 6, b + 7,
+                     b + 8, b + 9, b + 10, b + 11, b + 12, b + 13, b + 14, b + 15);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            final int b = 2 * i;
+            round(v, b, b + 1, b + 16, b + 17, b + 32, b + 33, b + 48, b + 49,
+                     b + 64, b + 65, b + 80, b + 81, b + 96, b + 97, b + 112, b + 113);
+        }
+    }
+
+    private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7,
+                              int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        quarterRound(v, v0, v4, v8, v12);
+        quarterRound(v, v1, v5, v9, v13);
+        quarterRound(v, v2, v6, v10, v14);
+        quarterRound(v, v3, v7, v11, v15);
+
+        quarterRound(v, v0, v5, v10, v15);
+        quarterRound(v, v1, v6, v11, v12);
+        quarterRound(v, v2, v7, v8, v13);
+        quarterRound(v, v3, v4, v9, v14);
+    }
+
+    private static void quarterRound(long[] v, int a, int b, int c, int d) {
+        long va = v[a], vb = v[b], vc = v[c], vd = v[d];
+
+        va = blaMka(va, vb);
+        vd = Long.rotateRight(vd ^ va, 32);
+        vc = blaMka(vc, vd);
+        vb = Long.rotateRight(vb ^ vc, 24);
+        va = blaMka(va, vb);
+        vd = Long.rotateRight(vd ^ va, 16);
+        vc = blaMka(vc, vd);
+        vb = Long.rotateRight(vb ^ vc, 63);
+
+        v[a] = va;
+        v[b] = vb;
+        v[c] = vc;
+        v[d] = vd;
+    }
+
+    private static long blaMka(long x, long y) {
+        return x + y + 2 * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+    }
+
+    // #endregion
+}
@@ -0,0 +1,149 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Encrypted snapshot of the software and username of every account, saved next to the accounts in the data file.
+ * <p>
+ * Decrypting each account record at login takes one key derivation and one AEAD operation per account, so with large vaults the list
+ * stays empty for a while. This index holds all the displayed fields in a single AEAD message, keyed from the DEK like the account records:
+ * it is opened with one derivation and one decryption, and the list can be shown right away while the records are verified in the background.
+ * </p>
+ * <p>
+ * The plaintext is the number of entries as a 4-byte big-endian integer, followed by the entries in the sorting order of the vault.
+ * Each entry is the index of its account in the saved list, followed by the software and the username as UTF-8, each prefixed by its length.
+ * </p>
+ *
+ * @param salt  the salt the index key is derived with
+ * @param nonce the nonce of the AEAD message
+ * @param data  the sealed entries
+ */
+public record DisplayIndex(@NotNull byte[] salt, @NotNull byte[] nonce, @NotNull byte[] data) {
+
+    private static final int SALT_LENGTH = 16;
+    private static final int NONCE_LENGTH = 12;
+    private static final String INFO = "display-index";
+
+    public DisplayIndex {
+        if (salt == null || salt.length != SALT_LENGTH) throw new IllegalArgumentException("Salt should be not null and " + SALT_LENGTH + " bytes long");
+        if (nonce == null || nonce.length != NONCE_LENGTH) throw new IllegalArgumentException("Nonce should be not null and " + NONCE_LENGTH + " bytes long");
+        if (data == null || data.length == 0) throw new IllegalArgumentException("Data cannot be null or empty");
+    }
+
+    /**
+     * A single entry of the index.
+     *
+     * @param index    the index of the account in the saved list
+     * @param software the software name of the account
+     * @param username the username of the account
+     */
+    record Entry(int index, @NotNull String software, @NotNull String username) {}
+
+    /**
+     * Seals the displayed fields of the given accounts, which must all be displayed.
+     *
+     * @param accounts the accounts, in the order they are saved
+     * @param order    the sorting order of the vault, null to keep the saved order
+     * @param DEK      the data encryption key
+     * @return the sealed index
+     * @throws GeneralSecurityException if the encryption fails
+     */
+    static @NotNull DisplayIndex seal(@NotNull List<Account> accounts, @Nullable Comparator<Account> order, @NotNull KeyMaterial DEK) throws GeneralSecurityException {
+        final List<Entry> entries = new ArrayList<>(accounts.size());
+        int plainLength = Integer.BYTES;
+        for (int i = 0; i < accounts.size(); i++) {
+            final Account account = accounts.get(i);
+            final Entry entry = new Entry(i, account.getSoftware(), account.getUsername());
+            entries.add(entry);
+            plainLength += 3 * Integer.BYTES + AES.utf8Length(entry.software()) + AES.utf8Length(entry.username());
+        }
+        if (order != null) entries.sort((a, b) -> order.compare(accounts.get(a.index()), accounts.get(b.index())));
+
+        final ByteBuffer plain = ByteBuffer.allocate(plainLength);
+        try {
+            plain.putInt(entries.size());
+            for (Entry entry : entries) {
+                plain.putInt(entry.index());
+                putField(plain, entry.software());
+                putField(plain, entry.username());
+            }
+
+            final byte[] salt = RandomSource.nextBytes(SALT_LENGTH);
+            final byte[] nonce = RandomSource.nextBytes(NONCE_LENGTH);
+            return new DisplayIndex(salt, nonce, AES.deriveAndEncrypt(plain.array(), DEK, salt, INFO, nonce));
+        } finally {
+            Arrays.fill(plain.array(), (byte) 0);
+        }
+    }
+
+    /**
+     * Opens the index, checking that it describes exactly {@code accountCount} accounts, each of them once.
+     *
+     * @param DEK          the data encryption key
+     * @param accountCount the number of loaded accounts
+     * @return the entries, in the sorting order they were saved with
+     * @throws GeneralSecurityException if the decryption fails, or if the index does not match the accounts
+     */
+    @NotNull List<Entry> open(@NotNull KeyMaterial DEK, int accountCount) throws GeneralSecurityException {
+        final ByteBuffer plain = ByteBuffer.wrap(AES.deriveAndDecrypt(data, DEK, salt, INFO, nonce));
+        try {
+            final int count = plain.remaining() >= Integer.BYTES ? plain.getInt() : -1;
+            if (count != accountCount) throw new GeneralSecurityException("Display index does not match the accounts");
+
+            final boolean[] seen = new boolean[count];
+            final List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final int index = plain.remaining() >= Integer.BYTES ? plain.getInt() : -1;
+                if (index < 0 || index >= count || seen[index]) throw new GeneralSecurityException("Malformed display index");
+                seen[index] = true;
+                entries.add(new Entry(index, readField(plain), readField(plain)));
+            }
+            return entries;
+        } finally {
+            Arrays.fill(plain.array(), (byte) 0);
+        }
+    }
+
+    private static void putField(ByteBuffer plain, String field) {
+        final byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        plain.putInt(bytes.length).put(bytes);
+        Arrays.fill(bytes, (byte) 0);
+    }
+
+    private static String readField(ByteBuffer plain) throws GeneralSecurityException {
+        final int length = plain.remaining() >= Integer.BYTES ? plain.getInt() : -1;
+        if (length < 0 || length > plain.remaining()) throw new GeneralSecurityException("Malformed display index");
+
+        final String field = new String(plain.array(), plain.position(), length, StandardCharsets.UTF_8);
+        plain.position(plain.position() + length);
+        return field;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Trie of the lower-cased words of the displayed fields of the accounts, walked by a Levenshtein automaton to answer the fuzzy searches of the manager.
+ * <p>
+ * A query word matches a field word that starts with it, or that is within a few edits (insertions, deletions or substitutions) of it,
+ * depending on its length, see {@link #maxDistance}: {@code "gihtub"} finds {@code "GitHub"}. An account matches when every word of the query
+ * matches one of its words.
+ * </p>
+ * <p>
+ * The automaton is simulated with the rows of the edit distance matrix: walking down the trie computes one row per character,
+ * so words sharing a prefix share its rows, and a branch is left as soon as its row has no cell within the maximum distance,
+ * as no word below it can be close enough anymore. Only the handful of branches close to the query are walked, instead of every distinct word.
+ * </p>
+ * <p>
+ * Thread Safety: This class is not thread-safe, it is guarded by the {@link AccountIndex} owning it. Searches do not modify it,
+ * so they can run concurrently with one another. Only {@link #find} reads the trie, the {@link Hits} it returns are matched
+ * once the lock has been released.
+ * </p>
+ */
+final class FuzzyIndex {
+    // How many trie nodes are walked, or words matched, between two checks for cancellation
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    private final Node root = new Node();
+
+    void add(@NotNull Account account, @NotNull Account.DisplayFields fields) {
+        for (String word : words(fields)) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) node = node.childOrCreate(word.charAt(i));
+
+            if (node.accounts == null) node.accounts = Collections.newSetFromMap(new IdentityHashMap<>());
+            node.accounts.add(account);
+        }
+    }
+
+    void remove(@NotNull Account account, @NotNull Account.DisplayFields fields) {
+        for (String word : words(fields)) remove(root, word, 0, account);
+    }
+
+    /**
+     * Finds the words close to each word of the given query, copying their accounts out of the trie.
+     * This is the only part of a search that reads the trie, the returned hits are matched on their own, see {@link Hits#matches}.
+     *
+     * @param queryWords  the words of the query, see {@link #queryWords}
+     * @param isCancelled polled while searching, the search is abandoned once it returns true
+     * @return the words found for each word of the query
+     * @throws CancellationException if the search has been cancelled
+     */
+    @NotNull Hits find(@NotNull List<String> queryWords, @NotNull BooleanSupplier isCancelled) {
+        final Walk walk = new Walk(isCancelled);
+        final List<List<Hit>> hits = new ArrayList<>(queryWords.size());
+        for (String queryWord : queryWords) {
+            final List<Hit> wordHits = new ArrayList<>();
+
+            // Words starting with the query word, which is being typed
+            final Node prefix = root.find(queryWord);
+            if (prefix != null) collect(prefix, wordHits);
+
+            // Words a few edits away from it
+            final int maxDistance = maxDistance(queryWord);
+            if (maxDistance > 0) walk.run(root, queryWord, maxDistance, wordHits);
+
+            // Every query word must match, no account can anymore
+            if (wordHits.isEmpty()) return Hits.NONE;
+            hits.add(wordHits);
+        }
+        return new Hits(hits);
+    }
+
+    /**
+     * Checks how well the given fields match a query, the way {@link #search} does.
+     *
+     * @param fields     the displayed fields of the account
+     * @param queryWords the words of the query, see {@link #queryWords}
+     * @return how well the fields match the query, or null if they do not
+     */
+    static @Nullable Match match(@NotNull Account.DisplayFields fields, @NotNull List<String> queryWords) {
+        if (queryWords.isEmpty()) return null;
+
+        final List<String> words = words(fields);
+        Match result = null;
+        for (String queryWord : queryWords) {
+            final int maxDistance = maxDistance(queryWord);
+            Match best = null;
+            for (String word : words) {
+                final Match match = word.startsWith(queryWord) ? Match.PREFIX : new Match(distance(queryWord, word, maxDistance), 0);
+                if (match.distance() <= maxDistance) best = best != null ? Match.best(best, match) : match;
+            }
+
+            if (best == null) return null;
+            result = result != null ? result.plus(best) : best;
+        }
+        return result;
+    }
+
+    /**
+     * @return the lower-cased words of the given query, split as the software of the accounts is
+     */
+    static @NotNull List<String> queryWords(@NotNull String query) {
+        final List<String> words = new ArrayList<>();
+        for (String word : SearchIndex.SOFTWARE_SEPARATOR.split(SearchIndex.fold(query))) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * The longer the word, the more typos it may contain: none below three characters, where a single edit turns most words into
+     * most others, one up to five characters, and two from six characters on.
+     *
+     * @param word the query word
+     * @return how many edits a field word may be away from the given query word
+     */
+    static int maxDistance(@NotNull String word) {
+        final int length = word.length();
+        return length < 3 ? 0 : length < 6 ? 1 : 2;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two words, giving up as soon as it exceeds the given bound.
+     *
+     * @return the distance, or {@code max + 1} if it exceeds {@code max}
+     */
+    static int distance(@NotNull String a, @NotNull String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) return max + 1;
+
+        int[] previous = new int[a.length() + 1], current = new int[a.length() + 1];
+        for (int j = 0; j <= a.length(); j++) previous[j] = j;
+
+        for (int i = 1; i <= b.length(); i++) {
+            if (nextRow(previous, current, i, b.charAt(i - 1), a) > max) return max + 1;
+
+            final int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[a.length()], max + 1);
+    }
+
+    /**
+     * Computes the row of the edit distance matrix for the next character of a word, from the row of the previous one.
+     *
+     * @param depth the length of the word so far, including this character
+     * @return the smallest distance in the row, no word continuing this one can be closer to the query
+     */
+    private static int nextRow(int[] previous, int[] current, int depth, char c, String query) {
+        current[0] = depth;
+        int rowMin = depth;
+        for (int j = 1; j <= query.length(); j++) {
+            final int substitution = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+            current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            rowMin = Math.min(rowMin, current[j]);
+        }
+        return rowMin;
+    }
+
+    // Returns true if the node is left with neither accounts nor children, so that its parent drops it
+    private static boolean remove(Node node, String word, int depth, Account account) {
+        if (depth == word.length()) {
+            if (node.accounts != null && node.accounts.remove(account) && node.accounts.isEmpty()) node.accounts = null;
+        } else {
+            final int index = node.indexOf(word.charAt(depth));
+            if (index < 0) return false;
+            if (remove(node.children[index], word, depth + 1, account)) node.removeChild(index);
+        }
+        return node.accounts == null && node.size == 0;
+    }
+
+    private static void collect(Node node, List<Hit> hits) {
+        if (node.accounts != null) hits.add(new Hit(node.accounts.toArray(Account[]::new), Match.PREFIX));
+        for (int i = 0; i < node.size; i++) collect(node.children[i], hits);
+    }
+
+    private static List<String> words(Account.DisplayFields fields) {
+        final List<String> words = new ArrayList<>();
+        for (String word : SearchIndex.SOFTWARE_SEPARATOR.split(SearchIndex.fold(fields.software()))) {
+            if (!word.isEmpty() && !words.contains(word)) words.add(word);
+        }
+        for (String word : SearchIndex.USERNAME_SEPARATOR.split(SearchIndex.fold(fields.username()))) {
+            if (!word.isEmpty() && !words.contains(word)) words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * State of the walks of a single search, so that concurrent searches do not share any.
+     */
+    private static final class Walk {
+        private final BooleanSupplier isCancelled;
+        // Rows of the edit distance matrix, one per depth of the walk, reused by every word of the query
+        private int[][] rows = new int[0][];
+        private int walked = 0;
+
+        private Walk(BooleanSupplier isCancelled) {
+            this.isCancelled = isCancelled;
+        }
+
+        private void run(Node root, String queryWord, int maxDistance, List<Hit> hits) {
+            final int[] first = row(0, queryWord.length());
+            for (int j = 0; j <= queryWord.length(); j++) first[j] = j;
+            for (int i = 0; i < root.size; i++) walk(root.children[i], root.labels[i], 1, queryWord, maxDistance, hits);
+        }
+
+        private void walk(Node node, char c, int depth, String queryWord, int maxDistance, List<Hit> hits) {
+            if (++walked % CANCELLATION_CHECK_INTERVAL == 0 && isCancelled.getAsBoolean()) throw new CancellationException("Search cancelled");
+
+            final int[] current = row(depth, queryWord.length());
+            if (nextRow(rows[depth - 1], current, depth, c, queryWord) > maxDistance) return;
+
+            final int distance = current[queryWord.length()];
+            if (distance <= maxDistance && node.accounts != null) hits.add(new Hit(node.accounts.toArray(Account[]::new), new Match(distance, 0)));
+
+            // The words below are longer than the query by more than the maximum distance
+            if (depth - queryWord.length() >= maxDistance) return;
+            for (int i = 0; i < node.size; i++) walk(node.children[i], node.labels[i], depth + 1, queryWord, maxDistance, hits);
+        }
+
+        private int[] row(int depth, int queryLength) {
+            if (rows.length <= depth) rows = Arrays.copyOf(rows, Math.max(depth + 1, rows.length * 2));
+            if (rows[depth] == null || rows[depth].length <= queryLength) rows[depth] = new int[queryLength + 1];
+            return rows[depth];
+        }
+    }
+
+    /**
+     * The words found by {@link #find} for each word of a query, with their accounts copied out of the trie.
+     */
+    static final class Hits {
+        private static final Hits NONE = new Hits(List.of());
+
+        private final List<List<Hit>> perWord;
+
+        private Hits(List<List<Hit>> perWord) {
+            this.perWord = perWord;
+        }
+
+        /**
+         * Finds the accounts matching every word of the query, without reading the trie.
+         *
+         * @param isCancelled polled while matching, the search is abandoned once it returns true
+         * @return how well each matching account matches the query
+         * @throws CancellationException if the search has been cancelled
+         */
+        @NotNull Map<Account, Match> matches(@NotNull BooleanSupplier isCancelled) {
+            Map<Account, Match> result = null;
+            int merged = 0;
+            for (List<Hit> wordHits : perWord) {
+                // Only the accounts matching the previous query words are still of interest
+                final Map<Account, Match> wordMatches = new IdentityHashMap<>();
+                for (Hit hit : wordHits) {
+                    if (++merged % CANCELLATION_CHECK_INTERVAL == 0 && isCancelled.getAsBoolean()) throw new CancellationException("Search cancelled");
+                    for (Account account : hit.accounts()) {
+                        if (result == null || result.containsKey(account)) wordMatches.merge(account, hit.match(), Match::best);
+                    }
+                }
+
+                if (result != null) {
+                    // Every query word must match
+                    for (Map.Entry<Account, Match> entry : wordMatches.entrySet()) entry.setValue(result.get(entry.getKey()).plus(entry.getValue()));
+                }
+                result = wordMatches;
+                if (result.isEmpty()) break;
+            }
+            return result != null ? result : Map.of();
+        }
+    }
+
+    // The accounts using a word found for a query word, and how well that word matched it
+    private record Hit(Account[] accounts, Match match) {}
+
+    /**
+     * How well an account matches a query.
+     *
+     * @param distance the edits between the words of the query and the words they matched, summed up
+     * @param prefixes the words of the query that matched the start of a word
+     */
+    record Match(int distance, int prefixes) {
+        static final Match PREFIX = new Match(0, 1);
+
+        Match plus(Match other) {
+            return new Match(distance + other.distance, prefixes + other.prefixes);
+        }
+
+        static Match best(Match a, Match b) {
+            if (a.distance != b.distance) return a.distance < b.distance ? a : b;
+            return a.prefixes >= b.prefixes ? a : b;
+        }
+    }
+
+    private static final class Node {
+        // Children sorted by their character, most nodes only have a few of them
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private int size = 0;
+        // The accounts using the word ending here, null if none does
+        private Set<Account> accounts = null;
+
+        private int indexOf(char c) {
+            return Arrays.binarySearch(labels, 0, size, c);
+        }
+
+        private @Nullable Node find(String word) {
+            Node node = this;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                final int index = node.indexOf(word.charAt(i));
+                node = index >= 0 ? node.children[index] : null;
+            }
+            return node;
+        }
+
+        private Node childOrCreate(char c) {
+            int index = indexOf(c);
+            if (index >= 0) return children[index];
+
+            index = -index - 1;
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, labels.length);
+            }
+            System.arraycopy(labels, index, labels, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+            labels[index] = c;
+            children[index] = new Node();
+            size++;
+            return children[index];
+        }
+
+        private void removeChild(int index) {
+            System.arraycopy(labels, index + 1, labels, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            children[--size] = null;
+        }
+    }
+}
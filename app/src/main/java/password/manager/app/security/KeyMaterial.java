@@ -0,0 +1,156 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Secret key bytes kept off-heap, in memory that can be wiped on demand.
+ * <p>
+ * Keys held in {@code byte[]} are moved around by the garbage collector, which may leave stale copies behind, and are only
+ * reclaimed long after their last use. Key material lives instead in a {@link MemorySegment} of its own {@link Arena}:
+ * it is never copied by the GC, and {@link #close()} zeroes it before freeing it.
+ * </p>
+ * <p>
+ * Long-lived keys, such as the DEK, are read by many threads and live in a shared arena. Keys derived for a single operation
+ * live in a confined arena, and can only be used and closed by the thread that derived them.
+ * The bytes must never be modified once the key has been created.
+ * </p>
+ */
+public final class KeyMaterial implements AutoCloseable {
+
+    private final Arena arena;
+    private final MemorySegment segment;
+
+    private KeyMaterial(Arena arena, long length) {
+        this.arena = arena;
+        this.segment = arena.allocate(length);
+    }
+
+    /**
+     * Copies the given key off-heap. The source array is left untouched.
+     *
+     * @param key the key bytes
+     * @return the new key material, usable from any thread
+     */
+    public static @NotNull KeyMaterial copyOf(@NotNull byte[] key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+
+        final KeyMaterial material = new KeyMaterial(Arena.ofShared(), key.length);
+        MemorySegment.copy(key, 0, material.segment, ValueLayout.JAVA_BYTE, 0, key.length);
+        return material;
+    }
+
+    /**
+     * Moves the given key off-heap, wiping the source array.
+     *
+     * @param key the key bytes, zeroed once copied
+     * @return the new key material, usable from any thread
+     */
+    public static @NotNull KeyMaterial takeFrom(@NotNull byte[] key) {
+        try {
+            return copyOf(key);
+        } finally {
+            if (key != null) Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Copies this key into new key material that any thread can use, to be closed independently of this one.
+     * This method is visible only to classes in the same package.
+     * @throws IllegalStateException if the key has been closed
+     */
+    @NotNull KeyMaterial copy() {
+        final KeyMaterial copy = allocateShared(length());
+        MemorySegment.copy(segment, 0, copy.segment, 0, segment.byteSize());
+        return copy;
+    }
+
+    /**
+     * Allocates zeroed key material that any thread can use.
+     */
+    static @NotNull KeyMaterial allocateShared(int length) {
+        return new KeyMaterial(Arena.ofShared(), length);
+    }
+
+    /**
+     * Allocates zeroed key material confined to the current thread.
+     */
+    static @NotNull KeyMaterial allocateConfined(int length) {
+        return new KeyMaterial(Arena.ofConfined(), length);
+    }
+
+    /**
+     * Returns the segment holding the key. This method is visible only to classes in the same package.
+     * @throws IllegalStateException once the key has been closed, when the segment is accessed.
+     */
+    @NotNull MemorySegment segment() {
+        return segment;
+    }
+
+    public int length() {
+        return (int) segment.byteSize();
+    }
+
+    /**
+     * Copies the key back on the heap, for APIs that only accept arrays.
+     * The caller owns the returned array and should wipe it after use.
+     *
+     * @return a copy of the key bytes
+     * @throws IllegalStateException if the key has been closed
+     */
+    public @NotNull byte[] toByteArray() {
+        return segment.toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    /**
+     * Compares two keys without copying them on the heap.
+     *
+     * @param other the key to compare with
+     * @return whether both keys hold the same bytes
+     */
+    public boolean contentEquals(@NotNull KeyMaterial other) {
+        return segment.mismatch(other.segment) == -1;
+    }
+
+    public boolean isAlive() {
+        return arena.scope().isAlive();
+    }
+
+    /**
+     * Wipes and frees the key. Closing it more than once has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (!isAlive()) return;
+        segment.fill((byte) 0);
+        arena.close();
+    }
+
+    @Override
+    public String toString() {
+        return "KeyMaterial[" + segment.byteSize() + " bytes" + (isAlive() ? "" : ", closed") + "]";
+    }
+}
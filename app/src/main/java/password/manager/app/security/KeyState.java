@@ -0,0 +1,59 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import password.manager.app.base.SecurityVersion;
+
+/**
+ * Immutable snapshot of the key material held by {@link UserPreferences}.
+ * <p>
+ * Every account operation needs the DEK, often from thousands of virtual threads at once, so it must not sit behind the
+ * monitor that also guards the password verification and its key derivation. Snapshots are published through an
+ * {@link java.util.concurrent.atomic.AtomicReference}: readers see a consistent state without ever blocking,
+ * and writers replace it with compare-and-swap.
+ * </p>
+ * <p>
+ * The DEK is shared by every snapshot that carries it, and must be neither modified nor closed once published,
+ * except by the {@link UserPreferences} owning it: see {@link UserPreferences#close()} and {@link UserPreferences#set(UserPreferences)}.
+ * </p>
+ *
+ * @param dek           the data encryption key, {@code null} until the password has been verified or set
+ * @param legacyVersion the security version of accounts still in the legacy format, {@code null} if there are none
+ * @param isPasswordSet whether a password has been set or loaded
+ */
+record KeyState(@Nullable KeyMaterial dek, @Nullable SecurityVersion legacyVersion, boolean isPasswordSet) {
+
+    static final KeyState EMPTY = new KeyState(null, null, false);
+
+    @NotNull KeyState withDek(@Nullable KeyMaterial dek) {
+        return new KeyState(dek, legacyVersion, isPasswordSet);
+    }
+
+    @NotNull KeyState withLegacyVersion(@Nullable SecurityVersion legacyVersion) {
+        return new KeyState(dek, legacyVersion, isPasswordSet);
+    }
+
+    @NotNull KeyState withPasswordSet(boolean isPasswordSet) {
+        return new KeyState(dek, legacyVersion, isPasswordSet);
+    }
+}
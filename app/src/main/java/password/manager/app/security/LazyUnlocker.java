@@ -0,0 +1,249 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.NotNull;
+
+import password.manager.app.singletons.Logger;
+
+/**
+ * Unlocks the accounts of a vault on demand, instead of all of them before the list is usable.
+ * <p>
+ * Accounts requested through {@link #request} (the ones shown on screen, followed by a prefetch window around them) are unlocked first,
+ * by every worker. The remaining ones are filled in by a single background worker, in list order, whenever no requested account is waiting:
+ * the time until the visible accounts are ready does not depend on the size of the vault.
+ * {@link #requireAll()} lets every worker join the background fill, for features that need every account at once such as search and sort.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe. The workers are virtual threads, which exit once every account has been unlocked.
+ * </p>
+ */
+final class LazyUnlocker implements AutoCloseable {
+
+    /**
+     * Unlocks a single account, called from the worker threads.
+     */
+    @FunctionalInterface
+    interface Action {
+        void unlock(@NotNull Account account) throws Exception;
+    }
+
+    private final Action action;
+    private final int parallelism;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+
+    // Account does not override equals, so these are identity sets
+    private final Set<Account> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Account> requested = new ArrayDeque<>();
+    private final Deque<Account> background;
+
+    private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+    private int remaining, failed = 0;
+    private boolean isFullUnlockRequired = false, isClosed = false;
+
+    /**
+     * Creates the unlocker and starts its workers.
+     *
+     * @param accounts    the accounts to unlock, the background fill follows this order
+     * @param action      unlocks a single account
+     * @param parallelism the number of workers, at least one
+     */
+    LazyUnlocker(@NotNull List<Account> accounts, @NotNull Action action, int parallelism) {
+        if (accounts == null) throw new IllegalArgumentException("Accounts cannot be null");
+        if (action == null) throw new IllegalArgumentException("Action cannot be null");
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+
+        this.action = action;
+        this.parallelism = parallelism;
+
+        this.background = new ArrayDeque<>(accounts);
+        this.pending.addAll(accounts);
+        this.remaining = pending.size();
+
+        if (remaining == 0) {
+            completion.complete(true);
+            return;
+        }
+
+        // Worker 0 is the only one taking background work, until requireAll() is called
+        for (int i = 0; i < parallelism; i++) {
+            final boolean isBackgroundWorker = (i == 0);
+            Thread.ofVirtual().name("lazy-unlock-", i).start(() -> work(isBackgroundWorker));
+        }
+    }
+
+    /**
+     * Moves the given accounts in front of the queue, replacing the previous request: only the latest viewport matters.
+     * Accounts that are already unlocked or being unlocked are skipped.
+     *
+     * @param accounts the accounts to unlock first, in order of priority
+     */
+    void request(@NotNull Collection<Account> accounts) {
+        lock.lock();
+        try {
+            requested.clear();
+            for (Account account : accounts) {
+                if (pending.contains(account)) requested.add(account);
+            }
+            if (!requested.isEmpty()) workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets every worker take part in the background fill.
+     *
+     * @return a future completing once every account has been unlocked, see {@link #getCompletion()}
+     */
+    @NotNull CompletableFuture<Boolean> requireAll() {
+        lock.lock();
+        try {
+            if (!isFullUnlockRequired) {
+                isFullUnlockRequired = true;
+                workAvailable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return completion;
+    }
+
+    /**
+     * Drops an account that no longer needs to be unlocked, for example because new data has just been written to it.
+     *
+     * @param account the account to drop
+     */
+    void skip(@NotNull Account account) {
+        lock.lock();
+        try {
+            if (pending.remove(account)) settle(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of workers
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns a future completing once every account has been unlocked, with false if some of them failed to unlock
+     * or if the unlocker was closed before finishing.
+     *
+     * @return the completion future
+     */
+    @NotNull CompletableFuture<Boolean> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Stops the workers, the accounts that are still locked stay so.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        completion.complete(false);
+    }
+
+    private void work(boolean isBackgroundWorker) {
+        Account account;
+        while ((account = next(isBackgroundWorker)) != null) {
+            boolean success;
+            try {
+                action.unlock(account);
+                success = true;
+            } catch (Exception e) {
+                Logger.getInstance().addError(e);
+                success = false;
+            }
+
+            lock.lock();
+            try {
+                settle(success);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Blocks until there is an account for this worker, null once there is nothing left to do
+    private Account next(boolean isBackgroundWorker) {
+        lock.lock();
+        try {
+            while (true) {
+                if (isClosed || completion.isDone()) return null;
+
+                Account account = poll(requested);
+                if (account == null && (isBackgroundWorker || isFullUnlockRequired)) {
+                    account = poll(background);
+
+                    // Nothing left to hand out, the last accounts are being unlocked by other workers
+                    if (account == null && background.isEmpty()) return null;
+                }
+                if (account != null) return account;
+
+                workAvailable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must hold the lock, claims the first account of the queue that is still pending
+    private Account poll(Deque<Account> queue) {
+        Account account;
+        while ((account = queue.poll()) != null) {
+            if (pending.remove(account)) return account;
+        }
+        return null;
+    }
+
+    // Must hold the lock
+    private void settle(boolean success) {
+        if (!success) failed++;
+        if (--remaining == 0) {
+            completion.complete(failed == 0);
+            workAvailable.signalAll();
+        }
+    }
+}
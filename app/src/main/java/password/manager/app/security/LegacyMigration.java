@@ -0,0 +1,167 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import password.manager.app.base.MemoryReserver;
+import password.manager.app.base.SecurityVersion;
+
+/**
+ * Derives the keys of accounts stored in the legacy format, whose password was encrypted with a key derived from the master password.
+ * <p>
+ * Each legacy key costs a full password-based KDF, which is far too expensive to run for a whole vault at once.
+ * This engine bounds how many derivations run concurrently, by the number of cores and by the memory headroom
+ * left in {@link MemoryReserver}, and derives each distinct salt only once, sharing the key between the accounts that use it.
+ * </p>
+ * <p>
+ * Progress is reported after every migrated account, and a checkpoint is requested every {@value #CHECKPOINT_INTERVAL} accounts
+ * so that the migrated ones can be persisted: an interrupted migration then resumes from the accounts still in the legacy format.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe. Derived keys are wiped when the migration is closed.
+ * </p>
+ */
+final class LegacyMigration implements AutoCloseable {
+
+    static final int CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * Receives the progress of a migration, from the threads migrating the accounts.
+     */
+    interface Listener {
+        void onProgress(int migrated, int total);
+        void onCheckpoint();
+    }
+
+    private final SecurityVersion version;
+    private final String masterPassword;
+    private final int total;
+    private final Listener listener;
+
+    private final Semaphore permits;
+    private final int parallelism;
+
+    private final Map<ByteBuffer, CompletableFuture<KeyMaterial>> keys = new ConcurrentHashMap<>();
+    private final AtomicInteger migrated = new AtomicInteger(0);
+
+    /**
+     * @param version        the security version the legacy keys were derived with, {@code null} for very old files where it was not stored
+     * @param masterPassword the master password the legacy keys were derived from
+     * @param total          the number of accounts to migrate, used for progress reporting
+     * @param listener       the listener notified of progress and checkpoints
+     */
+    LegacyMigration(@Nullable SecurityVersion version, @NotNull String masterPassword, int total, @NotNull Listener listener) {
+        if (masterPassword == null) throw new IllegalArgumentException("Master password cannot be null");
+        if (listener == null) throw new IllegalArgumentException("Listener cannot be null");
+
+        // securityVersion may be absent in very old files — fall back to PBKDF2, as UserPreferences does
+        @SuppressWarnings("deprecation")
+        final SecurityVersion resolvedVersion = version != null ? version : SecurityVersion.PBKDF2;
+
+        this.version = resolvedVersion;
+        this.masterPassword = masterPassword;
+        this.total = total;
+        this.listener = listener;
+
+        this.parallelism = computeParallelism(resolvedVersion);
+        this.permits = new Semaphore(parallelism, true);
+    }
+
+    /**
+     * Returns the legacy key for the given salt, deriving it if no other account with the same salt did already.
+     * The returned key is shared and must be neither modified nor closed, it stays valid until this migration is closed.
+     * <p>
+     * A derivation that fails is forgotten, so that the next account with the same salt derives the key again
+     * instead of failing along with it.
+     * </p>
+     *
+     * @param salt the salt of the legacy account
+     * @return the legacy key
+     * @throws RuntimeException if interrupted while waiting for a free slot, or if the derivation fails
+     */
+    KeyMaterial deriveKey(@NotNull byte[] salt) {
+        final ByteBuffer key = ByteBuffer.wrap(salt.clone());
+        final CompletableFuture<KeyMaterial> derivation = new CompletableFuture<>();
+        final CompletableFuture<KeyMaterial> existing = keys.putIfAbsent(key, derivation);
+        if (existing != null) return existing.join();
+
+        try {
+            permits.acquire();
+            try {
+                derivation.complete(version.getKeyMaterial(masterPassword, salt));
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            keys.remove(key, derivation);
+            derivation.completeExceptionally(e);
+            throw new RuntimeException("Interrupted while waiting to derive a legacy key", e);
+        } catch (RuntimeException e) {
+            keys.remove(key, derivation);
+            derivation.completeExceptionally(e);
+            throw e;
+        }
+
+        return derivation.join();
+    }
+
+    /**
+     * Records that one more account has been migrated, notifying the listener.
+     */
+    void accountMigrated() {
+        final int count = migrated.incrementAndGet();
+        listener.onProgress(count, total);
+        if (count % CHECKPOINT_INTERVAL == 0 && count < total) listener.onCheckpoint();
+    }
+
+    /**
+     * Returns how many legacy keys can be derived at once.
+     * @return the number of concurrent derivations
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void close() {
+        keys.values().forEach(future -> future.thenAccept(KeyMaterial::close));
+        keys.clear();
+    }
+
+    private static int computeParallelism(SecurityVersion version) {
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        final long reservedMemory = version.getReservedMemory();
+        if (reservedMemory == 0) return cores;
+
+        final long memoryBound = MemoryReserver.getHeadroom() / reservedMemory;
+        return (int) Math.max(1, Math.min(cores, memoryBound));
+    }
+}
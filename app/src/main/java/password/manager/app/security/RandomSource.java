@@ -0,0 +1,111 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shared source of randomness for salts, nonces and keys.
+ * <p>
+ * A single DRBG is instantiated once and only reseeded from the system entropy source when its reseed interval
+ * runs out, so callers never block on {@code /dev/random} nor rebuild a generator per call, as
+ * {@link SecureRandom#getInstanceStrong()} did. Small requests, such as salts and nonces, are served from a
+ * prefetched buffer that is refilled in bulk, handed-out bytes are wiped from the buffer straight away.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe. The buffer is guarded by a lock that is only held to copy bytes out
+ * of it, or to refill it.
+ * </p>
+ */
+public final class RandomSource {
+
+    private static final int BUFFER_LENGTH = 4096;
+    // Larger requests would drain the buffer too quickly, they go straight to the generator
+    private static final int MAX_BUFFERED_REQUEST = 64;
+
+    private static final SecureRandom GENERATOR = createGenerator();
+
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final byte[] BUFFER = new byte[BUFFER_LENGTH];
+    private static int position = BUFFER_LENGTH; // Start empty, the first request fills the buffer
+
+    private RandomSource() {}
+
+    /**
+     * Fills the given array with random bytes.
+     *
+     * @param bytes The array to fill.
+     */
+    public static void nextBytes(@NotNull byte[] bytes) {
+        if (bytes == null) throw new IllegalArgumentException("Bytes cannot be null");
+
+        if (bytes.length > MAX_BUFFERED_REQUEST) {
+            GENERATOR.nextBytes(bytes);
+            return;
+        }
+
+        LOCK.lock();
+        try {
+            if (BUFFER_LENGTH - position < bytes.length) {
+                GENERATOR.nextBytes(BUFFER);
+                position = 0;
+            }
+
+            System.arraycopy(BUFFER, position, bytes, 0, bytes.length);
+            Arrays.fill(BUFFER, position, position + bytes.length, (byte) 0);
+            position += bytes.length;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Returns a new array of random bytes.
+     *
+     * @param length The number of bytes.
+     * @return       The random bytes.
+     */
+    @Contract("_ -> new")
+    public static @NotNull byte[] nextBytes(int length) {
+        if (length < 0) throw new IllegalArgumentException("Length cannot be negative");
+
+        final byte[] bytes = new byte[length];
+        nextBytes(bytes);
+        return bytes;
+    }
+
+    private static SecureRandom createGenerator() {
+        // Personalize the instance so that its output differs from any other DRBG seeded with the same entropy
+        final byte[] personalization = ("password-manager/" + ProcessHandle.current().pid() + "/" + System.nanoTime()).getBytes(StandardCharsets.UTF_8);
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Result of a search whose matches are not all equally relevant, such as a {@linkplain AccountRepository#fuzzySearch fuzzy search}.
+ * It accepts the matching accounts, and orders them from the most relevant one.
+ */
+public interface RankedSearch extends Predicate<Account> {
+
+    /**
+     * @return a comparator putting the most relevant matches first, and the accounts that do not match last
+     */
+    @NotNull Comparator<Account> ranking();
+}
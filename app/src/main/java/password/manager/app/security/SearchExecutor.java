@@ -0,0 +1,196 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs the searches of the manager on a background thread, one at a time, so that typing never waits for a search.
+ * <p>
+ * Submitting a search cancels the one still running or waiting, which then completes its future as cancelled: only the latest query
+ * is ever published. A query extending the previous one (typing one more character) narrows the previous matches down,
+ * instead of searching every account again, see {@link AccountRepository#search(String, boolean, boolean)}.
+ * Fuzzy searches are not narrowed down, as a longer query may match words a shorter one did not.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ * </p>
+ */
+public final class SearchExecutor implements AutoCloseable {
+    private final AccountRepository repository;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("search").factory());
+
+    private final Object lock = new Object();
+    // Bumped by every submission and cancellation, a search keeps running only while it is the latest one
+    private volatile long generation = 0;
+    private CompletableFuture<?> current = null;
+    private Predicate<Account> lastResult = null;
+
+    // Metrics, guarded by the lock
+    private long completed = 0, cancelled = 0;
+    private long lastLatencyNanos = 0, totalLatencyNanos = 0, maxLatencyNanos = 0;
+
+    public SearchExecutor(@NotNull AccountRepository repository) {
+        if (repository == null) throw new IllegalArgumentException("Repository cannot be null");
+        this.repository = repository;
+    }
+
+    /**
+     * Starts a search, cancelling the previous one if it has not completed yet.
+     *
+     * @param query     the text to look for, as typed
+     * @param matchCase whether the case of the query must match
+     * @param wholeWord whether the query must match a whole word
+     * @return a future completing with a predicate accepting the matching accounts, or cancelled if another search is submitted first
+     */
+    public @NotNull CompletableFuture<Predicate<Account>> submit(@NotNull String query, boolean matchCase, boolean wholeWord) {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        return start((previous, isCancelled) -> repository.search(query, matchCase, wholeWord, previous, isCancelled));
+    }
+
+    /**
+     * Starts a fuzzy search, cancelling the previous search if it has not completed yet, see {@link AccountRepository#fuzzySearch(String)}.
+     *
+     * @param query the text to look for, as typed
+     * @return a future completing with the ranked matches, or cancelled if another search is submitted first
+     */
+    public @NotNull CompletableFuture<RankedSearch> submitFuzzy(@NotNull String query) {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        return start((_, isCancelled) -> repository.fuzzySearch(query, isCancelled));
+    }
+
+    private <T extends Predicate<Account>> CompletableFuture<T> start(Search<T> search) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long submittedAt = System.nanoTime();
+        final long id;
+        synchronized (lock) {
+            cancelCurrent();
+            id = ++generation;
+            current = future;
+        }
+
+        final BooleanSupplier isCancelled = () -> generation != id;
+        try {
+            executor.execute(() -> run(future, id, isCancelled, search, submittedAt));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new IllegalStateException("Search executor is closed", e));
+        }
+        return future;
+    }
+
+    /**
+     * Cancels the running search, if any, for example once the query has been cleared.
+     */
+    public void cancel() {
+        synchronized (lock) {
+            cancelCurrent();
+            generation++;
+        }
+    }
+
+    /**
+     * @return a snapshot of the search counters and latencies
+     */
+    public @NotNull Metrics getMetrics() {
+        synchronized (lock) {
+            return new Metrics(
+                completed, cancelled,
+                Duration.ofNanos(lastLatencyNanos),
+                Duration.ofNanos(completed > 0 ? totalLatencyNanos / completed : 0),
+                Duration.ofNanos(maxLatencyNanos)
+            );
+        }
+    }
+
+    private <T extends Predicate<Account>> void run(CompletableFuture<T> future, long id, BooleanSupplier isCancelled,
+                                                    Search<T> search, long submittedAt) {
+        if (isCancelled.getAsBoolean()) return;
+
+        final Predicate<Account> previous;
+        synchronized (lock) {
+            previous = lastResult;
+        }
+
+        final T result;
+        try {
+            result = search.run(previous, isCancelled);
+        } catch (CancellationException e) {
+            future.cancel(false);
+            return;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+
+        synchronized (lock) {
+            // Cancelled while finishing, the result is dropped like the search would have been
+            if (generation != id) return;
+
+            lastResult = result;
+            current = null;
+
+            final long latency = System.nanoTime() - submittedAt;
+            completed++;
+            lastLatencyNanos = latency;
+            totalLatencyNanos += latency;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        }
+        future.complete(result);
+    }
+
+    // Called with the lock held
+    private void cancelCurrent() {
+        if (current != null && current.cancel(false)) cancelled++;
+        current = null;
+    }
+
+    @FunctionalInterface
+    private interface Search<T extends Predicate<Account>> {
+        T run(Predicate<Account> previous, BooleanSupplier isCancelled);
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Snapshot of the search counters.
+     *
+     * @param completed      the searches whose result has been published
+     * @param cancelled      the searches cancelled by a later one before completing
+     * @param lastLatency    the time between the submission and the completion of the latest completed search
+     * @param averageLatency the average of that time over the completed searches
+     * @param maxLatency     the longest of that time over the completed searches
+     */
+    public record Metrics(
+        long completed, long cancelled,
+        @NotNull Duration lastLatency, @NotNull Duration averageLatency, @NotNull Duration maxLatency
+    ) {}
+}
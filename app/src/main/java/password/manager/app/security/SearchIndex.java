@@ -0,0 +1,143 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Trigram inverted index over the displayed fields of the accounts, used to narrow a search down to the accounts that can match it.
+ * <p>
+ * Each lower-cased field is split into its overlapping three-character grams, and every gram maps to the accounts containing it.
+ * An account can only contain a query if it contains every gram of the lower-cased query, so intersecting their postings
+ * yields a small superset of the matches, which {@link #matches} then checks exactly (case-sensitive and whole-word queries included).
+ * Queries shorter than a gram cannot be narrowed down, and match most accounts anyway.
+ * </p>
+ * <p>
+ * Thread Safety: This class is not thread-safe, it is guarded by the {@link AccountIndex} owning it.
+ * </p>
+ */
+final class SearchIndex {
+    static final int GRAM_LENGTH = 3;
+
+    // Word separators of the whole-word search, as they have always been for each field
+    static final Pattern SOFTWARE_SEPARATOR = Pattern.compile("[\\s\\p{P}]+");
+    static final Pattern USERNAME_SEPARATOR = Pattern.compile("[\\s\\p{Punct}]+");
+
+    // Account does not override equals, so the postings are identity sets
+    private final Map<String, Set<Account>> postings = new HashMap<>();
+
+    void add(@NotNull Account account, @NotNull Account.DisplayFields fields) {
+        for (String gram : grams(fields)) {
+            postings.computeIfAbsent(gram, _ -> Collections.newSetFromMap(new IdentityHashMap<>())).add(account);
+        }
+    }
+
+    void remove(@NotNull Account account, @NotNull Account.DisplayFields fields) {
+        for (String gram : grams(fields)) {
+            final Set<Account> accounts = postings.get(gram);
+            if (accounts != null && accounts.remove(account) && accounts.isEmpty()) postings.remove(gram);
+        }
+    }
+
+    /**
+     * Intersects the postings of the grams of the given query, starting from the shortest one.
+     *
+     * @param query the query, as typed
+     * @return the accounts that may match the query, or null if it is too short to be narrowed down
+     */
+    @Nullable Set<Account> candidates(@NotNull String query) {
+        final String folded = fold(query);
+        if (folded.length() < GRAM_LENGTH) return null;
+
+        final Set<String> queryGrams = new HashSet<>();
+        addGrams(folded, queryGrams);
+
+        final List<Set<Account>> lists = new ArrayList<>(queryGrams.size());
+        for (String gram : queryGrams) {
+            final Set<Account> accounts = postings.get(gram);
+            if (accounts == null) return Set.of();
+            lists.add(accounts);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        final Set<Account> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        candidates:
+        for (Account account : lists.getFirst()) {
+            for (int i = 1; i < lists.size(); i++) {
+                if (!lists.get(i).contains(account)) continue candidates;
+            }
+            result.add(account);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given fields match a query, the way the search field of the manager does.
+     *
+     * @param fields    the displayed fields of the account
+     * @param query     the query, as typed
+     * @param matchCase whether the case of the query must match
+     * @param wholeWord whether the query must match a whole word, rather than any part of a field
+     * @return true if either field matches
+     */
+    static boolean matches(@NotNull Account.DisplayFields fields, @NotNull String query, boolean matchCase, boolean wholeWord) {
+        final String text = matchCase ? query : fold(query);
+        final String software = matchCase ? fields.software() : fold(fields.software());
+        final String username = matchCase ? fields.username() : fold(fields.username());
+
+        if (wholeWord) return containsWord(SOFTWARE_SEPARATOR, software, text) || containsWord(USERNAME_SEPARATOR, username, text);
+        return software.contains(text) || username.contains(text);
+    }
+
+    private static boolean containsWord(Pattern separator, String field, String word) {
+        for (String candidate : separator.split(field)) {
+            if (candidate.equals(word)) return true;
+        }
+        return false;
+    }
+
+    private static Set<String> grams(Account.DisplayFields fields) {
+        // Both fields share the postings, an account is listed once for a gram found in both
+        final Set<String> grams = new HashSet<>();
+        addGrams(fold(fields.software()), grams);
+        addGrams(fold(fields.username()), grams);
+        return grams;
+    }
+
+    private static void addGrams(String folded, Set<String> grams) {
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) grams.add(folded.substring(i, i + GRAM_LENGTH));
+    }
+
+    static @NotNull String fold(@NotNull String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,248 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package password.manager.app.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Radix trie of the values of a displayed field, counting how many accounts use each of them, to suggest the most used ones starting with a prefix.
+ * <p>
+ * Values are keyed by their lower-cased form, so the prefix is matched ignoring case, while the suggestions keep the case of the values.
+ * Every node caches the {@value #MAX_SUGGESTIONS} most used values below it: a suggestion request only walks down the prefix and reads that cache,
+ * and adding or removing a value only updates the caches of the nodes along its own path.
+ * </p>
+ * <p>
+ * Thread Safety: This class is not thread-safe, it is guarded by the {@link AccountIndex} owning it.
+ * </p>
+ */
+final class SuggestionTrie {
+    static final int MAX_SUGGESTIONS = 10;
+
+    // Most used first, then alphabetically, so that suggestions are stable
+    private static final Comparator<Value> ORDER = Comparator.comparingInt((Value value) -> value.count).reversed()
+            .thenComparing(value -> value.text);
+
+    private final Node root = new Node("");
+
+    /**
+     * Counts one more account using the given value.
+     */
+    void add(@NotNull String text) {
+        if (text.isEmpty()) return;
+
+        final String key = SearchIndex.fold(text);
+        final List<Node> path = new ArrayList<>();
+        path.add(root);
+
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            final int index = node.indexOf(key.charAt(i));
+            if (index < 0) {
+                final Node leaf = new Node(key.substring(i));
+                node.insertChild(leaf);
+                node = leaf;
+                path.add(leaf);
+                break;
+            }
+
+            Node child = node.children[index];
+            final int common = commonLength(child.label, key, i);
+            if (common < child.label.length()) {
+                // The key leaves the edge halfway, or ends on it: split it there
+                final Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.insertChild(child);
+                middle.top.addAll(child.top);
+                node.children[index] = middle;
+                child = middle;
+            }
+
+            node = child;
+            path.add(node);
+            i += common;
+        }
+
+        final Value value = node.values.computeIfAbsent(text, Value::new);
+        value.count++;
+        for (int j = path.size() - 1; j >= 0; j--) path.get(j).promote(value);
+    }
+
+    /**
+     * Counts one less account using the given value, forgetting it once no account uses it anymore.
+     */
+    void remove(@NotNull String text) {
+        if (text.isEmpty()) return;
+
+        final List<Node> path = path(SearchIndex.fold(text), true);
+        if (path == null) return;
+
+        final Node node = path.getLast();
+        final Value value = node.values.get(text);
+        if (value == null) return;
+
+        if (--value.count == 0) node.values.remove(text);
+        for (int j = path.size() - 1; j >= 0; j--) {
+            // A lower count can only change the caches holding the value
+            if (path.get(j).top.contains(value)) path.get(j).recompute();
+        }
+
+        // Drop the nodes left empty, and merge the ones left with a single child into it
+        for (int j = path.size() - 1; j > 0; j--) {
+            final Node current = path.get(j), parent = path.get(j - 1);
+            if (!current.values.isEmpty()) break;
+
+            if (current.size == 0) parent.removeChild(current);
+            else if (current.size == 1) current.mergeWithChild();
+            else break;
+        }
+    }
+
+    /**
+     * @param prefix the text typed so far
+     * @param limit  the maximum number of suggestions, at most {@value #MAX_SUGGESTIONS}
+     * @return the most used values starting with the given prefix, ignoring case, most used first
+     */
+    @NotNull List<String> suggest(@NotNull String prefix, int limit) {
+        final List<Node> path = path(SearchIndex.fold(prefix), false);
+        if (path == null) return List.of();
+
+        final List<Value> top = path.getLast().top;
+        final List<String> suggestions = new ArrayList<>(Math.min(limit, top.size()));
+        for (int i = 0; i < top.size() && i < limit; i++) suggestions.add(top.get(i).text);
+        return suggestions;
+    }
+
+    // Walks down the given key, returns null if no value starts with it, or if exact is set and no node ends right on it
+    private List<Node> path(String key, boolean exact) {
+        final List<Node> path = new ArrayList<>();
+        path.add(root);
+
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            final int index = node.indexOf(key.charAt(i));
+            if (index < 0) return null;
+
+            node = node.children[index];
+            final int length = Math.min(node.label.length(), key.length() - i);
+            if (!node.label.regionMatches(0, key, i, length) || (exact && length < node.label.length())) return null;
+
+            path.add(node);
+            i += length;
+        }
+        return path;
+    }
+
+    private static int commonLength(String label, String key, int offset) {
+        final int max = Math.min(label.length(), key.length() - offset);
+        int length = 0;
+        while (length < max && label.charAt(length) == key.charAt(offset + length)) length++;
+        return length;
+    }
+
+    private static final class Value {
+        private final String text;
+        private int count = 0;
+
+        private Value(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Node {
+        private String label;
+        // Children sorted by the first character of their label, which is unique among siblings
+        private char[] firsts = new char[0];
+        private Node[] children = new Node[0];
+        private int size = 0;
+
+        // The values whose key ends here, by their exact text
+        private Map<String, Value> values = new HashMap<>(2);
+        // The most used values of the whole subtree, in order
+        private List<Value> top = new ArrayList<>(2);
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private int indexOf(char c) {
+            return Arrays.binarySearch(firsts, 0, size, c);
+        }
+
+        private void insertChild(Node child) {
+            final int index = -indexOf(child.label.charAt(0)) - 1;
+            if (size == firsts.length) {
+                firsts = Arrays.copyOf(firsts, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, firsts.length);
+            }
+            System.arraycopy(firsts, index, firsts, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+            firsts[index] = child.label.charAt(0);
+            children[index] = child;
+            size++;
+        }
+
+        private void removeChild(Node child) {
+            final int index = indexOf(child.label.charAt(0));
+            System.arraycopy(firsts, index + 1, firsts, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            children[--size] = null;
+        }
+
+        // Called on a node without values, whose only child holds the same subtree
+        private void mergeWithChild() {
+            final Node child = children[0];
+            label = label + child.label;
+            firsts = child.firsts;
+            children = child.children;
+            size = child.size;
+            values = child.values;
+            top = child.top;
+        }
+
+        // The count of the value has grown, it may enter the cache or move up in it
+        private void promote(Value value) {
+            if (!top.contains(value)) {
+                if (top.size() == MAX_SUGGESTIONS) {
+                    if (ORDER.compare(value, top.getLast()) >= 0) return;
+                    top.removeLast();
+                }
+                top.add(value);
+            }
+            top.sort(ORDER);
+        }
+
+        // The count of a cached value has dropped, another one may overtake it: rebuild the cache from the values here and the children caches
+        private void recompute() {
+            final List<Value> candidates = new ArrayList<>(values.values());
+            for (int i = 0; i < size; i++) candidates.addAll(children[i].top);
+            candidates.removeIf(value -> value.count == 0);
+            candidates.sort(ORDER);
+            top = new ArrayList<>(candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size())));
+        }
+    }
+}
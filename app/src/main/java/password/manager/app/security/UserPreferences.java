@@ -18,10 +18,10 @@
 
 package password.manager.app.security;
 
+import java.lang.foreign.MemorySegment;
 import java.security.GeneralSecurityException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.crypto.AEADBadTagException;
 
@@ -30,23 +30,27 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import tools.jackson.core.JacksonException;
 import tools.jackson.core.JsonParser;
 import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ValueDeserializer;
 import tools.jackson.databind.annotation.JsonDeserialize;
 import tools.jackson.databind.node.ObjectNode;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import password.manager.app.base.KdfCalibrator;
+import password.manager.app.base.KdfParameters;
 import password.manager.app.base.SecurityVersion;
 import password.manager.app.base.SortingOrder;
 import password.manager.app.base.SupportedLocale;
 import password.manager.app.singletons.Logger;
 
 @JsonDeserialize(using = UserPreferences.Deserializer.class)
-public final class UserPreferences {
+public final class UserPreferences implements AutoCloseable {
 
     private static final int DEK_LENGTH = AES.AES_BITS / 8; // 32 bytes
     private static final int SALT_LENGTH = 16;
@@ -62,14 +66,15 @@ public final class UserPreferences {
     private final @JsonProperty("pwEncDek") byte[] pwEncDek;
     private final @JsonProperty("pwSalt") byte[] pwSalt;
     private final @JsonProperty("pwIv") byte[] pwIv;
+    // Written under the monitor, but read without locking so that callers never wait behind a key derivation
+    private volatile @JsonProperty("kdfParameters") KdfParameters kdfParameters;
 
     // In-memory only — never serialized
-    private transient byte[] dek;
     private transient byte[] legacyHashedPassword;
     private transient byte[] legacySalt;
-    private transient SecurityVersion legacySecurityVersion;
 
-    private boolean isPasswordSet;
+    // Key material, read without locking by every account operation, see KeyState
+    private final transient AtomicReference<KeyState> keyState;
 
     public UserPreferences() {
         this.localeProperty = new SimpleObjectProperty<>(SupportedLocale.DEFAULT);
@@ -79,13 +84,12 @@ public final class UserPreferences {
         this.pwEncDek = new byte[ENC_DEK_LENGTH];
         this.pwSalt = new byte[SALT_LENGTH];
         this.pwIv = new byte[IV_LENGTH];
+        this.kdfParameters = KdfParameters.DEFAULT;
 
-        this.dek = null;
         this.legacyHashedPassword = null;
         this.legacySalt = null;
-        this.legacySecurityVersion = null;
 
-        this.isPasswordSet = false;
+        this.keyState = new AtomicReference<>(KeyState.EMPTY);
     }
 
     public UserPreferences(@NotNull String password) {
@@ -100,7 +104,8 @@ public final class UserPreferences {
             @NotNull SecurityVersion securityVersion,
             @NotNull byte[] pwEncDek,
             @NotNull byte[] pwSalt,
-            @NotNull byte[] pwIv) {
+            @NotNull byte[] pwIv,
+            @NotNull KdfParameters kdfParameters) {
 
         if (locale == null) throw new IllegalArgumentException("Locale cannot be null");
         if (sortingOrder == null) throw new IllegalArgumentException("Sorting order cannot be null");
@@ -108,6 +113,7 @@ public final class UserPreferences {
         if (pwEncDek == null || pwEncDek.length != ENC_DEK_LENGTH) throw new IllegalArgumentException("Encrypted DEK must be exactly " + ENC_DEK_LENGTH + " bytes");
         if (pwSalt == null || pwSalt.length != SALT_LENGTH) throw new IllegalArgumentException("Salt must be exactly " + SALT_LENGTH + " bytes");
         if (pwIv == null || pwIv.length != IV_LENGTH) throw new IllegalArgumentException("IV must be exactly " + IV_LENGTH + " bytes");
+        if (kdfParameters == null) throw new IllegalArgumentException("KDF parameters cannot be null");
 
         this();
 
@@ -118,8 +124,9 @@ public final class UserPreferences {
         System.arraycopy(pwEncDek, 0, this.pwEncDek, 0, ENC_DEK_LENGTH);
         System.arraycopy(pwSalt, 0, this.pwSalt, 0, SALT_LENGTH);
         System.arraycopy(pwIv, 0, this.pwIv, 0, IV_LENGTH);
+        this.kdfParameters = kdfParameters;
 
-        isPasswordSet = true;
+        keyState.set(KeyState.EMPTY.withPasswordSet(true));
     }
 
     /**
@@ -150,11 +157,19 @@ public final class UserPreferences {
 
         this.legacyHashedPassword = hashedPassword;
         this.legacySalt = salt;
-        this.legacySecurityVersion = securityVersion;
 
-        isPasswordSet = true;
+        keyState.set(new KeyState(null, securityVersion, true));
     }
 
+    /**
+     * Copies the given preferences into this instance, along with their key material.
+     * <p>
+     * Each instance owns its DEK: this one gets its own copy, to be wiped by {@link #close()}, and the DEK it held until now is wiped.
+     * So it must not be called while account operations may still be using that DEK, such as while accounts are unlocking.
+     * </p>
+     *
+     * @param other the preferences to copy
+     */
     public synchronized void set(@NotNull UserPreferences other) {
         setLocale(other.getLocale());
         setSortingOrder(other.getSortingOrder());
@@ -163,13 +178,25 @@ public final class UserPreferences {
         System.arraycopy(other.pwEncDek, 0, this.pwEncDek, 0, ENC_DEK_LENGTH);
         System.arraycopy(other.pwSalt, 0, this.pwSalt, 0, SALT_LENGTH);
         System.arraycopy(other.pwIv, 0, this.pwIv, 0, IV_LENGTH);
+        this.kdfParameters = other.kdfParameters;
 
-        this.dek = (other.dek != null) ? other.dek.clone() : null;
         this.legacyHashedPassword = (other.legacyHashedPassword != null) ? other.legacyHashedPassword.clone() : null;
         this.legacySalt = (other.legacySalt != null) ? other.legacySalt.clone() : null;
-        this.legacySecurityVersion = other.legacySecurityVersion;
 
-        this.isPasswordSet = other.isPasswordSet;
+        final KeyState otherState = other.keyState.get();
+        final KeyMaterial otherDek = otherState.dek();
+        final KeyState previous = keyState.getAndSet(otherDek != null ? otherState.withDek(otherDek.copy()) : otherState);
+        if (previous.dek() != null) previous.dek().close();
+    }
+
+    /**
+     * Wipes the DEK: account operations fail from now on, until the password is verified again.
+     * It must only be called once nothing uses the accounts anymore, such as on shutdown. Closing the preferences more than once has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        final KeyState previous = keyState.getAndUpdate(state -> state.withDek(null));
+        if (previous.dek() != null) previous.dek().close();
     }
 
     // #region Properties
@@ -213,19 +240,33 @@ public final class UserPreferences {
         securityVersionProperty.set(securityVersion);
     }
 
+    /**
+     * Returns the cost parameters the master key is derived with.
+     * They are chosen by {@link KdfCalibrator} whenever the password is set, files saved before they were stored use {@link KdfParameters#DEFAULT}.
+     * It never blocks, not even while a password is being verified.
+     * @return the KDF parameters of this vault
+     */
+    public @NotNull KdfParameters getKdfParameters() {
+        return kdfParameters;
+    }
+
     // #endregion
 
     // #region Package-private getters for crypto fields
 
     /**
      * Returns the DEK. This method is visible only to classes in the same package.
-     * For security reasons, the returned array is the same instance used internally,
-     * but it should be treated as read-only by callers outside this class.
-     * @return a copy of the DEK, or {@code null} if the password has not been verified yet.
+     * For security reasons, the returned key is the same off-heap instance used internally,
+     * callers must neither modify nor close it.
+     * <p>
+     * It never blocks, not even while a password is being verified: see {@link KeyState}.
+     * </p>
+     * @return the DEK
      * @throws IllegalStateException if the DEK is not available (i.e. the password has not been verified yet).
      */
     @JsonIgnore
-    synchronized @NotNull byte[] getDEK() {
+    @NotNull KeyMaterial getDEK() {
+        final KeyMaterial dek = keyState.get().dek();
         if (dek == null) throw new IllegalStateException("DEK is not available until the password has been verified");
         return dek;
     }
@@ -233,11 +274,24 @@ public final class UserPreferences {
     /**
      * Return the legacy security version used for hashing the password in the old format.
      * This method is visible only to classes in the same package.
-     * @return the legacy security version, or {@code null} if this instance was not loaded from a legacy file.
+     * <p>
+     * It is persisted while accounts are still waiting to be migrated from the legacy format,
+     * so that an interrupted migration can resume on the next login.
+     * </p>
+     * @return the legacy security version, or {@code null} if this instance was not loaded from a legacy file or its migration is complete.
      */
-    @JsonIgnore
-    synchronized @Nullable SecurityVersion getLegacyVersion() {
-        return legacySecurityVersion;
+    @JsonProperty("legacySecurityVersion")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Nullable SecurityVersion getLegacyVersion() {
+        return keyState.get().legacyVersion();
+    }
+
+    /**
+     * Forgets the legacy security version, once no account is left in the legacy format.
+     * This method is visible only to classes in the same package.
+     */
+    void clearLegacyVersion() {
+        keyState.updateAndGet(state -> state.withLegacyVersion(null));
     }
 
     // #endregion
@@ -261,40 +315,108 @@ public final class UserPreferences {
      * @throws IllegalStateException if no password has been set.
      * @throws RuntimeException if an unexpected error occurs during hashing or decryption.
      */
-    public synchronized boolean verifyPassword(@Nullable String passwordToVerify) {
-        if (!isPasswordSet) throw new IllegalStateException("No password is set");
-        if (passwordToVerify == null) return false;
+    public boolean verifyPassword(@Nullable String passwordToVerify) {
+        return verifyPassword(passwordToVerify, null);
+    }
+
+    /**
+     * Verifies the given password against the stored credential, as {@link #verifyPassword(String)} does.
+     * <p>
+     * The expensive part of the verification is the key derivation: {@code onKeyDerived} is called once it is over,
+     * right before the DEK is decrypted (or, in legacy mode, before the instance is upgraded), so that callers can report progress.
+     * </p>
+     *
+     * @param onKeyDerived called from the verifying thread once the key has been derived, can be null
+     * @return {@code true} if the password is not null and correct, {@code false} otherwise.
+     * @throws IllegalStateException if no password has been set.
+     * @throws RuntimeException if an unexpected error occurs during hashing or decryption.
+     */
+    public synchronized boolean verifyPassword(@Nullable String passwordToVerify, @Nullable Runnable onKeyDerived) {
+        try (VerifiedKey key = unwrapKey(passwordToVerify, onKeyDerived)) {
+            if (key == null) return false;
+            key.publish();
+            return true;
+        }
+    }
 
-        // Since the legacy hashed password is not nullified after upgrade, we can detect legacy mode by also checking that the DEK is still null.
-        if (dek == null && legacyHashedPassword != null) {
+    /**
+     * Verifies the given password as {@link #verifyPassword(String, Runnable)} does, without publishing anything yet:
+     * the DEK stays unavailable, and a legacy instance is not upgraded, until the returned key is {@link VerifiedKey#publish() published}.
+     * <p>
+     * This lets a login be cancelled after the key derivation: closing the key instead wipes the unwrapped DEK and leaves the instance untouched.
+     * </p>
+     *
+     * @param onKeyDerived called from the verifying thread once the key has been derived, can be null
+     * @return the verified key, which the caller must either publish or close, or {@code null} if the password is null or wrong.
+     * @throws IllegalStateException if no password has been set.
+     * @throws RuntimeException if an unexpected error occurs during hashing or decryption.
+     */
+    public synchronized @Nullable VerifiedKey unwrapKey(@Nullable String passwordToVerify, @Nullable Runnable onKeyDerived) {
+        final KeyState state = keyState.get();
+        if (!state.isPasswordSet()) throw new IllegalStateException("No password is set");
+        if (passwordToVerify == null) return null;
+
+        // The legacy hashed password is dropped by the upgrade, so it is only left in legacy mode
+        if (state.dek() == null && legacyHashedPassword != null) {
             // Legacy mode: verify by comparing hashes
             final byte[] hashedInput = getSecurityVersion().hash(passwordToVerify, legacySalt);
-            final boolean match = Arrays.equals(legacyHashedPassword, hashedInput);
-            if (match) {
-                // Upgrade to DEK format; setPassword generates a new random salt
-                setSecurityVersion(SecurityVersion.LATEST);
-                setPassword(passwordToVerify);
-            }
-            return match;
+            if (!Arrays.equals(legacyHashedPassword, hashedInput)) return null;
+
+            if (onKeyDerived != null) onKeyDerived.run();
+            return new VerifiedKey(passwordToVerify, null);
         }
 
         // DEK-based mode: AES-GCM decryption failure = wrong password
+        final KeyMaterial kek = getSecurityVersion().getKeyMaterial(passwordToVerify, pwSalt, kdfParameters);
         try {
-            this.dek = decryptDEK(getSecurityVersion(), passwordToVerify, pwEncDek, pwSalt, pwIv);
-            return true;
+            if (onKeyDerived != null) onKeyDerived.run();
+        } catch (RuntimeException e) {
+            kek.close();
+            throw e;
+        }
+
+        try {
+            return new VerifiedKey(passwordToVerify, decryptDEK(kek, pwEncDek, pwIv));
         } catch (AEADBadTagException e) {
-            return false;
+            return null;
         } catch (GeneralSecurityException e) {
             Logger.getInstance().addError(e);
             throw new RuntimeException("Failed to decrypt DEK", e);
         }
     }
 
-    public synchronized boolean setPasswordVerified(@Nullable String oldPassword, @NotNull String newPassword) {
-        // If no password is set yet, we allow setting a new one without verification (first-time setup).
-        final boolean canSet = !isPasswordSet || verifyPassword(oldPassword);
-        if (canSet) setPassword(newPassword);
-        return canSet;
+    private synchronized void publish(@NotNull String password, @Nullable KeyMaterial dek) {
+        if (dek != null) {
+            final KeyState published = keyState.updateAndGet(current -> current.dek() == null ? current.withDek(dek) : current);
+
+            // Already unlocked: readers may be using the published DEK, which wraps the same key, so keep it and drop the new one
+            if (published.dek() != dek) dek.close();
+            return;
+        }
+
+        // Legacy mode, unless another verification has already upgraded the instance
+        if (keyState.get().dek() != null) return;
+
+        // Keep the version the legacy accounts were encrypted with until they are migrated, resolving the fallback of very old files
+        final SecurityVersion legacyVersion = getSecurityVersion();
+
+        // Upgrade to DEK format; setPassword generates a new random salt
+        setPassword(password);
+        keyState.updateAndGet(current -> current.withLegacyVersion(legacyVersion));
+        legacyHashedPassword = null;
+        legacySalt = null;
+    }
+
+    public boolean setPasswordVerified(@Nullable String oldPassword, @NotNull String newPassword) {
+        // Calibrating takes a few derivations, run them before holding the monitor, setPassword then finds the result cached
+        KdfCalibrator.getCalibrated();
+
+        synchronized (this) {
+            // If no password is set yet, we allow setting a new one without verification (first-time setup).
+            final boolean canSet = !keyState.get().isPasswordSet() || verifyPassword(oldPassword);
+            if (canSet) setPassword(newPassword);
+            return canSet;
+        }
     }
 
     /**
@@ -306,33 +428,82 @@ public final class UserPreferences {
      * </ul>
      * A fresh random salt and IV are always generated so the derived key changes
      * even when the same password is reused (important for the legacy → DEK upgrade path).
+     * The KDF parameters are recalibrated for the current host, see {@link KdfCalibrator}.
+     * Nothing is changed until the DEK has been wrapped, so that a failure leaves the stored credential as it was.
      */
     private synchronized void setPassword(@NotNull String password) {
-        SecureRandom random;
-        try {
-            random = SecureRandom.getInstanceStrong();
-        } catch (NoSuchAlgorithmException e) {
-            random = new SecureRandom();
-        }
-
-        random.nextBytes(this.pwSalt);
-        random.nextBytes(this.pwIv);
+        final KdfParameters parameters = KdfCalibrator.getCalibrated();
+        final byte[] salt = RandomSource.nextBytes(SALT_LENGTH);
+        final byte[] iv = RandomSource.nextBytes(IV_LENGTH);
 
         // Reuse existing DEK when changing the password; generate a new one on first setup.
-        if (this.dek == null) {
-            this.dek = new byte[DEK_LENGTH];
-            random.nextBytes(this.dek);
-        }
-
-        setSecurityVersion(SecurityVersion.LATEST);
+        final KeyMaterial currentDek = keyState.get().dek();
+        final KeyMaterial dek = (currentDek != null) ? currentDek : KeyMaterial.takeFrom(RandomSource.nextBytes(DEK_LENGTH));
 
+        final byte[] encryptedDek;
         try {
-            byte[] pwEncDek = encryptDEK(SecurityVersion.LATEST, password, this.dek, this.pwSalt, this.pwIv);
-            System.arraycopy(pwEncDek, 0, this.pwEncDek, 0, ENC_DEK_LENGTH);
-            this.isPasswordSet = true;
+            encryptedDek = encryptDEK(SecurityVersion.LATEST, parameters, password, dek, salt, iv);
         } catch (GeneralSecurityException e) {
+            if (dek != currentDek) dek.close();
             Logger.getInstance().addError(e);
             throw new RuntimeException("Failed to encrypt DEK", e);
+        } catch (RuntimeException e) {
+            if (dek != currentDek) dek.close();
+            throw e;
+        }
+
+        System.arraycopy(encryptedDek, 0, this.pwEncDek, 0, ENC_DEK_LENGTH);
+        System.arraycopy(salt, 0, this.pwSalt, 0, SALT_LENGTH);
+        System.arraycopy(iv, 0, this.pwIv, 0, IV_LENGTH);
+        this.kdfParameters = parameters;
+        setSecurityVersion(SecurityVersion.LATEST);
+        keyState.updateAndGet(current -> current.withDek(dek).withPasswordSet(true));
+    }
+
+    /**
+     * A password verified by {@link #unwrapKey}, holding the DEK it unwrapped until it is either published or closed.
+     * <p>
+     * Thread Safety: This class is thread-safe, it is guarded by the preferences that created it.
+     * </p>
+     */
+    public final class VerifiedKey implements AutoCloseable {
+        private final String password;
+        // Null in legacy mode, where the DEK is only generated by the upgrade
+        private final @Nullable KeyMaterial dek;
+        private boolean isDone = false;
+
+        private VerifiedKey(@NotNull String password, @Nullable KeyMaterial dek) {
+            this.password = password;
+            this.dek = dek;
+        }
+
+        /**
+         * Makes the DEK available through the preferences, upgrading them first if they were loaded from the legacy format.
+         * The preferences own the DEK from now on, closing the key afterwards has no effect.
+         *
+         * @throws IllegalStateException if the key has already been published or closed.
+         */
+        public void publish() {
+            // The legacy upgrade sets the password, calibrate before holding the monitor as setPasswordVerified does
+            if (dek == null) KdfCalibrator.getCalibrated();
+
+            synchronized (UserPreferences.this) {
+                if (isDone) throw new IllegalStateException("Verified key already published or closed");
+                isDone = true;
+                UserPreferences.this.publish(password, dek);
+            }
+        }
+
+        /**
+         * Wipes the unwrapped DEK, unless it has been published.
+         */
+        @Override
+        public void close() {
+            synchronized (UserPreferences.this) {
+                if (isDone) return;
+                isDone = true;
+                if (dek != null) dek.close();
+            }
         }
     }
 
@@ -340,19 +511,29 @@ public final class UserPreferences {
 
     // #region Crypto helpers
 
-    /** Encrypt {@code dek} bytes using AES-GCM with a KEK derived from {@code password} + {@code salt}. */
-    private static byte[] encryptDEK(SecurityVersion version, String password, byte[] dek, byte[] salt, byte[] iv) throws GeneralSecurityException {
-        final byte[] kekBytes = version.getKey(password, salt);
-        return AES.encryptAES(dek, kekBytes, iv);
+    /** Encrypt the {@code dek} using AES-GCM with a KEK derived from {@code password} + {@code salt}. */
+    private static byte[] encryptDEK(SecurityVersion version, KdfParameters parameters, String password, KeyMaterial dek, byte[] salt, byte[] iv) throws GeneralSecurityException {
+        final byte[] pwEncDek = new byte[ENC_DEK_LENGTH];
+        try (KeyMaterial kek = version.getKeyMaterial(password, salt, parameters)) {
+            AES.encryptAES(dek.segment(), MemorySegment.ofArray(pwEncDek), kek, iv);
+        }
+        return pwEncDek;
     }
 
     /**
-     * Decrypt the wrapped DEK.  AES-GCM tag verification provides implicit password
-     * authentication — a wrong password produces a {@link GeneralSecurityException}.
+     * Decrypt the wrapped DEK with a KEK already derived from the password.  AES-GCM tag verification
+     * provides implicit password authentication — a wrong password produces a {@link GeneralSecurityException}.
+     * The DEK is decrypted straight into off-heap memory, and the KEK is wiped afterwards.
      */
-    private static byte[] decryptDEK(SecurityVersion version, String password, byte[] pwEncDek, byte[] salt, byte[] pwIv) throws GeneralSecurityException {
-        final byte[] kekBytes = version.getKey(password, salt);
-        return AES.decryptAES(pwEncDek, kekBytes, pwIv);
+    private static KeyMaterial decryptDEK(KeyMaterial kek, byte[] pwEncDek, byte[] pwIv) throws GeneralSecurityException {
+        final KeyMaterial dek = KeyMaterial.allocateShared(DEK_LENGTH);
+        try (kek) {
+            AES.decryptAES(MemorySegment.ofArray(pwEncDek), dek.segment(), kek, pwIv);
+            return dek;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            dek.close();
+            throw e;
+        }
     }
 
     // #endregion
@@ -398,8 +579,29 @@ public final class UserPreferences {
                 final byte[] pwEncDek = node.get("pwEncDek").binaryValue();
                 final byte[] pwSalt = node.get("pwSalt").binaryValue();
                 final byte[] pwIv = node.get("pwIv").binaryValue();
-                return new UserPreferences(locale, sortingOrder, securityVersion, pwEncDek, pwSalt, pwIv);
+
+                // Files saved before the parameters were stored were derived with the former hard-coded ones
+                final KdfParameters kdfParameters = node.has("kdfParameters")
+                        ? readKdfParameters(node.get("kdfParameters"))
+                        : KdfParameters.DEFAULT;
+
+                final UserPreferences preferences = new UserPreferences(locale, sortingOrder, securityVersion, pwEncDek, pwSalt, pwIv, kdfParameters);
+
+                // Present only if a migration from the legacy format was interrupted
+                if (node.has("legacySecurityVersion")) {
+                    final SecurityVersion legacyVersion = SecurityVersion.fromString(node.get("legacySecurityVersion").asString());
+                    preferences.keyState.updateAndGet(state -> state.withLegacyVersion(legacyVersion));
+                }
+                return preferences;
             }
         }
+
+        private static KdfParameters readKdfParameters(JsonNode node) {
+            return new KdfParameters(
+                    node.get("memoryKiB").asInt(),
+                    node.get("iterations").asInt(),
+                    node.get("parallelism").asInt()
+            );
+        }
     }
 }
\ No newline at end of file
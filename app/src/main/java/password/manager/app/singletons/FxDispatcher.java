@@ -0,0 +1,279 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package password.manager.app.singletons;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * Coalescing dispatcher of UI updates from background threads to the JavaFX Application Thread.
+ * <p>
+ * Posting one {@link Platform#runLater} per update floods the event queue when thousands of accounts change at once, as when a vault is unlocked.
+ * Updates submitted here are queued instead, and drained in batches of at most {@value #DEFAULT_BATCH_SIZE} (see {@link #BATCH_SIZE_KEY}) per pulse,
+ * so that the UI keeps rendering frames while a large batch is applied. Updates submitted with the same key replace each other while queued:
+ * only the latest one is applied, so each update should set the whole state it is keyed on.
+ * </p>
+ * <p>
+ * Updates submitted from the JavaFX Application Thread are applied right away, dropping any queued update with the same key.
+ * When the JavaFX toolkit is not running, as in tests, they are applied right away on the calling thread.
+ * </p>
+ * <p>
+ * Thread Safety: This class is thread-safe.
+ * </p>
+ */
+public final class FxDispatcher extends Singleton {
+
+    public static final String BATCH_SIZE_KEY = "app.config.fxBatchSize";
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    private final int batchSize;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Object, Runnable> pending = new LinkedHashMap<>();
+    private boolean isDrainScheduled = false;
+    // What is known about the toolkit, both stay false until a runLater tells either way
+    private volatile boolean isToolkitMissing = false, isToolkitRunning = false;
+
+    // Created on the JavaFX Application Thread the first time a drain takes more than one pulse
+    private AnimationTimer drainTimer = null;
+
+    // Metrics, guarded by the lock
+    private int maxQueueDepth = 0;
+    private long submitted = 0, coalesced = 0, applied = 0, batches = 0;
+    private long totalDrainNanos = 0, maxDrainNanos = 0;
+
+    // Let only package classes instantiate this
+    FxDispatcher() {
+        this.batchSize = getConfiguredBatchSize();
+    }
+
+    /**
+     * Queues an update that is not coalesced with any other.
+     *
+     * @param update the update to apply on the JavaFX Application Thread
+     */
+    public void submit(@NotNull Runnable update) {
+        submit(null, update);
+    }
+
+    /**
+     * Queues an update, replacing the one queued with the same key if it has not been applied yet.
+     *
+     * @param key    identifies the state the update sets, usually the object whose properties are updated; null never coalesces
+     * @param update the update to apply on the JavaFX Application Thread
+     */
+    public void submit(@Nullable Object key, @NotNull Runnable update) {
+        if (update == null) throw new IllegalArgumentException("Update cannot be null");
+
+        if (isToolkitMissing || Platform.isFxApplicationThread()) {
+            applyNow(key, update);
+            return;
+        }
+
+        synchronized (lock) {
+            submitted++;
+            if (pending.put(key != null ? key : new Object(), update) != null) coalesced++;
+            maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+
+            if (isDrainScheduled) return;
+            isDrainScheduled = true;
+        }
+
+        try {
+            Platform.runLater(this::startDrain);
+            isToolkitRunning = true;
+        } catch (IllegalStateException e) {
+            // JavaFX toolkit not initialised (test environment), apply everything on the calling threads from now on
+            isToolkitMissing = true;
+            isToolkitRunning = false;
+            drainAll();
+        }
+    }
+
+    /**
+     * Applies every queued update right away, for callers that must not be overtaken by an older update.
+     *
+     * @throws IllegalStateException if not called on the JavaFX Application Thread while the toolkit is running
+     */
+    public void flush() {
+        if (!Platform.isFxApplicationThread() && isToolkitRunning()) throw new IllegalStateException("Updates can only be flushed on the JavaFX Application Thread");
+        drainAll();
+    }
+
+    /**
+     * @return a snapshot of the queue depth, throughput and drain time counters
+     */
+    public @NotNull Metrics getMetrics() {
+        synchronized (lock) {
+            return new Metrics(
+                pending.size(), maxQueueDepth,
+                submitted, coalesced, applied, batches,
+                Duration.ofNanos(totalDrainNanos), Duration.ofNanos(maxDrainNanos)
+            );
+        }
+    }
+
+    /**
+     * Reads the maximum number of updates applied per pulse from the {@value #BATCH_SIZE_KEY} system property,
+     * falling back to {@link #DEFAULT_BATCH_SIZE} if it is missing, invalid or not positive.
+     *
+     * @return the configured batch size
+     */
+    public static int getConfiguredBatchSize() {
+        final String property = System.getProperty(BATCH_SIZE_KEY);
+        if (property == null || property.isBlank()) return DEFAULT_BATCH_SIZE;
+
+        try {
+            final int size = Integer.parseInt(property.strip());
+            return size > 0 ? size : DEFAULT_BATCH_SIZE;
+        } catch (NumberFormatException e) {
+            return DEFAULT_BATCH_SIZE;
+        }
+    }
+
+    // Probes the toolkit with an empty runLater only until the answer is known, it does not change afterwards
+    private boolean isToolkitRunning() {
+        if (isToolkitRunning) return true;
+        if (isToolkitMissing) return false;
+        try {
+            Platform.runLater(() -> {});
+            isToolkitRunning = true;
+            return true;
+        } catch (IllegalStateException e) {
+            isToolkitMissing = true;
+            return false;
+        }
+    }
+
+    private void applyNow(Object key, Runnable update) {
+        synchronized (lock) {
+            submitted++;
+            // A queued update for the same key is older than this one
+            if (key != null && pending.remove(key) != null) coalesced++;
+        }
+
+        final long start = System.nanoTime();
+        run(update);
+        record(1, System.nanoTime() - start);
+    }
+
+    // Runs on the JavaFX Application Thread, keeps draining on the following pulses if a single batch is not enough
+    private void startDrain() {
+        if (!drainBatch()) return;
+
+        if (drainTimer == null) {
+            drainTimer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    if (!drainBatch()) stop();
+                }
+            };
+        }
+        drainTimer.start();
+    }
+
+    private void drainAll() {
+        boolean hasMore = true;
+        while (hasMore) hasMore = drainBatch();
+    }
+
+    // Applies up to a batch of updates, returns true if some are left for the next pulse
+    private boolean drainBatch() {
+        final List<Runnable> batch;
+        synchronized (lock) {
+            batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            final Iterator<Map.Entry<Object, Runnable>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next().getValue());
+                iterator.remove();
+            }
+        }
+
+        final long start = System.nanoTime();
+        for (Runnable update : batch) run(update);
+        if (!batch.isEmpty()) record(batch.size(), System.nanoTime() - start);
+
+        synchronized (lock) {
+            if (!pending.isEmpty()) return true;
+            isDrainScheduled = false;
+            return false;
+        }
+    }
+
+    private void record(int count, long elapsedNanos) {
+        synchronized (lock) {
+            applied += count;
+            batches++;
+            totalDrainNanos += elapsedNanos;
+            maxDrainNanos = Math.max(maxDrainNanos, elapsedNanos);
+        }
+    }
+
+    private static void run(Runnable update) {
+        try {
+            update.run();
+        } catch (RuntimeException e) {
+            // One failing update must not prevent the others from being applied
+            Logger.getInstance().addError(e);
+        }
+    }
+
+    /**
+     * Snapshot of the dispatcher counters.
+     *
+     * @param queueDepth     the updates currently waiting
+     * @param maxQueueDepth  the most updates that have been waiting at once
+     * @param submitted      the updates submitted
+     * @param coalesced      the updates replaced by a later one with the same key before being applied
+     * @param applied        the updates applied
+     * @param batches        the batches applied, an update applied right away counts as a batch
+     * @param totalDrainTime the time spent applying updates
+     * @param maxDrainTime   the longest time spent applying a single batch
+     */
+    public record Metrics(
+        int queueDepth, int maxQueueDepth,
+        long submitted, long coalesced, long applied, long batches,
+        @NotNull Duration totalDrainTime, @NotNull Duration maxDrainTime
+    ) {}
+
+    // #region Singleton methods
+    @Override
+    public void close() {
+        // Queued updates only concern the UI, which is going away
+        synchronized (lock) {
+            pending.clear();
+        }
+    }
+
+    public static FxDispatcher getInstance() {
+        return Singletons.get(FxDispatcher.class);
+    }
+    // #endregion
+}
@@ -26,19 +26,23 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import org.jetbrains.annotations.NotNull;
@@ -46,6 +50,8 @@ import org.jetbrains.annotations.NotNull;
 import tools.jackson.databind.ObjectMapper;
 
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
@@ -55,8 +61,13 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import lombok.Getter;
+import password.manager.app.base.KdfCalibrator;
+import password.manager.app.base.SortingOrder;
 import password.manager.app.security.Account;
 import password.manager.app.security.AccountRepository;
+import password.manager.app.security.DisplayIndex;
+import password.manager.app.security.RankedSearch;
+import password.manager.app.security.SearchExecutor;
 import password.manager.app.security.UserPreferences;
 import password.manager.app.security.Account.AccountData;
 import password.manager.lib.CustomPasswordField;
@@ -70,6 +81,7 @@ public final class IOManager extends Singleton {
     private static final Path PRESERVED_PATH;
 
     private static final int AUTOSAVE_INTERVAL = 2;
+    private static final int AUTOSAVE_SHUTDOWN_TIMEOUT = 10; // Seconds
 
     static {
         Path basePath = AppConfig.getInstance().getBasePath();
@@ -80,14 +92,20 @@ public final class IOManager extends Singleton {
 
     private final UserPreferences USER_PREFERENCES;
     private final AccountRepository ACCOUNT_REPOSITORY;
+    private final SearchExecutor SEARCH_EXECUTOR;
 
     private volatile String masterPassword;
-    private @Getter boolean isFirstRun, isAuthenticated;
+
+    // Display index read with the accounts, applied once the DEK is available
+    private volatile DisplayIndex loadedDisplayIndex;
+    private @Getter boolean isFirstRun;
+    private volatile @Getter boolean isAuthenticated;
 
     private final AtomicBoolean HAS_CHANGED;
     private final Lock LOADING_LOCK;
 
     public enum SaveState { SUCCESS, SAVING, ERROR }
+    public enum LoginStage { DERIVING_KEY, UNWRAPPING_KEY, UNLOCKING_ACCOUNTS }
     private final SimpleObjectProperty<SaveState> IS_SAVING;
 
     private final ObjectMapper OBJECT_MAPPER;
@@ -103,6 +121,7 @@ public final class IOManager extends Singleton {
 
         USER_PREFERENCES = UserPreferences.empty();
         ACCOUNT_REPOSITORY = new AccountRepository(USER_PREFERENCES);
+        SEARCH_EXECUTOR = new SearchExecutor(ACCOUNT_REPOSITORY);
 
         isFirstRun = true; // Assume first run until data is loaded
         isAuthenticated = false;
@@ -118,6 +137,9 @@ public final class IOManager extends Singleton {
         AUTOSAVE_SCHEDULER.scheduleAtFixedRate(this::saveData, AUTOSAVE_INTERVAL, AUTOSAVE_INTERVAL, TimeUnit.MINUTES);
 
         loadData();
+
+        // The first password set needs calibrated KDF parameters, compute them while the user types it
+        if (isFirstRun) KdfCalibrator.warmUp();
     }
 
     public ObservableList<Account> getAccountList() {
@@ -137,6 +159,102 @@ public final class IOManager extends Singleton {
         return this.IS_SAVING;
     }
 
+    /**
+     * Returns a read-only property with the progress of the legacy accounts migration, between 0 and 1.
+     * It stays at 1 when no migration is running, you can listen to this property to show/hide migration status UI.
+     * @return {@link ReadOnlyDoubleProperty} of the migration progress
+     */
+    public ReadOnlyDoubleProperty migrationProgressProperty() {
+        return ACCOUNT_REPOSITORY.migrationProgressProperty();
+    }
+
+    /**
+     * Returns a read-only property that tells whether every account shows its fields, either decrypted or taken from the display index.
+     * Until then, the fields of some accounts are not available, so features relying on all of them (search, sort) are partial.
+     * @return {@link ReadOnlyBooleanProperty} of the display state
+     */
+    public ReadOnlyBooleanProperty accountsDisplayReadyProperty() {
+        return ACCOUNT_REPOSITORY.displayReadyProperty();
+    }
+
+    /**
+     * Asks for the given accounts to be unlocked first, while the vault is unlocked on demand.
+     * @param accounts the accounts to unlock first, in order of priority
+     */
+    public void requestUnlock(@NotNull List<Account> accounts) {
+        ACCOUNT_REPOSITORY.requestUnlock(accounts);
+    }
+
+    /**
+     * Asks for every remaining account to be unlocked as soon as possible, while the vault is unlocked on demand.
+     * @return a future completing with true once every account has been unlocked
+     */
+    public @NotNull CompletableFuture<Boolean> requireFullUnlock() {
+        return ACCOUNT_REPOSITORY.requireFullUnlock();
+    }
+
+    /**
+     * Searches the software and username of the accounts in the background, cancelling the previous search, see {@link SearchExecutor}.
+     * @param query the text to look for
+     * @param matchCase whether the case of the query must match
+     * @param wholeWord whether the query must match a whole word
+     * @return a future completing with a predicate accepting the matching accounts, to be set on a filtered view of the account list,
+     *         or cancelled if another search is started first
+     */
+    public @NotNull CompletableFuture<Predicate<Account>> searchAccounts(@NotNull String query, boolean matchCase, boolean wholeWord) {
+        return SEARCH_EXECUTOR.submit(query, matchCase, wholeWord);
+    }
+
+    /**
+     * Searches the words of the software and username of the accounts in the background, tolerating typos,
+     * cancelling the previous search, see {@link AccountRepository#fuzzySearch(String)}.
+     * @param query the text to look for
+     * @return a future completing with the matching accounts and their ranking, or cancelled if another search is started first
+     */
+    public @NotNull CompletableFuture<RankedSearch> fuzzySearchAccounts(@NotNull String query) {
+        return SEARCH_EXECUTOR.submitFuzzy(query);
+    }
+
+    /**
+     * Counts an access to the given account, which ranks it higher among the fuzzy search results.
+     * @param account the account accessed
+     */
+    public void recordAccess(@NotNull Account account) {
+        ACCOUNT_REPOSITORY.recordAccess(account);
+    }
+
+    /**
+     * Suggests the software names starting with the given prefix, the most used first, see {@link AccountRepository#suggestSoftware}.
+     * @param prefix the text typed so far
+     * @return up to {@value AccountRepository#MAX_SUGGESTIONS} software names
+     */
+    public @NotNull List<String> suggestSoftware(@NotNull String prefix) {
+        return ACCOUNT_REPOSITORY.suggestSoftware(prefix, AccountRepository.MAX_SUGGESTIONS);
+    }
+
+    /**
+     * Suggests the usernames starting with the given prefix, the most used first, see {@link AccountRepository#suggestUsername}.
+     * @param prefix the text typed so far
+     * @return up to {@value AccountRepository#MAX_SUGGESTIONS} usernames
+     */
+    public @NotNull List<String> suggestUsername(@NotNull String prefix) {
+        return ACCOUNT_REPOSITORY.suggestUsername(prefix, AccountRepository.MAX_SUGGESTIONS);
+    }
+
+    /**
+     * Cancels the running search, if any.
+     */
+    public void cancelSearch() {
+        SEARCH_EXECUTOR.cancel();
+    }
+
+    /**
+     * @return the counters and latencies of the searches
+     */
+    public @NotNull SearchExecutor.Metrics getSearchMetrics() {
+        return SEARCH_EXECUTOR.getMetrics();
+    }
+
     // #region Persistence and lifecycle management
     private void setupListeners() {
         final ChangeListener<? super Object> propListener = (_, oldValue, newValue) -> {
@@ -149,7 +267,8 @@ public final class IOManager extends Singleton {
         USER_PREFERENCES.sortingOrderProperty().addListener(propListener);
 
         final ListChangeListener<Account> listListener = change -> {
-            if (!LOADING_LOCK.tryLock()) return;
+            // Once a save is pending there is nothing left to record, skip the lock
+            if (HAS_CHANGED.get() || !LOADING_LOCK.tryLock()) return;
             while (change.next()) {
                 if (change.wasAdded() || change.wasRemoved() || change.wasUpdated()) {
                     HAS_CHANGED.set(true);
@@ -321,18 +440,111 @@ public final class IOManager extends Singleton {
     // #endregion
 
     // #region UserPreferences methods
+    /**
+     * Authenticates synchronously, see {@link #authenticateAsync(String, Consumer)}.
+     * Do not call it on the JavaFX Application Thread, which would freeze for the whole key derivation: use the asynchronous variant instead.
+     *
+     * @param masterPassword the master password to verify
+     * @return true if the password is correct and the user was not authenticated yet
+     */
     public boolean authenticate(String masterPassword) {
+        try {
+            return authenticateAsync(masterPassword, _ -> {}).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw e;
+        }
+    }
+
+    /**
+     * Authenticates the user on a background thread.
+     * <p>
+     * The pipeline goes through the stages of {@link LoginStage}: the returned future completes with true as soon as the DEK is available,
+     * while the accounts keep unlocking in the background. It completes with false if the password is wrong or the user is already authenticated.
+     * </p>
+     * <p>
+     * Cancelling the future stops the pipeline, unless the user has already been authenticated, in which case cancellation has no effect.
+     * A key derivation that is already running completes in the background, and the key it unwraps is wiped.
+     * </p>
+     *
+     * @param masterPassword the master password to verify
+     * @param onStage        notified from the background thread whenever a stage starts
+     * @return a future completing with the outcome of the authentication
+     */
+    public @NotNull CompletableFuture<Boolean> authenticateAsync(String masterPassword, @NotNull Consumer<LoginStage> onStage) {
         // If already authenticated, no need to re-authenticate
-        if (isAuthenticated) return false;
-        Logger.getInstance().addInfo("Attempting user authentication...");
+        if (isAuthenticated) return CompletableFuture.completedFuture(false);
+
+        final LoginFuture login = new LoginFuture();
+        login.start(() -> {
+            Logger.getInstance().addInfo("Attempting user authentication...");
+
+            onStage.accept(LoginStage.DERIVING_KEY);
+            // Nothing is published until the login is committed, a cancelled login wipes the unwrapped key
+            try (UserPreferences.VerifiedKey key = USER_PREFERENCES.unwrapKey(masterPassword, () -> onStage.accept(LoginStage.UNWRAPPING_KEY))) {
+                if (key == null) return false;
+
+                // Past this point the login can no longer be cancelled
+                if (!login.commit()) {
+                    Logger.getInstance().addInfo("Authentication cancelled");
+                    return false;
+                }
+                key.publish();
+            }
+
+            this.masterPassword = masterPassword;
+            this.isAuthenticated = true;
+            Logger.getInstance().addInfo("User authenticated");
+
+            onStage.accept(LoginStage.UNLOCKING_ACCOUNTS);
+            // Never wait for the JavaFX Application Thread here, it may itself be waiting for the login (see authenticate)
+            applyDisplayIndex()
+                    .thenAccept(isDisplayed -> unlockAccounts(masterPassword, isDisplayed))
+                    .exceptionally(e -> {
+                        Logger.getInstance().addError(e);
+                        return null;
+                    });
+            return true;
+        });
+        return login;
+    }
+
+    private @NotNull CompletableFuture<Boolean> applyDisplayIndex() {
+        final DisplayIndex index = loadedDisplayIndex;
+        loadedDisplayIndex = null;
+        if (index == null) return CompletableFuture.completedFuture(false);
 
-        isAuthenticated = USER_PREFERENCES.verifyPassword(masterPassword);
-        if (!isAuthenticated) return false;
+        return ACCOUNT_REPOSITORY.applyDisplayIndex(index).thenApply(applied -> {
+            if (applied) Logger.getInstance().addInfo("Display index applied");
+            return applied;
+        });
+    }
 
-        this.masterPassword = masterPassword;
-        Logger.getInstance().addInfo("User authenticated");
+    private void unlockAccounts(String masterPassword, boolean isDisplayed) {
+        // Once the list is displayed, or if the vault is large, accounts are unlocked on demand in the background
+        // unless legacy accounts have to be migrated first
+        final boolean isLazy = isDisplayed || ACCOUNT_REPOSITORY.snapshot().size() >= AccountRepository.getLazyUnlockThreshold();
+        if (isLazy && !ACCOUNT_REPOSITORY.isMigrationPending()) {
+            ACCOUNT_REPOSITORY.unlockLazily()
+                    .thenAccept(unlocked -> {
+                        if (unlocked) Logger.getInstance().addInfo("All accounts unlocked");
+                    })
+                    .exceptionally(e -> {
+                        Logger.getInstance().addError(e);
+                        return null;
+                    });
+            return;
+        }
 
-        ACCOUNT_REPOSITORY.unlockAll(masterPassword)
+        // Legacy accounts are migrated as part of the unlock, saving periodically so that an interrupted migration resumes where it stopped
+        ACCOUNT_REPOSITORY.unlockAll(masterPassword, () -> {
+                    HAS_CHANGED.set(true);
+                    try {
+                        AUTOSAVE_SCHEDULER.execute(this::saveData);
+                    } catch (RejectedExecutionException e) {
+                        // Shutting down, close() saves anyway
+                    }
+                })
                 .thenAccept(unlocked -> {
                     if (unlocked) Logger.getInstance().addInfo("All accounts unlocked");
                 })
@@ -340,8 +552,25 @@ public final class IOManager extends Singleton {
                     Logger.getInstance().addError(e);
                     return null;
                 });
+    }
 
-        return true;
+    /**
+     * Sets or changes the master password on a background thread, see {@link #changeMasterPassword(String)}.
+     * Use it on the JavaFX Application Thread: wrapping the DEK derives the key, and the KDF parameters may still have to be calibrated.
+     *
+     * @param newMasterPassword the new master password
+     * @return a future completing with the outcome of the change
+     */
+    public @NotNull CompletableFuture<Boolean> changeMasterPasswordAsync(@NotNull String newMasterPassword) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        Thread.ofVirtual().name("master-password").start(() -> {
+            try {
+                future.complete(changeMasterPassword(newMasterPassword));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
     }
 
     public boolean changeMasterPassword(@NotNull String newMasterPassword) {
@@ -355,6 +584,12 @@ public final class IOManager extends Singleton {
             throw new IllegalStateException("User is not authenticated but the master password is set");
         }
 
+        // Accounts still in the legacy format can only be unlocked with the master password they were encrypted with
+        if (ACCOUNT_REPOSITORY.isMigrationPending()) {
+            Logger.getInstance().addInfo("Cannot change the master password until all legacy accounts are migrated");
+            return false;
+        }
+
         boolean res = USER_PREFERENCES.setPasswordVerified(oldMasterPassword, newMasterPassword);
         if (!res) return false;
 
@@ -362,6 +597,7 @@ public final class IOManager extends Singleton {
         this.isAuthenticated = true;
 
         Logger.getInstance().addInfo("Master password %s", (oldMasterPassword != null) ? "changed" : "set");
+        Logger.getInstance().addInfo("Master key derived with %s", USER_PREFERENCES.getKdfParameters());
         // Either it was a set or a change, in both cases we need to flag the data as changed to ensure it gets saved
         HAS_CHANGED.set(true);
 
@@ -390,6 +626,7 @@ public final class IOManager extends Singleton {
             data = OBJECT_MAPPER.readValue(file, AppData.class);
             USER_PREFERENCES.set(data.userPreferences());
             ACCOUNT_REPOSITORY.setAll(data.accountList());
+            loadedDisplayIndex = data.displayIndex();
             isFirstRun = false;
             Logger.getInstance().addInfo("Load OK");
         } finally {
@@ -398,24 +635,69 @@ public final class IOManager extends Singleton {
     }
 
     private void saveDataFile(File file) throws IOException {
-        // Create snapshots to ensure consistency during serialization
-        UserPreferences prefsSnapshot = new UserPreferences(); // Add a copy method if needed
-        List<Account> accountSnapshot;
-
-        synchronized(USER_PREFERENCES) {
-            prefsSnapshot.set(USER_PREFERENCES);
+        // Create snapshots to ensure consistency during serialization, the copy of the DEK is wiped once saved
+        try (UserPreferences prefsSnapshot = new UserPreferences()) {
+            synchronized(USER_PREFERENCES) {
+                prefsSnapshot.set(USER_PREFERENCES);
+            }
+            saveDataFile(file, prefsSnapshot);
         }
+    }
+
+    private void saveDataFile(File file, UserPreferences prefsSnapshot) throws IOException {
+        // The list shown by the UI may not reflect the latest writes yet
+        final List<Account> accountSnapshot = ACCOUNT_REPOSITORY.snapshot();
 
-        synchronized(ACCOUNT_REPOSITORY) {
-            accountSnapshot = new ArrayList<>(ACCOUNT_REPOSITORY.findAll());
+        // Files written by older versions, or while some accounts are still locked, simply have no display index
+        DisplayIndex displayIndex = null;
+        try {
+            final SortingOrder order = prefsSnapshot.getSortingOrder();
+            displayIndex = ACCOUNT_REPOSITORY.createDisplayIndex(accountSnapshot, order != null ? order.getComparator(prefsSnapshot.getLocale()) : null);
+        } catch (GeneralSecurityException e) {
+            Logger.getInstance().addError(e);
         }
 
-        AppData data = new AppData(prefsSnapshot, accountSnapshot);
+        AppData data = new AppData(prefsSnapshot, accountSnapshot, displayIndex);
         OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, data);
     }
 
+    /**
+     * Future of a login pipeline, which runs on its own virtual thread.
+     * Cancelling interrupts the pipeline, and is refused once the login has been committed.
+     */
+    private static final class LoginFuture extends CompletableFuture<Boolean> {
+        private Thread worker;
+        private boolean isCommitted = false;
+
+        private synchronized void start(Callable<Boolean> pipeline) {
+            worker = Thread.ofVirtual().name("login").start(() -> {
+                try {
+                    complete(pipeline.call());
+                } catch (Throwable t) {
+                    if (!isCancelled()) Logger.getInstance().addError(t);
+                    completeExceptionally(t);
+                }
+            });
+        }
+
+        private synchronized boolean commit() {
+            if (isDone()) return false;
+            isCommitted = true;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (isCommitted) return false;
+
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && worker != null) worker.interrupt();
+            return cancelled;
+        }
+    }
+
     // Wrapper class for application data
-    private record AppData(UserPreferences userPreferences, List<Account> accountList) {}
+    private record AppData(UserPreferences userPreferences, List<Account> accountList, DisplayIndex displayIndex) {}
 
     // #region Singleton methods
     @Override
@@ -424,10 +706,23 @@ public final class IOManager extends Singleton {
 
         Logger.getInstance().addInfo("Shutting down executor services");
         AUTOSAVE_SCHEDULER.shutdown();
+        SEARCH_EXECUTOR.close();
         ACCOUNT_REPOSITORY.close();
 
         // when the user shuts down the program on the first run, it won't save (not authenticated)
         saveData();
+
+        // A running autosave still needs the DEK
+        try {
+            if (!AUTOSAVE_SCHEDULER.awaitTermination(AUTOSAVE_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                Logger.getInstance().addInfo("Autosave still running, leaving the DEK unwiped");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        USER_PREFERENCES.close();
     }
 
     public static IOManager getInstance() {
@@ -0,0 +1,97 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.base;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.base.KdfCalibrator;
+import password.manager.app.base.KdfParameters;
+import password.manager.app.base.SecurityVersion;
+
+public class TestKdfCalibrator {
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(KdfCalibrator.TARGET_LATENCY_KEY);
+    }
+
+    @Test
+    void testCalibrationRespectsFloors() {
+        // A target no host can meet must still produce the minimum cost
+        KdfParameters parameters = KdfCalibrator.calibrate(Duration.ofMillis(1));
+
+        assertEquals(KdfCalibrator.MIN_MEMORY_KIB, parameters.memoryKiB());
+        assertEquals(KdfCalibrator.MIN_ITERATIONS, parameters.iterations());
+        assertTrue(parameters.parallelism() >= 1 && parameters.parallelism() <= KdfCalibrator.MAX_LANES);
+
+        // Calibrating must never be weaker than the parameters used before it
+        assertTrue(parameters.memoryKiB() >= KdfParameters.DEFAULT.memoryKiB());
+        assertTrue(parameters.iterations() >= KdfParameters.DEFAULT.iterations());
+    }
+
+    @Test
+    void testCalibrationScalesWithTarget() {
+        KdfParameters fast = KdfCalibrator.calibrate(Duration.ofMillis(50));
+        KdfParameters slow = KdfCalibrator.calibrate(Duration.ofMillis(800));
+
+        // The total cost may only grow with the target
+        long fastCost = (long) fast.memoryKiB() * fast.iterations();
+        long slowCost = (long) slow.memoryKiB() * slow.iterations();
+        assertTrue(slowCost >= fastCost, String.format("%s should not be cheaper than %s", slow, fast));
+
+        assertEquals(0, slow.memoryKiB() % 1024, "Memory should be a whole number of MiBs");
+        assertTrue(slow.iterations() <= KdfCalibrator.MAX_ITERATIONS);
+
+        // The calibrated parameters must be usable right away
+        assertEquals(SecurityVersion.KEY_BITS / 8, SecurityVersion.ARGON2.getKey("password", new byte[16], slow).length);
+    }
+
+    @Test
+    void testTargetLatencyProperty() {
+        assertEquals(KdfCalibrator.DEFAULT_TARGET_LATENCY, KdfCalibrator.getTargetLatency());
+
+        System.setProperty(KdfCalibrator.TARGET_LATENCY_KEY, "1200");
+        assertEquals(Duration.ofMillis(1200), KdfCalibrator.getTargetLatency());
+
+        System.setProperty(KdfCalibrator.TARGET_LATENCY_KEY, "not a number");
+        assertEquals(KdfCalibrator.DEFAULT_TARGET_LATENCY, KdfCalibrator.getTargetLatency());
+
+        System.setProperty(KdfCalibrator.TARGET_LATENCY_KEY, "-5");
+        assertEquals(KdfCalibrator.DEFAULT_TARGET_LATENCY, KdfCalibrator.getTargetLatency());
+    }
+
+    @Test
+    void testInvalidInputs() {
+        assertThrows(IllegalArgumentException.class, () -> KdfCalibrator.calibrate(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> KdfCalibrator.calibrate(null));
+
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(64, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(64, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(64, KdfParameters.MAX_ITERATIONS + 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(64, Integer.MAX_VALUE, 1));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(31, 1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new KdfParameters(KdfParameters.MAX_MEMORY_KIB + 1, 1, 1));
+    }
+}
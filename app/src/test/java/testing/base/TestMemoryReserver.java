@@ -0,0 +1,163 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.base;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.base.MemoryReserver;
+import password.manager.app.base.MemoryReserver.Metrics;
+import password.manager.app.base.MemoryReserver.Reservation;
+
+public class TestMemoryReserver {
+
+    private static final long MiB = 1024 * 1024;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty(MemoryReserver.BUDGET_KEY, "4");
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(MemoryReserver.BUDGET_KEY);
+    }
+
+    @Test
+    void testBudgetProperty() {
+        assertEquals(4 * MiB, MemoryReserver.getBudget());
+
+        System.setProperty(MemoryReserver.BUDGET_KEY, "not a number");
+        assertTrue(MemoryReserver.getBudget() > 0);
+        assertTrue(MemoryReserver.getBudget() <= Runtime.getRuntime().maxMemory());
+    }
+
+    @Test
+    void testReservationsWithinBudget() throws InterruptedException {
+        try (Reservation first = MemoryReserver.acquire(2 * MiB, Duration.ZERO);
+             Reservation second = MemoryReserver.acquire(2 * MiB, Duration.ZERO)) {
+            assertNotNull(first);
+            assertNotNull(second);
+            assertEquals(0, MemoryReserver.getHeadroom());
+
+            // The budget is exhausted, a further request times out
+            long timedOut = MemoryReserver.getMetrics().timedOut();
+            assertNull(MemoryReserver.acquire(1, Duration.ofMillis(20)));
+            assertEquals(timedOut + 1, MemoryReserver.getMetrics().timedOut());
+        }
+
+        assertEquals(4 * MiB, MemoryReserver.getHeadroom());
+    }
+
+    @Test
+    void testOversizedReservationRunsAlone() throws InterruptedException {
+        try (Reservation oversized = MemoryReserver.acquire(16 * MiB, Duration.ZERO)) {
+            assertNotNull(oversized, "A reservation larger than the budget must be admitted when nothing else is reserved");
+            assertNull(MemoryReserver.acquire(1, Duration.ZERO));
+        }
+    }
+
+    @Test
+    void testWaitersAreAdmittedInOrder() throws Exception {
+        List<Integer> admitted = new CopyOnWriteArrayList<>();
+        Reservation blocker = MemoryReserver.acquire(4 * MiB, Duration.ZERO);
+        assertNotNull(blocker);
+
+        // A large request queued first must not be overtaken by the small ones behind it
+        long[] sizes = { 3 * MiB, MiB, MiB };
+        Thread[] threads = new Thread[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            final int index = i;
+            threads[i] = Thread.ofVirtual().start(() -> MemoryReserver.execute(sizes[index], () -> admitted.add(index)));
+            waitForQueued(i + 1);
+        }
+
+        blocker.close();
+        for (Thread thread : threads) assertTrue(thread.join(Duration.ofSeconds(5)));
+
+        assertEquals(List.of(0, 1, 2), admitted);
+        assertEquals(4 * MiB, MemoryReserver.getHeadroom());
+    }
+
+    @Test
+    void testInterruptedWaiterIsWithdrawn() throws Exception {
+        Reservation blocker = MemoryReserver.acquire(4 * MiB, Duration.ZERO);
+        assertNotNull(blocker);
+
+        long cancelled = MemoryReserver.getMetrics().cancelled();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                MemoryReserver.acquire(4 * MiB, null);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        waitForQueued(1);
+
+        waiter.interrupt();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+        Metrics metrics = MemoryReserver.getMetrics();
+        assertEquals(0, metrics.queued());
+        assertEquals(cancelled + 1, metrics.cancelled());
+
+        blocker.close();
+        assertEquals(4 * MiB, MemoryReserver.getHeadroom(), "A withdrawn request must not keep any memory");
+    }
+
+    @Test
+    void testMetricsTrackGrantsAndWaits() throws Exception {
+        Metrics before = MemoryReserver.getMetrics();
+
+        Reservation blocker = MemoryReserver.acquire(4 * MiB, Duration.ZERO);
+        assertNotNull(blocker);
+        Thread waiter = Thread.ofVirtual().start(() -> MemoryReserver.execute(MiB, () -> {}));
+        waitForQueued(1);
+
+        Thread.sleep(50);
+        blocker.close();
+        blocker.close(); // Closing twice must not release the memory twice
+        assertTrue(waiter.join(Duration.ofSeconds(5)));
+
+        Metrics after = MemoryReserver.getMetrics();
+        assertEquals(before.granted() + 2, after.granted());
+        assertEquals(0, after.reservedBytes());
+        assertTrue(after.maxWait().toMillis() >= 50, "The waiter should have waited at least until the blocker was released");
+        assertTrue(after.totalWait().compareTo(before.totalWait()) > 0);
+    }
+
+    private static void waitForQueued(int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (MemoryReserver.getMetrics().queued() < queued) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting for " + queued + " queued requests");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package testing.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static testing.benchmarks.BenchmarkUtils.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.AES;
+
+/**
+ * Compares the pooled GCM engines in {@link AES} against the previous
+ * {@code Cipher.getInstance} per call approach, on a simulated 50k-account vault
+ * (three fields per account, as in {@code Account.getData}).
+ */
+@EnabledForBenchmarks
+public class BenchmarkAES {
+
+    private static final int ACCOUNTS = 50_000;
+    private static final int FIELDS = ACCOUNTS * 3;
+
+    private static byte[][] keys, ivs, plaintexts, ciphertexts;
+
+    @BeforeAll
+    static void setUp() throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+
+        keys = new byte[FIELDS][AES.AES_BITS / 8];
+        ivs = new byte[FIELDS][16];
+        plaintexts = new byte[FIELDS][];
+        ciphertexts = new byte[FIELDS][];
+
+        for (int i = 0; i < FIELDS; i++) {
+            random.nextBytes(keys[i]);
+            random.nextBytes(ivs[i]);
+            plaintexts[i] = ("field-value-" + i).getBytes(StandardCharsets.UTF_8);
+            ciphertexts[i] = AES.encryptAES(plaintexts[i], keys[i], ivs[i]);
+        }
+    }
+
+    @Test
+    void benchmarkDecryptVault() throws GeneralSecurityException {
+        // Warm up both paths so that the JIT does not skew the first measurement
+        for (int i = 0; i < 3; i++) {
+            decryptAllPerCall();
+            decryptAllPooled();
+        }
+
+        Measurement perCall = measure(BenchmarkAES::decryptAllPerCall);
+        Measurement pooled = measure(BenchmarkAES::decryptAllPooled);
+
+        report("AES decrypt, Cipher.getInstance per call", perCall, FIELDS);
+        report("AES decrypt, pooled engines", pooled, FIELDS);
+
+        assertTrue(pooled.allocatedBytes() < perCall.allocatedBytes(), "Pooled engines should allocate less per operation");
+    }
+
+    @Test
+    void benchmarkEncryptVault() throws GeneralSecurityException {
+        for (int i = 0; i < 3; i++) {
+            encryptAllPerCall();
+            encryptAllPooled();
+        }
+
+        Measurement perCall = measure(BenchmarkAES::encryptAllPerCall);
+        Measurement pooled = measure(BenchmarkAES::encryptAllPooled);
+
+        report("AES encrypt, Cipher.getInstance per call", perCall, FIELDS);
+        report("AES encrypt, pooled engines", pooled, FIELDS);
+
+        assertTrue(pooled.allocatedBytes() < perCall.allocatedBytes(), "Pooled engines should allocate less per operation");
+    }
+
+    private static void decryptAllPooled() throws GeneralSecurityException {
+        for (int i = 0; i < FIELDS; i++) AES.decryptAES(ciphertexts[i], keys[i], ivs[i]);
+    }
+
+    private static void encryptAllPooled() throws GeneralSecurityException {
+        for (int i = 0; i < FIELDS; i++) AES.encryptAES(plaintexts[i], keys[i], ivs[i]);
+    }
+
+    private static void decryptAllPerCall() throws GeneralSecurityException {
+        for (int i = 0; i < FIELDS; i++) perCall(Cipher.DECRYPT_MODE, ciphertexts[i], keys[i], ivs[i]);
+    }
+
+    private static void encryptAllPerCall() throws GeneralSecurityException {
+        for (int i = 0; i < FIELDS; i++) perCall(Cipher.ENCRYPT_MODE, plaintexts[i], keys[i], ivs[i]);
+    }
+
+    // Previous implementation of AES.encryptAES/decryptAES, kept here as the baseline
+    private static byte[] perCall(int mode, byte[] value, byte[] key, byte[] iv) throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "BC");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(AES.GCM_TAG_BITS, iv));
+        return cipher.doFinal(value);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package testing.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static testing.benchmarks.BenchmarkUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.Account;
+import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.AccountRepository;
+import password.manager.app.security.RankedSearch;
+import password.manager.app.security.UserPreferences;
+import password.manager.app.singletons.Singletons;
+import testing.TestingUtils;
+
+/**
+ * Measures a fuzzy search over a large vault, as the manager runs it on each keystroke: through {@link AccountRepository#fuzzySearch},
+ * then ranking the matches, against comparing the query with every word of every account.
+ * Each search is expected to stay within {@value #BUDGET_MS} ms.
+ */
+@EnabledForBenchmarks
+public class BenchmarkFuzzySearch {
+
+    private static final String MASTER_PASSWORD = "BenchmarkPassword123!";
+    private static final int VAULT_SIZE = 50_000;
+    private static final int ROUNDS = 20;
+    private static final long BUDGET_MS = 10;
+
+    private static final String[] SERVICES = {
+        "GitHub", "GitLab", "Google", "Amazon", "PayPal", "Netflix", "Spotify", "Dropbox", "Microsoft", "Steam",
+        "Discord", "Reddit", "Twitter", "LinkedIn", "Facebook", "Instagram", "Bank", "Mail Server", "Cloud Storage", "Forum"
+    };
+    private static final String[] NAMES = { "alice", "bob", "carol", "dave", "erin", "frank", "grace", "heidi", "ivan", "judy" };
+    private static final String[] DOMAINS = { "gmail.com", "outlook.com", "proton.me", "example.org" };
+    private static final String[] QUERIES = { "gihtub", "amazn", "paypla", "netflx", "mircosoft", "alice", "grac gmal", "xyzzy", "g" };
+
+    private static AccountRepository repository;
+    private static List<Account> accounts;
+
+    @BeforeAll
+    static void setUp() {
+        TestingUtils.injectBasePath();
+
+        final Random random = new Random(42);
+        repository = new AccountRepository(UserPreferences.of(MASTER_PASSWORD));
+        for (int i = 0; i < VAULT_SIZE; i++) {
+            final String software = SERVICES[random.nextInt(SERVICES.length)] + " " + i;
+            final String username = NAMES[random.nextInt(NAMES.length)] + "." + NAMES[random.nextInt(NAMES.length)] + random.nextInt(1000)
+                    + "@" + DOMAINS[random.nextInt(DOMAINS.length)];
+            repository.add(new AccountData(software, username, "password" + i)).join();
+        }
+        accounts = repository.snapshot();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        repository.close();
+        Singletons.shutdownAll();
+    }
+
+    @Test
+    void benchmarkFuzzySearch() {
+        // Warm up both paths
+        for (String query : QUERIES) {
+            rank(repository.fuzzySearch(query));
+            filter(repository.fuzzySearch(query));
+            filter(scan(query));
+        }
+
+        for (String query : QUERIES) {
+            final int[] matches = new int[3];
+            final Measurement scan = measure(() -> matches[0] = filter(scan(query)));
+            final Measurement index = measure(() -> {
+                for (int i = 0; i < ROUNDS; i++) matches[1] = filter(repository.fuzzySearch(query));
+            });
+            final RankedSearch result = repository.fuzzySearch(query);
+            final Measurement ranking = measure(() -> matches[2] = rank(result).size());
+            assertEquals(matches[0], matches[1], "Both searches should find the same accounts for " + query);
+
+            report("scan, fuzzy '" + query + "'", scan, VAULT_SIZE);
+            report("index, fuzzy '" + query + "' (" + matches[1] + " matches)", index, ROUNDS);
+            report("ranking, fuzzy '" + query + "'", ranking, Math.max(1, matches[2]));
+
+            // The search and the filtering run on each keystroke, the ranking only sorts the matches shown
+            final double perSearchMs = index.elapsedNanos() / 1e6 / ROUNDS;
+            assertTrue(perSearchMs <= BUDGET_MS, "Fuzzy search for " + query + " took " + perSearchMs + " ms, over the " + BUDGET_MS + " ms budget");
+        }
+    }
+
+    private static List<Account> rank(RankedSearch result) {
+        final List<Account> matches = new ArrayList<>();
+        for (Account account : accounts) {
+            if (result.test(account)) matches.add(account);
+        }
+        matches.sort(result.ranking());
+        return matches;
+    }
+
+    private static int filter(Predicate<Account> predicate) {
+        int matches = 0;
+        for (Account account : accounts) {
+            if (predicate.test(account)) matches++;
+        }
+        return matches;
+    }
+
+    // Compares every query word with every word of every account, with the same tolerance as the index
+    private static Predicate<Account> scan(String query) {
+        final String[] queryWords = query.toLowerCase(Locale.ROOT).split("[\\s\\p{P}]+");
+        return account -> {
+            final List<String> words = new ArrayList<>(List.of(account.getSoftware().toLowerCase(Locale.ROOT).split("[\\s\\p{P}]+")));
+            words.addAll(List.of(account.getUsername().toLowerCase(Locale.ROOT).split("[\\s\\p{Punct}]+")));
+
+            for (String queryWord : queryWords) {
+                final int maxDistance = queryWord.length() < 3 ? 0 : queryWord.length() < 6 ? 1 : 2;
+                if (words.stream().noneMatch(word -> word.startsWith(queryWord) || levenshtein(queryWord, word) <= maxDistance)) return false;
+            }
+            return true;
+        };
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1], current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                current[j] = Math.min(previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1), Math.min(previous[j], current[j - 1]) + 1);
+            }
+            final int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
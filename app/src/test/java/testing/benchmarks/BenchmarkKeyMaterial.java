@@ -0,0 +1,105 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static testing.benchmarks.BenchmarkUtils.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.AES;
+import password.manager.app.security.KeyMaterial;
+
+/**
+ * Compares opening the compact records of a simulated 50k-account vault with a heap DEK, deriving each record key
+ * into a fresh array as {@code Account} used to, against an off-heap {@link KeyMaterial} DEK whose record keys
+ * are derived inside the pooled AES engine.
+ */
+@EnabledForBenchmarks
+public class BenchmarkKeyMaterial {
+
+    private static final int ACCOUNTS = 50_000;
+    private static final String INFO = "record";
+
+    private static byte[] DEK;
+    private static KeyMaterial DEKMaterial;
+    private static byte[][] salts, nonces, records;
+
+    @BeforeAll
+    static void setUp() throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+
+        DEK = new byte[AES.AES_BITS / 8];
+        random.nextBytes(DEK);
+        DEKMaterial = KeyMaterial.copyOf(DEK);
+
+        salts = new byte[ACCOUNTS][16];
+        nonces = new byte[ACCOUNTS][12];
+        records = new byte[ACCOUNTS][];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            random.nextBytes(salts[i]);
+            random.nextBytes(nonces[i]);
+            records[i] = AES.deriveAndEncrypt(("record-" + i).getBytes(StandardCharsets.UTF_8), DEKMaterial, salts[i], INFO, nonces[i]);
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        DEKMaterial.close();
+    }
+
+    @Test
+    void benchmarkOpenRecords() throws GeneralSecurityException {
+        for (int i = 0; i < 3; i++) {
+            openAllHeap();
+            openAllOffHeap();
+        }
+
+        Measurement heap = measure(BenchmarkKeyMaterial::openAllHeap);
+        Measurement offHeap = measure(BenchmarkKeyMaterial::openAllOffHeap);
+
+        report("Open records, heap DEK and record keys", heap, ACCOUNTS);
+        report("Open records, off-heap key material", offHeap, ACCOUNTS);
+
+        assertTrue(offHeap.allocatedBytes() < heap.allocatedBytes(), "Off-heap keys should leave less garbage per record");
+    }
+
+    private static void openAllHeap() throws GeneralSecurityException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final byte[] key = AES.deriveKey(DEK, salts[i], INFO);
+            try {
+                AES.decryptAES(records[i], key, nonces[i]);
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        }
+    }
+
+    private static void openAllOffHeap() throws GeneralSecurityException {
+        for (int i = 0; i < ACCOUNTS; i++) AES.deriveAndDecrypt(records[i], DEKMaterial, salts[i], INFO, nonces[i]);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static testing.benchmarks.BenchmarkUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.Account;
+import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.AccountRepository;
+import password.manager.app.security.UserPreferences;
+import password.manager.app.singletons.Singletons;
+import testing.TestingUtils;
+
+/**
+ * Measures many concurrent {@link AccountRepository#getData} calls, both on an idle vault and while a
+ * password verification holds the preferences, which used to block every reader of the DEK until it ended.
+ */
+@EnabledForBenchmarks
+public class BenchmarkKeyState {
+
+    private static final String MASTER_PASSWORD = "BenchmarkPassword123!";
+    private static final int ACCOUNTS = 1_000;
+    private static final int READS = 50_000;
+
+    private static UserPreferences userPreferences;
+    private static AccountRepository repository;
+    private static List<Account> accounts;
+
+    @BeforeAll
+    static void setUp() {
+        TestingUtils.injectBasePath();
+
+        userPreferences = UserPreferences.of(MASTER_PASSWORD);
+        repository = new AccountRepository(userPreferences);
+
+        accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(repository.add(new AccountData("software" + i, "user" + i, "password" + i)).join());
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        repository.close();
+        Singletons.shutdownAll();
+    }
+
+    @Test
+    void benchmarkConcurrentReads() throws Exception {
+        for (int i = 0; i < 3; i++) readAll();
+
+        Measurement idle = measure(BenchmarkKeyState::readAll);
+
+        CountDownLatch derived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Park a verification right after its key derivation, while it owns the preferences
+        CompletableFuture<Boolean> verification = CompletableFuture.supplyAsync(() -> userPreferences.verifyPassword(MASTER_PASSWORD, () -> {
+            derived.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        Measurement duringVerification;
+        try {
+            assertTrue(derived.await(30, TimeUnit.SECONDS));
+            duringVerification = measure(() -> CompletableFuture.runAsync(BenchmarkKeyState::readAll).get(60, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        assertTrue(verification.get(30, TimeUnit.SECONDS));
+
+        report("getData, idle vault", idle, READS);
+        report("getData, during password verification", duringVerification, READS);
+    }
+
+    private static void readAll() {
+        final List<CompletableFuture<AccountData>> reads = new ArrayList<>(READS);
+        for (int i = 0; i < READS; i++) reads.add(repository.getData(accounts.get(i % ACCOUNTS)));
+
+        for (int i = 0; i < READS; i++) {
+            assertEquals("password" + (i % ACCOUNTS), reads.get(i).join().password());
+        }
+    }
+}
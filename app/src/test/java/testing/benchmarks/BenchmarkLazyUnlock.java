@@ -0,0 +1,146 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static testing.benchmarks.BenchmarkUtils.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.Account;
+import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.AccountRepository;
+import password.manager.app.security.DisplayIndex;
+import password.manager.app.security.UserPreferences;
+import password.manager.app.singletons.Singletons;
+import testing.TestingUtils;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+
+/**
+ * Measures the time until the first screen of accounts is unlocked, for growing vaults:
+ * with {@link AccountRepository#unlockAll} it grows with the vault, with {@link AccountRepository#unlockLazily} it should not.
+ * Also measures the time until every account is shown from a {@link DisplayIndex}, before any of them is unlocked.
+ */
+@EnabledForBenchmarks
+public class BenchmarkLazyUnlock {
+
+    private static final String MASTER_PASSWORD = "BenchmarkPassword123!";
+    private static final int[] VAULT_SIZES = { 1_000, 10_000, 40_000 };
+    private static final int SCREEN = 30;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static UserPreferences userPreferences;
+    private static ArrayNode savedAccounts;
+    private static final Map<Integer, DisplayIndex> DISPLAY_INDEXES = new HashMap<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TestingUtils.injectBasePath();
+
+        userPreferences = UserPreferences.of(MASTER_PASSWORD);
+        try (AccountRepository repository = new AccountRepository(userPreferences)) {
+            for (int i = 0; i < VAULT_SIZES[VAULT_SIZES.length - 1]; i++) {
+                repository.add(new AccountData("software" + i, "user" + i, "password" + i)).join();
+            }
+            savedAccounts = MAPPER.valueToTree(repository.findAll());
+            for (int size : VAULT_SIZES) {
+                DISPLAY_INDEXES.put(size, repository.createDisplayIndex(repository.findAll().subList(0, size), null));
+            }
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Singletons.shutdownAll();
+    }
+
+    @Test
+    void benchmarkFirstScreen() throws Exception {
+        // Warm up both paths on the smallest vault
+        firstScreenEager(VAULT_SIZES[0]);
+        firstScreenLazy(VAULT_SIZES[0]);
+
+        for (int size : VAULT_SIZES) {
+            report("unlockAll, first screen of " + size, firstScreenEager(size), SCREEN);
+            report("unlockLazily, first screen of " + size, firstScreenLazy(size), SCREEN);
+        }
+    }
+
+    @Test
+    void benchmarkDisplayIndex() {
+        showFromIndex(VAULT_SIZES[0]);
+
+        for (int size : VAULT_SIZES) {
+            report("applyDisplayIndex, whole list of " + size, showFromIndex(size), size);
+        }
+    }
+
+    private static Measurement showFromIndex(int size) {
+        final Account[] accounts = load(size);
+        try (AccountRepository repository = repository(accounts)) {
+            final Measurement measurement = measure(() -> assertTrue(repository.applyDisplayIndex(DISPLAY_INDEXES.get(size)).join()));
+            assertEquals("software" + (size - 1), accounts[size - 1].getSoftware());
+            return measurement;
+        }
+    }
+
+    private static Measurement firstScreenEager(int size) {
+        final Account[] accounts = load(size);
+        try (AccountRepository repository = repository(accounts)) {
+            return measure(() -> assertTrue(repository.unlockAll(null).join()));
+        }
+    }
+
+    private static Measurement firstScreenLazy(int size) {
+        final Account[] accounts = load(size);
+        final List<Account> screen = Arrays.asList(accounts).subList(size / 2, size / 2 + SCREEN);
+        try (AccountRepository repository = repository(accounts)) {
+            final Measurement measurement = measure(() -> {
+                repository.unlockLazily();
+                repository.requestUnlock(screen);
+                while (!screen.stream().allMatch(account -> account.getSoftware().startsWith("software"))) Thread.onSpinWait();
+            });
+
+            assertTrue(repository.requireFullUnlock().join());
+            return measurement;
+        }
+    }
+
+    private static Account[] load(int size) {
+        final ArrayNode slice = MAPPER.createArrayNode();
+        for (int i = 0; i < size; i++) slice.add(savedAccounts.get(i));
+        return MAPPER.treeToValue(slice, Account[].class);
+    }
+
+    private static AccountRepository repository(Account[] accounts) {
+        final AccountRepository repository = new AccountRepository(userPreferences);
+        repository.setAll(accounts);
+        return repository;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package testing.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static testing.benchmarks.BenchmarkUtils.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.Account;
+import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.AccountRepository;
+import password.manager.app.security.UserPreferences;
+import password.manager.app.singletons.Singletons;
+import testing.TestingUtils;
+
+/**
+ * Measures a search over a large vault, filtering the whole list as the manager does on each keystroke:
+ * by comparing the fields of every account, and through {@link AccountRepository#search}.
+ */
+@EnabledForBenchmarks
+public class BenchmarkSearch {
+
+    private static final String MASTER_PASSWORD = "BenchmarkPassword123!";
+    private static final int VAULT_SIZE = 30_000;
+    private static final String[] QUERIES = { "soft", "software1234", "user29", "mail", "xyz" };
+    private static final String[] SERVICES = { "mail", "bank", "shop", "forum", "cloud", "game" };
+
+    private static AccountRepository repository;
+    private static List<Account> accounts;
+
+    @BeforeAll
+    static void setUp() {
+        TestingUtils.injectBasePath();
+
+        repository = new AccountRepository(UserPreferences.of(MASTER_PASSWORD));
+        for (int i = 0; i < VAULT_SIZE; i++) {
+            repository.add(new AccountData("Software" + i + " " + SERVICES[i % SERVICES.length], "user" + i, "password" + i)).join();
+        }
+        accounts = repository.snapshot();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        repository.close();
+        Singletons.shutdownAll();
+    }
+
+    @Test
+    void benchmarkSubstring() {
+        search(false, false);
+    }
+
+    @Test
+    void benchmarkWholeWord() {
+        search(false, true);
+    }
+
+    private static void search(boolean matchCase, boolean wholeWord) {
+        // Warm up both paths
+        for (String query : QUERIES) {
+            filter(scan(query, matchCase, wholeWord));
+            filter(repository.search(query, matchCase, wholeWord));
+        }
+
+        for (String query : QUERIES) {
+            final int[] matches = new int[2];
+            final Measurement scan = measure(() -> matches[0] = filter(scan(query, matchCase, wholeWord)));
+            final Measurement index = measure(() -> matches[1] = filter(repository.search(query, matchCase, wholeWord)));
+            assertEquals(matches[0], matches[1], "Both searches should find the same accounts for " + query);
+
+            final String mode = wholeWord ? "whole word" : "substring";
+            report("scan, " + mode + " '" + query + "'", scan, VAULT_SIZE);
+            report("index, " + mode + " '" + query + "'", index, VAULT_SIZE);
+        }
+    }
+
+    private static int filter(Predicate<Account> predicate) {
+        int matches = 0;
+        for (Account account : accounts) {
+            if (predicate.test(account)) matches++;
+        }
+        return matches;
+    }
+
+    // The predicate the manager used to set, comparing the fields of every account
+    private static Predicate<Account> scan(String query, boolean matchCase, boolean wholeWord) {
+        final String text = matchCase ? query : query.toLowerCase(Locale.ROOT);
+        return account -> {
+            final String software = matchCase ? account.getSoftware() : account.getSoftware().toLowerCase(Locale.ROOT);
+            final String username = matchCase ? account.getUsername() : account.getUsername().toLowerCase(Locale.ROOT);
+
+            if (wholeWord) {
+                return Arrays.asList(software.split("[\\s\\p{P}]+")).contains(text) || Arrays.asList(username.split("[\\s\\p{Punct}]+")).contains(text);
+            }
+            return software.contains(text) || username.contains(text);
+        };
+    }
+}
@@ -0,0 +1,84 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+package testing.benchmarks;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Small helpers shared by the benchmarks in this package.
+ * <p>
+ * Benchmarks are not run by the regular {@code test} task, use {@code gradle :app:benchmark} instead.
+ * Each measurement runs on the calling thread, so that its allocations can be read back precisely.
+ */
+public final class BenchmarkUtils {
+
+    public static final String BENCHMARKS_PROPERTY = "benchmarks";
+
+    private BenchmarkUtils() {}
+
+    /**
+     * Enables the annotated class or method only when benchmarks are explicitly requested.
+     */
+    @Target({ ElementType.TYPE, ElementType.METHOD })
+    @Retention(RetentionPolicy.RUNTIME)
+    @EnabledIfSystemProperty(named = BENCHMARKS_PROPERTY, matches = "true")
+    public @interface EnabledForBenchmarks {}
+
+    @FunctionalInterface
+    public interface Workload {
+        void run() throws Exception;
+    }
+
+    public record Measurement(long elapsedNanos, long allocatedBytes) {}
+
+    /**
+     * Runs the workload once, measuring wall time and bytes allocated by the current thread.
+     */
+    public static Measurement measure(Workload workload) {
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().threadId();
+
+        final long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        try {
+            workload.run();
+        } catch (Exception e) {
+            throw new RuntimeException("Benchmark workload failed", e);
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new Measurement(elapsed, allocated);
+    }
+
+    public static void report(String name, Measurement measurement, int operations) {
+        System.out.printf("%-48s %10.1f ms  %10.0f ns/op  %10.1f ops/ms  %10.0f B/op%n",
+                name,
+                measurement.elapsedNanos() / 1e6,
+                (double) measurement.elapsedNanos() / operations,
+                operations / (measurement.elapsedNanos() / 1e6),
+                (double) measurement.allocatedBytes() / operations);
+    }
+}
@@ -25,6 +25,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -36,6 +41,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import javax.crypto.ShortBufferException;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -208,6 +215,71 @@ public class TestAES {
         }
     }
 
+    @Test
+    void testByteBufferRoundTrip() throws GeneralSecurityException {
+        byte[] key = SecurityVersion.LATEST.getKey("testPassword123", salt);
+        byte[] plain = "Buffer message".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        // Direct buffers go through the staged path, heap buffers are processed in place
+        ByteBuffer directInput = ByteBuffer.allocateDirect(plain.length).put(plain).flip();
+        ByteBuffer directOutput = ByteBuffer.allocateDirect(AES.getEncryptedLength(plain.length));
+
+        int written = AES.encryptAES(directInput, directOutput, key, iv);
+        assertEquals(AES.getEncryptedLength(plain.length), written);
+        assertFalse(directInput.hasRemaining());
+
+        byte[] encrypted = new byte[written];
+        directOutput.flip().get(encrypted);
+        assertArrayEquals(plain, AES.decryptAES(encrypted, key, iv));
+
+        ByteBuffer heapOutput = ByteBuffer.allocate(AES.getDecryptedLength(encrypted.length));
+        AES.decryptAES(ByteBuffer.wrap(encrypted), heapOutput, key, iv);
+        assertArrayEquals(plain, heapOutput.array());
+    }
+
+    @Test
+    void testMemorySegmentRoundTrip() throws GeneralSecurityException {
+        byte[] key = SecurityVersion.LATEST.getKey("testPassword123", salt);
+        byte[] plain = "Segment message".getBytes(StandardCharsets.UTF_8);
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment input = arena.allocate(plain.length);
+            MemorySegment.copy(plain, 0, input, ValueLayout.JAVA_BYTE, 0, plain.length);
+
+            MemorySegment encrypted = arena.allocate(AES.getEncryptedLength(plain.length));
+            long written = AES.encryptAES(input, encrypted, key, iv);
+
+            MemorySegment decrypted = arena.allocate(plain.length);
+            AES.decryptAES(encrypted.asSlice(0, written), decrypted, key, iv);
+            assertArrayEquals(plain, decrypted.toArray(ValueLayout.JAVA_BYTE));
+        }
+    }
+
+    @Test
+    void testStringBufferRoundTrip() throws GeneralSecurityException {
+        byte[] key = SecurityVersion.LATEST.getKey("testPassword123", salt);
+        String plaintext = "Ünïcödé 🔒 \uD800 text";
+
+        ByteBuffer encrypted = ByteBuffer.allocate(AES.getEncryptedLength(AES.utf8Length(plaintext)));
+        AES.encryptStringAES(plaintext, encrypted, key, iv);
+        assertFalse(encrypted.hasRemaining(), "utf8Length should match the encoded length exactly");
+
+        // Unpaired surrogates are replaced like String.getBytes does
+        String expected = new String(plaintext.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        assertEquals(expected, AES.decryptStringAES(encrypted.flip(), key, iv));
+    }
+
+    @Test
+    void testShortOutputBuffer() throws GeneralSecurityException {
+        byte[] key = SecurityVersion.LATEST.getKey("testPassword123", salt);
+        byte[] plain = "Too long".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(
+            ShortBufferException.class,
+            () -> AES.encryptAES(ByteBuffer.wrap(plain), ByteBuffer.allocate(plain.length), key, iv)
+        );
+    }
+
     private void testEncryptionDecryption(String plaintext, String password) throws GeneralSecurityException {
         byte[] localSalt = newRandom16();
         byte[] localIv = newRandom16();
@@ -29,11 +29,16 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 
 import org.junit.jupiter.api.Test;
 
+import password.manager.app.security.AES;
 import password.manager.app.security.Account;
 import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.KeyMaterial;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
 
 public class TestAccount {
 
@@ -42,7 +47,7 @@ public class TestAccount {
         String software = "GitHub";
         String username = "testUser";
         String password = "testPassword123";
-        byte[] DEK = "masterPass456".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
 
         AccountData expectedData = new AccountData(software, username, password);
         Account account = Account.of(expectedData, DEK);
@@ -65,7 +70,7 @@ public class TestAccount {
                        (password = readBlnsLine(reader)) != null &&
                        (software = readBlnsLine(reader)) != null &&
                        (username = readBlnsLine(reader)) != null) {
-                    byte[] DEK = masterPass.getBytes(StandardCharsets.UTF_8);
+                    KeyMaterial DEK = KeyMaterial.copyOf(masterPass.getBytes(StandardCharsets.UTF_8));
 
                     AccountData data = new AccountData(software, username, password);
                     Account account = Account.of(data, DEK);
@@ -84,8 +89,8 @@ public class TestAccount {
         String software = "TestApp";
         String username = "user123";
         String password = "secretPass";
-        byte[] correctDEK = "correctMaster".getBytes(StandardCharsets.UTF_8);
-        byte[] wrongDEK = "wrongMaster".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial correctDEK = KeyMaterial.copyOf("correctMaster".getBytes(StandardCharsets.UTF_8));
+        KeyMaterial wrongDEK = KeyMaterial.copyOf("wrongMaster".getBytes(StandardCharsets.UTF_8));
 
         AccountData data = new AccountData(software, username, password);
         Account account = Account.of(data, correctDEK);
@@ -101,7 +106,7 @@ public class TestAccount {
 
     @Test
     void testNullValues() {
-        byte[] DEK = "masterPass".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass".getBytes(StandardCharsets.UTF_8));
         assertThrows(IllegalArgumentException.class, () -> Account.of(null, DEK));
 
         AccountData data = new AccountData("software", "user", "password");
@@ -113,7 +118,7 @@ public class TestAccount {
         String software = "App";
         String username = "user";
         String emptyPassword = "";
-        byte[] DEK = "master".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("master".getBytes(StandardCharsets.UTF_8));
 
         AccountData expectedData = new AccountData(software, username, emptyPassword);
         Account account = Account.of(expectedData, DEK);
@@ -128,7 +133,7 @@ public class TestAccount {
     void testLargePassword() throws GeneralSecurityException {
         String software = "TestApp";
         String username = "testUser";
-        byte[] DEK = "master".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("master".getBytes(StandardCharsets.UTF_8));
 
         // Create a 1MiB password
         int MiB = 1024 * 1024;
@@ -150,7 +155,7 @@ public class TestAccount {
         String software = "Test!@#$%^&*()";
         String username = "user<>?:\"{}|";
         String password = "pass\n\r\t\0";
-        byte[] DEK = "master🔒🔑".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("master🔒🔑".getBytes(StandardCharsets.UTF_8));
 
         AccountData expectedData = new AccountData(software, username, password);
         Account account = Account.of(expectedData, DEK);
@@ -163,7 +168,7 @@ public class TestAccount {
 
     @Test
     void testSetDataViaReflection() throws GeneralSecurityException {
-        byte[] DEK = "masterPass456".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
 
         AccountData initialData = new AccountData("GitHub", "oldUser", "oldPassword");
         Account account = Account.of(initialData, DEK);
@@ -179,7 +184,7 @@ public class TestAccount {
 
     @Test
     void testCaptureAndRestoreStateViaReflection() throws GeneralSecurityException {
-        byte[] DEK = "masterPass456".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
 
         AccountData initialData = new AccountData("GitHub", "oldUser", "oldPassword");
         Account account = Account.of(initialData, DEK);
@@ -196,15 +201,98 @@ public class TestAccount {
 
     @Test
     void testRestoreNullStateViaReflection() throws GeneralSecurityException {
-        byte[] DEK = "masterPass456".getBytes(StandardCharsets.UTF_8);
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
         Account account = Account.of(new AccountData("GitHub", "user", "password"), DEK);
 
         assertThrows(IllegalArgumentException.class, () -> invokeRestoreState(account, null));
     }
 
-    private static void invokeSetData(Account account, AccountData data, byte[] DEK) {
+    @Test
+    void testCompactRecordJsonRoundTrip() throws GeneralSecurityException {
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
+        AccountData data = new AccountData("GitHub", "user", "pässword");
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode node = mapper.valueToTree(Account.of(data, DEK));
+        assertEquals(3, node.get("version").asInt());
+        assertEquals(12, node.get("nonce").binaryValue().length);
+        assertFalse(node.has("softIv") || node.has("userIv") || node.has("passIv"));
+
+        // One tag and three 4-byte length prefixes around the UTF-8 fields
+        int plainLength = 3 * Integer.BYTES + "GitHub".length() + "user".length() + "pässword".getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(AES.getEncryptedLength(plainLength), node.get("data").binaryValue().length);
+
+        Account account = mapper.treeToValue(node, Account.class);
+        assertEquals(data, account.getData(DEK));
+    }
+
+    @Test
+    void testSplitRecordIsReadAndUpgraded() throws GeneralSecurityException {
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
+        AccountData data = new AccountData("GitHub", "user", "password");
+
+        ObjectMapper mapper = new ObjectMapper();
+        Account account = mapper.treeToValue(splitAccountNode(mapper, data, DEK), Account.class);
+        assertEquals(data, account.getData(DEK));
+
+        Account.AccountMemento memento = invokeCaptureState(account);
+        assertEquals(2, memento.version());
+
+        // Writing the account moves it to the compact version
+        AccountData newData = new AccountData("GitLab", "newUser", "newPassword");
+        invokeSetData(account, newData, DEK);
+        assertEquals(3, invokeCaptureState(account).version());
+        assertEquals(newData, mapper.readValue(mapper.writeValueAsString(account), Account.class).getData(DEK));
+
+        // Rolling back restores the split version together with the data
+        invokeRestoreState(account, memento);
+        assertEquals(data, account.getData(DEK));
+    }
+
+    @Test
+    void testSplitRecordIsUpgradedOnUnlock() throws GeneralSecurityException {
+        KeyMaterial DEK = KeyMaterial.copyOf("masterPass456".getBytes(StandardCharsets.UTF_8));
+        AccountData data = new AccountData("GitHub", "user", "password");
+
+        ObjectMapper mapper = new ObjectMapper();
+        Account account = mapper.treeToValue(splitAccountNode(mapper, data, DEK), Account.class);
+        account.unlock(DEK, null, null);
+
+        ObjectNode node = mapper.valueToTree(account);
+        assertEquals(3, node.get("version").asInt());
+        assertFalse(node.has("software"));
+        assertEquals(data, mapper.treeToValue(node, Account.class).getData(DEK));
+    }
+
+    /** Builds an account as written before the compact version, with each field encrypted on its own. */
+    private static ObjectNode splitAccountNode(ObjectMapper mapper, AccountData data, KeyMaterial DEK) throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+        byte[] salt = new byte[16];
+        random.nextBytes(salt);
+
+        ObjectNode node = mapper.createObjectNode();
+        node.put("salt", salt);
+
+        String[][] fields = {
+            { "software", "softIv", data.software() },
+            { "username", "userIv", data.username() },
+            { "password", "passIv", data.password() }
+        };
+        byte[] DEKBytes = DEK.toByteArray();
+        byte[][] keys = { AES.deriveKey(DEKBytes, salt, "software"), AES.deriveKey(DEKBytes, salt, "username"), AES.deriveKey(DEKBytes, salt, "password") };
+        for (int i = 0; i < fields.length; i++) {
+            byte[] iv = new byte[16];
+            random.nextBytes(iv);
+
+            node.put(fields[i][0], AES.encryptAES(fields[i][2].getBytes(StandardCharsets.UTF_8), keys[i], iv));
+            node.put(fields[i][1], iv);
+        }
+        return node;
+    }
+
+    private static void invokeSetData(Account account, AccountData data, KeyMaterial DEK) {
         try {
-            Method method = Account.class.getDeclaredMethod("setData", AccountData.class, byte[].class);
+            Method method = Account.class.getDeclaredMethod("setData", AccountData.class, KeyMaterial.class);
             method.setAccessible(true);
             method.invoke(account, data, DEK);
         } catch (InvocationTargetException e) {
@@ -0,0 +1,159 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.Account;
+import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.AccountDataCache;
+import password.manager.app.security.KeyMaterial;
+
+public class TestAccountDataCache {
+
+    private static final KeyMaterial DEK = KeyMaterial.copyOf("0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+    private static final AccountData DATA = new AccountData("Software", "Username", "Password");
+
+    private static Account first, second, third;
+
+    @BeforeAll
+    static void setUpAccounts() throws GeneralSecurityException {
+        first = Account.of(DATA, DEK);
+        second = Account.of(DATA, DEK);
+        third = Account.of(DATA, DEK);
+    }
+
+    @Test
+    void testHitAndMiss() {
+        AccountDataCache cache = new AccountDataCache(4, Duration.ofMinutes(1));
+
+        assertNull(cache.get(first));
+        cache.put(first, DATA, cache.generation());
+
+        AccountData cached = cache.get(first);
+        assertEquals(DATA, cached);
+        assertNotSame(DATA, cached, "Each hit should build a fresh copy");
+        assertNull(cache.get(second), "Accounts should be keyed by identity");
+
+        AccountDataCache.Metrics metrics = cache.getMetrics();
+        assertEquals(1, metrics.hits());
+        assertEquals(2, metrics.misses());
+        assertEquals(1d / 3, metrics.hitRate(), 1e-9);
+    }
+
+    @Test
+    void testLeastRecentlyUsedEviction() {
+        AccountDataCache cache = new AccountDataCache(2, Duration.ofMinutes(1));
+
+        cache.put(first, DATA, cache.generation());
+        cache.put(second, DATA, cache.generation());
+        cache.get(first);
+        cache.put(third, DATA, cache.generation());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(first), "Recently used entries should be kept");
+        assertNull(cache.get(second), "The least recently used entry should be evicted");
+        assertEquals(1, cache.getMetrics().evictions());
+    }
+
+    @Test
+    void testExpiry() throws InterruptedException {
+        AccountDataCache cache = new AccountDataCache(4, Duration.ofMillis(50));
+
+        cache.put(first, DATA, cache.generation());
+        cache.put(second, DATA, cache.generation());
+        Thread.sleep(100);
+        assertNull(cache.get(first), "Expired entries should not be served");
+
+        // The remaining entry is swept even if it is never looked up again
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (cache.size() > 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getMetrics().evictions());
+    }
+
+    @Test
+    void testInvalidation() {
+        AccountDataCache cache = new AccountDataCache(4, Duration.ofMinutes(1));
+
+        cache.put(first, DATA, cache.generation());
+        cache.invalidate(first);
+        assertNull(cache.get(first));
+
+        // A load that started before an invalidation of its account must not be cached
+        long generation = cache.generation();
+        cache.invalidate(first);
+        cache.put(first, DATA, generation);
+        assertNull(cache.get(first), "Stale loads should be discarded");
+
+        // Invalidating another account does not make it stale
+        generation = cache.generation();
+        cache.invalidate(second);
+        cache.put(first, DATA, generation);
+        assertNotNull(cache.get(first), "Loads should only be discarded when their own account is invalidated");
+
+        // Nor does a later invalidation of its own account
+        cache.invalidate(first);
+        cache.put(first, DATA, cache.generation());
+        assertNotNull(cache.get(first));
+
+        // Clearing makes every running load stale
+        generation = cache.generation();
+        cache.put(second, DATA, cache.generation());
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.put(second, DATA, generation);
+        assertNull(cache.get(second));
+    }
+
+    @Test
+    void testDisabled() {
+        AccountDataCache cache = new AccountDataCache(0, Duration.ofMinutes(1));
+
+        cache.put(first, DATA, cache.generation());
+        assertNull(cache.get(first));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testConfiguration() {
+        try {
+            System.setProperty(AccountDataCache.CAPACITY_KEY, "32");
+            System.setProperty(AccountDataCache.TTL_KEY, "10");
+            assertEquals(32, AccountDataCache.getConfiguredCapacity());
+            assertEquals(Duration.ofSeconds(10), AccountDataCache.getConfiguredTtl());
+
+            System.setProperty(AccountDataCache.CAPACITY_KEY, "-1");
+            System.setProperty(AccountDataCache.TTL_KEY, "invalid");
+            assertEquals(AccountDataCache.DEFAULT_CAPACITY, AccountDataCache.getConfiguredCapacity());
+            assertEquals(AccountDataCache.DEFAULT_TTL, AccountDataCache.getConfiguredTtl());
+        } finally {
+            System.clearProperty(AccountDataCache.CAPACITY_KEY);
+            System.clearProperty(AccountDataCache.TTL_KEY);
+        }
+    }
+}
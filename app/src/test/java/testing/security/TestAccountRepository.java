@@ -22,6 +22,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -29,22 +30,32 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javafx.collections.ListChangeListener;
+import password.manager.app.base.SortingOrder;
+import password.manager.app.base.SupportedLocale;
 import password.manager.app.security.Account;
 import password.manager.app.security.Account.AccountData;
 import password.manager.app.security.AccountRepository;
+import password.manager.app.security.DisplayIndex;
+import password.manager.app.security.KeyMaterial;
+import password.manager.app.security.RankedSearch;
+import password.manager.app.security.SearchExecutor;
 import password.manager.app.security.UserPreferences;
 import password.manager.app.singletons.Singletons;
 import testing.TestingUtils;
+import tools.jackson.databind.ObjectMapper;
 
 public class TestAccountRepository {
 
     private static final String DEFAULT_MASTER_PASSWORD = "MasterPassword123!";
-    private static final byte[] DEFAULT_DEK = DEFAULT_MASTER_PASSWORD.getBytes(StandardCharsets.UTF_8);
+    private static final KeyMaterial DEFAULT_DEK = KeyMaterial.copyOf(DEFAULT_MASTER_PASSWORD.getBytes(StandardCharsets.UTF_8));
 
     private UserPreferences userPreferences;
     private AccountRepository repository;
@@ -149,6 +160,197 @@ public class TestAccountRepository {
         assertTrue(repository.findAll().isEmpty(), "Repository should be empty after removal");
     }
 
+    @Test
+    void testRemoveAll() throws ExecutionException, InterruptedException, TimeoutException, GeneralSecurityException {
+        TestingUtils.injectBasePath();
+
+        List<Account> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) added.add(repository.add(new AccountData("Soft" + i, "User" + i, "Pass" + i)).get(5, TimeUnit.SECONDS));
+
+        List<Account> toRemove = List.of(added.get(7), added.get(0), added.get(4));
+        assertTrue(repository.removeAll(toRemove).get(5, TimeUnit.SECONDS));
+
+        List<Account> expected = new ArrayList<>(added);
+        expected.removeAll(toRemove);
+        assertEquals(expected, repository.snapshot());
+        assertEquals(expected, repository.findAll());
+
+        Account outsider = Account.of(new AccountData("Outsider", "User", "Pass"), DEFAULT_DEK);
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> repository.removeAll(List.of(added.get(1), outsider)),
+            "Removing non-existent accounts should throw IllegalArgumentException"
+        );
+        assertEquals(expected, repository.snapshot(), "A rejected removal should not remove anything");
+
+        // Removed accounts are no longer indexed, so that they can be removed again only once re-added
+        assertThrows(IllegalArgumentException.class, () -> repository.remove(added.get(0)));
+    }
+
+    @Test
+    void testFindBySoftwareAndUsername() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account github = repository.add(new AccountData("GitHub", "alice", "Pass1")).get(5, TimeUnit.SECONDS);
+        Account gitlab = repository.add(new AccountData("GitLab", "Alice ", "Pass2")).get(5, TimeUnit.SECONDS);
+        Account githubWork = repository.add(new AccountData(" github ", "bob", "Pass3")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(github, githubWork), repository.findBySoftware("GITHUB"), "Lookups should ignore case and whitespace, in list order");
+        assertEquals(List.of(github, gitlab), repository.findByUsername("ALICE"));
+        assertEquals(List.of(), repository.findBySoftware("Bitbucket"));
+
+        // Edits move the account to its new keys
+        repository.edit(githubWork, new AccountData("Bitbucket", "bob", "Pass3")).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(github), repository.findBySoftware("github"));
+        assertEquals(List.of(githubWork), repository.findBySoftware("bitbucket"));
+
+        repository.remove(github).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(), repository.findBySoftware("github"));
+        assertEquals(List.of(gitlab), repository.findByUsername("alice"));
+
+        // Locked accounts are only indexed once unlocked
+        try (LockedCopy copy = lockedCopy()) {
+            assertEquals(List.of(), copy.repository().findBySoftware("gitlab"));
+
+            assertTrue(copy.repository().unlockAll(null).get(30, TimeUnit.SECONDS));
+            assertEquals(List.of(copy.accounts()[0]), copy.repository().findBySoftware("gitlab"));
+            assertEquals(List.of(copy.accounts()[1]), copy.repository().findByUsername("BOB"));
+        }
+    }
+
+    @Test
+    void testSearch() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account github = repository.add(new AccountData("GitHub", "alice.smith", "Pass1")).get(5, TimeUnit.SECONDS);
+        Account mail = repository.add(new AccountData("Mail Server", "Bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        Account bank = repository.add(new AccountData("Bank", "smithson", "Pass3")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(github, bank), matching(repository.search("smith", false, false)));
+        assertEquals(List.of(github), matching(repository.search("smith", false, true)), "Whole words should not match within a longer word");
+        assertEquals(List.of(github), matching(repository.search("Git", true, false)));
+        assertEquals(List.of(), matching(repository.search("git", true, false)), "Matching case should be exact");
+        assertEquals(List.of(mail, bank), matching(repository.search("O", false, false)), "Short queries should match too");
+        assertEquals(List.of(mail), matching(repository.search("server", false, true)));
+
+        // The predicate stays accurate for accounts changed after the search
+        Predicate<Account> predicate = repository.search("server", false, false);
+        repository.edit(mail, new AccountData("Mail", "Bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        repository.edit(bank, new AccountData("Bank Server", "smithson", "Pass3")).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(bank), matching(predicate));
+
+        repository.remove(bank).get(5, TimeUnit.SECONDS);
+        assertFalse(predicate.test(bank), "Removed accounts should not match");
+    }
+
+    @Test
+    void testFuzzySearch() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account github = repository.add(new AccountData("GitHub", "alice.smith", "Pass1")).get(5, TimeUnit.SECONDS);
+        Account gitlab = repository.add(new AccountData("GitLab", "bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        Account mail = repository.add(new AccountData("Mail Server", "carol", "Pass3")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(github), ranked(repository.fuzzySearch("gihtub")), "Typos should be tolerated");
+        assertEquals(List.of(mail), ranked(repository.fuzzySearch("srever mal")), "Every word of the query should match");
+        assertEquals(List.of(), ranked(repository.fuzzySearch("gx")), "Short words should not tolerate typos");
+        assertEquals(List.of(), ranked(repository.fuzzySearch("xyzzy")));
+
+        // Closest first, whatever the accesses
+        for (int i = 0; i < 3; i++) repository.recordAccess(gitlab);
+        assertEquals(List.of(github, gitlab), ranked(repository.fuzzySearch("githib")));
+
+        // Equally close matches are ranked by accesses
+        assertEquals(List.of(gitlab, github), ranked(repository.fuzzySearch("git")));
+
+        // The result stays accurate for accounts changed after the search
+        RankedSearch result = repository.fuzzySearch("mail");
+        repository.edit(mail, new AccountData("Server", "carol", "Pass3")).get(5, TimeUnit.SECONDS);
+        repository.edit(gitlab, new AccountData("GitLab", "mail.bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(gitlab), ranked(result));
+    }
+
+    @Test
+    void testSuggestions() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        repository.add(new AccountData("GitHub", "alice", "Pass1")).get(5, TimeUnit.SECONDS);
+        repository.add(new AccountData("GitHub", "bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        Account gitlab = repository.add(new AccountData("GitLab", "alice", "Pass3")).get(5, TimeUnit.SECONDS);
+        repository.add(new AccountData("Gmail", "alice", "Pass4")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("GitHub", "GitLab", "Gmail"), repository.suggestSoftware("g", 10), "The most used names should come first");
+        assertEquals(List.of("GitHub", "GitLab"), repository.suggestSoftware("GIT", 10), "Prefixes should ignore case");
+        assertEquals(List.of("GitHub"), repository.suggestSoftware("git", 1));
+        assertEquals(List.of("alice"), repository.suggestUsername("a", 10));
+        assertEquals(List.of(), repository.suggestSoftware("x", 10));
+
+        // Edits and removals update the suggestions right away
+        repository.edit(gitlab, new AccountData("GitLab", "bob", "Pass3")).get(5, TimeUnit.SECONDS);
+        repository.add(new AccountData("GitLab", "carol", "Pass5")).get(5, TimeUnit.SECONDS);
+        repository.add(new AccountData("GitLab", "dave", "Pass6")).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("GitLab", "GitHub"), repository.suggestSoftware("git", 10));
+        assertEquals(List.of("alice", "bob", "carol", "dave"), repository.suggestUsername("", 10), "An empty prefix should suggest the most used values overall");
+
+        repository.remove(gitlab).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("bob"), repository.suggestUsername("b", 10), "Removed accounts should no longer count");
+    }
+
+    @Test
+    void testSearchExecutor() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account github = repository.add(new AccountData("GitHub", "alice.smith", "Pass1")).get(5, TimeUnit.SECONDS);
+        repository.add(new AccountData("Mail Server", "Bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        Account bank = repository.add(new AccountData("Bank", "smithson", "Pass3")).get(5, TimeUnit.SECONDS);
+
+        try (SearchExecutor executor = new SearchExecutor(repository)) {
+            // Each query extends the previous one, so it narrows its matches down
+            assertEquals(List.of(github, bank), matching(executor.submit("s", false, false).get(5, TimeUnit.SECONDS)));
+            assertEquals(List.of(github, bank), matching(executor.submit("smi", false, false).get(5, TimeUnit.SECONDS)));
+            assertEquals(List.of(bank), matching(executor.submit("smithson", false, false).get(5, TimeUnit.SECONDS)));
+            assertEquals(List.of(github), matching(executor.submit("smith", false, true).get(5, TimeUnit.SECONDS)), "Whole word searches should not narrow");
+
+            // Changed accounts are matched again, even by narrowed searches
+            Predicate<Account> predicate = executor.submit("smithso", false, false).get(5, TimeUnit.SECONDS);
+            repository.edit(github, new AccountData("GitHub", "smithsonian", "Pass1")).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of(github, bank), matching(predicate));
+            assertEquals(List.of(github, bank), matching(executor.submit("smithson", false, false).get(5, TimeUnit.SECONDS)));
+
+            // A new search replaces the previous one, whether it has completed or not
+            CompletableFuture<Predicate<Account>> first = executor.submit("bank", false, false);
+            CompletableFuture<Predicate<Account>> second = executor.submit("mail", false, false);
+            assertTrue(first.isDone(), "The previous search should be completed or cancelled");
+            assertEquals(1, matching(second.get(5, TimeUnit.SECONDS)).size());
+
+            SearchExecutor.Metrics metrics = executor.getMetrics();
+            assertTrue(metrics.completed() >= 7);
+            assertEquals(8, metrics.completed() + metrics.cancelled());
+            assertTrue(metrics.maxLatency().compareTo(metrics.averageLatency()) >= 0);
+
+            executor.close();
+            assertThrows(ExecutionException.class, () -> executor.submit("bank", false, false).get(5, TimeUnit.SECONDS), "Closed executors should reject searches");
+        }
+    }
+
+    @Test
+    void testSnapshot() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account first = repository.add(new AccountData("Soft1", "User1", "Pass1")).get(5, TimeUnit.SECONDS);
+        Account second = repository.add(new AccountData("Soft2", "User2", "Pass2")).get(5, TimeUnit.SECONDS);
+
+        List<Account> snapshot = repository.snapshot();
+        assertEquals(List.of(first, second), snapshot);
+        assertEquals(snapshot, repository.findAll(), "Without a toolkit, the list should be mirrored right away");
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(first), "Snapshots should be immutable");
+
+        repository.remove(first).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(first, second), snapshot, "Taken snapshots should not change");
+        assertEquals(List.of(second), repository.snapshot());
+        assertEquals(List.of(second), repository.findAll());
+    }
+
     @Test
     void testRemoveNonExistentAccount() throws GeneralSecurityException {
         TestingUtils.injectBasePath();
@@ -181,6 +383,40 @@ public class TestAccountRepository {
         assertEquals(data.password(), decryptedData.password(), "Decrypted password should match original");
     }
 
+    @Test
+    void testGetDataServedFromCache() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        AccountData data = new AccountData("TestSoftware", "TestUser", "TestPass");
+        Account account = repository
+                .add(data)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(data, repository.getData(account).get(5, TimeUnit.SECONDS));
+
+        CompletableFuture<AccountData> cached = repository.getData(account);
+        assertTrue(cached.isDone(), "Recently decrypted data should be available right away");
+        assertEquals(data, cached.join());
+        assertEquals(1, repository.getDataCacheMetrics().hits());
+        assertEquals(1, repository.getDataCacheMetrics().misses());
+    }
+
+    @Test
+    void testEditInvalidatesCachedData() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account account = repository
+                .add(new AccountData("OldSoftware", "OldUser", "OldPass"))
+                .get(5, TimeUnit.SECONDS);
+        repository.getData(account).get(5, TimeUnit.SECONDS);
+
+        AccountData newData = new AccountData("NewSoftware", "NewUser", "NewPass");
+        repository.edit(account, newData).get(5, TimeUnit.SECONDS);
+
+        assertEquals(newData, repository.getData(account).get(5, TimeUnit.SECONDS), "Edited data should not be served from the cache");
+        assertEquals(0, repository.getDataCacheMetrics().hits());
+    }
+
     @Test
     void testSetAll() throws GeneralSecurityException {
         List<Account> testAccounts = new ArrayList<>();
@@ -283,6 +519,141 @@ public class TestAccountRepository {
             "All concurrent add operations should complete successfully");
     }
 
+    @Test
+    void testUnlockLazily() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        int count = 50;
+        for (int i = 0; i < count; i++) repository.add(new AccountData("Soft" + i, "User" + i, "Pass" + i)).get(5, TimeUnit.SECONDS);
+
+        try (LockedCopy copy = lockedCopy()) {
+            AccountRepository lazyRepository = copy.repository();
+            Account[] locked = copy.accounts();
+            assertFalse(lazyRepository.unlockedProperty().get());
+
+            CompletableFuture<Boolean> unlockFuture = lazyRepository.unlockLazily();
+            lazyRepository.requestUnlock(List.of(locked[count - 1], locked[count - 2]));
+            assertThrows(IllegalStateException.class, lazyRepository::unlockLazily, "Only one lazy unlock should run at a time");
+
+            assertTrue(lazyRepository.requireFullUnlock().get(30, TimeUnit.SECONDS));
+            assertTrue(unlockFuture.get(5, TimeUnit.SECONDS));
+            assertTrue(lazyRepository.unlockedProperty().get());
+
+            for (int i = 0; i < count; i++) {
+                assertEquals("Soft" + i, locked[i].getSoftware());
+                assertEquals("User" + i, locked[i].getUsername());
+            }
+        }
+    }
+
+    @Test
+    void testUnlockAllFiresSingleUpdate() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        int count = 30;
+        for (int i = 0; i < count; i++) repository.add(new AccountData("Soft" + i, "User" + i, "Pass" + i)).get(5, TimeUnit.SECONDS);
+
+        try (LockedCopy copy = lockedCopy()) {
+            AccountRepository lockedRepository = copy.repository();
+            Account[] locked = copy.accounts();
+
+            AtomicInteger changes = new AtomicInteger(), updated = new AtomicInteger();
+            lockedRepository.findAll().addListener((ListChangeListener<Account>) change -> {
+                changes.incrementAndGet();
+                while (change.next()) {
+                    if (change.wasUpdated()) updated.addAndGet(change.getTo() - change.getFrom());
+                }
+            });
+
+            assertTrue(lockedRepository.unlockAll(null).get(30, TimeUnit.SECONDS));
+            assertEquals(1, changes.get(), "Unlocking should fire a single change");
+            assertEquals(count, updated.get(), "The change should cover every unlocked account");
+
+            // Outside of bulk operations, each edit is still fired on its own (reading the properties validates them again)
+            assertEquals("Soft0", locked[0].getSoftware());
+            lockedRepository.edit(locked[0], new AccountData("Edited", "User0", "Pass0")).get(5, TimeUnit.SECONDS);
+            assertEquals(2, changes.get());
+            assertEquals(count + 1, updated.get());
+        }
+    }
+
+    @Test
+    void testSortingOrder() throws ExecutionException, InterruptedException, TimeoutException {
+        TestingUtils.injectBasePath();
+
+        Account zeta = repository.add(new AccountData("zeta", "alice", "Pass1")).get(5, TimeUnit.SECONDS);
+        Account eclair = repository.add(new AccountData("Éclair", "bob", "Pass2")).get(5, TimeUnit.SECONDS);
+        Account mail = repository.add(new AccountData("Mail", "Carol", "Pass3")).get(5, TimeUnit.SECONDS);
+        Account mailWork = repository.add(new AccountData("mail", "alice", "Pass4")).get(5, TimeUnit.SECONDS);
+
+        List<Account> accounts = new ArrayList<>(repository.findAll());
+        accounts.sort(SortingOrder.SOFTWARE.getComparator(SupportedLocale.ENGLISH));
+        assertEquals(List.of(eclair, mailWork, mail, zeta), accounts, "Accents should sort with their base letter, case should not matter");
+
+        accounts.sort(SortingOrder.USERNAME.getComparator(SupportedLocale.ENGLISH));
+        assertEquals(List.of(mailWork, zeta, eclair, mail), accounts);
+        assertSame(SortingOrder.USERNAME.getComparator(SupportedLocale.ENGLISH), SortingOrder.USERNAME.getComparator(SupportedLocale.ENGLISH));
+
+        // Keys are cached until the fields or the collator change
+        Collator english = Collator.getInstance(SupportedLocale.ENGLISH.getLocale());
+        Account.SortKeys keys = mail.getSortKeys(english);
+        assertSame(keys, mail.getSortKeys(english));
+        assertNotSame(keys, mail.getSortKeys(Collator.getInstance(SupportedLocale.ITALIAN.getLocale())));
+
+        keys = mail.getSortKeys(english);
+        repository.edit(mail, new AccountData("Bank", "Carol", "Pass3")).get(5, TimeUnit.SECONDS);
+        assertNotSame(keys, mail.getSortKeys(english));
+        accounts.sort(SortingOrder.SOFTWARE.getComparator(SupportedLocale.ENGLISH));
+        assertEquals(List.of(mail, eclair, mailWork, zeta), accounts);
+    }
+
+    @Test
+    void testDisplayIndex() throws ExecutionException, InterruptedException, TimeoutException, GeneralSecurityException {
+        TestingUtils.injectBasePath();
+
+        int count = 20;
+        for (int i = 0; i < count; i++) repository.add(new AccountData("Soft" + i, "User" + i, "Pass" + i)).get(5, TimeUnit.SECONDS);
+
+        ObjectMapper mapper = new ObjectMapper();
+        DisplayIndex index = repository.createDisplayIndex(repository.findAll(), SortingOrder.USERNAME.getComparator());
+        assertNotNull(index);
+        index = mapper.readValue(mapper.writeValueAsString(index), DisplayIndex.class);
+
+        try (LockedCopy copy = lockedCopy()) {
+            AccountRepository lockedRepository = copy.repository();
+            Account[] locked = copy.accounts();
+            assertNull(lockedRepository.createDisplayIndex(lockedRepository.findAll(), null), "Locked accounts have no fields to index");
+
+            assertTrue(lockedRepository.applyDisplayIndex(index).get(5, TimeUnit.SECONDS));
+            assertTrue(lockedRepository.displayReadyProperty().get());
+            assertFalse(lockedRepository.unlockedProperty().get(), "Applying the index should not unlock the accounts");
+            for (int i = 0; i < count; i++) {
+                assertEquals("Soft" + i, locked[i].getSoftware());
+                assertEquals("User" + i, locked[i].getUsername());
+            }
+        }
+    }
+
+    @Test
+    void testMismatchedDisplayIndex() throws ExecutionException, InterruptedException, TimeoutException, GeneralSecurityException {
+        TestingUtils.injectBasePath();
+
+        for (int i = 0; i < 3; i++) repository.add(new AccountData("Soft" + i, "User" + i, "Pass" + i)).get(5, TimeUnit.SECONDS);
+        DisplayIndex index = repository.createDisplayIndex(repository.findAll(), null);
+        assertNotNull(index);
+
+        // Only part of the accounts
+        try (LockedCopy copy = lockedCopy(2)) {
+            AccountRepository otherRepository = copy.repository();
+            assertFalse(otherRepository.applyDisplayIndex(index).get(5, TimeUnit.SECONDS), "An index saved with other accounts should be rejected");
+            assertFalse(otherRepository.displayReadyProperty().get());
+
+            byte[] tampered = index.data().clone();
+            tampered[0] ^= 1;
+            assertFalse(repository.applyDisplayIndex(new DisplayIndex(index.salt(), index.nonce(), tampered)).get(5, TimeUnit.SECONDS), "A tampered index should be rejected");
+        }
+    }
+
     @Test
     void testEmptyUserPreferences() throws GeneralSecurityException {
         // Just set the same data every time, we just want to test the user preferences check
@@ -327,4 +698,35 @@ public class TestAccountRepository {
             "Unlocking accounts with empty user preferences should fail exceptionally"
         );
     }
+
+    /**
+     * Reads back the first accounts of the repository as they are loaded from the data file, locked, into a repository of their own.
+     */
+    private LockedCopy lockedCopy(int size) {
+        ObjectMapper mapper = new ObjectMapper();
+        Account[] locked = mapper.treeToValue(mapper.valueToTree(repository.findAll().subList(0, size)), Account[].class);
+
+        AccountRepository lockedRepository = new AccountRepository(userPreferences);
+        lockedRepository.setAll(locked);
+        return new LockedCopy(lockedRepository, locked);
+    }
+
+    private LockedCopy lockedCopy() {
+        return lockedCopy(repository.findAll().size());
+    }
+
+    private record LockedCopy(AccountRepository repository, Account[] accounts) implements AutoCloseable {
+        @Override
+        public void close() {
+            repository.close();
+        }
+    }
+
+    private List<Account> matching(Predicate<Account> predicate) {
+        return repository.snapshot().stream().filter(predicate).toList();
+    }
+
+    private List<Account> ranked(RankedSearch result) {
+        return repository.snapshot().stream().filter(result).sorted(result.ranking()).toList();
+    }
 }
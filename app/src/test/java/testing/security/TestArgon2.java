@@ -0,0 +1,118 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.base.SecurityVersion;
+import password.manager.app.security.Argon2;
+
+public class TestArgon2 {
+
+    @Test
+    void testRfc9106Vector() {
+        // RFC 9106, section 5.3
+        byte[] password = filled(32, 0x01);
+        byte[] salt = filled(16, 0x02);
+        byte[] secret = filled(8, 0x03);
+        byte[] additional = filled(12, 0x04);
+
+        byte[] out = new byte[32];
+        Argon2.generateBytes(password, salt, secret, additional, 32, 3, 4, out);
+
+        assertEquals("0d640df58d78766c08c037a34a8b53c9d01ef0452d75b65eb52520e96b01e659", HexFormat.of().formatHex(out));
+    }
+
+    @Test
+    void testMatchesBouncyCastle() {
+        Random random = new Random(42);
+
+        // Cover odd lane counts, memory sizes that are not a multiple of the segment count, and every branch of H'
+        for (int lanes : new int[] { 1, 2, 3, 4, 5, 8 }) {
+            for (int memoryKiB : new int[] { 2 * lanes, 8 * lanes + 3, 37 * lanes, 300 }) {
+                for (int iterations = 1; iterations <= 3; iterations++) {
+                    for (int outLength : new int[] { 4, 32, 64, 65, 97, 200 }) {
+                        char[] password = new char[random.nextInt(20)];
+                        for (int i = 0; i < password.length; i++) password[i] = (char) (32 + random.nextInt(500));
+
+                        byte[] salt = new byte[8 + random.nextInt(16)];
+                        random.nextBytes(salt);
+
+                        byte[] expected = new byte[outLength];
+                        bouncyCastle(lanes, memoryKiB, iterations, salt).generateBytes(password, expected);
+
+                        byte[] actual = new byte[outLength];
+                        Argon2.generateBytes(password, salt, memoryKiB, iterations, lanes, actual);
+
+                        assertArrayEquals(expected, actual, String.format("lanes=%d, memory=%d, iterations=%d, length=%d", lanes, memoryKiB, iterations, outLength));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSecurityVersionMatchesBouncyCastle() {
+        // Production parameters, through the key derivation function
+        String masterPassword = "Ünïcödé master 🔒";
+        byte[] salt = filled(16, 0x2A);
+
+        byte[] expected = new byte[SecurityVersion.KEY_BITS / 8];
+        bouncyCastle(4, 65536, 4, salt).generateBytes(masterPassword.toCharArray(), expected);
+
+        assertArrayEquals(expected, SecurityVersion.ARGON2.getKey(masterPassword, salt));
+    }
+
+    @Test
+    void testInvalidParameters() {
+        byte[] salt = new byte[16];
+
+        assertThrows(IllegalArgumentException.class, () -> Argon2.generateBytes("p".toCharArray(), salt, 64, 1, 1, new byte[3]));
+        assertThrows(IllegalArgumentException.class, () -> Argon2.generateBytes("p".toCharArray(), salt, 64, 0, 1, new byte[32]));
+        assertThrows(IllegalArgumentException.class, () -> Argon2.generateBytes("p".toCharArray(), salt, 64, 1, 0, new byte[32]));
+        assertThrows(IllegalArgumentException.class, () -> Argon2.generateBytes("p".toCharArray(), salt, 7, 1, 4, new byte[32]));
+        assertThrows(IllegalArgumentException.class, () -> Argon2.generateBytes((char[]) null, salt, 64, 1, 1, new byte[32]));
+    }
+
+    private static Argon2BytesGenerator bouncyCastle(int lanes, int memoryKiB, int iterations, byte[] salt) {
+        Argon2BytesGenerator generator = new Argon2BytesGenerator();
+        generator.init(new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withParallelism(lanes)
+                .withMemoryAsKB(memoryKiB)
+                .withIterations(iterations)
+                .withSalt(salt)
+                .build());
+        return generator;
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.AES;
+import password.manager.app.security.KeyMaterial;
+
+public class TestKeyMaterial {
+
+    @Test
+    void testCopyOfLeavesSourceUntouched() {
+        byte[] key = { 1, 2, 3, 4 };
+
+        try (KeyMaterial material = KeyMaterial.copyOf(key)) {
+            assertEquals(4, material.length());
+            assertArrayEquals(new byte[] { 1, 2, 3, 4 }, material.toByteArray());
+        }
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, key);
+    }
+
+    @Test
+    void testTakeFromWipesSource() {
+        byte[] key = { 1, 2, 3, 4 };
+
+        try (KeyMaterial material = KeyMaterial.takeFrom(key)) {
+            assertArrayEquals(new byte[] { 1, 2, 3, 4 }, material.toByteArray());
+        }
+        assertArrayEquals(new byte[4], key, "The source array must be wiped once moved off-heap");
+    }
+
+    @Test
+    void testCloseMakesKeyUnusable() {
+        KeyMaterial material = KeyMaterial.copyOf(new byte[] { 1, 2, 3 });
+        material.close();
+        material.close(); // Closing twice has no effect
+
+        assertFalse(material.isAlive());
+        assertThrows(IllegalStateException.class, material::toByteArray);
+    }
+
+    @Test
+    void testContentEquals() {
+        try (KeyMaterial a = KeyMaterial.copyOf(new byte[] { 1, 2, 3 });
+             KeyMaterial b = KeyMaterial.copyOf(new byte[] { 1, 2, 3 });
+             KeyMaterial c = KeyMaterial.copyOf(new byte[] { 1, 2, 4 })) {
+            assertTrue(a.contentEquals(b));
+            assertFalse(a.contentEquals(c));
+        }
+    }
+
+    @Test
+    void testDerivedKeysMatchHeapDerivation() {
+        byte[] source = "sourceKey".getBytes();
+        byte[] salt = new byte[16];
+        Arrays.fill(salt, (byte) 9);
+
+        try (KeyMaterial sourceKey = KeyMaterial.copyOf(source)) {
+            KeyMaterial[] perField = AES.deriveKeys(sourceKey, salt, "software", "username", "password");
+            KeyMaterial[] singlePass = AES.deriveKeys(sourceKey, salt, "account", 3);
+
+            byte[][] expectedPerField = AES.deriveKeys(source, salt, "software", "username", "password");
+            byte[][] expectedSinglePass = AES.deriveKeys(source, salt, "account", 3);
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(expectedPerField[i], perField[i].toByteArray());
+                assertArrayEquals(expectedSinglePass[i], singlePass[i].toByteArray());
+                perField[i].close();
+                singlePass[i].close();
+            }
+        }
+    }
+
+    @Test
+    void testDerivedKeysAreConfined() throws Exception {
+        try (KeyMaterial sourceKey = KeyMaterial.copyOf(new byte[32])) {
+            KeyMaterial[] keys = AES.deriveKeys(sourceKey, new byte[16], "account", 1);
+
+            // Keys derived for a single operation can only be used by the thread that derived them
+            CompletableFuture<byte[]> otherThread = CompletableFuture.supplyAsync(keys[0]::toByteArray);
+            CompletionException e = assertThrows(CompletionException.class, otherThread::join);
+            assertInstanceOf(WrongThreadException.class, e.getCause());
+
+            keys[0].close();
+        }
+    }
+
+    @Test
+    void testDeriveAndEncryptMatchesHeapKeys() throws GeneralSecurityException {
+        byte[] source = "sourceKey".getBytes();
+        byte[] salt = new byte[16];
+        byte[] nonce = new byte[12];
+        byte[] plain = "record".getBytes();
+
+        try (KeyMaterial sourceKey = KeyMaterial.copyOf(source)) {
+            byte[] encrypted = AES.deriveAndEncrypt(plain, sourceKey, salt, "record", nonce);
+
+            assertArrayEquals(AES.encryptAES(plain, AES.deriveKey(source, salt, "record"), nonce), encrypted);
+            assertArrayEquals(plain, AES.deriveAndDecrypt(encrypted, sourceKey, salt, "record", nonce));
+            assertThrows(GeneralSecurityException.class, () -> AES.deriveAndDecrypt(encrypted, sourceKey, salt, "other", nonce));
+        }
+    }
+
+    @Test
+    void testDeriveAndEncryptStringsMatchesLengthPrefixedRecord() throws GeneralSecurityException {
+        byte[] salt = new byte[16];
+        byte[] nonce = new byte[12];
+        String[] fields = { "software", "Ünïcödé 🔒", "" };
+
+        // Same layout that compact accounts were sealed with: each field prefixed by its 4-byte big-endian length
+        ByteBuffer plain = ByteBuffer.allocate(64);
+        for (String field : fields) {
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            plain.putInt(bytes.length).put(bytes);
+        }
+        byte[] record = Arrays.copyOf(plain.array(), plain.position());
+
+        try (KeyMaterial sourceKey = KeyMaterial.copyOf("sourceKey".getBytes())) {
+            byte[] encrypted = AES.deriveAndEncryptStrings(fields, sourceKey, salt, "record", nonce);
+
+            assertArrayEquals(AES.deriveAndEncrypt(record, sourceKey, salt, "record", nonce), encrypted);
+            assertArrayEquals(fields, AES.deriveAndDecryptStrings(encrypted, fields.length, sourceKey, salt, "record", nonce));
+            assertThrows(GeneralSecurityException.class, () -> AES.deriveAndDecryptStrings(encrypted, fields.length + 1, sourceKey, salt, "record", nonce));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.base.SecurityVersion;
+import password.manager.app.security.AES;
+import password.manager.app.security.Account;
+import password.manager.app.security.Account.AccountData;
+import password.manager.app.security.AccountRepository;
+import password.manager.app.security.KeyMaterial;
+import password.manager.app.security.UserPreferences;
+import password.manager.app.singletons.Singletons;
+import testing.TestingUtils;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+@SuppressWarnings("deprecation")
+public class TestLegacyMigration {
+
+    private static final String MASTER_PASSWORD = "LegacyMaster123!";
+    private static final SecurityVersion LEGACY_VERSION = SecurityVersion.PBKDF2;
+
+    // Legacy accounts share a handful of salts, so that each derivation is reused by many accounts
+    private static final int ACCOUNTS = 210;
+    private static final int SALTS = 7;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<AccountRepository> repositories = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        repositories.forEach(AccountRepository::close);
+        Singletons.shutdownAll();
+    }
+
+    @Test
+    void testMigrationUnlocksAndUpgradesAllAccounts() throws Exception {
+        TestingUtils.injectBasePath();
+
+        UserPreferences prefs = legacyPreferences();
+        assertTrue(prefs.verifyPassword(MASTER_PASSWORD));
+
+        List<AccountData> expected = new ArrayList<>();
+        AccountRepository repository = repository(prefs, legacyAccounts(expected));
+        assertTrue(repository.isMigrationPending());
+
+        AtomicInteger checkpoints = new AtomicInteger(0);
+        assertTrue(repository.unlockAll(MASTER_PASSWORD, checkpoints::incrementAndGet).get(60, TimeUnit.SECONDS));
+
+        // A checkpoint every 100 accounts, none once everything is migrated
+        assertEquals((ACCOUNTS - 1) / 100, checkpoints.get());
+        assertEquals(1d, repository.migrationProgressProperty().get());
+        assertFalse(repository.isMigrationPending());
+        assertFalse(mapper.writeValueAsString(prefs).contains("legacySecurityVersion"), "Completed migrations should not be persisted");
+
+        List<Account> accounts = repository.findAll();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accounts.get(i);
+            assertEquals(expected.get(i), repository.getData(account).get(5, TimeUnit.SECONDS));
+            assertEquals(3, mapper.valueToTree(account).get("version").asInt());
+        }
+    }
+
+    @Test
+    void testInterruptedMigrationResumes() throws Exception {
+        TestingUtils.injectBasePath();
+
+        UserPreferences prefs = legacyPreferences();
+        assertTrue(prefs.verifyPassword(MASTER_PASSWORD));
+
+        // Simulate a save in the middle of a migration: some accounts already migrated, the others still legacy
+        List<AccountData> expected = new ArrayList<>();
+        ArrayNode savedAccounts = legacyAccounts(expected);
+        for (int i = 0; i < 5; i++) {
+            AccountData data = new AccountData("migrated" + i, "user" + i, "password" + i);
+            savedAccounts.add(mapper.valueToTree(Account.of(data, invokeGetDEK(prefs))));
+            expected.add(data);
+        }
+
+        // Legacy accounts loaded but not unlocked yet are saved in the legacy format, and read back as such
+        AccountRepository repository = repository(prefs, savedAccounts);
+        ArrayNode resaved = mapper.valueToTree(repository.findAll());
+        String savedPrefs = mapper.writeValueAsString(prefs);
+        assertTrue(savedPrefs.contains("legacySecurityVersion"), "Pending migrations should be persisted");
+
+        // Restart: the preferences are in the DEK format now, but still know how to read legacy accounts
+        UserPreferences reloadedPrefs = mapper.readValue(savedPrefs, UserPreferences.class);
+        assertTrue(reloadedPrefs.verifyPassword(MASTER_PASSWORD));
+
+        AccountRepository reloaded = repository(reloadedPrefs, resaved);
+        assertTrue(reloaded.isMigrationPending());
+        assertTrue(reloaded.unlockAll(MASTER_PASSWORD).get(60, TimeUnit.SECONDS));
+        assertFalse(reloaded.isMigrationPending());
+
+        List<Account> accounts = reloaded.findAll();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), reloaded.getData(accounts.get(i)).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testMigrationWithoutPasswordFails() throws Exception {
+        TestingUtils.injectBasePath();
+
+        UserPreferences prefs = legacyPreferences();
+        assertTrue(prefs.verifyPassword(MASTER_PASSWORD));
+
+        AccountRepository repository = repository(prefs, legacyAccounts(new ArrayList<>()));
+        assertNotEquals(Boolean.TRUE, repository.unlockAll(null).handle((unlocked, _) -> unlocked).get(60, TimeUnit.SECONDS));
+        assertTrue(repository.isMigrationPending(), "Failed migrations should leave the accounts in the legacy format");
+    }
+
+    @Test
+    void testLazyUnlockRequiresMigration() throws Exception {
+        TestingUtils.injectBasePath();
+
+        UserPreferences prefs = legacyPreferences();
+        assertTrue(prefs.verifyPassword(MASTER_PASSWORD));
+
+        AccountRepository repository = repository(prefs, legacyAccounts(new ArrayList<>()));
+        assertThrows(IllegalStateException.class, repository::unlockLazily, "Legacy accounts can only be migrated as a whole");
+        assertTrue(repository.isMigrationPending());
+    }
+
+    private UserPreferences legacyPreferences() {
+        byte[] salt = new byte[16];
+        for (int i = 0; i < salt.length; i++) salt[i] = (byte) (i + 1);
+
+        ObjectNode node = mapper.createObjectNode();
+        node.put("locale", "en");
+        node.put("sortingOrder", "SOFTWARE");
+        node.put("securityVersion", LEGACY_VERSION.name());
+        node.put("hashedPassword", LEGACY_VERSION.hash(MASTER_PASSWORD, salt));
+        node.put("salt", salt);
+        return mapper.treeToValue(node, UserPreferences.class);
+    }
+
+    /** Builds accounts in the legacy format, where only the password was encrypted, with a key derived from the master password. */
+    private ArrayNode legacyAccounts(List<AccountData> expected) throws GeneralSecurityException {
+        byte[][] salts = new byte[SALTS][16];
+        byte[][] keys = new byte[SALTS][];
+        for (int i = 0; i < SALTS; i++) {
+            for (int j = 0; j < 16; j++) salts[i][j] = (byte) (i * 16 + j);
+            keys[i] = LEGACY_VERSION.getKey(MASTER_PASSWORD, salts[i]);
+        }
+
+        ArrayNode accounts = mapper.createArrayNode();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            AccountData data = new AccountData("software" + i, "user" + i, "password" + i);
+            byte[] iv = new byte[16];
+            iv[0] = (byte) i;
+            iv[1] = (byte) (i >> 8);
+
+            ObjectNode node = accounts.addObject();
+            node.put("software", data.software());
+            node.put("username", data.username());
+            node.put("encryptedPassword", AES.encryptStringAES(data.password(), keys[i % SALTS], iv));
+            node.put("salt", salts[i % SALTS]);
+            node.put("iv", iv);
+            expected.add(data);
+        }
+        return accounts;
+    }
+
+    private AccountRepository repository(UserPreferences prefs, ArrayNode accounts) {
+        AccountRepository repository = new AccountRepository(prefs);
+        repositories.add(repository);
+        repository.setAll(mapper.treeToValue(accounts, Account[].class));
+        return repository;
+    }
+
+    private static KeyMaterial invokeGetDEK(UserPreferences prefs) {
+        try {
+            Method method = UserPreferences.class.getDeclaredMethod("getDEK");
+            method.setAccessible(true);
+            return (KeyMaterial) method.invoke(prefs);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(cause);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.security.RandomSource;
+
+public class TestRandomSource {
+
+    @Test
+    void testLengths() {
+        // Covers empty, buffered and direct requests, as well as buffer refills
+        for (int length : new int[] { 0, 1, 12, 16, 32, 64, 65, 4096, 10_000 }) {
+            assertEquals(length, RandomSource.nextBytes(length).length);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> RandomSource.nextBytes(-1));
+        assertThrows(IllegalArgumentException.class, () -> RandomSource.nextBytes(null));
+    }
+
+    @Test
+    void testNoRepeatedValues() {
+        // Enough 16-byte values to go through the prefetched buffer several times
+        Set<ByteBuffer> seen = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(seen.add(ByteBuffer.wrap(RandomSource.nextBytes(16))), "Random values should not repeat");
+        }
+    }
+
+    @Test
+    void testConcurrentRequests() throws Exception {
+        Set<ByteBuffer> seen = ConcurrentHashMap.newKeySet();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        // Overlapping buffer regions would hand out the same bytes twice
+                        assertTrue(seen.add(ByteBuffer.wrap(RandomSource.nextBytes(12))), "Concurrent callers should not share random values");
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) future.get();
+        }
+
+        assertEquals(32 * 1_000, seen.size());
+    }
+}
@@ -24,13 +24,20 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Base64;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
+import password.manager.app.base.KdfCalibrator;
+import password.manager.app.base.KdfParameters;
 import password.manager.app.base.SecurityVersion;
 import password.manager.app.base.SortingOrder;
 import password.manager.app.base.SupportedLocale;
 import password.manager.app.security.AES;
+import password.manager.app.security.KeyMaterial;
 import password.manager.app.security.UserPreferences;
 import tools.jackson.databind.ObjectMapper;
 
@@ -64,11 +71,11 @@ public class TestUserPreferences {
     void testGetDEKReturnsSameReference() {
         UserPreferences prefs = UserPreferences.of("password");
 
-        byte[] dek1 = invokeGetDEK(prefs);
-        byte[] dek2 = invokeGetDEK(prefs);
+        KeyMaterial dek1 = invokeGetDEKMaterial(prefs);
+        KeyMaterial dek2 = invokeGetDEKMaterial(prefs);
 
         assertSame(dek1, dek2, "getDEK() now returns the in-memory DEK reference");
-        assertArrayEquals(dek1, dek2, "Both copies must contain the same bytes");
+        assertTrue(dek1.contentEquals(dek2), "Both copies must contain the same bytes");
     }
 
     @Test
@@ -136,6 +143,78 @@ public class TestUserPreferences {
         assertThrows(IllegalStateException.class, () -> prefs.verifyPassword(""));
     }
 
+    @Test
+    void testVerifyPasswordReportsKeyDerivation() {
+        UserPreferences prefs = UserPreferences.of("password");
+        AtomicInteger derivations = new AtomicInteger(0);
+
+        // The key is derived before the DEK can be checked, whatever the outcome
+        assertFalse(prefs.verifyPassword("wrongPassword", derivations::incrementAndGet));
+        assertEquals(1, derivations.get());
+
+        assertTrue(prefs.verifyPassword("password", derivations::incrementAndGet));
+        assertEquals(2, derivations.get());
+
+        assertFalse(prefs.verifyPassword(null, derivations::incrementAndGet));
+        assertEquals(2, derivations.get(), "No key should be derived without a password");
+    }
+
+    @Test
+    void testGetDEKDoesNotBlockDuringVerification() throws Exception {
+        UserPreferences prefs = UserPreferences.of("password");
+        KeyMaterial dekBefore = invokeGetDEKMaterial(prefs);
+        KdfParameters parametersBefore = prefs.getKdfParameters();
+
+        CountDownLatch derived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Hold the verification right after the key derivation, while it still owns the preferences
+        CompletableFuture<Boolean> verification = CompletableFuture.supplyAsync(() -> prefs.verifyPassword("password", () -> {
+            derived.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try {
+            assertTrue(derived.await(30, TimeUnit.SECONDS));
+            KeyMaterial dekDuring = CompletableFuture.supplyAsync(() -> invokeGetDEKMaterial(prefs)).get(5, TimeUnit.SECONDS);
+            assertSame(dekBefore, dekDuring, "Readers should see the published DEK while a verification is running");
+            assertSame(parametersBefore, CompletableFuture.supplyAsync(prefs::getKdfParameters).get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+
+        assertTrue(verification.get(30, TimeUnit.SECONDS));
+        assertSame(dekBefore, invokeGetDEKMaterial(prefs), "Verifying an unlocked instance should keep the published DEK");
+        assertTrue(dekBefore.isAlive());
+    }
+
+    @Test
+    void testUnwrappedKeyIsPublishedOnlyOnDemand() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String json = mapper.writeValueAsString(UserPreferences.of("password"));
+
+        UserPreferences prefs = mapper.readValue(json, UserPreferences.class);
+        assertNull(prefs.unwrapKey("wrongPassword", null));
+
+        // A cancelled login closes the key without publishing it
+        UserPreferences.VerifiedKey cancelled = prefs.unwrapKey("password", null);
+        assertNotNull(cancelled);
+        cancelled.close();
+        assertThrows(IllegalStateException.class, () -> invokeGetDEK(prefs), "A closed key must not be published");
+        assertThrows(IllegalStateException.class, cancelled::publish);
+
+        try (UserPreferences.VerifiedKey key = prefs.unwrapKey("password", null)) {
+            assertNotNull(key);
+            assertThrows(IllegalStateException.class, () -> invokeGetDEK(prefs), "The DEK must stay unavailable until the key is published");
+            key.publish();
+        }
+        assertTrue(invokeGetDEKMaterial(prefs).isAlive(), "Closing a published key must not wipe the DEK");
+    }
+
     // #endregion
 
     // #region setPasswordVerified tests
@@ -218,12 +297,46 @@ public class TestUserPreferences {
         assertEquals(SortingOrder.USERNAME, target.getSortingOrder());
         assertEquals(SupportedLocale.ITALIAN, target.getLocale());
         assertEquals(SecurityVersion.ARGON2, target.getSecurityVersion());
+        assertEquals(source.getKdfParameters(), target.getKdfParameters());
         assertArrayEquals(invokeGetDEK(source), invokeGetDEK(target),
                 "DEK must be copied by set()");
         // target must accept the same password as source after copying
         assertTrue(target.verifyPassword("password"));
     }
 
+    @Test
+    void testSetOwnsItsDEK() {
+        UserPreferences source = UserPreferences.of("password");
+        KeyMaterial sourceDek = invokeGetDEKMaterial(source);
+
+        UserPreferences target = UserPreferences.empty();
+        target.set(source);
+        KeyMaterial targetDek = invokeGetDEKMaterial(target);
+        assertNotSame(sourceDek, targetDek, "Each instance must own its DEK");
+        assertTrue(sourceDek.contentEquals(targetDek));
+
+        // Replacing the preferences wipes the DEK they held, closing them wipes the copy
+        target.set(UserPreferences.empty());
+        assertFalse(targetDek.isAlive());
+        assertTrue(sourceDek.isAlive());
+
+        source.close();
+        assertFalse(sourceDek.isAlive());
+        assertThrows(IllegalStateException.class, () -> invokeGetDEK(source));
+        source.close(); // No effect
+    }
+
+    @Test
+    void testCloseKeepsPassword() {
+        UserPreferences prefs = UserPreferences.of("password");
+        byte[] dek = invokeGetDEK(prefs);
+        prefs.close();
+
+        assertThrows(IllegalStateException.class, () -> invokeGetDEK(prefs));
+        assertTrue(prefs.verifyPassword("password"), "Closed preferences can be unlocked again");
+        assertArrayEquals(dek, invokeGetDEK(prefs));
+    }
+
     @Test
     void testSetFromEmptySource() {
         UserPreferences source = UserPreferences.empty();
@@ -238,6 +351,66 @@ public class TestUserPreferences {
 
     // #endregion
 
+    // #region KDF parameters tests
+
+    @Test
+    void testKdfParametersAreCalibratedAndPersisted() throws Exception {
+        UserPreferences prefs = UserPreferences.of("password");
+        KdfParameters parameters = prefs.getKdfParameters();
+        assertEquals(KdfCalibrator.getCalibrated(), parameters, "New passwords must use the calibrated parameters");
+
+        ObjectMapper mapper = new ObjectMapper();
+        String json = mapper.writeValueAsString(prefs);
+        assertTrue(json.contains("\"kdfParameters\""));
+
+        UserPreferences reloaded = mapper.readValue(json, UserPreferences.class);
+        assertEquals(parameters, reloaded.getKdfParameters());
+        assertTrue(reloaded.verifyPassword("password"));
+        assertArrayEquals(invokeGetDEK(prefs), invokeGetDEK(reloaded));
+    }
+
+    @Test
+    void testMissingKdfParametersFallBackToDefaults() throws Exception {
+        // A file saved before the parameters were stored, its DEK was wrapped with the former hard-coded ones
+        String password = "password";
+        byte[] salt = deterministicSalt();
+        byte[] iv = deterministicSalt();
+        byte[] dek = new byte[AES.AES_BITS / 8];
+        Arrays.fill(dek, (byte) 7);
+        byte[] pwEncDek = AES.encryptAES(dek, SecurityVersion.ARGON2.getKey(password, salt, KdfParameters.DEFAULT), iv);
+
+        String json = "{"
+                + "\"locale\":\"en\","
+                + "\"sortingOrder\":\"SOFTWARE\","
+                + "\"securityVersion\":\"ARGON2\","
+                + "\"pwEncDek\":\"" + Base64.getEncoder().encodeToString(pwEncDek) + "\","
+                + "\"pwSalt\":\"" + Base64.getEncoder().encodeToString(salt) + "\","
+                + "\"pwIv\":\"" + Base64.getEncoder().encodeToString(iv) + "\"}";
+
+        UserPreferences prefs = new ObjectMapper().readValue(json, UserPreferences.class);
+        assertEquals(KdfParameters.DEFAULT, prefs.getKdfParameters());
+        assertTrue(prefs.verifyPassword(password));
+        assertArrayEquals(dek, invokeGetDEK(prefs));
+
+        // Changing the password moves the vault to the calibrated parameters
+        assertTrue(prefs.setPasswordVerified(password, "newPassword"));
+        assertEquals(KdfCalibrator.getCalibrated(), prefs.getKdfParameters());
+        assertArrayEquals(dek, invokeGetDEK(prefs));
+    }
+
+    @Test
+    void testExcessiveKdfParametersAreRejected() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String json = mapper.writeValueAsString(UserPreferences.of("password"))
+                .replaceFirst("\"iterations\"\\s*:\\s*\\d+", "\"iterations\":2147483647");
+        assertTrue(json.contains("2147483647"));
+
+        // Deriving with them would never end, the file is rejected instead
+        assertThrows(RuntimeException.class, () -> mapper.readValue(json, UserPreferences.class));
+    }
+
+    // #endregion
+
     // #region of() factory tests
 
     @Test
@@ -317,6 +490,23 @@ public class TestUserPreferences {
             "DEK must not be created when legacy password verification fails");
     }
 
+    @Test
+    void testLegacyClosedKeyDoesNotUpgrade() throws Exception {
+        String password = "legacyArgon2Password";
+        UserPreferences prefs = fromLegacyHashJson(password, SecurityVersion.ARGON2, true);
+
+        try (UserPreferences.VerifiedKey key = prefs.unwrapKey(password, null)) {
+            assertNotNull(key);
+        }
+        assertEquals(SecurityVersion.ARGON2, prefs.getSecurityVersion(), "A cancelled login must not upgrade the legacy format");
+        assertEquals(SecurityVersion.ARGON2, invokeGetLegacyVersion(prefs));
+        assertThrows(IllegalStateException.class, () -> invokeGetDEK(prefs));
+
+        assertTrue(prefs.verifyPassword(password));
+        assertEquals(SecurityVersion.LATEST, prefs.getSecurityVersion());
+        assertEquals(SecurityVersion.ARGON2, invokeGetLegacyVersion(prefs));
+    }
+
     // #endregion
 
     private static UserPreferences fromLegacyHashJson(String password, SecurityVersion legacyVersion, boolean includeSecurityVersion) throws Exception {
@@ -350,10 +540,14 @@ public class TestUserPreferences {
     }
 
     private static byte[] invokeGetDEK(UserPreferences prefs) {
+        return invokeGetDEKMaterial(prefs).toByteArray();
+    }
+
+    private static KeyMaterial invokeGetDEKMaterial(UserPreferences prefs) {
         try {
             Method method = UserPreferences.class.getDeclaredMethod("getDEK");
             method.setAccessible(true);
-            return (byte[]) method.invoke(prefs);
+            return (KeyMaterial) method.invoke(prefs);
         } catch (InvocationTargetException e) {
             Throwable cause = e.getCause();
             if (cause instanceof RuntimeException runtimeException) throw runtimeException;
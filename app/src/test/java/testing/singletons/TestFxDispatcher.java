@@ -0,0 +1,113 @@
+/*
+    Password Manager: Manages accounts given by user with encrypted password.
+    Copyright (C) 2022-2026  Francesco Marras (2004marras@gmail.com)
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see https://www.gnu.org/licenses/gpl-3.0.html.
+ */
+
+
+package testing.singletons;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import password.manager.app.singletons.FxDispatcher;
+import password.manager.app.singletons.Singletons;
+
+/**
+ * The JavaFX toolkit is not running in tests, so updates are expected to be applied right away on the calling thread.
+ */
+public class TestFxDispatcher {
+
+    @AfterEach
+    public void cleanup() {
+        Singletons.shutdownAll();
+    }
+
+    @Test
+    public void testUpdatesAppliedWithoutToolkit() {
+        FxDispatcher dispatcher = FxDispatcher.getInstance();
+        List<Integer> applied = new ArrayList<>();
+
+        Object key = new Object();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            dispatcher.submit(key, () -> applied.add(value));
+            assertEquals(Integer.valueOf(value), applied.getLast(), "Updates should be applied before submit returns");
+        }
+        dispatcher.submit(() -> applied.add(-1));
+
+        FxDispatcher.Metrics metrics = dispatcher.getMetrics();
+        assertEquals(11, applied.size());
+        assertEquals(11, metrics.submitted());
+        assertEquals(11, metrics.applied());
+        assertEquals(0, metrics.queueDepth());
+        assertTrue(metrics.maxDrainTime().compareTo(metrics.totalDrainTime()) <= 0);
+    }
+
+    @Test
+    public void testFailingUpdateDoesNotStopOthers() {
+        FxDispatcher dispatcher = FxDispatcher.getInstance();
+        AtomicInteger applied = new AtomicInteger(0);
+
+        dispatcher.submit(() -> { throw new IllegalStateException("Expected failure"); });
+        dispatcher.submit(applied::incrementAndGet);
+
+        assertEquals(1, applied.get());
+    }
+
+    @Test
+    public void testConcurrentSubmissions() throws InterruptedException {
+        FxDispatcher dispatcher = FxDispatcher.getInstance();
+        int threads = 8, updates = 1_000;
+        AtomicInteger applied = new AtomicInteger(0);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < updates; i++) dispatcher.submit(applied::incrementAndGet);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        dispatcher.flush();
+        assertEquals(threads * updates, applied.get());
+        assertEquals(0, dispatcher.getMetrics().queueDepth());
+    }
+
+    @Test
+    public void testConfiguration() {
+        try {
+            System.setProperty(FxDispatcher.BATCH_SIZE_KEY, "64");
+            assertEquals(64, FxDispatcher.getConfiguredBatchSize());
+
+            System.setProperty(FxDispatcher.BATCH_SIZE_KEY, "0");
+            assertEquals(FxDispatcher.DEFAULT_BATCH_SIZE, FxDispatcher.getConfiguredBatchSize());
+
+            System.setProperty(FxDispatcher.BATCH_SIZE_KEY, "invalid");
+            assertEquals(FxDispatcher.DEFAULT_BATCH_SIZE, FxDispatcher.getConfiguredBatchSize());
+        } finally {
+            System.clearProperty(FxDispatcher.BATCH_SIZE_KEY);
+        }
+    }
+}